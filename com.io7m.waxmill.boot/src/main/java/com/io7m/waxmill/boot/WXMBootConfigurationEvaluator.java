@@ -20,6 +20,7 @@ import com.io7m.jaffirm.core.Invariants;
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.junreachable.UnimplementedCodeException;
 import com.io7m.junreachable.UnreachableCodeException;
+import com.io7m.waxmill.boot.internal.WXMBhyveArgumentEmitter;
 import com.io7m.waxmill.boot.internal.WXMBootMessages;
 import com.io7m.waxmill.boot.internal.WXMDeviceMap;
 import com.io7m.waxmill.client.api.WXMClientConfiguration;
@@ -44,14 +45,12 @@ import com.io7m.waxmill.machines.WXMDeviceSlots;
 import com.io7m.waxmill.machines.WXMDeviceType;
 import com.io7m.waxmill.machines.WXMDeviceVirtioBlockStorage;
 import com.io7m.waxmill.machines.WXMDeviceVirtioNetwork;
-import com.io7m.waxmill.machines.WXMDeviceXHCIUSBTablet;
 import com.io7m.waxmill.machines.WXMEvaluatedBootCommands;
 import com.io7m.waxmill.machines.WXMEvaluatedBootConfigurationGRUBBhyve;
 import com.io7m.waxmill.machines.WXMEvaluatedBootConfigurationUEFI;
 import com.io7m.waxmill.machines.WXMGRUBKernelLinux;
 import com.io7m.waxmill.machines.WXMGRUBKernelOpenBSD;
 import com.io7m.waxmill.machines.WXMNetworkDeviceBackendType;
-import com.io7m.waxmill.machines.WXMOpenOption;
 import com.io7m.waxmill.machines.WXMShortIDs;
 import com.io7m.waxmill.machines.WXMStorageBackendFile;
 import com.io7m.waxmill.machines.WXMTTYBackendFile;
@@ -63,12 +62,10 @@ import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMZFSFilesystems;
 import com.io7m.waxmill.machines.WXMZFSVolumes;
 
-import java.net.Inet4Address;
-import java.net.Inet6Address;
-import java.net.InetAddress;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -76,6 +73,16 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationType;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_AHCI_CD;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_AHCI_HD;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_E1000;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_FRAMEBUFFER;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_HOSTBRIDGE;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_LPC;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_PASSTHRU;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_VIRTIO_BLOCK;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_VIRTIO_NETWORK;
+import static com.io7m.waxmill.machines.WXMDeviceType.Kind.WXM_XHCI_USB_TABLET;
 import static com.io7m.waxmill.machines.WXMDeviceType.WXMDeviceVirtioNetworkType.WXMTTYBackendType;
 import static com.io7m.waxmill.machines.WXMDeviceType.WXMLPCTTYNames.WXM_COM1;
 import static com.io7m.waxmill.machines.WXMDeviceType.WXMStorageBackendType;
@@ -88,6 +95,12 @@ import static com.io7m.waxmill.machines.WXMTTYBackends.nmdmPath;
 
 public final class WXMBootConfigurationEvaluator
 {
+  private static final Comparator<WXMDeviceType> DEVICE_SLOT_ORDER =
+    Comparator.comparing(WXMDeviceType::deviceSlot);
+
+  private static final Map<WXMDeviceType.Kind, BhyveDeviceArgumentsType> DEVICE_ARGUMENTS =
+    deviceArguments();
+
   private final WXMClientConfiguration clientConfiguration;
   private final WXMBootMessages messages;
   private final WXMVirtualMachine machine;
@@ -130,13 +143,57 @@ public final class WXMBootConfigurationEvaluator
     );
   }
 
+  private static Map<WXMDeviceType.Kind, BhyveDeviceArgumentsType> deviceArguments()
+  {
+    final var arguments =
+      new EnumMap<WXMDeviceType.Kind, BhyveDeviceArgumentsType>(
+        WXMDeviceType.Kind.class);
+
+    arguments.put(
+      WXM_HOSTBRIDGE,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceHostBridge);
+    arguments.put(
+      WXM_VIRTIO_NETWORK,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceVirtioNetwork);
+    arguments.put(
+      WXM_VIRTIO_BLOCK,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceVirtioBlock);
+    arguments.put(
+      WXM_AHCI_HD,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceAHCIHD);
+    arguments.put(
+      WXM_AHCI_CD,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceAHCICD);
+    arguments.put(
+      WXM_LPC,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceLPC);
+    arguments.put(
+      WXM_PASSTHRU,
+      WXMBootConfigurationEvaluator::configureBhyveDevicePassthru);
+    arguments.put(
+      WXM_E1000,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceE1000Network);
+    arguments.put(
+      WXM_FRAMEBUFFER,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceFramebuffer);
+    arguments.put(
+      WXM_XHCI_USB_TABLET,
+      WXMBootConfigurationEvaluator::configureBhyveDeviceXHCIUSBTablet);
+
+    Invariants.checkInvariant(
+      arguments.size() == WXMDeviceType.Kind.values().length,
+      "Every device kind must have an argument generator"
+    );
+    return arguments;
+  }
+
   private static void configureBhyveFlag(
-    final WXMCommandExecution.Builder commandBuilder,
+    final WXMBhyveArgumentEmitter emitter,
     final boolean enabled,
     final String flagName)
   {
     if (enabled) {
-      commandBuilder.addArguments(flagName);
+      emitter.argument(flagName);
     }
   }
 
@@ -275,183 +332,142 @@ public final class WXMBootConfigurationEvaluator
     return configLines;
   }
 
-  private static void configureBhyveDeviceVirtioNetwork(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceVirtioNetwork device)
+  private void configureBhyveDeviceVirtioNetwork(
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    command.addArguments("-s");
-    command.addArguments(String.format(
-      "%s,%s,%s",
-      device.deviceSlot(),
-      device.externalName(),
-      configureBhyveNetworkBackend(device.backend())
-    ));
+    final var network = (WXMDeviceVirtioNetwork) device;
+    configureBhyveDeviceNetwork(invocation.emitter, network, network.backend());
   }
 
-  private static String configureBhyveNetworkBackend(
-    final WXMNetworkDeviceBackendType backend)
+  private void configureBhyveDeviceE1000Network(
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    switch (backend.kind()) {
-      case WXM_TAP:
-        return configureBhyveNetworkTAP((WXMTap) backend);
-      case WXM_VMNET:
-        return configureBhyveNetworkVMNet((WXMVMNet) backend);
-    }
-    throw new UnreachableCodeException();
+    final var network = (WXMDeviceE1000) device;
+    configureBhyveDeviceNetwork(invocation.emitter, network, network.backend());
   }
 
-  private static String configureBhyveNetworkVMNet(
-    final WXMVMNet backend)
+  private static void configureBhyveDeviceNetwork(
+    final WXMBhyveArgumentEmitter emitter,
+    final WXMDeviceType device,
+    final WXMNetworkDeviceBackendType backend)
   {
-    return String.format(
-      "%s,mac=%s",
-      backend.name().value(),
-      backend.guestMAC().value()
-    );
+    emitter.begin("-s")
+      .slot(device.deviceSlot())
+      .field(device.externalName());
+    configureBhyveNetworkBackend(emitter, backend);
+    emitter.end();
   }
 
-  private static String configureBhyveNetworkTAP(
-    final WXMTap backend)
+  private static void configureBhyveNetworkBackend(
+    final WXMBhyveArgumentEmitter emitter,
+    final WXMNetworkDeviceBackendType backend)
   {
-    return String.format(
-      "%s,mac=%s",
-      backend.name().value(),
-      backend.guestMAC().value()
-    );
+    switch (backend.kind()) {
+      case WXM_TAP: {
+        final var tap = (WXMTap) backend;
+        emitter.field(tap.name().value())
+          .field("mac", tap.guestMAC().value());
+        return;
+      }
+      case WXM_VMNET: {
+        final var vmNet = (WXMVMNet) backend;
+        emitter.field(vmNet.name().value())
+          .field("mac", vmNet.guestMAC().value());
+        return;
+      }
+    }
+    throw new UnreachableCodeException();
   }
 
-  private static String configureBhyveStorageFile(
+  private static void configureBhyveStorageFile(
+    final WXMBhyveArgumentEmitter emitter,
     final WXMStorageBackendFile backend)
   {
-    final var builder = new StringBuilder(backend.file().toString());
-    final var options = backend.options();
-    if (!options.isEmpty()) {
-      builder.append(
-        options.stream()
-          .map(WXMOpenOption::externalName)
-          .collect(Collectors.joining(",", ",", ""))
-      );
+    emitter.field(backend.file().toString());
+    for (final var option : backend.options()) {
+      emitter.field(option.externalName());
     }
 
     backend.sectorSizes().ifPresent(sizes -> {
-      if (!options.isEmpty()) {
-        builder.append(',');
-      }
-      builder.append("sectorsize=");
-      builder.append(sizes.logical());
-      builder.append('/');
-      builder.append(sizes.physical());
+      emitter.separator()
+        .append("sectorsize=")
+        .append(sizes.logical().toString())
+        .append('/')
+        .append(sizes.physical().toString());
     });
-    return builder.toString();
   }
 
-  private static void configureBhyveDeviceHostBridge(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceHostBridge device)
+  private void configureBhyveDeviceHostBridge(
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    final var deviceSlot = device.deviceSlot();
-    switch (device.vendor()) {
+    final var hostBridge = (WXMDeviceHostBridge) device;
+    final var emitter = invocation.emitter;
+    emitter.begin("-s").slot(hostBridge.deviceSlot());
+
+    switch (hostBridge.vendor()) {
       case WXM_UNSPECIFIED:
-        command.addArguments("-s");
-        command.addArguments(
-          String.format("%s,%s", deviceSlot, "hostbridge"));
+        emitter.field("hostbridge").end();
         return;
       case WXM_AMD:
-        command.addArguments("-s");
-        command.addArguments(
-          String.format("%s,%s", deviceSlot, "amd_hostbridge"));
+        emitter.field("amd_hostbridge").end();
         return;
     }
     throw new UnreachableCodeException();
   }
 
-  private static void configureBhyveDeviceXHCIUSBTablet(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceXHCIUSBTablet device)
-  {
-    command.addArguments("-s");
-
-    final var arguments = new ArrayList<String>(8);
-    arguments.add(device.deviceSlot().toString());
-    arguments.add(device.externalName());
-    command.addArguments(String.join(",", arguments));
-  }
-
-  private static void configureBhyveDeviceFramebuffer(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceFramebuffer device)
+  private void configureBhyveDeviceXHCIUSBTablet(
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    command.addArguments("-s");
-
-    final var arguments = new ArrayList<String>(8);
-    arguments.add(device.deviceSlot().toString());
-    arguments.add(device.externalName());
-    arguments.add(String.format(
-      "tcp=%s",
-      formatVNCSocketAddress(
-        device.listenAddress(),
-        device.listenPort())));
-    arguments.add(String.format("w=%d", Integer.valueOf(device.width())));
-    arguments.add(String.format("h=%d", Integer.valueOf(device.height())));
-    arguments.add(String.format(
-      "vga=%s",
-      device.vgaConfiguration().externalName()));
-    if (device.waitForVNC()) {
-      arguments.add("wait");
-    }
-    command.addArguments(String.join(",", arguments));
+    invocation.emitter.begin("-s")
+      .slot(device.deviceSlot())
+      .field(device.externalName())
+      .end();
   }
 
-  private static String formatVNCSocketAddress(
-    final InetAddress listenAddress,
-    final int listenPort)
+  private void configureBhyveDeviceFramebuffer(
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    if (listenAddress instanceof Inet4Address) {
-      return String.format(
-        "%s:%d",
-        listenAddress.getHostAddress(),
-        Integer.valueOf(listenPort)
-      );
-    }
-    if (listenAddress instanceof Inet6Address) {
-      return String.format(
-        "[%s]:%d",
-        listenAddress.getHostAddress(),
-        Integer.valueOf(listenPort)
-      );
+    final var framebuffer = (WXMDeviceFramebuffer) device;
+    final var emitter = invocation.emitter;
+
+    emitter.begin("-s")
+      .slot(framebuffer.deviceSlot())
+      .field(framebuffer.externalName())
+      .separator()
+      .append("tcp=")
+      .socketAddress(framebuffer.listenAddress(), framebuffer.listenPort())
+      .field("w", framebuffer.width())
+      .field("h", framebuffer.height())
+      .field("vga", framebuffer.vgaConfiguration().externalName());
+
+    if (framebuffer.waitForVNC()) {
+      emitter.field("wait");
     }
-    throw new UnreachableCodeException();
-  }
-
-  private static void configureBhyveDeviceE1000Network(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceE1000 device)
-  {
-    command.addArguments("-s");
-    command.addArguments(String.format(
-      "%s,%s,%s",
-      device.deviceSlot(),
-      device.externalName(),
-      configureBhyveNetworkBackend(device.backend())
-    ));
+    emitter.end();
   }
 
-  private static void configureBhyveDevicePassthru(
-    final WXMCommandExecution.Builder command,
-    final WXMDevicePassthru device)
+  private void configureBhyveDevicePassthru(
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    final var hostSlot = device.hostPCISlot();
-    command.addArguments("-s");
-    command.addArguments(
-      String.format(
-        "%s,%s,%d/%d/%d",
-        device.deviceSlot(),
-        device.externalName(),
-        Integer.valueOf(hostSlot.busID()),
-        Integer.valueOf(hostSlot.slotID()),
-        Integer.valueOf(hostSlot.functionID())
-      )
-    );
+    final var passthru = (WXMDevicePassthru) device;
+    final var hostSlot = passthru.hostPCISlot();
+
+    invocation.emitter.begin("-s")
+      .slot(passthru.deviceSlot())
+      .field(passthru.externalName())
+      .separator()
+      .append(hostSlot.busID())
+      .append('/')
+      .append(hostSlot.slotID())
+      .append('/')
+      .append(hostSlot.functionID())
+      .end();
   }
 
   private WXMEvaluatedBootCommands generateGRUBBhyveCommands(
@@ -506,6 +522,7 @@ public final class WXMBootConfigurationEvaluator
     final WXMNetworkDeviceBackendType backend)
   {
     final var ifconfig = this.clientConfiguration.ifconfigExecutable();
+    final var ifconfigTimeout = this.clientConfiguration.ifconfigTimeout();
 
     switch (backend.kind()) {
       case WXM_TAP: {
@@ -514,6 +531,7 @@ public final class WXMBootConfigurationEvaluator
         commands.add(
           WXMCommandExecution.builder()
             .setExecutable(ifconfig)
+            .setTimeout(ifconfigTimeout)
             .addArguments(tapName)
             .addArguments("create")
             .setIgnoreFailure(true)
@@ -523,6 +541,7 @@ public final class WXMBootConfigurationEvaluator
         commands.add(
           WXMCommandExecution.builder()
             .setExecutable(ifconfig)
+            .setTimeout(ifconfigTimeout)
             .addArguments(tapName)
             .addArguments("ether")
             .addArguments(tap.hostMAC().value())
@@ -533,6 +552,7 @@ public final class WXMBootConfigurationEvaluator
           commands.add(
             WXMCommandExecution.builder()
               .setExecutable(ifconfig)
+              .setTimeout(ifconfigTimeout)
               .addArguments(tapName)
               .addArguments("group")
               .addArguments(group.value())
@@ -548,6 +568,7 @@ public final class WXMBootConfigurationEvaluator
         commands.add(
           WXMCommandExecution.builder()
             .setExecutable(ifconfig)
+            .setTimeout(ifconfigTimeout)
             .addArguments(vmNetName)
             .addArguments("create")
             .setIgnoreFailure(true)
@@ -557,6 +578,7 @@ public final class WXMBootConfigurationEvaluator
         commands.add(
           WXMCommandExecution.builder()
             .setExecutable(ifconfig)
+            .setTimeout(ifconfigTimeout)
             .addArguments(vmNetName)
             .addArguments("ether")
             .addArguments(vmNet.hostMAC().value())
@@ -567,6 +589,7 @@ public final class WXMBootConfigurationEvaluator
           commands.add(
             WXMCommandExecution.builder()
               .setExecutable(ifconfig)
+              .setTimeout(ifconfigTimeout)
               .addArguments(vmNetName)
               .addArguments("group")
               .addArguments(group.value())
@@ -600,6 +623,7 @@ public final class WXMBootConfigurationEvaluator
       WXMCommandExecution.builder();
 
     builder.setExecutable(this.clientConfiguration.grubBhyveExecutable());
+    builder.setTimeout(this.clientConfiguration.grubBhyveTimeout());
 
     final var consoleOpt = WXMConsoles.findDefaultConsole(this.machine);
     consoleOpt.ifPresent(device -> {
@@ -675,23 +699,25 @@ public final class WXMBootConfigurationEvaluator
       WXMCommandExecution.builder()
         .setExecutable(this.clientConfiguration.bhyveExecutable());
 
-    this.configureBhyveFlags(commandBuilder);
-    this.configureBhyveCPUTopology(commandBuilder);
-    this.configureBhyveMemory(commandBuilder);
+    final var invocation =
+      new BhyveInvocation(
+        bootConfiguration,
+        attachments,
+        WXMBhyveArgumentEmitter.create(commandBuilder)
+      );
+    final var emitter = invocation.emitter;
+
+    this.configureBhyveFlags(emitter);
+    this.configureBhyveCPUTopology(emitter);
+    this.configureBhyveMemory(emitter);
 
     final var devicesSorted =
-      this.machine.devices()
-        .stream()
-        .sorted(Comparator.comparing(WXMDeviceType::deviceSlot))
-        .collect(Collectors.toList());
+      new ArrayList<WXMDeviceType>(this.machine.devices());
+    devicesSorted.sort(DEVICE_SLOT_ORDER);
 
     for (final var device : devicesSorted) {
-      this.configureBhyveDevice(
-        bootConfiguration,
-        attachments,
-        commandBuilder,
-        device
-      );
+      DEVICE_ARGUMENTS.get(device.kind())
+        .configure(this, invocation, device);
     }
 
     switch (bootConfiguration.kind()) {
@@ -700,199 +726,139 @@ public final class WXMBootConfigurationEvaluator
       }
       case UEFI: {
         final var uefi = (WXMBootConfigurationUEFI) bootConfiguration;
-        commandBuilder.addArguments("-l");
-        commandBuilder.addArguments(
-          String.format("bootrom,%s", uefi.firmware())
-        );
+        emitter.begin("-l")
+          .field("bootrom")
+          .field(uefi.firmware().toString())
+          .end();
         break;
       }
     }
 
-    commandBuilder.addArguments(WXMShortIDs.encode(this.machine.id()));
+    emitter.argument(WXMShortIDs.encode(this.machine.id()));
     return commandBuilder.build();
   }
 
-  private void configureBhyveDevice(
-    final WXMBootConfigurationType bootConfiguration,
-    final Map<WXMDeviceSlot, WXMBootDiskAttachment> attachments,
-    final WXMCommandExecution.Builder command,
+  private void configureBhyveDeviceLPC(
+    final BhyveInvocation invocation,
     final WXMDeviceType device)
   {
-    final var deviceSlot = device.deviceSlot();
-
-    switch (device.kind()) {
-      case WXM_HOSTBRIDGE: {
-        configureBhyveDeviceHostBridge(command, (WXMDeviceHostBridge) device);
-        return;
-      }
-      case WXM_VIRTIO_NETWORK: {
-        configureBhyveDeviceVirtioNetwork(
-          command, (WXMDeviceVirtioNetwork) device);
-        return;
-      }
-      case WXM_VIRTIO_BLOCK: {
-        this.configureBhyveDeviceVirtioBlock(
-          command, (WXMDeviceVirtioBlockStorage) device);
-        return;
-      }
-      case WXM_AHCI_HD: {
-        this.configureBhyveDeviceAHCIHD(
-          command, (WXMDeviceAHCIDisk) device);
-        return;
-      }
-      case WXM_AHCI_CD: {
-        final var attachment = attachments.get(deviceSlot);
-        if (attachment == null) {
-          Preconditions.checkPrecondition(
-            !bootConfiguration.requiredDevices().contains(deviceSlot),
-            "Required device must have an attachment"
-          );
-          return;
-        }
-
-        this.configureBhyveDeviceAHCICD(
-          command,
-          attachment,
-          (WXMDeviceAHCIOpticalDisk) device);
-        return;
-      }
-      case WXM_LPC: {
-        this.configureBhyveDeviceLPC(command, (WXMDeviceLPC) device);
-        return;
-      }
-      case WXM_PASSTHRU: {
-        configureBhyveDevicePassthru(command, (WXMDevicePassthru) device);
-        return;
-      }
-      case WXM_E1000: {
-        configureBhyveDeviceE1000Network(
-          command, (WXMDeviceE1000) device);
-        return;
-      }
-      case WXM_FRAMEBUFFER: {
-        configureBhyveDeviceFramebuffer(
-          command, (WXMDeviceFramebuffer) device);
-        return;
-      }
-      case WXM_XHCI_USB_TABLET:
-        configureBhyveDeviceXHCIUSBTablet(
-          command, (WXMDeviceXHCIUSBTablet) device);
-        return;
-    }
-    throw new UnreachableCodeException();
-  }
+    final var lpc = (WXMDeviceLPC) device;
+    final var emitter = invocation.emitter;
 
-  private void configureBhyveDeviceLPC(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceLPC device)
-  {
-    command.addArguments("-s");
-    command.addArguments(
-      String.format(
-        "%s,%s",
-        device.deviceSlot(),
-        device.externalName())
-    );
+    emitter.begin("-s")
+      .slot(lpc.deviceSlot())
+      .field(lpc.externalName())
+      .end();
 
-    for (final var backend : device.backends()) {
-      this.configureBhyveDeviceLPCBackend(command, backend);
+    for (final var backend : lpc.backends()) {
+      this.configureBhyveDeviceLPCBackend(emitter, backend);
     }
   }
 
   private void configureBhyveDeviceLPCBackend(
-    final WXMCommandExecution.Builder command,
+    final WXMBhyveArgumentEmitter emitter,
     final WXMTTYBackendType backend)
   {
-    command.addArguments("-l");
+    emitter.begin("-l");
 
     switch (backend.kind()) {
       case WXM_FILE:
         final WXMTTYBackendFile file = (WXMTTYBackendFile) backend;
-        command.addArguments(String.format(
-          "%s,%s",
-          file.device(),
-          file.path()));
+        emitter.field(file.device())
+          .field(file.path().toString());
         break;
 
       case WXM_NMDM:
         final WXMTTYBackendNMDM nmdm = (WXMTTYBackendNMDM) backend;
-        command.addArguments(
-          String.format(
-            "%s,%s",
-            nmdm.device(),
+        emitter.field(nmdm.device())
+          .field(
             nmdmPath(
               this.clientConfiguration.virtualMachineRuntimeFilesystem()
                 .mountPoint()
                 .getFileSystem(),
               this.machine.id(),
               NMDM_GUEST
-            )
-          ));
+            ).toString());
         break;
 
       case WXM_STDIO:
         final WXMTTYBackendStdio stdio = (WXMTTYBackendStdio) backend;
-        command.addArguments(String.format("%s,stdio", stdio.device()));
+        emitter.field(stdio.device())
+          .field("stdio");
         break;
     }
+
+    emitter.end();
   }
 
   private void configureBhyveDeviceAHCICD(
-    final WXMCommandExecution.Builder command,
-    final WXMBootDiskAttachment attachment,
-    final WXMDeviceAHCIOpticalDisk device)
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
     final var deviceSlot = device.deviceSlot();
+    final var attachment = invocation.attachments.get(deviceSlot);
+    if (attachment == null) {
+      Preconditions.checkPrecondition(
+        !invocation.bootConfiguration.requiredDevices().contains(deviceSlot),
+        "Required device must have an attachment"
+      );
+      return;
+    }
 
     Preconditions.checkPrecondition(
       Objects.equals(attachment.device(), deviceSlot),
       "Attachment device must match"
     );
 
-    command.addArguments("-s");
-    command.addArguments(String.format(
-      "%s,%s,%s",
-      deviceSlot,
-      device.externalName(),
-      this.configureBhyveDeviceStorageBackend(device, attachment.backend())
-    ));
+    this.configureBhyveDeviceStorage(
+      invocation.emitter,
+      (WXMDeviceAHCIOpticalDisk) device,
+      attachment.backend()
+    );
   }
 
   private void configureBhyveDeviceVirtioBlock(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceVirtioBlockStorage device)
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    command.addArguments("-s");
-    command.addArguments(String.format(
-      "%s,%s,%s",
-      device.deviceSlot(),
-      device.externalName(),
-      this.configureBhyveDeviceStorageBackend(device, device.backend())
-    ));
+    final var storage = (WXMDeviceVirtioBlockStorage) device;
+    this.configureBhyveDeviceStorage(
+      invocation.emitter,
+      storage,
+      storage.backend()
+    );
   }
 
   private void configureBhyveDeviceAHCIHD(
-    final WXMCommandExecution.Builder command,
-    final WXMDeviceAHCIDisk device)
+    final BhyveInvocation invocation,
+    final WXMDeviceType device)
   {
-    command.addArguments("-s");
-    command.addArguments(String.format(
-      "%s,%s,%s",
-      device.deviceSlot(),
-      device.externalName(),
-      this.configureBhyveDeviceStorageBackend(device, device.backend())
-    ));
+    final var disk = (WXMDeviceAHCIDisk) device;
+    this.configureBhyveDeviceStorage(
+      invocation.emitter,
+      disk,
+      disk.backend()
+    );
   }
 
-  private String configureBhyveDeviceStorageBackend(
+  private void configureBhyveDeviceStorage(
+    final WXMBhyveArgumentEmitter emitter,
     final WXMDeviceType device,
     final WXMStorageBackendType backend)
   {
+    emitter.begin("-s")
+      .slot(device.deviceSlot())
+      .field(device.externalName());
+
     switch (backend.kind()) {
       case WXM_STORAGE_FILE:
-        return configureBhyveStorageFile((WXMStorageBackendFile) backend);
+        configureBhyveStorageFile(emitter, (WXMStorageBackendFile) backend);
+        emitter.end();
+        return;
       case WXM_STORAGE_ZFS_VOLUME:
-        return this.configureBhyveStorageZFS(device);
+        emitter.field(this.configureBhyveStorageZFS(device));
+        emitter.end();
+        return;
       case WXM_SCSI:
         throw new UnimplementedCodeException();
     }
@@ -914,48 +880,45 @@ public final class WXMBootConfigurationEvaluator
   }
 
   private void configureBhyveMemory(
-    final WXMCommandExecution.Builder command)
+    final WXMBhyveArgumentEmitter emitter)
   {
     final var memoryMB = this.machine.memory().totalMegabytes();
-    command.addArguments("-m");
-    command.addArguments(String.format("%sM", memoryMB));
+    emitter.argument("-m");
+    emitter.argument(memoryMB + "M");
   }
 
   private void configureBhyveCPUTopology(
-    final WXMCommandExecution.Builder command)
+    final WXMBhyveArgumentEmitter emitter)
   {
-    command.addArguments("-c");
     final var topology = this.machine.cpuTopology();
-    command.addArguments(
-      String.format(
-        "cpus=%d,sockets=%d,cores=%d,threads=%d",
-        Integer.valueOf(topology.cpus()),
-        Integer.valueOf(topology.sockets()),
-        Integer.valueOf(topology.cores()),
-        Integer.valueOf(topology.threads())
-      ));
+    emitter.begin("-c")
+      .field("cpus", topology.cpus())
+      .field("sockets", topology.sockets())
+      .field("cores", topology.cores())
+      .field("threads", topology.threads())
+      .end();
   }
 
   private void configureBhyveFlags(
-    final WXMCommandExecution.Builder cmd)
+    final WXMBhyveArgumentEmitter emitter)
   {
-    cmd.addArguments("-U");
-    cmd.addArguments(this.machine.id().toString());
+    emitter.argument("-U");
+    emitter.argument(this.machine.id().toString());
 
     final var flags = this.machine.flags();
-    configureBhyveFlag(cmd, flags.disableMPTableGeneration(), "-Y");
-    configureBhyveFlag(cmd, flags.exitOnPAUSE(), "-P");
-    configureBhyveFlag(cmd, flags.forceVirtualIOPCIToUseMSI(), "-W");
-    configureBhyveFlag(cmd, flags.generateACPITables(), "-A");
-    configureBhyveFlag(cmd, flags.guestAPICIsX2APIC(), "-x");
-    configureBhyveFlag(cmd, flags.includeGuestMemoryInCoreFiles(), "-C");
+    configureBhyveFlag(emitter, flags.disableMPTableGeneration(), "-Y");
+    configureBhyveFlag(emitter, flags.exitOnPAUSE(), "-P");
+    configureBhyveFlag(emitter, flags.forceVirtualIOPCIToUseMSI(), "-W");
+    configureBhyveFlag(emitter, flags.generateACPITables(), "-A");
+    configureBhyveFlag(emitter, flags.guestAPICIsX2APIC(), "-x");
+    configureBhyveFlag(emitter, flags.includeGuestMemoryInCoreFiles(), "-C");
     configureBhyveFlag(
-      cmd,
+      emitter,
       flags.ignoreUnimplementedModelSpecificRegisters(),
       "-w");
-    configureBhyveFlag(cmd, flags.realTimeClockIsUTC(), "-u");
-    configureBhyveFlag(cmd, flags.wireGuestMemory(), "-S");
-    configureBhyveFlag(cmd, flags.yieldCPUOnHLT(), "-H");
+    configureBhyveFlag(emitter, flags.realTimeClockIsUTC(), "-u");
+    configureBhyveFlag(emitter, flags.wireGuestMemory(), "-S");
+    configureBhyveFlag(emitter, flags.yieldCPUOnHLT(), "-H");
   }
 
   private WXMEvaluatedBootConfigurationGRUBBhyve evaluateGRUBConfigurationOpenBSD(
@@ -971,6 +934,7 @@ public final class WXMBootConfigurationEvaluator
       this.generateGRUBBhyveCommands(config, deviceMap.attachments());
 
     return WXMEvaluatedBootConfigurationGRUBBhyve.builder()
+      .setName(config.name())
       .setCommands(commands)
       .setRequiredPaths(deviceMap.paths())
       .setDeviceMap(deviceMap.serialize())
@@ -1016,6 +980,7 @@ public final class WXMBootConfigurationEvaluator
       );
 
     return WXMEvaluatedBootConfigurationGRUBBhyve.builder()
+      .setName(bootConfiguration.name())
       .setCommands(commands)
       .setRequiredPaths(deviceMap.paths())
       .setRequiredNMDMs(deviceMap.nmdmPaths())
@@ -1110,6 +1075,7 @@ public final class WXMBootConfigurationEvaluator
       this.generateUEFICommands(config, config.diskAttachmentMap());
 
     return WXMEvaluatedBootConfigurationUEFI.builder()
+      .setName(config.name())
       .setRequiredPaths(requiredPaths)
       .setRequiredNMDMs(deviceMap.nmdmPaths())
       .setCommands(commands)
@@ -1149,4 +1115,41 @@ public final class WXMBootConfigurationEvaluator
       Long.toUnsignedString(System.identityHashCode(this), 16)
     );
   }
+
+  /**
+   * A function that generates the bhyve arguments for a single kind of
+   * device.
+   */
+
+  private interface BhyveDeviceArgumentsType
+  {
+    void configure(
+      WXMBootConfigurationEvaluator evaluator,
+      BhyveInvocation invocation,
+      WXMDeviceType device);
+  }
+
+  /**
+   * The state of a single bhyve command that is being generated.
+   */
+
+  private static final class BhyveInvocation
+  {
+    private final WXMBootConfigurationType bootConfiguration;
+    private final Map<WXMDeviceSlot, WXMBootDiskAttachment> attachments;
+    private final WXMBhyveArgumentEmitter emitter;
+
+    BhyveInvocation(
+      final WXMBootConfigurationType inBootConfiguration,
+      final Map<WXMDeviceSlot, WXMBootDiskAttachment> inAttachments,
+      final WXMBhyveArgumentEmitter inEmitter)
+    {
+      this.bootConfiguration =
+        Objects.requireNonNull(inBootConfiguration, "bootConfiguration");
+      this.attachments =
+        Objects.requireNonNull(inAttachments, "attachments");
+      this.emitter =
+        Objects.requireNonNull(inEmitter, "emitter");
+    }
+  }
 }
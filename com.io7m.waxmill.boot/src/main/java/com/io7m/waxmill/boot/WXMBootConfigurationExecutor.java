@@ -18,6 +18,7 @@ package com.io7m.waxmill.boot;
 
 import com.io7m.junreachable.UnreachableCodeException;
 import com.io7m.waxmill.boot.internal.WXMBootMessages;
+import com.io7m.waxmill.boot.internal.WXMPathExistenceCache;
 import com.io7m.waxmill.client.api.WXMClientConfiguration;
 import com.io7m.waxmill.exceptions.WXMException;
 import com.io7m.waxmill.locks.WXMFileLock;
@@ -32,13 +33,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
+import static com.io7m.waxmill.boot.WXMBootConfigurationExecutor.LastExecutionMode.REPLACE_CURRENT;
+import static com.io7m.waxmill.boot.WXMBootConfigurationExecutor.LastExecutionMode.START_CHILD;
 import static com.io7m.waxmill.boot.WXMBootConfigurationExecutor.WithComment.WITHOUT_COMMENT;
 import static com.io7m.waxmill.boot.WXMBootConfigurationExecutor.WithComment.WITH_COMMENT;
 import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationGRUBBhyveType;
@@ -58,6 +65,13 @@ import static java.nio.file.StandardOpenOption.WRITE;
 public final class WXMBootConfigurationExecutor
   implements WXMBootConfigurationExecutorType
 {
+  /**
+   * The name of the file, within the machine's runtime directory, to which
+   * the output of a virtual machine started as a child process is written.
+   */
+
+  public static final String OUTPUT_FILE_NAME = "output.log";
+
   private static final Logger LOG =
     LoggerFactory.getLogger(WXMBootConfigurationExecutor.class);
 
@@ -66,13 +80,15 @@ public final class WXMBootConfigurationExecutor
   private final WXMVirtualMachine machine;
   private final WXMEvaluatedBootConfigurationType bootConfiguration;
   private final WXMBootMessages messages;
+  private final WXMBootTimings timings;
 
   private WXMBootConfigurationExecutor(
     final WXMBootMessages inMessages,
     final WXMProcessesType inProcesses,
     final WXMClientConfiguration inClientConfiguration,
     final WXMVirtualMachine inMachine,
-    final WXMEvaluatedBootConfigurationType inBootConfiguration)
+    final WXMEvaluatedBootConfigurationType inBootConfiguration,
+    final WXMBootTimings inTimings)
   {
     this.messages =
       Objects.requireNonNull(inMessages, "inMessages");
@@ -84,6 +100,8 @@ public final class WXMBootConfigurationExecutor
       Objects.requireNonNull(inMachine, "inMachine");
     this.bootConfiguration =
       Objects.requireNonNull(inBootConfiguration, "bootConfiguration");
+    this.timings =
+      Objects.requireNonNull(inTimings, "inTimings");
   }
 
   /**
@@ -102,13 +120,53 @@ public final class WXMBootConfigurationExecutor
     final WXMClientConfiguration inClientConfiguration,
     final WXMVirtualMachine inMachine,
     final WXMEvaluatedBootConfigurationType inBootConfiguration)
+  {
+    return create(
+      inProcesses,
+      inClientConfiguration,
+      inMachine,
+      inBootConfiguration,
+      WXMBootTimings.create(inMachine.id())
+    );
+  }
+
+  /**
+   * The boot configuration executor.
+   *
+   * @param inProcesses           The process provider
+   * @param inClientConfiguration The client configuration
+   * @param inMachine             The virtual machine
+   * @param inBootConfiguration   The boot configuration
+   * @param inTimings             The recorder to which boot phase timings
+   *                              will be added
+   *
+   * @return A boot executor
+   */
+
+  public static WXMBootConfigurationExecutorType create(
+    final WXMProcessesType inProcesses,
+    final WXMClientConfiguration inClientConfiguration,
+    final WXMVirtualMachine inMachine,
+    final WXMEvaluatedBootConfigurationType inBootConfiguration,
+    final WXMBootTimings inTimings)
   {
     return new WXMBootConfigurationExecutor(
       WXMBootMessages.create(),
       inProcesses,
       inClientConfiguration,
       inMachine,
-      inBootConfiguration
+      inBootConfiguration,
+      inTimings
+    );
+  }
+
+  private static String formatMillis(
+    final Duration duration)
+  {
+    return String.format(
+      "%d.%03dms",
+      Long.valueOf(duration.toMillis()),
+      Long.valueOf((duration.toNanos() / 1_000L) % 1_000L)
     );
   }
 
@@ -185,23 +243,41 @@ public final class WXMBootConfigurationExecutor
     throws WXMException, InterruptedException
   {
     Objects.requireNonNull(execute, "execute");
+    this.run(execute, REPLACE_CURRENT);
+  }
 
+  @Override
+  public Optional<Process> start(
+    final WXMDryRun execute)
+    throws WXMException, InterruptedException
+  {
+    Objects.requireNonNull(execute, "execute");
+    return this.run(execute, START_CHILD);
+  }
+
+  private Optional<Process> run(
+    final WXMDryRun execute,
+    final LastExecutionMode mode)
+    throws WXMException, InterruptedException
+  {
     try {
-      this.checkRequiredPaths();
+      try (var ignored = this.timings.begin("required-paths")) {
+        this.checkRequiredPaths();
+      }
 
       switch (this.bootConfiguration.kind()) {
         case GRUB_BHYVE:
-          this.executeGRUBBhyve(
+          return this.executeGRUBBhyve(
             execute,
+            mode,
             (WXMEvaluatedBootConfigurationGRUBBhyveType) this.bootConfiguration
           );
-          return;
         case UEFI:
-          this.executeUEFI(
+          return this.executeUEFI(
             execute,
+            mode,
             (WXMEvaluatedBootConfigurationUEFIType) this.bootConfiguration
           );
-          return;
       }
     } catch (final IOException e) {
       throw new WXMException(e);
@@ -216,8 +292,10 @@ public final class WXMBootConfigurationExecutor
     final var missingPaths = new ArrayList<Path>();
     final var missingNMDMs = new ArrayList<Path>();
 
-    for (final var path : this.bootConfiguration.requiredPaths()) {
-      if (!Files.exists(path)) {
+    final var requiredPaths = this.bootConfiguration.requiredPaths();
+    final var existence = WXMPathExistenceCache.create(requiredPaths);
+    for (final var path : requiredPaths) {
+      if (!existence.exists(path)) {
         if (this.bootConfiguration.requiredNMDMs().contains(path)) {
           missingNMDMs.add(path);
         }
@@ -234,64 +312,211 @@ public final class WXMBootConfigurationExecutor
     }
   }
 
-  private void executeUEFI(
+  private Optional<Process> executeUEFI(
     final WXMDryRun execute,
+    final LastExecutionMode mode,
     final WXMEvaluatedBootConfigurationUEFIType uefiConfiguration)
     throws IOException, InterruptedException
   {
-    this.executeCommands(execute, uefiConfiguration.commands());
+    return this.executeCommands(execute, mode, uefiConfiguration.commands());
   }
 
-  private void executeCommands(
+  private Optional<Process> executeCommands(
     final WXMDryRun execute,
+    final LastExecutionMode mode,
     final WXMEvaluatedBootCommands commands)
     throws IOException, InterruptedException
   {
     for (final var command : commands.configurationCommands()) {
-      switch (execute) {
-        case DRY_RUN: {
-          System.out.println(command.toString());
-          break;
-        }
-        case EXECUTE: {
-          this.executeAndWait(command);
-          break;
+      try (var ignored = this.timings.begin("command", command.toString())) {
+        switch (execute) {
+          case DRY_RUN: {
+            System.out.println(command.toString());
+            break;
+          }
+          case EXECUTE: {
+            this.executeAndWait(command);
+            break;
+          }
         }
       }
     }
 
     final var lastExecutionOpt = commands.lastExecution();
-    if (lastExecutionOpt.isPresent()) {
-      final var lastExecution = lastExecutionOpt.get();
-      switch (execute) {
-        case DRY_RUN:
-          System.out.printf("exec %s%n", lastExecution.toString());
-          return;
-        case EXECUTE:
-          this.executeAndReplace(lastExecution);
-          return;
+    if (lastExecutionOpt.isEmpty()) {
+      this.publishTimings(execute);
+      return Optional.empty();
+    }
+
+    final var lastExecution = lastExecutionOpt.get();
+    switch (mode) {
+      case REPLACE_CURRENT:
+        return this.executeLastReplacing(execute, lastExecution);
+      case START_CHILD:
+        return this.executeLastAsChild(execute, lastExecution);
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  private Optional<Process> executeLastReplacing(
+    final WXMDryRun execute,
+    final WXMCommandExecution lastExecution)
+    throws IOException
+  {
+    this.timings.mark("execve", lastExecution.toString());
+    this.recordFingerprint(execute);
+    this.publishTimings(execute);
+
+    switch (execute) {
+      case DRY_RUN:
+        System.out.printf("exec %s%n", lastExecution.toString());
+        return Optional.empty();
+      case EXECUTE:
+        this.executeAndReplace(lastExecution);
+        return Optional.empty();
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  private Optional<Process> executeLastAsChild(
+    final WXMDryRun execute,
+    final WXMCommandExecution lastExecution)
+    throws IOException
+  {
+    switch (execute) {
+      case DRY_RUN: {
+        this.timings.mark("spawn", lastExecution.toString());
+        this.recordFingerprint(execute);
+        this.publishTimings(execute);
+        System.out.printf("spawn %s%n", lastExecution.toString());
+        return Optional.empty();
+      }
+      case EXECUTE: {
+        final Process process;
+        try (var ignored = this.timings.begin("spawn", lastExecution.toString())) {
+          process = this.executeAsChild(lastExecution);
+        }
+        this.recordFingerprint(execute);
+        this.publishTimings(execute);
+        return Optional.of(process);
       }
     }
+
+    throw new UnreachableCodeException();
   }
 
-  private void executeGRUBBhyve(
+  /**
+   * Publish the boot timings. For dry runs, the timings are printed as
+   * comments. Otherwise, the timings are logged and written to the machine's
+   * runtime directory. This must happen before the current process is
+   * replaced, and a failure to write the timings must not prevent the
+   * machine from booting.
+   */
+
+  private void publishTimings(
+    final WXMDryRun execute)
+  {
+    switch (execute) {
+      case DRY_RUN: {
+        for (final var timing : this.timings.timings()) {
+          System.out.printf(
+            "# timing %s %s %s%n",
+            timing.phase(),
+            formatMillis(timing.duration()),
+            timing.detail()
+          );
+        }
+        System.out.printf(
+          "# timing total %s%n",
+          formatMillis(this.timings.total())
+        );
+        break;
+      }
+      case EXECUTE: {
+        final var json = this.timings.toJSON();
+        LOG.info("boot timings: {}", json);
+
+        final var file =
+          this.machineRuntimeDirectory()
+            .resolve(WXMBootTimings.TIMINGS_FILE_NAME);
+        try {
+          writeFileLinesAtomically(file, WITHOUT_COMMENT, List.of(json));
+        } catch (final IOException e) {
+          LOG.warn("unable to write boot timings to {}: ", file, e);
+        }
+        break;
+      }
+    }
+  }
+
+  /**
+   * Record the fingerprint of the configuration used to start the machine,
+   * so that configuration drift can be detected later. As with timings, a
+   * failure to record the fingerprint must not prevent the machine from
+   * booting.
+   */
+
+  private void recordFingerprint(
+    final WXMDryRun execute)
+  {
+    switch (execute) {
+      case DRY_RUN: {
+        System.out.printf(
+          "# fingerprint %s%n",
+          this.bootConfiguration.fingerprint()
+        );
+        break;
+      }
+      case EXECUTE: {
+        final var file =
+          WXMBootFingerprintRecords.fingerprintFile(
+            this.clientConfiguration,
+            this.machine
+          );
+        try {
+          WXMBootFingerprintRecords.write(file, this.bootConfiguration);
+        } catch (final IOException e) {
+          LOG.warn("unable to write boot fingerprint to {}: ", file, e);
+        }
+        break;
+      }
+    }
+  }
+
+  private Path machineRuntimeDirectory()
+  {
+    return WXMZFSFilesystems.resolve(
+      this.clientConfiguration.virtualMachineRuntimeFilesystem(),
+      this.machine.id().toString()
+    ).mountPoint();
+  }
+
+  private Optional<Process> executeGRUBBhyve(
     final WXMDryRun execute,
+    final LastExecutionMode mode,
     final WXMEvaluatedBootConfigurationGRUBBhyveType grubBhyveConfiguration)
     throws IOException, WXMException, InterruptedException
   {
-    final var machineFs =
-      WXMZFSFilesystems.resolve(
-        this.clientConfiguration.virtualMachineRuntimeFilesystem(),
-        this.machine.id().toString()
-      );
-
-    final var lockFile = machineFs.mountPoint().resolve("lock");
-    try (var ignored = WXMFileLock.acquire(lockFile)) {
-      writeGrubDeviceMap(execute, grubBhyveConfiguration);
-      writeGrubConfig(execute, grubBhyveConfiguration);
+    final var lockFile = this.machineRuntimeDirectory().resolve("lock");
+    final WXMFileLock lock;
+    try (var ignored = this.timings.begin("lock", lockFile.toString())) {
+      lock = WXMFileLock.acquire(lockFile);
+    }
+
+    try (lock) {
+      try (var ignored = this.timings.begin("grub-write")) {
+        writeGrubDeviceMap(execute, grubBhyveConfiguration);
+        writeGrubConfig(execute, grubBhyveConfiguration);
+      }
     }
 
-    this.executeCommands(execute, grubBhyveConfiguration.commands());
+    return this.executeCommands(
+      execute,
+      mode,
+      grubBhyveConfiguration.commands()
+    );
   }
 
   private void executeAndReplace(
@@ -309,6 +534,45 @@ public final class WXMBootConfigurationExecutor
     this.processes.processReplaceCurrent(processDescription);
   }
 
+  private Process executeAsChild(
+    final WXMCommandExecution command)
+    throws IOException
+  {
+    LOG.info("start: {}", command);
+
+    final var processDescription =
+      WXMProcessDescription.builder()
+        .setExecutable(command.executable())
+        .addAllArguments(command.arguments())
+        .build();
+
+    final var process = this.processes.processStart(processDescription);
+    this.drainOutput(process);
+    return process;
+  }
+
+  /**
+   * Copy the output of a child process to a file in the machine's runtime
+   * directory. Nothing else reads the output of the process, and a process
+   * that writes more than the pipe can hold (such as a guest with a console
+   * on standard output) would otherwise block indefinitely. The output is
+   * read on a platform thread that exits when the process closes its output.
+   */
+
+  private void drainOutput(
+    final Process process)
+  {
+    final var file =
+      this.machineRuntimeDirectory().resolve(OUTPUT_FILE_NAME);
+
+    final var thread =
+      new Thread(new OutputDrain(process.getInputStream(), file));
+    thread.setName(String.format(
+      "com.io7m.waxmill.boot.output[%s]", this.machine.id()));
+    thread.setDaemon(true);
+    thread.start();
+  }
+
   private void executeAndWait(
     final WXMCommandExecution command)
     throws IOException, InterruptedException
@@ -319,6 +583,7 @@ public final class WXMBootConfigurationExecutor
       WXMProcessDescription.builder()
         .setExecutable(command.executable())
         .addAllArguments(command.arguments())
+        .setTimeout(command.timeout())
         .build();
 
     try {
@@ -366,4 +631,47 @@ public final class WXMBootConfigurationExecutor
     WITH_COMMENT,
     WITHOUT_COMMENT
   }
+
+  enum LastExecutionMode
+  {
+    REPLACE_CURRENT,
+    START_CHILD
+  }
+
+  private static final class OutputDrain implements Runnable
+  {
+    private final InputStream input;
+    private final OutputStream output;
+    private final Path file;
+
+    OutputDrain(
+      final InputStream inInput,
+      final Path inFile)
+    {
+      this.input = Objects.requireNonNull(inInput, "input");
+      this.file = Objects.requireNonNull(inFile, "file");
+      this.output = open(inFile);
+    }
+
+    private static OutputStream open(
+      final Path file)
+    {
+      try {
+        return Files.newOutputStream(file, CREATE, TRUNCATE_EXISTING, WRITE);
+      } catch (final IOException e) {
+        LOG.warn("unable to open {}, discarding output: ", file, e);
+        return OutputStream.nullOutputStream();
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      try (var target = this.output; var source = this.input) {
+        source.transferTo(target);
+      } catch (final IOException e) {
+        LOG.debug("failed to copy output to {}: ", this.file, e);
+      }
+    }
+  }
 }
@@ -19,6 +19,8 @@ package com.io7m.waxmill.boot;
 import com.io7m.waxmill.exceptions.WXMException;
 import com.io7m.waxmill.machines.WXMDryRun;
 
+import java.util.Optional;
+
 /**
  * An executor of boot configurations.
  */
@@ -35,4 +37,20 @@ public interface WXMBootConfigurationExecutorType
 
   void execute(WXMDryRun dryRun)
     throws WXMException, InterruptedException;
+
+  /**
+   * Execute the boot configuration, but start the virtual machine as a
+   * child process of the current process instead of replacing the current
+   * process. The output of the process is consumed by the executor and
+   * written to the machine's runtime directory.
+   *
+   * @param dryRun Whether or not the boot process should be a dry run
+   *
+   * @return The virtual machine process, or nothing if this is a dry run
+   *
+   * @throws WXMException On errors
+   */
+
+  Optional<Process> start(WXMDryRun dryRun)
+    throws WXMException, InterruptedException;
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.boot;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMDriftResult;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMShortIDs;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystems;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+
+import static com.io7m.waxmill.client.api.WXMDriftStatus.DRIFTED;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.EVALUATION_FAILED;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.IN_SYNC;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.NOT_RECORDED;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.NOT_RUNNING;
+import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationType;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Functions to record the fingerprints of the boot configurations used to
+ * start virtual machines, and to compare them against fresh evaluations.
+ */
+
+public final class WXMBootFingerprintRecords
+{
+  /**
+   * The name of the file, within the machine's runtime directory, to which
+   * the boot configuration fingerprint is written when the machine starts.
+   */
+
+  public static final String FINGERPRINT_FILE_NAME =
+    "boot-fingerprint.properties";
+
+  /**
+   * The directory in which the vmm(4) driver creates a device for each
+   * running virtual machine.
+   */
+
+  public static final Path VMM_DEVICE_DIRECTORY =
+    Paths.get("/dev/vmm");
+
+  private static final String KEY_BOOT_CONFIGURATION =
+    "bootConfiguration";
+  private static final String KEY_FINGERPRINT =
+    "fingerprint";
+
+  private WXMBootFingerprintRecords()
+  {
+
+  }
+
+  /**
+   * Determine the file to which the fingerprint is recorded for the given
+   * machine.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   *
+   * @return The fingerprint file
+   */
+
+  public static Path fingerprintFile(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine)
+  {
+    Objects.requireNonNull(clientConfiguration, "clientConfiguration");
+    Objects.requireNonNull(machine, "machine");
+
+    return WXMZFSFilesystems.resolve(
+      clientConfiguration.virtualMachineRuntimeFilesystem(),
+      machine.id().toString()
+    ).mountPoint()
+      .resolve(FINGERPRINT_FILE_NAME);
+  }
+
+  /**
+   * Atomically write the fingerprint of the given evaluated configuration.
+   *
+   * @param file          The output file
+   * @param configuration The evaluated configuration
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void write(
+    final Path file,
+    final WXMEvaluatedBootConfigurationType configuration)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var properties = new Properties();
+    properties.setProperty(
+      KEY_BOOT_CONFIGURATION, configuration.name().value());
+    properties.setProperty(
+      KEY_FINGERPRINT, configuration.fingerprint());
+
+    final var fileTmp = file.getFileSystem().getPath(file + ".tmp");
+    try (var writer = Files.newBufferedWriter(fileTmp, UTF_8)) {
+      properties.store(writer, "Automatically generated. Do not edit.");
+    }
+    Files.move(fileTmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  /**
+   * Delete the fingerprint recorded for the given machine, if any. This is
+   * called when the machine stops, so that stale fingerprints are not
+   * reported for machines that are no longer running.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void delete(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine)
+    throws IOException
+  {
+    Files.deleteIfExists(fingerprintFile(clientConfiguration, machine));
+  }
+
+  /**
+   * Compare the fingerprint recorded for the given machine against that of
+   * a fresh evaluation of the boot configuration that was used to start it.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   *
+   * @return The drift result
+   *
+   * @throws WXMException On errors
+   * @see #drift(WXMClientConfiguration, WXMVirtualMachine, Path)
+   */
+
+  public static WXMDriftResult drift(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    return drift(clientConfiguration, machine, VMM_DEVICE_DIRECTORY);
+  }
+
+  /**
+   * Compare the fingerprint recorded for the given machine against that of
+   * a fresh evaluation of the boot configuration that was used to start it.
+   * A machine started with {@code vm-run} replaces the current process, and
+   * so nothing is present to delete the fingerprint when the machine stops.
+   * If the vmm(4) device directory exists but contains no device for the
+   * machine, the machine is not running and the recorded fingerprint is
+   * stale: it is deleted, and the machine is reported as not running.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   * @param vmmDirectory        The vmm(4) device directory
+   *
+   * @return The drift result
+   *
+   * @throws WXMException On errors
+   */
+
+  public static WXMDriftResult drift(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine,
+    final Path vmmDirectory)
+    throws WXMException
+  {
+    Objects.requireNonNull(vmmDirectory, "vmmDirectory");
+
+    final var file = fingerprintFile(clientConfiguration, machine);
+    final var result = WXMDriftResult.builder().setMachine(machine.id());
+
+    final Properties properties;
+    try {
+      properties = read(file);
+      if (!isRunning(vmmDirectory, machine)) {
+        Files.deleteIfExists(file);
+        return result.setStatus(NOT_RUNNING).build();
+      }
+    } catch (final NoSuchFileException e) {
+      return result.setStatus(NOT_RECORDED).build();
+    } catch (final IOException e) {
+      throw new WXMException(e);
+    }
+
+    return compare(clientConfiguration, machine, properties, result);
+  }
+
+  private static WXMDriftResult compare(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine,
+    final Properties properties,
+    final WXMDriftResult.Builder result)
+  {
+    final var recordedName =
+      properties.getProperty(KEY_BOOT_CONFIGURATION);
+    final var recordedFingerprint =
+      properties.getProperty(KEY_FINGERPRINT);
+
+    if (recordedName == null || recordedFingerprint == null) {
+      return result.setStatus(NOT_RECORDED).build();
+    }
+
+    result.setRecordedFingerprint(recordedFingerprint);
+
+    final WXMBootConfigurationName name;
+    try {
+      name = WXMBootConfigurationName.of(recordedName);
+    } catch (final IllegalArgumentException e) {
+      return result.setStatus(EVALUATION_FAILED)
+        .setFailure(e.getMessage())
+        .build();
+    }
+    result.setBootConfiguration(name);
+
+    final Optional<String> current =
+      evaluate(clientConfiguration, machine, name, result);
+    if (current.isEmpty()) {
+      return result.setStatus(EVALUATION_FAILED).build();
+    }
+
+    final var currentFingerprint = current.get();
+    result.setCurrentFingerprint(currentFingerprint);
+    if (Objects.equals(currentFingerprint, recordedFingerprint)) {
+      return result.setStatus(IN_SYNC).build();
+    }
+    return result.setStatus(DRIFTED).build();
+  }
+
+  private static Optional<String> evaluate(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine,
+    final WXMBootConfigurationName name,
+    final WXMDriftResult.Builder result)
+  {
+    try {
+      return Optional.of(
+        new WXMBootConfigurationEvaluator(clientConfiguration, machine, name)
+          .evaluate()
+          .fingerprint()
+      );
+    } catch (final WXMException e) {
+      result.setFailure(e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  private static boolean isRunning(
+    final Path vmmDirectory,
+    final WXMVirtualMachine machine)
+  {
+    if (!Files.isDirectory(vmmDirectory)) {
+      return true;
+    }
+    return Files.exists(
+      vmmDirectory.resolve(WXMShortIDs.encode(machine.id())));
+  }
+
+  private static Properties read(
+    final Path file)
+    throws IOException
+  {
+    final var properties = new Properties();
+    try (var reader = Files.newBufferedReader(file, UTF_8)) {
+      properties.load(reader);
+    }
+    return properties;
+  }
+}
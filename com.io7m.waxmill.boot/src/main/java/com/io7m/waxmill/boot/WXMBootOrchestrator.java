@@ -0,0 +1,466 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.boot;
+
+import com.io7m.waxmill.boot.internal.WXMBootMessages;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyListenerType;
+import com.io7m.waxmill.client.api.WXMRunManyResult;
+import com.io7m.waxmill.client.api.WXMRunResult;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationType;
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+
+/**
+ * An orchestrator that starts a set of virtual machines as supervised child
+ * processes of the current process.
+ */
+
+public final class WXMBootOrchestrator
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMBootOrchestrator.class);
+
+  private final WXMBootMessages messages;
+  private final WXMProcessesType processes;
+  private final WXMClientConfiguration clientConfiguration;
+  private final WXMRunManyConfiguration runConfiguration;
+  private final WXMRunManyListenerType listener;
+
+  private WXMBootOrchestrator(
+    final WXMBootMessages inMessages,
+    final WXMProcessesType inProcesses,
+    final WXMClientConfiguration inClientConfiguration,
+    final WXMRunManyConfiguration inRunConfiguration,
+    final WXMRunManyListenerType inListener)
+  {
+    this.messages =
+      Objects.requireNonNull(inMessages, "inMessages");
+    this.processes =
+      Objects.requireNonNull(inProcesses, "inProcesses");
+    this.clientConfiguration =
+      Objects.requireNonNull(inClientConfiguration, "inClientConfiguration");
+    this.runConfiguration =
+      Objects.requireNonNull(inRunConfiguration, "inRunConfiguration");
+    this.listener =
+      Objects.requireNonNull(inListener, "inListener");
+  }
+
+  /**
+   * Create a boot orchestrator.
+   *
+   * @param inProcesses           The process provider
+   * @param inClientConfiguration The client configuration
+   * @param inRunConfiguration    The set of machines to start
+   * @param inListener            A listener that receives start and exit events
+   *
+   * @return A boot orchestrator
+   */
+
+  public static WXMBootOrchestrator create(
+    final WXMProcessesType inProcesses,
+    final WXMClientConfiguration inClientConfiguration,
+    final WXMRunManyConfiguration inRunConfiguration,
+    final WXMRunManyListenerType inListener)
+  {
+    return new WXMBootOrchestrator(
+      WXMBootMessages.create(),
+      inProcesses,
+      inClientConfiguration,
+      inRunConfiguration,
+      inListener
+    );
+  }
+
+  /**
+   * Start all of the machines, and wait for every started machine to exit.
+   * Dry runs start machines one at a time so that the printed commands of
+   * different machines are not interleaved.
+   *
+   * @param dryRun Whether or not the operation is a dry run
+   *
+   * @return The per-machine results
+   *
+   * @throws WXMException         If the start-order dependencies contain a cycle
+   * @throws InterruptedException If the operation was interrupted
+   */
+
+  public WXMRunManyResult execute(
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    final var machines = this.runConfiguration.machines();
+    final var dependencies = this.dependencies();
+    final var order = this.startOrder(dependencies);
+
+    final var executor =
+      createExecutor(
+        dryRun == DRY_RUN ? 1 : this.runConfiguration.maxConcurrentStarts()
+      );
+
+    final var runs = new LinkedHashMap<UUID, MachineRun>(machines.size());
+    for (final var machine : machines) {
+      runs.put(machine.id(), new MachineRun(machine));
+    }
+
+    try {
+      final var timeOrigin = System.nanoTime();
+      for (final var id : order) {
+        final var run = runs.get(id);
+        final var waitingOn =
+          dependencies.get(id)
+            .stream()
+            .map(dependency -> runs.get(dependency).started)
+            .toArray(CompletableFuture[]::new);
+
+        run.started =
+          CompletableFuture.allOf(waitingOn)
+            .handleAsync((ignored, error) -> {
+              if (error != null) {
+                this.failDependency(run);
+                return null;
+              }
+              this.startOne(run, dryRun, timeOrigin);
+              return null;
+            }, executor);
+      }
+
+      for (final var run : runs.values()) {
+        waitFor(run.started);
+      }
+      this.supervise(runs.values());
+    } catch (final InterruptedException e) {
+      destroyAll(runs.values());
+      throw e;
+    } finally {
+      executor.shutdownNow();
+    }
+
+    final var results = WXMRunManyResult.builder();
+    for (final var run : runs.values()) {
+      results.addResults(run.toResult());
+    }
+    return results.build();
+  }
+
+  private static ExecutorService createExecutor(
+    final int threadLimit)
+  {
+    final var threadIndex = new AtomicInteger(0);
+    return Executors.newFixedThreadPool(threadLimit, runnable -> {
+      final var thread = new Thread(runnable);
+      thread.setName(String.format(
+        "com.io7m.waxmill.boot.orchestrator[%d]",
+        Integer.valueOf(threadIndex.incrementAndGet())));
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static void destroyAll(
+    final Collection<MachineRun> runs)
+  {
+    LOG.debug("interrupted: destroying machine processes");
+    for (final var run : runs) {
+      final var process = run.process;
+      if (process != null) {
+        process.destroy();
+      }
+    }
+  }
+
+  private void supervise(
+    final Collection<MachineRun> runs)
+    throws InterruptedException
+  {
+    final var exits = new ArrayList<CompletableFuture<?>>();
+    for (final var run : runs) {
+      final var process = run.process;
+      if (process != null) {
+        exits.add(process.onExit().thenAccept(p -> this.exited(run, p)));
+      }
+    }
+
+    for (final var exit : exits) {
+      waitFor(exit);
+    }
+  }
+
+  private static void waitFor(
+    final CompletableFuture<?> future)
+    throws InterruptedException
+  {
+    try {
+      future.get();
+    } catch (final ExecutionException e) {
+      LOG.debug("task failed: ", e);
+    }
+  }
+
+  private void exited(
+    final MachineRun run,
+    final Process process)
+  {
+    final var exitCode = process.exitValue();
+    run.exitCode = Integer.valueOf(exitCode);
+    LOG.debug("machine {} exited with code {}", run.machine.id(), exitCode);
+
+    try {
+      WXMBootFingerprintRecords.delete(this.clientConfiguration, run.machine);
+    } catch (final IOException e) {
+      LOG.warn("unable to delete boot fingerprint: ", e);
+    }
+    this.listener.onMachineExited(run.machine.id(), exitCode);
+  }
+
+  private void failDependency(
+    final MachineRun run)
+  {
+    final var message =
+      this.messages.format(
+        "bootOrchestrationDependencyFailed",
+        run.machine.id());
+    this.fail(run, message);
+    throw new CompletionException(new WXMException(message));
+  }
+
+  private void fail(
+    final MachineRun run,
+    final String message)
+  {
+    run.failure = message;
+    LOG.error("machine {} failed to start: {}", run.machine.id(), message);
+    this.listener.onMachineFailed(run.machine.id(), message);
+  }
+
+  private void startOne(
+    final MachineRun run,
+    final WXMDryRun dryRun,
+    final long timeOrigin)
+  {
+    final var machine = run.machine;
+    final var timeStart = System.nanoTime();
+    run.waitTime = Duration.ofNanos(timeStart - timeOrigin);
+
+    try {
+      final var timings = WXMBootTimings.create(machine.id());
+
+      final WXMEvaluatedBootConfigurationType evaluated;
+      try (var ignored = timings.begin("evaluation")) {
+        evaluated =
+          new WXMBootConfigurationEvaluator(
+            this.clientConfiguration,
+            machine,
+            this.runConfiguration.bootConfigurationName()
+          ).evaluate();
+      }
+
+      final Optional<Process> process =
+        WXMBootConfigurationExecutor.create(
+          this.processes,
+          this.clientConfiguration,
+          machine,
+          evaluated,
+          timings
+        ).start(dryRun);
+
+      run.process = process.orElse(null);
+      run.startLatency = Duration.ofNanos(System.nanoTime() - timeStart);
+      final var id = machine.id();
+      LOG.info(
+        "machine {} started in {} (waited {})",
+        id,
+        run.startLatency,
+        run.waitTime
+      );
+      this.listener.onMachineStarted(
+        id,
+        run.waitTime,
+        run.startLatency
+      );
+    } catch (final WXMException e) {
+      run.startLatency = Duration.ofNanos(System.nanoTime() - timeStart);
+      this.fail(run, e.getMessage());
+      throw new CompletionException(e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      run.startLatency = Duration.ofNanos(System.nanoTime() - timeStart);
+      this.fail(run, e.getMessage());
+      throw new CompletionException(e);
+    } catch (final RuntimeException e) {
+      run.startLatency = Duration.ofNanos(System.nanoTime() - timeStart);
+      this.fail(run, e.toString());
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * Determine the set of machines upon which each machine depends.
+   */
+
+  private Map<UUID, Set<UUID>> dependencies()
+  {
+    final var machines = this.runConfiguration.machines();
+    final var dependencies = new HashMap<UUID, Set<UUID>>(machines.size());
+    for (final var machine : machines) {
+      dependencies.put(machine.id(), new LinkedHashSet<>());
+    }
+
+    for (final var dependency : this.runConfiguration.startDependencies()) {
+      for (final var waiting : machines) {
+        if (!waiting.tags().contains(dependency.tag())) {
+          continue;
+        }
+        for (final var first : machines) {
+          if (Objects.equals(first.id(), waiting.id())) {
+            continue;
+          }
+          if (first.tags().contains(dependency.after())) {
+            dependencies.get(waiting.id()).add(first.id());
+          }
+        }
+      }
+    }
+    return dependencies;
+  }
+
+  /**
+   * Produce an order in which machines can be started such that every
+   * machine appears after all of its dependencies. Machines without
+   * dependencies retain their original relative order.
+   */
+
+  private List<UUID> startOrder(
+    final Map<UUID, Set<UUID>> dependencies)
+    throws WXMException
+  {
+    final var machines = this.runConfiguration.machines();
+    final var remaining = new HashMap<UUID, Integer>(machines.size());
+    final var dependents = new HashMap<UUID, List<UUID>>(machines.size());
+    final var ready = new ArrayDeque<UUID>();
+
+    for (final var machine : machines) {
+      final var id = machine.id();
+      final var count = dependencies.get(id).size();
+      remaining.put(id, Integer.valueOf(count));
+      if (count == 0) {
+        ready.add(id);
+      }
+      for (final var dependency : dependencies.get(id)) {
+        dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(id);
+      }
+    }
+
+    final var order = new ArrayList<UUID>(machines.size());
+    while (!ready.isEmpty()) {
+      final var id = ready.remove();
+      order.add(id);
+      for (final var dependent : dependents.getOrDefault(id, List.of())) {
+        final var count = remaining.get(dependent).intValue() - 1;
+        remaining.put(dependent, Integer.valueOf(count));
+        if (count == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+
+    if (order.size() != machines.size()) {
+      final var cyclic = new ArrayList<UUID>();
+      for (final var machine : machines) {
+        if (!order.contains(machine.id())) {
+          cyclic.add(machine.id());
+        }
+      }
+      throw new WXMException(
+        this.messages.format("bootOrchestrationCycle", cyclic)
+      );
+    }
+    return order;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMBootOrchestrator 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+
+  private static final class MachineRun
+  {
+    private final WXMVirtualMachine machine;
+    private volatile CompletableFuture<Void> started;
+    private volatile Duration waitTime;
+    private volatile Duration startLatency;
+    private volatile Process process;
+    private volatile String failure;
+    private volatile Integer exitCode;
+
+    MachineRun(
+      final WXMVirtualMachine inMachine)
+    {
+      this.machine =
+        Objects.requireNonNull(inMachine, "machine");
+      this.started =
+        CompletableFuture.completedFuture(null);
+      this.waitTime = Duration.ZERO;
+      this.startLatency = Duration.ZERO;
+    }
+
+    WXMRunResult toResult()
+    {
+      return WXMRunResult.builder()
+        .setMachine(this.machine.id())
+        .setWaitTime(this.waitTime)
+        .setStartLatency(this.startLatency)
+        .setExitCode(Optional.ofNullable(this.exitCode))
+        .setFailure(Optional.ofNullable(this.failure))
+        .build();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.boot;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+
+/**
+ * The timing of a single named phase of the boot process. Times are taken
+ * from the monotonic {@link System#nanoTime()} clock.
+ */
+
+@Value.Immutable
+@ImmutablesStyleType
+public interface WXMBootTimingType
+{
+  /**
+   * @return The phase name
+   */
+
+  @Value.Parameter
+  String phase();
+
+  /**
+   * @return Extra detail for the phase (such as a command line), or the empty string
+   */
+
+  @Value.Parameter
+  String detail();
+
+  /**
+   * @return The start time of the phase, as returned by {@link System#nanoTime()}
+   */
+
+  @Value.Parameter
+  long startNanos();
+
+  /**
+   * @return The duration of the phase
+   */
+
+  @Value.Parameter
+  Duration duration();
+
+  /**
+   * @return The end time of the phase, as returned by {@link System#nanoTime()}
+   */
+
+  @Value.Derived
+  @Value.Auxiliary
+  default long endNanos()
+  {
+    return this.startNanos() + this.duration().toNanos();
+  }
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    Preconditions.checkPreconditionV(
+      !this.duration().isNegative(),
+      "Duration %s must be non-negative",
+      this.duration()
+    );
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.boot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A recorder of boot phase timings for a single virtual machine. Phases
+ * are recorded in the order in which they complete.
+ */
+
+public final class WXMBootTimings
+{
+  /**
+   * The name of the file, within the machine's runtime directory, to which
+   * boot timings are written.
+   */
+
+  public static final String TIMINGS_FILE_NAME = "boot-timings.json";
+
+  private final UUID machine;
+  private final long originNanos;
+  private final List<WXMBootTiming> timings;
+
+  private WXMBootTimings(
+    final UUID inMachine,
+    final long inOriginNanos)
+  {
+    this.machine =
+      Objects.requireNonNull(inMachine, "machine");
+    this.originNanos = inOriginNanos;
+    this.timings = new ArrayList<>();
+  }
+
+  /**
+   * Create a new timing recorder. The origin of the recorder is the current
+   * time.
+   *
+   * @param machine The virtual machine
+   *
+   * @return A new recorder
+   */
+
+  public static WXMBootTimings create(
+    final UUID machine)
+  {
+    return new WXMBootTimings(machine, System.nanoTime());
+  }
+
+  /**
+   * @return The virtual machine
+   */
+
+  public UUID machine()
+  {
+    return this.machine;
+  }
+
+  /**
+   * Create a phase timing from a pair of times.
+   *
+   * @param phase      The phase name
+   * @param detail     Extra detail for the phase (such as a command line)
+   * @param startNanos The start time of the phase, as returned by {@link System#nanoTime()}
+   * @param endNanos   The end time of the phase, as returned by {@link System#nanoTime()}
+   *
+   * @return A phase timing
+   */
+
+  public static WXMBootTiming between(
+    final String phase,
+    final String detail,
+    final long startNanos,
+    final long endNanos)
+  {
+    return WXMBootTiming.of(
+      phase,
+      detail,
+      startNanos,
+      Duration.ofNanos(Math.max(0L, endNanos - startNanos))
+    );
+  }
+
+  /**
+   * Record a phase that was timed elsewhere (perhaps before the recorder
+   * was created).
+   *
+   * @param timing The phase timing
+   */
+
+  public void add(
+    final WXMBootTiming timing)
+  {
+    this.timings.add(Objects.requireNonNull(timing, "timing"));
+  }
+
+  /**
+   * Begin a phase. The phase is recorded when the returned span is closed.
+   *
+   * @param phase The phase name
+   *
+   * @return A span that must be closed when the phase ends
+   */
+
+  public Span begin(
+    final String phase)
+  {
+    return this.begin(phase, "");
+  }
+
+  /**
+   * Begin a phase. The phase is recorded when the returned span is closed.
+   *
+   * @param phase  The phase name
+   * @param detail Extra detail for the phase
+   *
+   * @return A span that must be closed when the phase ends
+   */
+
+  public Span begin(
+    final String phase,
+    final String detail)
+  {
+    return new Span(this, phase, detail, System.nanoTime());
+  }
+
+  /**
+   * Record a zero-length phase at the current time. This is used for
+   * events, such as process replacement, whose end cannot be observed.
+   *
+   * @param phase  The phase name
+   * @param detail Extra detail for the phase
+   */
+
+  public void mark(
+    final String phase,
+    final String detail)
+  {
+    final var time = System.nanoTime();
+    this.add(between(phase, detail, time, time));
+  }
+
+  /**
+   * @return The recorded timings, in the order in which they were recorded
+   */
+
+  public List<WXMBootTiming> timings()
+  {
+    return List.copyOf(this.timings);
+  }
+
+  /**
+   * Determine the offset of the start of the given timing relative to the
+   * origin of this recorder. Phases that were timed before the recorder was
+   * created have negative offsets.
+   *
+   * @param timing The timing
+   *
+   * @return The offset of the timing
+   */
+
+  public Duration offsetOf(
+    final WXMBootTiming timing)
+  {
+    Objects.requireNonNull(timing, "timing");
+    return Duration.ofNanos(timing.startNanos() - this.originNanos);
+  }
+
+  /**
+   * @return The total time taken by all recorded phases
+   */
+
+  public Duration total()
+  {
+    var total = Duration.ZERO;
+    for (final var timing : this.timings) {
+      total = total.plus(timing.duration());
+    }
+    return total;
+  }
+
+  /**
+   * Serialize the timings as a single-line JSON object.
+   *
+   * @return The timings as JSON
+   */
+
+  public String toJSON()
+  {
+    final var text = new StringBuilder(128 + this.timings.size() * 96);
+    text.append("{\"machine\":\"");
+    text.append(this.machine);
+    text.append("\",\"totalNanos\":");
+    text.append(this.total().toNanos());
+    text.append(",\"phases\":[");
+
+    for (int index = 0; index < this.timings.size(); ++index) {
+      final var timing = this.timings.get(index);
+      if (index > 0) {
+        text.append(',');
+      }
+      text.append("{\"phase\":");
+      appendJSONString(text, timing.phase());
+      text.append(",\"detail\":");
+      appendJSONString(text, timing.detail());
+      text.append(",\"offsetNanos\":");
+      text.append(this.offsetOf(timing).toNanos());
+      text.append(",\"durationNanos\":");
+      text.append(timing.duration().toNanos());
+      text.append('}');
+    }
+
+    text.append("]}");
+    return text.toString();
+  }
+
+  private static void appendJSONString(
+    final StringBuilder text,
+    final String value)
+  {
+    text.append('"');
+    for (int index = 0; index < value.length(); ++index) {
+      final char c = value.charAt(index);
+      switch (c) {
+        case '"':
+          text.append("\\\"");
+          break;
+        case '\\':
+          text.append("\\\\");
+          break;
+        case '\n':
+          text.append("\\n");
+          break;
+        case '\r':
+          text.append("\\r");
+          break;
+        case '\t':
+          text.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            text.append(String.format("\\u%04x", Integer.valueOf(c)));
+          } else {
+            text.append(c);
+          }
+          break;
+      }
+    }
+    text.append('"');
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMBootTimings 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+
+  /**
+   * A phase that is in progress.
+   */
+
+  public static final class Span implements AutoCloseable
+  {
+    private final WXMBootTimings owner;
+    private final String phase;
+    private final String detail;
+    private final long startNanos;
+    private boolean closed;
+
+    private Span(
+      final WXMBootTimings inOwner,
+      final String inPhase,
+      final String inDetail,
+      final long inStartNanos)
+    {
+      this.owner =
+        Objects.requireNonNull(inOwner, "owner");
+      this.phase =
+        Objects.requireNonNull(inPhase, "phase");
+      this.detail =
+        Objects.requireNonNull(inDetail, "detail");
+      this.startNanos = inStartNanos;
+    }
+
+    @Override
+    public void close()
+    {
+      if (!this.closed) {
+        this.closed = true;
+        this.owner.add(
+          between(
+            this.phase,
+            this.detail,
+            this.startNanos,
+            System.nanoTime())
+        );
+      }
+    }
+  }
+}
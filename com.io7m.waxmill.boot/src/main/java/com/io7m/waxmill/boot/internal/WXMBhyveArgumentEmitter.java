@@ -0,0 +1,304 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.boot.internal;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.junreachable.UnreachableCodeException;
+import com.io7m.waxmill.machines.WXMCommandExecution;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.Objects;
+
+/**
+ * An emitter of bhyve command-line arguments. Compound arguments (such as
+ * the comma-separated values passed to {@code -s}) are accumulated in a
+ * single buffer that is reused for every argument written to the same
+ * command.
+ */
+
+public final class WXMBhyveArgumentEmitter
+{
+  private final WXMCommandExecution.Builder command;
+  private final StringBuilder buffer;
+  private boolean inProgress;
+
+  private WXMBhyveArgumentEmitter(
+    final WXMCommandExecution.Builder inCommand)
+  {
+    this.command =
+      Objects.requireNonNull(inCommand, "command");
+    this.buffer =
+      new StringBuilder(128);
+  }
+
+  /**
+   * Create an emitter that writes arguments to the given command.
+   *
+   * @param command The command builder
+   *
+   * @return A new emitter
+   */
+
+  public static WXMBhyveArgumentEmitter create(
+    final WXMCommandExecution.Builder command)
+  {
+    return new WXMBhyveArgumentEmitter(command);
+  }
+
+  /**
+   * Write a complete argument.
+   *
+   * @param argument The argument
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter argument(
+    final String argument)
+  {
+    Objects.requireNonNull(argument, "argument");
+    this.checkNotInProgress();
+    this.command.addArguments(argument);
+    return this;
+  }
+
+  /**
+   * Write an option followed by the start of a compound argument. The
+   * compound argument is completed with {@link #end()}.
+   *
+   * @param option The option (such as {@code -s})
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter begin(
+    final String option)
+  {
+    this.argument(option);
+    this.buffer.setLength(0);
+    this.inProgress = true;
+    return this;
+  }
+
+  /**
+   * Append text to the current compound argument.
+   *
+   * @param text The text
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter append(
+    final CharSequence text)
+  {
+    this.checkInProgress();
+    this.buffer.append(text);
+    return this;
+  }
+
+  /**
+   * Append an integer to the current compound argument.
+   *
+   * @param value The value
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter append(
+    final long value)
+  {
+    this.checkInProgress();
+    this.buffer.append(value);
+    return this;
+  }
+
+  /**
+   * Append a character to the current compound argument.
+   *
+   * @param value The value
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter append(
+    final char value)
+  {
+    this.checkInProgress();
+    this.buffer.append(value);
+    return this;
+  }
+
+  /**
+   * Append a comma-separated field to the current compound argument. The
+   * separator is omitted if the field is the first in the argument.
+   *
+   * @param text The field text
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter field(
+    final CharSequence text)
+  {
+    return this.separator().append(text);
+  }
+
+  /**
+   * Append a comma-separated {@code key=value} field to the current compound
+   * argument.
+   *
+   * @param key   The key
+   * @param value The value
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter field(
+    final String key,
+    final long value)
+  {
+    return this.separator()
+      .append(key)
+      .append('=')
+      .append(value);
+  }
+
+  /**
+   * Append a comma-separated {@code key=value} field to the current compound
+   * argument.
+   *
+   * @param key   The key
+   * @param value The value
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter field(
+    final String key,
+    final CharSequence value)
+  {
+    return this.separator()
+      .append(key)
+      .append('=')
+      .append(value);
+  }
+
+  /**
+   * Start a new comma-separated field in the current compound argument.
+   * The separator is omitted if the field is the first in the argument.
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter separator()
+  {
+    this.checkInProgress();
+    if (this.buffer.length() > 0) {
+      this.buffer.append(',');
+    }
+    return this;
+  }
+
+  /**
+   * Append a device slot, in {@code bus:slot:function} form, as a field of
+   * the current compound argument.
+   *
+   * @param slot The device slot
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter slot(
+    final WXMDeviceSlot slot)
+  {
+    return this.separator()
+      .append(slot.busID())
+      .append(':')
+      .append(slot.slotID())
+      .append(':')
+      .append(slot.functionID());
+  }
+
+  /**
+   * Append a socket address to the current compound argument. IPv6
+   * addresses are enclosed in brackets.
+   *
+   * @param address The address
+   * @param port    The port
+   *
+   * @return this
+   */
+
+  public WXMBhyveArgumentEmitter socketAddress(
+    final InetAddress address,
+    final int port)
+  {
+    if (address instanceof Inet4Address) {
+      return this.append(address.getHostAddress())
+        .append(':')
+        .append(port);
+    }
+    if (address instanceof Inet6Address) {
+      return this.append('[')
+        .append(address.getHostAddress())
+        .append("]:")
+        .append(port);
+    }
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Complete the current compound argument and write it to the command.
+   */
+
+  public void end()
+  {
+    this.checkInProgress();
+    this.command.addArguments(this.buffer.toString());
+    this.buffer.setLength(0);
+    this.inProgress = false;
+  }
+
+  private void checkInProgress()
+  {
+    Preconditions.checkPrecondition(
+      this.inProgress,
+      "A compound argument must be in progress"
+    );
+  }
+
+  private void checkNotInProgress()
+  {
+    Preconditions.checkPrecondition(
+      !this.inProgress,
+      "A compound argument must not be in progress"
+    );
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMBhyveArgumentEmitter 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
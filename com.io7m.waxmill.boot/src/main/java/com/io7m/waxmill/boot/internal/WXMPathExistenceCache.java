@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.boot.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A cache of path existence checks. Paths that share a parent directory are
+ * resolved with a single listing of that directory rather than with one
+ * stat per path. Parents that contain only a single path of interest are
+ * checked with a plain stat, as that is cheaper than a listing. Note that
+ * a dangling symbolic link is considered to exist when its parent directory
+ * has been listed.
+ */
+
+public final class WXMPathExistenceCache
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMPathExistenceCache.class);
+
+  private final Map<Path, Set<Path>> listings;
+  private final Map<Path, Boolean> results;
+
+  private WXMPathExistenceCache()
+  {
+    this.listings = new HashMap<>();
+    this.results = new HashMap<>();
+  }
+
+  /**
+   * Create a cache that is primed for the given set of paths.
+   *
+   * @param paths The paths that will be checked
+   *
+   * @return A path existence cache
+   */
+
+  public static WXMPathExistenceCache create(
+    final Collection<Path> paths)
+  {
+    Objects.requireNonNull(paths, "paths");
+
+    final var byParent = new HashMap<Path, Set<Path>>();
+    for (final var path : paths) {
+      final var absolute = path.toAbsolutePath();
+      final var parent = absolute.getParent();
+      if (parent != null) {
+        byParent.computeIfAbsent(parent, p -> new HashSet<>()).add(absolute);
+      }
+    }
+
+    final var cache = new WXMPathExistenceCache();
+    for (final var entry : byParent.entrySet()) {
+      if (entry.getValue().size() > 1) {
+        cache.list(entry.getKey());
+      }
+    }
+    return cache;
+  }
+
+  private void list(
+    final Path parent)
+  {
+    final var names = new HashSet<Path>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(parent)) {
+      for (final var child : stream) {
+        names.add(child.getFileName());
+      }
+      this.listings.put(parent, names);
+    } catch (final NoSuchFileException | NotDirectoryException e) {
+      this.listings.put(parent, Set.of());
+    } catch (final IOException e) {
+      LOG.debug("unable to list {}: ", parent, e);
+    }
+  }
+
+  /**
+   * Determine whether a path exists.
+   *
+   * @param path The path
+   *
+   * @return {@code true} if the path exists
+   */
+
+  public boolean exists(
+    final Path path)
+  {
+    Objects.requireNonNull(path, "path");
+
+    final var absolute = path.toAbsolutePath();
+    final var cached = this.results.get(absolute);
+    if (cached != null) {
+      return cached.booleanValue();
+    }
+
+    final boolean exists;
+    final var parent = absolute.getParent();
+    final var listing = parent == null ? null : this.listings.get(parent);
+    if (listing != null) {
+      exists = listing.contains(absolute.getFileName());
+    } else {
+      exists = Files.exists(absolute);
+    }
+
+    this.results.put(absolute, Boolean.valueOf(exists));
+    return exists;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMPathExistenceCache 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
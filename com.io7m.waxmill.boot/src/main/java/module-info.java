@@ -22,6 +22,8 @@ module com.io7m.waxmill.boot
 {
   requires static org.osgi.annotation.versioning;
   requires static org.osgi.annotation.bundle;
+  requires static com.io7m.immutables.style;
+  requires static org.immutables.value;
 
   requires com.io7m.jaffirm.core;
   requires com.io7m.junreachable.core;
@@ -23,6 +23,7 @@ import com.io7m.waxmill.machines.WXMZFSFilesystems;
 import org.immutables.value.Value;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -127,6 +128,45 @@ public interface WXMClientConfigurationType
       .getPath("/usr/bin/cu");
   }
 
+  /**
+   * The maximum time that a single execution of the "zfs" command may run
+   * before it is terminated.
+   *
+   * @return The "zfs" timeout
+   */
+
+  @Value.Default
+  default Duration zfsTimeout()
+  {
+    return Duration.ofMinutes(5L);
+  }
+
+  /**
+   * The maximum time that a single execution of the "ifconfig" command may
+   * run before it is terminated.
+   *
+   * @return The "ifconfig" timeout
+   */
+
+  @Value.Default
+  default Duration ifconfigTimeout()
+  {
+    return Duration.ofSeconds(30L);
+  }
+
+  /**
+   * The maximum time that a single execution of the "grub-bhyve" command may
+   * run before it is terminated.
+   *
+   * @return The "grub-bhyve" timeout
+   */
+
+  @Value.Default
+  default Duration grubBhyveTimeout()
+  {
+    return Duration.ofMinutes(5L);
+  }
+
   /**
    * Derive a runtime directory for a specific virtual machine.
    *
@@ -175,6 +215,24 @@ public interface WXMClientConfigurationType
       path -> "ifconfig executable path must be absolute"
     );
 
+    Preconditions.checkPrecondition(
+      this.zfsTimeout(),
+      Duration::isPositive,
+      t -> "zfs timeout must be positive"
+    );
+
+    Preconditions.checkPrecondition(
+      this.ifconfigTimeout(),
+      Duration::isPositive,
+      t -> "ifconfig timeout must be positive"
+    );
+
+    Preconditions.checkPrecondition(
+      this.grubBhyveTimeout(),
+      Duration::isPositive,
+      t -> "grub-bhyve timeout must be positive"
+    );
+
     Preconditions.checkPrecondition(
       this.virtualMachineConfigurationDirectory(),
       Path::isAbsolute,
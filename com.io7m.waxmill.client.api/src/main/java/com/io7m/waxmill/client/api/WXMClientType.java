@@ -17,12 +17,16 @@
 package com.io7m.waxmill.client.api;
 
 import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
 import com.io7m.waxmill.machines.WXMBootConfigurationName;
 import com.io7m.waxmill.machines.WXMDeviceType;
 import com.io7m.waxmill.machines.WXMDryRun;
 import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMVirtualMachineSet;
 import com.io7m.waxmill.machines.WXMVirtualMachineSets;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchType;
 import com.io7m.waxmill.process.api.WXMProcessDescription;
 
 import java.util.Optional;
@@ -89,12 +93,62 @@ public interface WXMClientType extends AutoCloseable
     WXMVirtualMachine machine)
     throws WXMException;
 
+  /**
+   * Update a set of existing virtual machines. The machines are written in
+   * parallel, and a failure to write one machine does not prevent the
+   * others from being written.
+   *
+   * @param machines The virtual machines
+   *
+   * @throws WXMException On errors
+   */
+
+  void vmUpdateAll(
+    WXMVirtualMachineSet machines)
+    throws WXMException;
+
+  /**
+   * Begin an edit session for an existing virtual machine. Any number of
+   * changes may be made within the session, and the machine is validated
+   * and written once when the session is committed.
+   *
+   * @param id The virtual machine ID
+   *
+   * @return An edit session
+   *
+   * @throws WXMExceptionNonexistent If the virtual machine does not exist
+   * @throws WXMException            On errors
+   */
+
+  WXMVirtualMachineEditType vmEdit(
+    UUID id)
+    throws WXMException;
+
   /**
    * @return The configuration used to open the client
    */
 
   WXMClientConfiguration configuration();
 
+  /**
+   * Watch the set of virtual machines for changes. The listener receives an
+   * event each time a virtual machine is defined, updated, or deleted after
+   * this method returns. Changes to the same machine that occur in quick
+   * succession may be coalesced into a single event.
+   *
+   * @param configuration The watch configuration
+   * @param listener      The listener that will receive events
+   *
+   * @return A watch that must be closed to stop watching
+   *
+   * @throws WXMException On errors
+   */
+
+  WXMVirtualMachineWatchType vmWatch(
+    WXMVirtualMachineWatchConfiguration configuration,
+    WXMVirtualMachineWatchListenerType listener)
+    throws WXMException;
+
   /**
    * Define a set of new virtual machines.
    *
@@ -141,6 +195,69 @@ public interface WXMClientType extends AutoCloseable
     WXMDryRun dryRun)
     throws WXMException, InterruptedException;
 
+  /**
+   * Look up and start a virtual machine. If the startup succeeds, this
+   * method never returns and the current process is replaced with that of
+   * the running virtual machine. The time taken to look up the machine is
+   * recorded as part of the boot.
+   *
+   * @param id                    The virtual machine ID
+   * @param bootConfigurationName The boot configuration used
+   * @param dryRun                Whether or not the operation is a dry run
+   *
+   * @throws WXMException         On errors
+   * @throws InterruptedException If the operation was interrupted
+   */
+
+  default void vmRun(
+    final UUID id,
+    final WXMBootConfigurationName bootConfigurationName,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    this.vmRun(this.vmFind(id), bootConfigurationName, dryRun);
+  }
+
+  /**
+   * Start a set of virtual machines as supervised child processes of the
+   * current process. Machines are started concurrently, subject to the
+   * configured concurrency limit and start-order dependencies. The method
+   * returns once every machine that was started has exited. If the current
+   * thread is interrupted, all running machine processes are destroyed.
+   *
+   * @param configuration The set of machines to start
+   * @param listener      A listener that receives start and exit events
+   * @param dryRun        Whether or not the operation is a dry run
+   *
+   * @return The per-machine results
+   *
+   * @throws WXMException         On errors that prevent any machine starting
+   * @throws InterruptedException If the operation was interrupted
+   */
+
+  WXMRunManyResult vmRunMany(
+    WXMRunManyConfiguration configuration,
+    WXMRunManyListenerType listener,
+    WXMDryRun dryRun)
+    throws WXMException, InterruptedException;
+
+  /**
+   * Compare the boot configuration fingerprint recorded when a virtual
+   * machine was last started against the fingerprint of a fresh evaluation
+   * of the same boot configuration. A machine that has drifted must be
+   * restarted for configuration changes to take effect.
+   *
+   * @param machine The virtual machine
+   *
+   * @return The drift result
+   *
+   * @throws WXMException On errors
+   */
+
+  WXMDriftResult vmDrift(
+    WXMVirtualMachine machine)
+    throws WXMException;
+
   /**
    * Delete the configuration for a virtual machine.
    *
@@ -180,7 +297,8 @@ public interface WXMClientType extends AutoCloseable
     WXMVirtualMachine machine);
 
   /**
-   * Realize a virtual machine.
+   * Realize a virtual machine. Nothing is done if the machine has already
+   * been realized with its current definition.
    *
    * @param machine The virtual machine
    * @param dryRun  Whether or not the operation is a dry run
@@ -193,6 +311,75 @@ public interface WXMClientType extends AutoCloseable
     WXMDryRun dryRun)
     throws WXMException;
 
+  /**
+   * Realize a virtual machine, executing up to {@code maxConcurrentSteps}
+   * realization steps concurrently. Steps that depend on other steps (such
+   * as the creation of ZFS volumes within the machine's runtime filesystem)
+   * wait for those steps to complete.
+   *
+   * Nothing is done if the machine has already been realized with its
+   * current definition.
+   *
+   * @param machine            The virtual machine
+   * @param dryRun             Whether or not the operation is a dry run
+   * @param maxConcurrentSteps The maximum number of concurrent steps
+   *
+   * @throws WXMException On errors
+   */
+
+  default void vmRealize(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun,
+    final int maxConcurrentSteps)
+    throws WXMException
+  {
+    this.vmRealize(machine, dryRun, maxConcurrentSteps, false);
+  }
+
+  /**
+   * Realize a virtual machine, executing up to {@code maxConcurrentSteps}
+   * realization steps concurrently. A successful realization records a
+   * marker in the machine's runtime filesystem; if the marker shows that
+   * the machine has already been realized with its current definition,
+   * nothing is done unless {@code force} is {@code true}.
+   *
+   * @param machine            The virtual machine
+   * @param dryRun             Whether or not the operation is a dry run
+   * @param maxConcurrentSteps The maximum number of concurrent steps
+   * @param force              {@code true} if the machine should be
+   *                           realized regardless of the recorded marker
+   *
+   * @throws WXMException On errors
+   */
+
+  void vmRealize(
+    WXMVirtualMachine machine,
+    WXMDryRun dryRun,
+    int maxConcurrentSteps,
+    boolean force)
+    throws WXMException;
+
+  /**
+   * Realize a set of virtual machines. The realization steps of all of the
+   * machines are executed concurrently, subject to a single concurrency
+   * limit, and steps that perform identical work for different machines
+   * are executed once. A failure to realize one machine does not prevent
+   * the realization of the others.
+   *
+   * @param configuration The set of machines to realize
+   * @param dryRun        Whether or not the operation is a dry run
+   *
+   * @return The per-machine results
+   *
+   * @throws WXMException         On errors that prevent any machine being realized
+   * @throws InterruptedException If the operation was interrupted
+   */
+
+  WXMRealizeManyResult vmRealizeMany(
+    WXMRealizeManyConfiguration configuration,
+    WXMDryRun dryRun)
+    throws WXMException, InterruptedException;
+
   /**
    * Kill a running virtual machine.
    *
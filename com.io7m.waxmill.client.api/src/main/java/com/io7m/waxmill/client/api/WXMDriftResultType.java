@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The result of comparing the boot configuration fingerprint recorded for
+ * a virtual machine against that of a fresh evaluation.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMDriftResultType
+{
+  /**
+   * @return The ID of the virtual machine
+   */
+
+  UUID machine();
+
+  /**
+   * @return The drift status
+   */
+
+  WXMDriftStatus status();
+
+  /**
+   * @return The boot configuration that was used to start the machine, if
+   * a fingerprint was recorded
+   */
+
+  Optional<WXMBootConfigurationName> bootConfiguration();
+
+  /**
+   * @return The fingerprint recorded when the machine was started
+   */
+
+  Optional<String> recordedFingerprint();
+
+  /**
+   * @return The fingerprint of a fresh evaluation of the boot configuration
+   */
+
+  Optional<String> currentFingerprint();
+
+  /**
+   * @return The reason the boot configuration could not be evaluated, if
+   * it could not be evaluated
+   */
+
+  Optional<String> failure();
+}
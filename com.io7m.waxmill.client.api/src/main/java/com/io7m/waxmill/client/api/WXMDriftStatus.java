@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.api;
+
+/**
+ * The drift status of a virtual machine.
+ */
+
+public enum WXMDriftStatus
+{
+  /**
+   * The fingerprint recorded when the machine was last started matches
+   * that of a fresh evaluation of its boot configuration.
+   */
+
+  IN_SYNC("in-sync"),
+
+  /**
+   * The fingerprint recorded when the machine was last started differs from
+   * that of a fresh evaluation of its boot configuration, and the machine
+   * must be restarted for configuration changes to take effect.
+   */
+
+  DRIFTED("drifted"),
+
+  /**
+   * No fingerprint has been recorded for the machine; it has not been
+   * started since fingerprints were introduced, or it has never been started.
+   */
+
+  NOT_RECORDED("not-recorded"),
+
+  /**
+   * A fingerprint was recorded when the machine was last started, but the
+   * machine is no longer running. The stale fingerprint has been removed.
+   */
+
+  NOT_RUNNING("not-running"),
+
+  /**
+   * The boot configuration that was used to start the machine could not
+   * be evaluated (it may have been removed, for example).
+   */
+
+  EVALUATION_FAILED("evaluation-failed");
+
+  private final String externalName;
+
+  WXMDriftStatus(
+    final String inExternalName)
+  {
+    this.externalName = inExternalName;
+  }
+
+  /**
+   * @return The external name of the status
+   */
+
+  public String externalName()
+  {
+    return this.externalName;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package com.io7m.waxmill.client.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import org.immutables.value.Value;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A request to realize a set of virtual machines.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMRealizeManyConfigurationType
+{
+  /**
+   * @return The virtual machines that will be realized
+   */
+
+  List<WXMVirtualMachine> machines();
+
+  /**
+   * @return The maximum number of realization steps that may be executing
+   * at any given time, across all machines
+   */
+
+  @Value.Default
+  default int maxConcurrentSteps()
+  {
+    return 4;
+  }
+
+  /**
+   * @return {@code true} if missing ZFS filesystems and volumes for all of
+   * the machines should be created in a single batch, rather than by each
+   * machine's realization steps individually
+   */
+
+  @Value.Default
+  default boolean batchZFSCreation()
+  {
+    return false;
+  }
+
+  /**
+   * @return {@code true} if machines should be realized even if their
+   * realization markers show that they have already been realized with
+   * their current definitions
+   */
+
+  @Value.Default
+  default boolean force()
+  {
+    return false;
+  }
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    Preconditions.checkPreconditionI(
+      this.maxConcurrentSteps(),
+      this.maxConcurrentSteps() >= 1,
+      i -> "Maximum concurrent steps must be at least 1"
+    );
+
+    final var ids =
+      this.machines()
+        .stream()
+        .map(WXMVirtualMachine::id)
+        .collect(Collectors.toSet());
+
+    Preconditions.checkPreconditionI(
+      ids.size(),
+      ids.size() == this.machines().size(),
+      i -> "Machine IDs must be unique"
+    );
+  }
+}
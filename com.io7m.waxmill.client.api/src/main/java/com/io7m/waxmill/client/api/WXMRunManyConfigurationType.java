@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import org.immutables.value.Value;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A request to start a set of virtual machines as child processes of the
+ * current process.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMRunManyConfigurationType
+{
+  /**
+   * @return The virtual machines that will be started
+   */
+
+  List<WXMVirtualMachine> machines();
+
+  /**
+   * @return The name of the boot configuration used for every machine
+   */
+
+  WXMBootConfigurationName bootConfigurationName();
+
+  /**
+   * @return The maximum number of machines that may be in the process of
+   * starting at any given time
+   */
+
+  @Value.Default
+  default int maxConcurrentStarts()
+  {
+    return 4;
+  }
+
+  /**
+   * @return The start-order dependencies between machines
+   */
+
+  List<WXMStartDependency> startDependencies();
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    Preconditions.checkPreconditionI(
+      this.maxConcurrentStarts(),
+      this.maxConcurrentStarts() >= 1,
+      i -> "Maximum concurrent starts must be at least 1"
+    );
+
+    final var ids =
+      this.machines()
+        .stream()
+        .map(WXMVirtualMachine::id)
+        .collect(Collectors.toSet());
+
+    Preconditions.checkPreconditionI(
+      ids.size(),
+      ids.size() == this.machines().size(),
+      i -> "Machine IDs must be unique"
+    );
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.api;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * A listener that receives events as a set of virtual machines is started.
+ * Methods may be called from multiple threads.
+ */
+
+public interface WXMRunManyListenerType
+{
+  /**
+   * A virtual machine process was started.
+   *
+   * @param machine      The virtual machine
+   * @param waitTime     The time spent waiting for dependencies and a start slot
+   * @param startLatency The time taken to start the machine
+   */
+
+  default void onMachineStarted(
+    final UUID machine,
+    final Duration waitTime,
+    final Duration startLatency)
+  {
+
+  }
+
+  /**
+   * A virtual machine could not be started.
+   *
+   * @param machine The virtual machine
+   * @param message The reason the machine could not be started
+   */
+
+  default void onMachineFailed(
+    final UUID machine,
+    final String message)
+  {
+
+  }
+
+  /**
+   * A virtual machine process exited.
+   *
+   * @param machine  The virtual machine
+   * @param exitCode The exit code of the process
+   */
+
+  default void onMachineExited(
+    final UUID machine,
+    final int exitCode)
+  {
+
+  }
+}
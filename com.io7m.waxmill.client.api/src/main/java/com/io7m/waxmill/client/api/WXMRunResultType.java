@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The result of starting a single virtual machine as part of a larger set.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMRunResultType
+{
+  /**
+   * @return The ID of the virtual machine
+   */
+
+  UUID machine();
+
+  /**
+   * @return The time spent waiting for dependencies and for a free start slot
+   */
+
+  Duration waitTime();
+
+  /**
+   * @return The time taken to evaluate the boot configuration, run any
+   * configuration commands, and spawn the virtual machine process
+   */
+
+  Duration startLatency();
+
+  /**
+   * @return The exit code of the virtual machine process, if it was started
+   * and has exited
+   */
+
+  Optional<Integer> exitCode();
+
+  /**
+   * @return The reason the virtual machine could not be started, if it
+   * could not be started
+   */
+
+  Optional<String> failure();
+}
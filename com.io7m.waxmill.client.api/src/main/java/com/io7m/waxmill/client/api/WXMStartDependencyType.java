@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.waxmill.machines.WXMTag;
+import org.immutables.value.Value;
+
+/**
+ * A start-order dependency between two sets of virtual machines. Virtual
+ * machines that have the tag {@link #tag()} are not started until all of
+ * the virtual machines that have the tag {@link #after()} have started.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMStartDependencyType
+{
+  /**
+   * @return The tag of the machines that must wait
+   */
+
+  @Value.Parameter
+  WXMTag tag();
+
+  /**
+   * @return The tag of the machines that must start first
+   */
+
+  @Value.Parameter
+  WXMTag after();
+}
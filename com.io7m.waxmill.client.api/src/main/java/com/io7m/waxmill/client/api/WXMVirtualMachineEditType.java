@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.api;
+
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionConcurrentModification;
+import com.io7m.waxmill.exceptions.WXMExceptionDuplicate;
+import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMBootConfigurationType;
+import com.io7m.waxmill.machines.WXMCPUTopology;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMDeviceType;
+import com.io7m.waxmill.machines.WXMFlags;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMMemory;
+import com.io7m.waxmill.machines.WXMTag;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+
+/**
+ * An edit session for a single virtual machine. Changes are accumulated in
+ * memory, and are not checked against each other until the session is
+ * committed; the machine may therefore pass through states that would not
+ * be valid on their own (such as adding a passthru device before wiring
+ * guest memory). Committing the session validates the edited machine once,
+ * and writes it once, if and only if the machine has not been modified by
+ * anyone else since the session began.
+ *
+ * Edit sessions are not thread-safe.
+ *
+ * @see WXMClientType#vmEdit(java.util.UUID)
+ */
+
+public interface WXMVirtualMachineEditType
+{
+  /**
+   * @return The virtual machine as it was when the session began
+   */
+
+  WXMVirtualMachine original();
+
+  /**
+   * @return {@code true} if any changes have been made in this session
+   */
+
+  boolean isModified();
+
+  /**
+   * Set the machine name.
+   *
+   * @param name The name
+   *
+   * @return this
+   */
+
+  WXMVirtualMachineEditType setName(
+    WXMMachineName name);
+
+  /**
+   * Set the machine comment.
+   *
+   * @param comment The comment
+   *
+   * @return this
+   */
+
+  WXMVirtualMachineEditType setComment(
+    String comment);
+
+  /**
+   * Set the CPU topology.
+   *
+   * @param topology The topology
+   *
+   * @return this
+   */
+
+  WXMVirtualMachineEditType setCPUTopology(
+    WXMCPUTopology topology);
+
+  /**
+   * Set the memory.
+   *
+   * @param memory The memory
+   *
+   * @return this
+   */
+
+  WXMVirtualMachineEditType setMemory(
+    WXMMemory memory);
+
+  /**
+   * Set the flags.
+   *
+   * @param flags The flags
+   *
+   * @return this
+   */
+
+  WXMVirtualMachineEditType setFlags(
+    WXMFlags flags);
+
+  /**
+   * @return The flags, including any changes made in this session
+   */
+
+  WXMFlags flags();
+
+  /**
+   * Add a tag.
+   *
+   * @param tag The tag
+   *
+   * @return this
+   */
+
+  WXMVirtualMachineEditType addTag(
+    WXMTag tag);
+
+  /**
+   * Remove a tag, if it is present.
+   *
+   * @param tag The tag
+   *
+   * @return this
+   */
+
+  WXMVirtualMachineEditType removeTag(
+    WXMTag tag);
+
+  /**
+   * Add a device.
+   *
+   * @param device  The device
+   * @param replace {@code true} if an existing device in the same slot
+   *                should be replaced
+   *
+   * @return this
+   *
+   * @throws WXMExceptionDuplicate If {@code replace} is {@code false} and
+   *                               the slot is already used
+   */
+
+  WXMVirtualMachineEditType addDevice(
+    WXMDeviceType device,
+    boolean replace)
+    throws WXMExceptionDuplicate;
+
+  /**
+   * Remove a device.
+   *
+   * @param slot The device slot
+   *
+   * @return this
+   *
+   * @throws WXMExceptionNonexistent If the slot is not used
+   */
+
+  WXMVirtualMachineEditType removeDevice(
+    WXMDeviceSlot slot)
+    throws WXMExceptionNonexistent;
+
+  /**
+   * Add a boot configuration.
+   *
+   * @param configuration The boot configuration
+   * @param replace       {@code true} if an existing boot configuration
+   *                      with the same name should be replaced
+   *
+   * @return this
+   *
+   * @throws WXMExceptionDuplicate If {@code replace} is {@code false} and a
+   *                               boot configuration exists with the same
+   *                               name
+   */
+
+  WXMVirtualMachineEditType addBootConfiguration(
+    WXMBootConfigurationType configuration,
+    boolean replace)
+    throws WXMExceptionDuplicate;
+
+  /**
+   * Remove a boot configuration.
+   *
+   * @param name The boot configuration name
+   *
+   * @return this
+   *
+   * @throws WXMExceptionNonexistent If no such boot configuration exists
+   */
+
+  WXMVirtualMachineEditType removeBootConfiguration(
+    WXMBootConfigurationName name)
+    throws WXMExceptionNonexistent;
+
+  /**
+   * Validate and write the edited machine. If no changes have been made,
+   * nothing is written. A session can be committed at most once; a commit
+   * that fails leaves the session open, so the caller can correct the
+   * edits and commit again.
+   *
+   * @return The edited machine
+   *
+   * @throws WXMExceptionConcurrentModification If the machine has been
+   *                                             modified since the session
+   *                                             began
+   * @throws WXMExceptionNonexistent             If the machine has been
+   *                                             deleted since the session
+   *                                             began
+   * @throws WXMException                        On errors
+   */
+
+  WXMVirtualMachine commit()
+    throws WXMException;
+}
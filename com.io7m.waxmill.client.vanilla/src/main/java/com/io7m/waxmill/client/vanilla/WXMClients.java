@@ -16,6 +16,8 @@
 
 package com.io7m.waxmill.client.vanilla;
 
+import com.io7m.waxmill.boot.WXMBootTiming;
+import com.io7m.waxmill.boot.WXMBootTimings;
 import com.io7m.waxmill.client.api.WXMClientConfiguration;
 import com.io7m.waxmill.client.api.WXMClientProviderType;
 import com.io7m.waxmill.client.api.WXMClientType;
@@ -29,6 +31,7 @@ import com.io7m.waxmill.serializer.api.WXMClientConfigurationSerializerProviderT
 
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.ServiceLoader;
 
 /**
@@ -114,6 +117,15 @@ public final class WXMClients implements WXMClientProviderType
   public WXMClientType open(
     final WXMClientConfiguration configuration)
     throws WXMException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    return this.openWithTiming(configuration, Optional.empty());
+  }
+
+  private WXMClientType openWithTiming(
+    final WXMClientConfiguration configuration,
+    final Optional<WXMBootTiming> configurationParseTiming)
+    throws WXMException
   {
     final var databaseConfiguration =
       WXMDatabaseConfiguration.builder()
@@ -123,7 +135,8 @@ public final class WXMClients implements WXMClientProviderType
     return new WXMClient(
       configuration,
       this.databases.open(databaseConfiguration),
-      this.processes
+      this.processes,
+      configurationParseTiming
     );
   }
 
@@ -134,8 +147,20 @@ public final class WXMClients implements WXMClientProviderType
   {
     Objects.requireNonNull(configurationFile, "configurationFile");
 
+    final var timeThen = System.nanoTime();
     final WXMClientConfiguration configuration =
       this.clientConfigurationParsers.parse(configurationFile);
-    return this.open(configuration);
+    final var timeNow = System.nanoTime();
+
+    return this.openWithTiming(
+      configuration,
+      Optional.of(
+        WXMBootTimings.between(
+          "configuration-parse",
+          configurationFile.toString(),
+          timeThen,
+          timeNow)
+      )
+    );
   }
 }
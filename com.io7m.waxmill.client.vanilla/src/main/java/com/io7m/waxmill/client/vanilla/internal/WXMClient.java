@@ -19,8 +19,19 @@ package com.io7m.waxmill.client.vanilla.internal;
 import com.io7m.junreachable.UnreachableCodeException;
 import com.io7m.waxmill.boot.WXMBootConfigurationEvaluator;
 import com.io7m.waxmill.boot.WXMBootConfigurationExecutor;
+import com.io7m.waxmill.boot.WXMBootFingerprintRecords;
+import com.io7m.waxmill.boot.WXMBootOrchestrator;
+import com.io7m.waxmill.boot.WXMBootTiming;
+import com.io7m.waxmill.boot.WXMBootTimings;
 import com.io7m.waxmill.client.api.WXMClientConfiguration;
 import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.client.api.WXMDriftResult;
+import com.io7m.waxmill.client.api.WXMRealizeManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeManyResult;
+import com.io7m.waxmill.client.api.WXMRunManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyListenerType;
+import com.io7m.waxmill.client.api.WXMRunManyResult;
+import com.io7m.waxmill.client.api.WXMVirtualMachineEditType;
 import com.io7m.waxmill.database.api.WXMVirtualMachineDatabaseType;
 import com.io7m.waxmill.exceptions.WXMException;
 import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
@@ -29,13 +40,20 @@ import com.io7m.waxmill.machines.WXMConsoles;
 import com.io7m.waxmill.machines.WXMDeviceLPC;
 import com.io7m.waxmill.machines.WXMDeviceType;
 import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.machines.WXMMachineMessages;
 import com.io7m.waxmill.machines.WXMShortIDs;
 import com.io7m.waxmill.machines.WXMTTYBackendFile;
 import com.io7m.waxmill.machines.WXMTTYBackends;
 import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMVirtualMachineSet;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchType;
 import com.io7m.waxmill.process.api.WXMProcessDescription;
 import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.realize.WXMRealizationFleet;
+import com.io7m.waxmill.realize.WXMRealizationInstructions;
+import com.io7m.waxmill.realize.WXMRealizationMarkers;
 import com.io7m.waxmill.realize.WXMRealizations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +62,9 @@ import java.io.IOException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationType;
 import static com.io7m.waxmill.machines.WXMDeviceType.WXMLPCTTYNames.WXM_COM1;
 import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
 import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
@@ -61,6 +81,7 @@ public final class WXMClient implements WXMClientType
   private final WXMClientConfiguration configuration;
   private final WXMVirtualMachineDatabaseType database;
   private final WXMProcessesType processes;
+  private final AtomicReference<WXMBootTiming> configurationParseTiming;
 
   /**
    * The default client implementation.
@@ -74,6 +95,25 @@ public final class WXMClient implements WXMClientType
     final WXMClientConfiguration inConfiguration,
     final WXMVirtualMachineDatabaseType inDatabase,
     final WXMProcessesType inProcesses)
+  {
+    this(inConfiguration, inDatabase, inProcesses, Optional.empty());
+  }
+
+  /**
+   * The default client implementation.
+   *
+   * @param inConfiguration            The client configuration
+   * @param inDatabase                 The database
+   * @param inProcesses                The process provider
+   * @param inConfigurationParseTiming The time taken to parse the client
+   *                                   configuration, if it was parsed
+   */
+
+  public WXMClient(
+    final WXMClientConfiguration inConfiguration,
+    final WXMVirtualMachineDatabaseType inDatabase,
+    final WXMProcessesType inProcesses,
+    final Optional<WXMBootTiming> inConfigurationParseTiming)
   {
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
@@ -81,6 +121,12 @@ public final class WXMClient implements WXMClientType
       Objects.requireNonNull(inDatabase, "inDatabase");
     this.processes =
       Objects.requireNonNull(inProcesses, "inProcesses");
+    this.configurationParseTiming =
+      new AtomicReference<>(
+        Objects.requireNonNull(
+          inConfigurationParseTiming,
+          "inConfigurationParseTiming"
+        ).orElse(null));
   }
 
   @Override
@@ -102,9 +148,7 @@ public final class WXMClient implements WXMClientType
     final UUID id)
     throws WXMException
   {
-    Objects.requireNonNull(id, "id");
-
-    return this.database.vmGet(id)
+    return this.vmFindOptional(id)
       .orElseThrow(() -> new WXMExceptionNonexistent(
         String.format("No such virtual machine: %s", id))
       );
@@ -115,9 +159,8 @@ public final class WXMClient implements WXMClientType
     final UUID id)
     throws WXMException
   {
-    return this.database.vmGet(
-      Objects.requireNonNull(id, "id")
-    );
+    Objects.requireNonNull(id, "id");
+    return this.database.vmGet(id);
   }
 
   @Override
@@ -138,20 +181,73 @@ public final class WXMClient implements WXMClientType
   {
     Objects.requireNonNull(machine, "machine");
     Objects.requireNonNull(bootConfigurationName, "bootConfigurationName");
+    Objects.requireNonNull(dryRun, "dryRun");
 
-    final var evaluated =
-      new WXMBootConfigurationEvaluator(
-        this.configuration,
-        machine,
-        bootConfigurationName
-      ).evaluate();
+    this.vmRunWithTimings(
+      machine,
+      bootConfigurationName,
+      dryRun,
+      this.createTimings(machine.id())
+    );
+  }
+
+  @Override
+  public void vmRun(
+    final UUID id,
+    final WXMBootConfigurationName bootConfigurationName,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    Objects.requireNonNull(id, "id");
+    Objects.requireNonNull(bootConfigurationName, "bootConfigurationName");
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    final var timings = this.createTimings(id);
+    final var timeThen = System.nanoTime();
+    final var machine = this.vmFind(id);
+    final var timeNow = System.nanoTime();
+    timings.add(
+      WXMBootTimings.between("database-lookup", "", timeThen, timeNow)
+    );
+
+    this.vmRunWithTimings(machine, bootConfigurationName, dryRun, timings);
+  }
+
+  private WXMBootTimings createTimings(
+    final UUID id)
+  {
+    final var timings = WXMBootTimings.create(id);
+    final var parseTiming = this.configurationParseTiming.getAndSet(null);
+    if (parseTiming != null) {
+      timings.add(parseTiming);
+    }
+    return timings;
+  }
+
+  private void vmRunWithTimings(
+    final WXMVirtualMachine machine,
+    final WXMBootConfigurationName bootConfigurationName,
+    final WXMDryRun dryRun,
+    final WXMBootTimings timings)
+    throws WXMException, InterruptedException
+  {
+    final WXMEvaluatedBootConfigurationType evaluated;
+    try (var ignored = timings.begin("evaluation")) {
+      evaluated =
+        new WXMBootConfigurationEvaluator(
+          this.configuration,
+          machine,
+          bootConfigurationName
+        ).evaluate();
+    }
 
     final var executor =
       WXMBootConfigurationExecutor.create(
         this.processes,
         this.configuration,
         machine,
-        evaluated
+        evaluated,
+        timings
       );
 
     switch (dryRun) {
@@ -164,6 +260,33 @@ public final class WXMClient implements WXMClientType
     }
   }
 
+  @Override
+  public WXMRunManyResult vmRunMany(
+    final WXMRunManyConfiguration runConfiguration,
+    final WXMRunManyListenerType listener,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    Objects.requireNonNull(runConfiguration, "runConfiguration");
+    Objects.requireNonNull(listener, "listener");
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    return WXMBootOrchestrator.create(
+      this.processes,
+      this.configuration,
+      runConfiguration,
+      listener
+    ).execute(dryRun);
+  }
+
+  @Override
+  public WXMDriftResult vmDrift(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    Objects.requireNonNull(machine, "machine");
+    return WXMBootFingerprintRecords.drift(this.configuration, machine);
+  }
 
   @Override
   public void vmKill(
@@ -191,6 +314,7 @@ public final class WXMClient implements WXMClientType
         break;
       case EXECUTE:
         try {
+          WXMBootFingerprintRecords.delete(this.configuration, machine);
           this.processes.processReplaceCurrent(processDescription);
         } catch (final IOException e) {
           throw new WXMException(e);
@@ -236,11 +360,81 @@ public final class WXMClient implements WXMClientType
     Objects.requireNonNull(dryRun, "dryRun");
 
     final var realization =
-      WXMRealizations.create(this.processes, this.configuration, machine);
+      WXMRealizations.create(
+        this.processes,
+        this.configuration,
+        machine,
+        false
+      );
     final var instructions =
       realization.evaluate();
 
     instructions.execute(dryRun);
+    this.vmRealizeRecord(machine, dryRun, instructions);
+  }
+
+  @Override
+  public void vmRealize(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun,
+    final int maxConcurrentSteps,
+    final boolean force)
+    throws WXMException
+  {
+    Objects.requireNonNull(machine, "machine");
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    final var realization =
+      WXMRealizations.create(
+        this.processes,
+        this.configuration,
+        machine,
+        force
+      );
+    final var instructions =
+      realization.evaluate();
+
+    instructions.execute(dryRun, maxConcurrentSteps);
+    this.vmRealizeRecord(machine, dryRun, instructions);
+  }
+
+  private void vmRealizeRecord(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun,
+    final WXMRealizationInstructions instructions)
+  {
+    if (dryRun == DRY_RUN || instructions.steps().isEmpty()) {
+      return;
+    }
+
+    try {
+      WXMRealizationMarkers.record(
+        this.configuration,
+        machine,
+        instructions.steps().size()
+      );
+    } catch (final IOException e) {
+      LOG.warn(
+        "unable to record realization of machine {}: {}",
+        machine.id(),
+        e.getMessage());
+    }
+  }
+
+  @Override
+  public WXMRealizeManyResult vmRealizeMany(
+    final WXMRealizeManyConfiguration realizeConfiguration,
+    final WXMDryRun dryRun)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(realizeConfiguration, "realizeConfiguration");
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    return WXMRealizationFleet.create(
+      this.processes,
+      this.configuration,
+      realizeConfiguration
+    ).execute(dryRun);
   }
 
   private Optional<WXMProcessDescription> handleLPCConsole(
@@ -303,12 +497,44 @@ public final class WXMClient implements WXMClientType
     this.database.vmUpdate(machine);
   }
 
+  @Override
+  public void vmUpdateAll(
+    final WXMVirtualMachineSet machines)
+    throws WXMException
+  {
+    Objects.requireNonNull(machines, "machines");
+    this.database.vmUpdateAll(machines);
+  }
+
+  @Override
+  public WXMVirtualMachineEditType vmEdit(
+    final UUID id)
+    throws WXMException
+  {
+    return new WXMVirtualMachineEdit(
+      this.database,
+      WXMMachineMessages.create(),
+      this.vmFind(id)
+    );
+  }
+
   @Override
   public WXMClientConfiguration configuration()
   {
     return this.configuration;
   }
 
+  @Override
+  public WXMVirtualMachineWatchType vmWatch(
+    final WXMVirtualMachineWatchConfiguration watchConfiguration,
+    final WXMVirtualMachineWatchListenerType listener)
+    throws WXMException
+  {
+    Objects.requireNonNull(watchConfiguration, "watchConfiguration");
+    Objects.requireNonNull(listener, "listener");
+    return this.database.vmWatch(watchConfiguration, listener);
+  }
+
   @Override
   public void vmDefineAll(
     final WXMVirtualMachineSet machines)
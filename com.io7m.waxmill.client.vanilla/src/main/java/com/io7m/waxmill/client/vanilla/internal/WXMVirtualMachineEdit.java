@@ -0,0 +1,323 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.client.vanilla.internal;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.waxmill.client.api.WXMVirtualMachineEditType;
+import com.io7m.waxmill.database.api.WXMVirtualMachineDatabaseType;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionDuplicate;
+import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMBootConfigurationType;
+import com.io7m.waxmill.machines.WXMCPUTopology;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMDeviceType;
+import com.io7m.waxmill.machines.WXMFlags;
+import com.io7m.waxmill.machines.WXMMachineMessages;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMMemory;
+import com.io7m.waxmill.machines.WXMTag;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An edit session that accumulates changes in a builder, and commits them
+ * to the database with a single compare-and-swap update.
+ */
+
+public final class WXMVirtualMachineEdit implements WXMVirtualMachineEditType
+{
+  private final WXMVirtualMachineDatabaseType database;
+  private final WXMMachineMessages messages;
+  private final WXMVirtualMachine original;
+  private final Map<WXMDeviceSlot, WXMDeviceType> devices;
+  private final Map<WXMBootConfigurationName, WXMBootConfigurationType> boots;
+  private final SortedSet<WXMTag> tags;
+  private final WXMVirtualMachine.Builder builder;
+  private WXMFlags flags;
+  private boolean modified;
+  private boolean committed;
+
+  /**
+   * Construct an edit session.
+   *
+   * @param inDatabase The database to which changes will be committed
+   * @param inMessages The string resources
+   * @param inOriginal The machine as it was read from the database
+   */
+
+  public WXMVirtualMachineEdit(
+    final WXMVirtualMachineDatabaseType inDatabase,
+    final WXMMachineMessages inMessages,
+    final WXMVirtualMachine inOriginal)
+  {
+    this.database =
+      Objects.requireNonNull(inDatabase, "database");
+    this.messages =
+      Objects.requireNonNull(inMessages, "messages");
+    this.original =
+      Objects.requireNonNull(inOriginal, "original");
+
+    this.devices = new LinkedHashMap<>();
+    for (final var device : inOriginal.devices()) {
+      this.devices.put(device.deviceSlot(), device);
+    }
+    this.boots = new LinkedHashMap<>();
+    for (final var boot : inOriginal.bootConfigurations()) {
+      this.boots.put(boot.name(), boot);
+    }
+    this.tags = new TreeSet<>(inOriginal.tags());
+    this.builder = WXMVirtualMachine.builder().from(inOriginal);
+    this.flags = inOriginal.flags();
+    this.modified = false;
+    this.committed = false;
+  }
+
+  private void checkNotCommitted()
+  {
+    if (this.committed) {
+      throw new IllegalStateException("Edit session is already committed.");
+    }
+  }
+
+  private WXMVirtualMachineEditType changed()
+  {
+    this.modified = true;
+    return this;
+  }
+
+  @Override
+  public WXMVirtualMachine original()
+  {
+    return this.original;
+  }
+
+  @Override
+  public boolean isModified()
+  {
+    return this.modified;
+  }
+
+  @Override
+  public WXMVirtualMachineEditType setName(
+    final WXMMachineName name)
+  {
+    this.checkNotCommitted();
+    this.builder.setName(name);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType setComment(
+    final String comment)
+  {
+    this.checkNotCommitted();
+    this.builder.setComment(comment);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType setCPUTopology(
+    final WXMCPUTopology topology)
+  {
+    this.checkNotCommitted();
+    this.builder.setCpuTopology(topology);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType setMemory(
+    final WXMMemory memory)
+  {
+    this.checkNotCommitted();
+    this.builder.setMemory(memory);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType setFlags(
+    final WXMFlags newFlags)
+  {
+    this.checkNotCommitted();
+    this.flags = Objects.requireNonNull(newFlags, "flags");
+    this.builder.setFlags(newFlags);
+    return this.changed();
+  }
+
+  @Override
+  public WXMFlags flags()
+  {
+    return this.flags;
+  }
+
+  @Override
+  public WXMVirtualMachineEditType addTag(
+    final WXMTag tag)
+  {
+    Objects.requireNonNull(tag, "tag");
+    this.checkNotCommitted();
+    this.tags.add(tag);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType removeTag(
+    final WXMTag tag)
+  {
+    Objects.requireNonNull(tag, "tag");
+    this.checkNotCommitted();
+    this.tags.remove(tag);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType addDevice(
+    final WXMDeviceType device,
+    final boolean replace)
+    throws WXMExceptionDuplicate
+  {
+    Objects.requireNonNull(device, "device");
+    this.checkNotCommitted();
+
+    final var existing = this.devices.get(device.deviceSlot());
+    if (existing != null && !replace) {
+      throw new WXMExceptionDuplicate(
+        this.messages.format(
+          "errorDeviceSlotAlreadyUsed",
+          this.original.id(),
+          existing.deviceSlot(),
+          existing.kind()
+        )
+      );
+    }
+
+    this.devices.put(device.deviceSlot(), device);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType removeDevice(
+    final WXMDeviceSlot slot)
+    throws WXMExceptionNonexistent
+  {
+    Objects.requireNonNull(slot, "slot");
+    this.checkNotCommitted();
+
+    if (this.devices.remove(slot) == null) {
+      throw new WXMExceptionNonexistent(
+        this.messages.format(
+          "errorDeviceSlotNonexistent",
+          this.original.id(),
+          slot
+        )
+      );
+    }
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType addBootConfiguration(
+    final WXMBootConfigurationType configuration,
+    final boolean replace)
+    throws WXMExceptionDuplicate
+  {
+    Objects.requireNonNull(configuration, "configuration");
+    this.checkNotCommitted();
+
+    if (this.boots.containsKey(configuration.name()) && !replace) {
+      throw new WXMExceptionDuplicate(
+        this.messages.format(
+          "errorBootConfigurationAlreadyExists",
+          this.original.id(),
+          configuration.name().value()
+        )
+      );
+    }
+
+    this.boots.put(configuration.name(), configuration);
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachineEditType removeBootConfiguration(
+    final WXMBootConfigurationName name)
+    throws WXMExceptionNonexistent
+  {
+    Objects.requireNonNull(name, "name");
+    this.checkNotCommitted();
+
+    if (this.boots.remove(name) == null) {
+      throw new WXMExceptionNonexistent(
+        this.messages.format(
+          "errorBootConfigurationNonexistent",
+          this.original.id(),
+          name.value()
+        )
+      );
+    }
+    return this.changed();
+  }
+
+  @Override
+  public WXMVirtualMachine commit()
+    throws WXMException
+  {
+    this.checkNotCommitted();
+
+    if (!this.modified) {
+      this.committed = true;
+      return this.original;
+    }
+
+    final WXMVirtualMachine machine;
+    try {
+      machine =
+        this.builder
+          .setDevices(this.devices.values())
+          .setBootConfigurations(this.boots.values())
+          .setTags(this.tags)
+          .build();
+    } catch (final PreconditionViolationException e) {
+      throw new WXMException(e.getMessage(), e);
+    }
+
+    if (machine.equals(this.original)) {
+      this.committed = true;
+      return this.original;
+    }
+
+    this.database.vmUpdateIfUnchanged(this.original, machine);
+    this.committed = true;
+    return machine;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMVirtualMachineEdit 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -31,6 +31,7 @@ module com.io7m.waxmill.client.vanilla
   requires static org.osgi.annotation.bundle;
   requires static org.osgi.annotation.versioning;
 
+  requires com.io7m.jaffirm.core;
   requires com.io7m.junreachable.core;
   requires com.io7m.waxmill.boot;
   requires com.io7m.waxmill.client.api;
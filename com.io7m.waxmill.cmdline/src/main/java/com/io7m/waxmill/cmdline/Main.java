@@ -22,6 +22,7 @@ import com.io7m.claypot.core.CLPCommandType;
 import com.io7m.claypot.core.Claypot;
 import com.io7m.claypot.core.ClaypotType;
 import com.io7m.waxmill.cmdline.internal.WXMCommandSchema;
+import com.io7m.waxmill.cmdline.internal.WXMCommandServer;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMAddAHCIDisk;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMAddAHCIOptical;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMAddE1000NetworkDevice;
@@ -31,11 +32,13 @@ import com.io7m.waxmill.cmdline.internal.WXMCommandVMAddPassthru;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMAddVirtioDisk;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMAddVirtioNetworkDevice;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMAddXHCIUSBTabletDevice;
+import com.io7m.waxmill.cmdline.internal.WXMCommandVMBatch;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMConsole;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMDefine;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMDelete;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMDeleteBootConfigurations;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMDeleteDevice;
+import com.io7m.waxmill.cmdline.internal.WXMCommandVMDrift;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMExport;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMIDOf;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMImport;
@@ -43,18 +46,31 @@ import com.io7m.waxmill.cmdline.internal.WXMCommandVMKill;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMList;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMListWithName;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMRealize;
+import com.io7m.waxmill.cmdline.internal.WXMCommandVMRealizeMany;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMRun;
+import com.io7m.waxmill.cmdline.internal.WXMCommandVMRunMany;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMSet;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVMUpdateBootConfigurations;
+import com.io7m.waxmill.cmdline.internal.WXMCommandVMWatch;
 import com.io7m.waxmill.cmdline.internal.WXMCommandVersion;
+import com.io7m.waxmill.cmdline.internal.WXMEnvironment;
+import com.io7m.waxmill.server.WXMServerClient;
+import com.io7m.waxmill.server.WXMServerRequest;
+import com.io7m.waxmill.server.WXMServerUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.stream.Stream;
 
 /**
@@ -65,6 +81,9 @@ public final class Main implements Runnable
 {
   private static final Logger LOG = LoggerFactory.getLogger(Main.class);
 
+  private static final SortedMap<String, CLPCommandConstructorType> COMMANDS =
+    commandConstructors();
+
   private final String[] args;
   private final ClaypotType claypot;
 
@@ -80,41 +99,11 @@ public final class Main implements Runnable
     this.args =
       Objects.requireNonNull(inArgs, "Command line arguments");
 
-    final List<CLPCommandConstructorType> commands =
-      List.of(
-        WXMCommandSchema::new,
-        WXMCommandVMAddAHCIDisk::new,
-        WXMCommandVMAddAHCIOptical::new,
-        WXMCommandVMAddE1000NetworkDevice::new,
-        WXMCommandVMAddFramebufferDevice::new,
-        WXMCommandVMAddLPC::new,
-        WXMCommandVMAddPassthru::new,
-        WXMCommandVMAddVirtioDisk::new,
-        WXMCommandVMAddVirtioNetworkDevice::new,
-        WXMCommandVMAddXHCIUSBTabletDevice::new,
-        WXMCommandVMConsole::new,
-        WXMCommandVMDefine::new,
-        WXMCommandVMDelete::new,
-        WXMCommandVMDeleteBootConfigurations::new,
-        WXMCommandVMDeleteDevice::new,
-        WXMCommandVMExport::new,
-        WXMCommandVMIDOf::new,
-        WXMCommandVMImport::new,
-        WXMCommandVMKill::new,
-        WXMCommandVMList::new,
-        WXMCommandVMListWithName::new,
-        WXMCommandVMRealize::new,
-        WXMCommandVMRun::new,
-        WXMCommandVMSet::new,
-        WXMCommandVMUpdateBootConfigurations::new,
-        WXMCommandVersion::new
-      );
-
     final var configuration =
       CLPApplicationConfiguration.builder()
         .setLogger(LOG)
         .setProgramName("waxmill")
-        .setCommands(commands)
+        .setCommands(commandsFor(inArgs))
         .setDocumentationURI(URI.create(
           "https://www.io7m.com/software/waxmill/documentation/"))
         .build();
@@ -122,19 +111,224 @@ public final class Main implements Runnable
     this.claypot = Claypot.create(configuration);
   }
 
+  /*
+   * The constructors are lambda expressions rather than method references
+   * so that a command class is not loaded until the command is constructed.
+   */
+
+  private static SortedMap<String, CLPCommandConstructorType>
+  commandConstructors()
+  {
+    final var commands = new TreeMap<String, CLPCommandConstructorType>();
+    commands.put(
+      "schema",
+      context -> new WXMCommandSchema(context)
+    );
+    commands.put(
+      "server",
+      context -> new WXMCommandServer(context)
+    );
+    commands.put(
+      "version",
+      context -> new WXMCommandVersion(context)
+    );
+    commands.put(
+      "vm-add-ahci-disk",
+      context -> new WXMCommandVMAddAHCIDisk(context)
+    );
+    commands.put(
+      "vm-add-ahci-optical",
+      context -> new WXMCommandVMAddAHCIOptical(context)
+    );
+    commands.put(
+      "vm-add-e1000-network-device",
+      context -> new WXMCommandVMAddE1000NetworkDevice(context)
+    );
+    commands.put(
+      "vm-add-framebuffer-device",
+      context -> new WXMCommandVMAddFramebufferDevice(context)
+    );
+    commands.put(
+      "vm-add-lpc-device",
+      context -> new WXMCommandVMAddLPC(context)
+    );
+    commands.put(
+      "vm-add-passthru-device",
+      context -> new WXMCommandVMAddPassthru(context)
+    );
+    commands.put(
+      "vm-add-virtio-disk",
+      context -> new WXMCommandVMAddVirtioDisk(context)
+    );
+    commands.put(
+      "vm-add-virtio-network-device",
+      context -> new WXMCommandVMAddVirtioNetworkDevice(context)
+    );
+    commands.put(
+      "vm-add-xhci-usb-tablet-device",
+      context -> new WXMCommandVMAddXHCIUSBTabletDevice(context)
+    );
+    commands.put(
+      "vm-batch",
+      context -> new WXMCommandVMBatch(context)
+    );
+    commands.put(
+      "vm-console",
+      context -> new WXMCommandVMConsole(context)
+    );
+    commands.put(
+      "vm-define",
+      context -> new WXMCommandVMDefine(context)
+    );
+    commands.put(
+      "vm-delete",
+      context -> new WXMCommandVMDelete(context)
+    );
+    commands.put(
+      "vm-delete-boot-configurations",
+      context -> new WXMCommandVMDeleteBootConfigurations(context)
+    );
+    commands.put(
+      "vm-delete-devices",
+      context -> new WXMCommandVMDeleteDevice(context)
+    );
+    commands.put(
+      "vm-drift",
+      context -> new WXMCommandVMDrift(context)
+    );
+    commands.put(
+      "vm-export",
+      context -> new WXMCommandVMExport(context)
+    );
+    commands.put(
+      "vm-id-of",
+      context -> new WXMCommandVMIDOf(context)
+    );
+    commands.put(
+      "vm-import",
+      context -> new WXMCommandVMImport(context)
+    );
+    commands.put(
+      "vm-kill",
+      context -> new WXMCommandVMKill(context)
+    );
+    commands.put(
+      "vm-list",
+      context -> new WXMCommandVMList(context)
+    );
+    commands.put(
+      "vm-list-with-name",
+      context -> new WXMCommandVMListWithName(context)
+    );
+    commands.put(
+      "vm-realize",
+      context -> new WXMCommandVMRealize(context)
+    );
+    commands.put(
+      "vm-realize-many",
+      context -> new WXMCommandVMRealizeMany(context)
+    );
+    commands.put(
+      "vm-run",
+      context -> new WXMCommandVMRun(context)
+    );
+    commands.put(
+      "vm-run-many",
+      context -> new WXMCommandVMRunMany(context)
+    );
+    commands.put(
+      "vm-set",
+      context -> new WXMCommandVMSet(context)
+    );
+    commands.put(
+      "vm-update-boot-configurations",
+      context -> new WXMCommandVMUpdateBootConfigurations(context)
+    );
+    commands.put(
+      "vm-watch",
+      context -> new WXMCommandVMWatch(context)
+    );
+    return Collections.unmodifiableSortedMap(commands);
+  }
+
   /**
-   * The main entry point.
+   * Select the commands that must be constructed for the given arguments.
+   * If the arguments name a command, only that command is constructed.
+   * Otherwise (for example, for the {@code help} command, which lists all
+   * commands, or for an unrecognized command), all commands are constructed.
+   */
+
+  private static List<CLPCommandConstructorType> commandsFor(
+    final String[] args)
+  {
+    for (final var argument : args) {
+      if (Objects.equals(argument, "help")) {
+        break;
+      }
+      final var constructor = COMMANDS.get(argument);
+      if (constructor != null) {
+        return List.of(constructor);
+      }
+    }
+    return List.copyOf(COMMANDS.values());
+  }
+
+  /**
+   * The main entry point. If the {@code $WAXMILL_SERVER_SOCKET} environment
+   * variable names a socket that exists, the command is forwarded to the
+   * server listening on the socket.
    *
    * @param args Command line arguments
    */
 
   public static void main(final String[] args)
   {
+    final var socket = WXMEnvironment.serverSocket();
+    if (socket != null && Files.exists(socket)) {
+      final var forwarded = forward(socket, args);
+      if (forwarded.isPresent()) {
+        System.exit(forwarded.getAsInt());
+      }
+    }
+
     final Main cm = new Main(args);
     cm.run();
     System.exit(cm.exitCode());
   }
 
+  private static OptionalInt forward(
+    final Path socket,
+    final String[] args)
+  {
+    final var arguments = List.of(args);
+    if (!WXMCommandServer.isForwardable(arguments)) {
+      return OptionalInt.empty();
+    }
+
+    final var request =
+      WXMServerRequest.builder()
+        .setArguments(arguments)
+        .setWorkingDirectory(Path.of("").toAbsolutePath())
+        .setConfigurationFile(
+          Optional.ofNullable(WXMEnvironment.configurationFile()))
+        .build();
+
+    try {
+      return OptionalInt.of(
+        WXMServerClient.execute(socket, request, System.out, System.err)
+      );
+    } catch (final WXMServerUnavailableException e) {
+      LOG.warn(
+        "server unavailable ({}); executing the command locally",
+        e.getMessage()
+      );
+      return OptionalInt.empty();
+    } catch (final IOException e) {
+      LOG.error("server failed: ", e);
+      return OptionalInt.of(1);
+    }
+  }
+
   /**
    * @return The program exit code
    */
@@ -151,18 +345,17 @@ public final class Main implements Runnable
   }
 
   /**
-   * @return The names of the available commands
+   * @return The names of all commands
    */
 
-  public Stream<String> commandNames()
+  public static Stream<String> commandNames()
   {
-    return this.commands()
-      .keySet()
-      .stream();
+    return COMMANDS.keySet().stream();
   }
 
   /**
-   * @return The available commands
+   * @return The commands constructed for the arguments given to this
+   * instance; see {@link #commandNames()} for the names of all commands
    */
 
   public SortedMap<String, CLPCommandType> commands()
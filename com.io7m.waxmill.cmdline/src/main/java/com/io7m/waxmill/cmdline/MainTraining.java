@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline;
+
+import com.io7m.waxmill.cmdline.internal.WXMTraining;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/**
+ * A training run for class data sharing archives. The training run executes
+ * a representative set of commands against a temporary configuration in a
+ * single JVM, so that a JVM started with
+ * {@code -XX:ArchiveClassesAtExit} archives the classes that those commands
+ * load. Commands that require root privileges or a FreeBSD host are not
+ * executed.
+ */
+
+public final class MainTraining
+{
+  private MainTraining()
+  {
+
+  }
+
+  /**
+   * The main entry point.
+   *
+   * @param args Command line arguments (ignored)
+   *
+   * @throws IOException On errors
+   */
+
+  // CHECKSTYLE:OFF
+  public static void main(
+    final String[] args)
+    throws IOException
+  {
+    // CHECKSTYLE:ON
+    final var directory = Files.createTempDirectory("waxmill-training-");
+    final var output = System.out;
+    try {
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      WXMTraining.train(directory);
+    } finally {
+      System.setOut(output);
+      FileUtils.deleteDirectory(directory.toFile());
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[MainTraining 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
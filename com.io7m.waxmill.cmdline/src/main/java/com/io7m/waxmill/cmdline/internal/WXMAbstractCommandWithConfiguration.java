@@ -40,7 +40,8 @@ public abstract class WXMAbstractCommandWithConfiguration
   @Parameter(
     names = "--configuration",
     description = "The path to the configuration file (environment variable: $WAXMILL_CONFIGURATION_FILE)",
-    required = false
+    required = false,
+    converter = WXMPathConverter.class
   )
   private Path configurationFile = WXMEnvironment.configurationFile();
 
@@ -0,0 +1,527 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.client.api.WXMDriftResult;
+import com.io7m.waxmill.client.api.WXMRealizeManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeManyResult;
+import com.io7m.waxmill.client.api.WXMRunManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyListenerType;
+import com.io7m.waxmill.client.api.WXMRunManyResult;
+import com.io7m.waxmill.client.api.WXMVirtualMachineEditType;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionDuplicate;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMDeviceType;
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.machines.WXMMachineMessages;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineSet;
+import com.io7m.waxmill.machines.WXMVirtualMachineSets;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchType;
+import com.io7m.waxmill.parser.api.WXMParseError;
+import com.io7m.waxmill.parser.api.WXMParseException;
+import com.io7m.waxmill.parser.api.WXMVirtualMachineParserProviderType;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.serializer.api.WXMVirtualMachineSerializerProviderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+import static com.io7m.waxmill.parser.api.WXMParseErrorType.Severity.ERROR;
+
+/**
+ * A client used by the commands of a batch. Consecutive definitions and
+ * updates of the same machine are held in memory and written with a
+ * single database operation when a different machine is modified, when
+ * any other operation is performed, or when the batch completes. Lookups
+ * of the pending machine return the pending definition. Closing the client
+ * does nothing; the underlying client is flushed and closed when the batch
+ * completes.
+ *
+ * A deferred write is checked when it is accepted: a definition must not
+ * refer to an existing machine, and the machine must survive being
+ * serialized and parsed again, as the database requires. Machines based on
+ * templates can only be checked against the template by the database, and
+ * so are written immediately. A write that nevertheless fails when it is
+ * flushed is recorded against the line of the batch that created it.
+ */
+
+final class WXMBatchClient implements WXMClientType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMBatchClient.class);
+
+  private final WXMClientType delegate;
+  private final WXMVirtualMachineSerializerProviderType serializers;
+  private final WXMVirtualMachineParserProviderType parsers;
+  private final WXMMachineMessages machineMessages;
+  private final List<WriteFailure> failures;
+  private WXMVirtualMachine pending;
+  private boolean pendingDefinition;
+  private int pendingEdits;
+  private int pendingLine;
+  private int line;
+
+  WXMBatchClient(
+    final WXMClientType inDelegate,
+    final WXMVirtualMachineSerializerProviderType inSerializers,
+    final WXMVirtualMachineParserProviderType inParsers)
+  {
+    this.delegate =
+      Objects.requireNonNull(inDelegate, "delegate");
+    this.serializers =
+      Objects.requireNonNull(inSerializers, "serializers");
+    this.parsers =
+      Objects.requireNonNull(inParsers, "parsers");
+    this.machineMessages =
+      WXMMachineMessages.create();
+    this.failures =
+      new ArrayList<>();
+  }
+
+  /**
+   * Set the line of the batch that is currently executing.
+   *
+   * @param inLine The line number
+   */
+
+  void setLine(
+    final int inLine)
+  {
+    this.line = inLine;
+  }
+
+  /**
+   * @return The machine with a pending write, if any
+   */
+
+  Optional<UUID> pendingMachine()
+  {
+    return Optional.ofNullable(this.pending).map(WXMVirtualMachine::id);
+  }
+
+  /**
+   * Retrieve and clear the writes that have failed since the last call.
+   *
+   * @return The failed writes
+   */
+
+  List<WriteFailure> takeFailures()
+  {
+    final var results = List.copyOf(this.failures);
+    this.failures.clear();
+    return results;
+  }
+
+  /**
+   * @return The underlying client
+   */
+
+  WXMClientType delegate()
+  {
+    return this.delegate;
+  }
+
+  /**
+   * Write the pending machine, if there is one.
+   *
+   * @throws WXMException On errors
+   */
+
+  void flush()
+    throws WXMException
+  {
+    final var machine = this.pending;
+    if (machine == null) {
+      return;
+    }
+
+    LOG.debug(
+      "writing {} coalesced edit(s) of machine {}",
+      Integer.valueOf(this.pendingEdits),
+      machine.id()
+    );
+
+    final var definition = this.pendingDefinition;
+    final var createdAt = this.pendingLine;
+    this.pending = null;
+    this.pendingDefinition = false;
+    this.pendingEdits = 0;
+
+    try {
+      if (definition) {
+        this.delegate.vmDefine(machine);
+      } else {
+        this.delegate.vmUpdate(machine);
+      }
+    } catch (final WXMException e) {
+      this.failures.add(new WriteFailure(createdAt, e));
+      throw e;
+    }
+  }
+
+  private void checkSerializable(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    final var uri = URI.create("urn:batch");
+    final var bytes = new ByteArrayOutputStream();
+    try {
+      try (var serializer = this.serializers.create(
+        uri, bytes, WXMVirtualMachineSets.one(machine))) {
+        serializer.execute();
+      }
+
+      final var errors = new ArrayList<WXMParseError>();
+      try (var parser = this.parsers.create(
+        FileSystems.getDefault(),
+        uri,
+        new ByteArrayInputStream(bytes.toByteArray()),
+        errors::add)) {
+        parser.parse();
+      }
+      if (errors.stream().anyMatch(e -> e.severity() == ERROR)) {
+        throw new WXMParseException(
+          String.format(
+            "The definition of virtual machine %s is invalid", machine.id()),
+          errors
+        );
+      }
+    } catch (final IOException e) {
+      throw new WXMException(e);
+    }
+  }
+
+  private boolean isPending(
+    final UUID id)
+  {
+    return this.pending != null && Objects.equals(this.pending.id(), id);
+  }
+
+  @Override
+  public void close()
+  {
+
+  }
+
+  @Override
+  public WXMVirtualMachineSet vmList()
+    throws WXMException
+  {
+    this.flush();
+    return this.delegate.vmList();
+  }
+
+  @Override
+  public WXMVirtualMachine vmFind(
+    final UUID id)
+    throws WXMException
+  {
+    if (this.isPending(id)) {
+      return this.pending;
+    }
+    return this.delegate.vmFind(id);
+  }
+
+  @Override
+  public Optional<WXMVirtualMachine> vmFindOptional(
+    final UUID id)
+    throws WXMException
+  {
+    if (this.isPending(id)) {
+      return Optional.of(this.pending);
+    }
+    return this.delegate.vmFindOptional(id);
+  }
+
+  @Override
+  public void vmUpdate(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    Objects.requireNonNull(machine, "machine");
+
+    if (!this.isPending(machine.id())) {
+      this.flush();
+    }
+    if (machine.template().isPresent()) {
+      this.pending = null;
+      this.pendingDefinition = false;
+      this.pendingEdits = 0;
+      this.delegate.vmUpdate(machine);
+      return;
+    }
+
+    this.checkSerializable(machine);
+    if (this.pending == null) {
+      this.pendingLine = this.line;
+    }
+    this.pending = machine;
+    ++this.pendingEdits;
+  }
+
+  @Override
+  public void vmDefine(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    Objects.requireNonNull(machine, "machine");
+
+    this.flush();
+    if (machine.template().isPresent()) {
+      this.delegate.vmDefine(machine);
+      return;
+    }
+
+    final var existing = this.delegate.vmFindOptional(machine.id());
+    if (existing.isPresent()) {
+      throw this.errorMachineAlreadyExists(machine, existing.get());
+    }
+
+    this.checkSerializable(machine);
+    this.pending = machine;
+    this.pendingDefinition = true;
+    this.pendingEdits = 1;
+    this.pendingLine = this.line;
+  }
+
+  private WXMExceptionDuplicate errorMachineAlreadyExists(
+    final WXMVirtualMachine machineA,
+    final WXMVirtualMachine machineB)
+  {
+    return new WXMExceptionDuplicate(
+      this.machineMessages.format(
+        "errorMachineAlreadyExists",
+        machineA.id(),
+        machineA.name().value(),
+        machineA.configurationFile().map(URI::toString).orElse("<unspecified>"),
+        machineB.name().value(),
+        machineB.configurationFile().map(URI::toString).orElse("<unspecified>")
+      ));
+  }
+
+  @Override
+  public void vmUpdateAll(
+    final WXMVirtualMachineSet machines)
+    throws WXMException
+  {
+    this.flush();
+    this.delegate.vmUpdateAll(machines);
+  }
+
+  @Override
+  public WXMVirtualMachineEditType vmEdit(
+    final UUID id)
+    throws WXMException
+  {
+    this.flush();
+    return this.delegate.vmEdit(id);
+  }
+
+  @Override
+  public WXMClientConfiguration configuration()
+  {
+    return this.delegate.configuration();
+  }
+
+  @Override
+  public WXMVirtualMachineWatchType vmWatch(
+    final WXMVirtualMachineWatchConfiguration configuration,
+    final WXMVirtualMachineWatchListenerType listener)
+    throws WXMException
+  {
+    this.flush();
+    return this.delegate.vmWatch(configuration, listener);
+  }
+
+  @Override
+  public void vmDefineAll(
+    final WXMVirtualMachineSet machines)
+    throws WXMException
+  {
+    this.flush();
+    this.delegate.vmDefineAll(machines);
+  }
+
+  @Override
+  public void vmRun(
+    final WXMVirtualMachine machine,
+    final WXMBootConfigurationName bootConfigurationName,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    this.flush();
+    this.delegate.vmRun(machine, bootConfigurationName, dryRun);
+  }
+
+  @Override
+  public void vmRun(
+    final UUID id,
+    final WXMBootConfigurationName bootConfigurationName,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    this.flush();
+    this.delegate.vmRun(id, bootConfigurationName, dryRun);
+  }
+
+  @Override
+  public WXMRunManyResult vmRunMany(
+    final WXMRunManyConfiguration configuration,
+    final WXMRunManyListenerType listener,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    this.flush();
+    return this.delegate.vmRunMany(configuration, listener, dryRun);
+  }
+
+  @Override
+  public WXMDriftResult vmDrift(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    this.flush();
+    return this.delegate.vmDrift(machine);
+  }
+
+  @Override
+  public void vmDelete(
+    final UUID id)
+    throws WXMException
+  {
+    this.flush();
+    this.delegate.vmDelete(id);
+  }
+
+  @Override
+  public Optional<WXMDeviceType> vmConsoleGet(
+    final WXMVirtualMachine machine)
+  {
+    return this.delegate.vmConsoleGet(machine);
+  }
+
+  @Override
+  public Optional<WXMProcessDescription> vmConsole(
+    final WXMVirtualMachine machine)
+  {
+    return this.delegate.vmConsole(machine);
+  }
+
+  @Override
+  public void vmRealize(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun)
+    throws WXMException
+  {
+    this.flush();
+    this.delegate.vmRealize(machine, dryRun);
+  }
+
+  @Override
+  public void vmRealize(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun,
+    final int maxConcurrentSteps,
+    final boolean force)
+    throws WXMException
+  {
+    this.flush();
+    this.delegate.vmRealize(machine, dryRun, maxConcurrentSteps, force);
+  }
+
+  @Override
+  public WXMRealizeManyResult vmRealizeMany(
+    final WXMRealizeManyConfiguration configuration,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    this.flush();
+    return this.delegate.vmRealizeMany(configuration, dryRun);
+  }
+
+  @Override
+  public void vmKill(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun)
+    throws WXMException
+  {
+    this.flush();
+    this.delegate.vmKill(machine, dryRun);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMBatchClient 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+
+  /**
+   * A deferred write that failed when it was flushed.
+   */
+
+  static final class WriteFailure
+  {
+    private final int line;
+    private final WXMException exception;
+
+    WriteFailure(
+      final int inLine,
+      final WXMException inException)
+    {
+      this.line = inLine;
+      this.exception = Objects.requireNonNull(inException, "exception");
+    }
+
+    /**
+     * @return The line of the batch that created the write
+     */
+
+    int line()
+    {
+      return this.line;
+    }
+
+    /**
+     * @return The exception raised by the write
+     */
+
+    WXMException exception()
+    {
+      return this.exception;
+    }
+  }
+}
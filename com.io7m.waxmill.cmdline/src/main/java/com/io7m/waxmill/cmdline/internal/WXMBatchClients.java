@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMClientProviderType;
+import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptions;
+import com.io7m.waxmill.parser.api.WXMVirtualMachineParserProviderType;
+import com.io7m.waxmill.serializer.api.WXMVirtualMachineSerializerProviderType;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A client provider that opens each configuration at most once for the
+ * duration of a batch, and returns a {@link WXMBatchClient} for it.
+ * Closing the provider writes any pending machine definitions and closes
+ * the underlying clients.
+ */
+
+final class WXMBatchClients
+  implements WXMClientProviderType, AutoCloseable
+{
+  private final WXMClientProviderType delegate;
+  private final WXMVirtualMachineSerializerProviderType serializers;
+  private final WXMVirtualMachineParserProviderType parsers;
+  private final Map<Path, WXMBatchClient> byFile;
+  private final Map<WXMClientConfiguration, WXMBatchClient> byConfiguration;
+  private final List<WXMBatchClient> clients;
+
+  WXMBatchClients(
+    final WXMClientProviderType inDelegate,
+    final WXMVirtualMachineSerializerProviderType inSerializers,
+    final WXMVirtualMachineParserProviderType inParsers)
+  {
+    this.delegate =
+      Objects.requireNonNull(inDelegate, "delegate");
+    this.serializers =
+      Objects.requireNonNull(inSerializers, "serializers");
+    this.parsers =
+      Objects.requireNonNull(inParsers, "parsers");
+    this.byFile =
+      new HashMap<>();
+    this.byConfiguration =
+      new HashMap<>();
+    this.clients =
+      new ArrayList<>();
+  }
+
+  @Override
+  public WXMClientType open(
+    final WXMClientConfiguration configuration)
+    throws WXMException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var existing = this.byConfiguration.get(configuration);
+    if (existing != null) {
+      return existing;
+    }
+
+    final var client =
+      new WXMBatchClient(
+        this.delegate.open(configuration), this.serializers, this.parsers);
+    this.byConfiguration.put(configuration, client);
+    this.clients.add(client);
+    return client;
+  }
+
+  @Override
+  public WXMClientType open(
+    final Path configurationFile)
+    throws WXMException
+  {
+    Objects.requireNonNull(configurationFile, "configurationFile");
+
+    final var key = configurationFile.toAbsolutePath().normalize();
+    final var existing = this.byFile.get(key);
+    if (existing != null) {
+      return existing;
+    }
+
+    final var client =
+      new WXMBatchClient(
+        this.delegate.open(key), this.serializers, this.parsers);
+    this.byFile.put(key, client);
+    this.clients.add(client);
+    return client;
+  }
+
+  /**
+   * Set the line of the batch that is currently executing.
+   *
+   * @param line The line number
+   */
+
+  void setLine(
+    final int line)
+  {
+    for (final var client : this.clients) {
+      client.setLine(line);
+    }
+  }
+
+  /**
+   * Write any pending machine definitions, unless the next command of the
+   * batch operates only on the pending machine. Failures are recorded
+   * against the lines that created the writes, and can be retrieved with
+   * {@link #takeFailures()}.
+   *
+   * @param nextMachines The machines used by the next command, if known
+   */
+
+  void flushUnless(
+    final Optional<Set<UUID>> nextMachines)
+  {
+    Objects.requireNonNull(nextMachines, "nextMachines");
+
+    for (final var client : this.clients) {
+      final var pending = client.pendingMachine();
+      if (pending.isEmpty()) {
+        continue;
+      }
+      if (nextMachines.equals(Optional.of(Set.of(pending.get())))) {
+        continue;
+      }
+      try {
+        client.flush();
+      } catch (final WXMException e) {
+        // Recorded by the client
+      }
+    }
+  }
+
+  /**
+   * Retrieve and clear the writes that have failed since the last call.
+   *
+   * @return The failed writes
+   */
+
+  List<WXMBatchClient.WriteFailure> takeFailures()
+  {
+    final var results = new ArrayList<WXMBatchClient.WriteFailure>();
+    for (final var client : this.clients) {
+      results.addAll(client.takeFailures());
+    }
+    return results;
+  }
+
+  @Override
+  public void close()
+    throws WXMException
+  {
+    final var exceptions = new WXMExceptions();
+    for (final var client : this.clients) {
+      try {
+        client.flush();
+      } catch (final WXMException e) {
+        exceptions.add(e);
+      }
+      try {
+        client.delegate().close();
+      } catch (final WXMException e) {
+        exceptions.add(e);
+      }
+    }
+
+    this.clients.clear();
+    this.byFile.clear();
+    this.byConfiguration.clear();
+    exceptions.throwIfRequired();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMBatchClients 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
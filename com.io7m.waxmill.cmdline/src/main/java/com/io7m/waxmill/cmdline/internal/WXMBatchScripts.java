@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Functions to parse batch scripts. A batch script contains one command
+ * per line, written as it would be given to a POSIX shell: arguments are
+ * separated by whitespace, and may be quoted with single or double quotes,
+ * or escaped with a backslash. Empty lines, and lines beginning with
+ * {@code #}, are ignored. Variables, globs, and line continuations are not
+ * supported.
+ */
+
+final class WXMBatchScripts
+{
+  private WXMBatchScripts()
+  {
+
+  }
+
+  /**
+   * A command in a batch script.
+   */
+
+  static final class Command
+  {
+    private final int line;
+    private final List<String> arguments;
+
+    Command(
+      final int inLine,
+      final List<String> inArguments)
+    {
+      this.line = inLine;
+      this.arguments = List.copyOf(inArguments);
+    }
+
+    /**
+     * @return The line number of the command, starting at 1
+     */
+
+    int line()
+    {
+      return this.line;
+    }
+
+    /**
+     * @return The command arguments
+     */
+
+    List<String> arguments()
+    {
+      return this.arguments;
+    }
+  }
+
+  /**
+   * Parse a batch script.
+   *
+   * @param reader The script
+   *
+   * @return The commands in the script
+   *
+   * @throws IOException    On I/O errors
+   * @throws ParseException On syntax errors; the error offset is the line
+   *                        number
+   */
+
+  static List<Command> parse(
+    final BufferedReader reader)
+    throws IOException, ParseException
+  {
+    Objects.requireNonNull(reader, "reader");
+
+    final var commands = new ArrayList<Command>();
+    int line = 0;
+    while (true) {
+      final var text = reader.readLine();
+      if (text == null) {
+        break;
+      }
+      ++line;
+
+      final var arguments = tokenize(text, line);
+      if (!arguments.isEmpty()) {
+        commands.add(new Command(line, arguments));
+      }
+    }
+    return List.copyOf(commands);
+  }
+
+  /**
+   * Split a line into arguments.
+   *
+   * @param text The line
+   * @param line The line number
+   *
+   * @return The arguments
+   *
+   * @throws ParseException On syntax errors
+   */
+
+  static List<String> tokenize(
+    final String text,
+    final int line)
+    throws ParseException
+  {
+    final var arguments = new ArrayList<String>();
+    final var current = new StringBuilder(64);
+    boolean inToken = false;
+    int index = 0;
+
+    while (index < text.length()) {
+      final char c = text.charAt(index);
+      switch (c) {
+        case ' ':
+        case '\t':
+        case '\r': {
+          if (inToken) {
+            arguments.add(current.toString());
+            current.setLength(0);
+            inToken = false;
+          }
+          ++index;
+          break;
+        }
+        case '#': {
+          if (!inToken) {
+            return List.copyOf(arguments);
+          }
+          current.append(c);
+          ++index;
+          break;
+        }
+        case '\\': {
+          if (index + 1 >= text.length()) {
+            throw new ParseException(
+              "Backslash at end of line", line);
+          }
+          current.append(text.charAt(index + 1));
+          inToken = true;
+          index += 2;
+          break;
+        }
+        case '\'': {
+          final int end = text.indexOf('\'', index + 1);
+          if (end < 0) {
+            throw new ParseException(
+              "Unterminated single-quoted string", line);
+          }
+          current.append(text, index + 1, end);
+          inToken = true;
+          index = end + 1;
+          break;
+        }
+        case '"': {
+          index = doubleQuoted(text, line, index + 1, current);
+          inToken = true;
+          break;
+        }
+        default: {
+          current.append(c);
+          inToken = true;
+          ++index;
+          break;
+        }
+      }
+    }
+
+    if (inToken) {
+      arguments.add(current.toString());
+    }
+    return List.copyOf(arguments);
+  }
+
+  private static int doubleQuoted(
+    final String text,
+    final int line,
+    final int start,
+    final StringBuilder current)
+    throws ParseException
+  {
+    int index = start;
+    while (index < text.length()) {
+      final char c = text.charAt(index);
+      if (c == '"') {
+        return index + 1;
+      }
+      if (c == '\\' && index + 1 < text.length()) {
+        final char next = text.charAt(index + 1);
+        if (next == '"' || next == '\\') {
+          current.append(next);
+          index += 2;
+          continue;
+        }
+      }
+      current.append(c);
+      ++index;
+    }
+    throw new ParseException("Unterminated double-quoted string", line);
+  }
+}
@@ -76,9 +76,17 @@ public final class WXMCommandSchema extends CLPAbstractCommand
           WXMSchemas.configSchemaV1p0Namespace(),
           WXMSchemas.configSchemaV1p0()
         ),
+        Map.entry(
+          WXMSchemas.configSchemaV1p1Namespace(),
+          WXMSchemas.configSchemaV1p1()
+        ),
         Map.entry(
           WXMSchemas.vmSchemaV1p0Namespace(),
           WXMSchemas.vmSchemaV1p0()
+        ),
+        Map.entry(
+          WXMSchemas.vmSchemaV1p1Namespace(),
+          WXMSchemas.vmSchemaV1p1()
         )
       );
 
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPAbstractCommand;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.waxmill.cmdline.Main;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.server.WXMServer;
+import com.io7m.waxmill.server.WXMServerClientCache;
+import com.io7m.waxmill.server.WXMServerRequest;
+import com.io7m.waxmill.server.WXMServerRoutedOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The "server" command.
+ */
+
+@Parameters(commandDescription = "Execute commands on behalf of thin clients.")
+public final class WXMCommandServer extends CLPAbstractCommand
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMCommandServer.class);
+
+  /**
+   * The commands that are never forwarded to a server. The vm-run and
+   * vm-console commands replace the current process, and the vm-run-many
+   * command supervises child processes for the lifetime of the process
+   * that started them.
+   */
+
+  private static final Set<String> LOCAL_COMMANDS =
+    Set.of(
+      "server",
+      "vm-batch",
+      "vm-console",
+      "vm-run",
+      "vm-run-many",
+      "vm-watch"
+    );
+
+  private final WXMMessages messages;
+  private final WXMServerRequestLocks requestLocks;
+
+  @Parameter(
+    names = "--socket",
+    description = "The path to the server socket (environment variable: $WAXMILL_SERVER_SOCKET)",
+    required = false
+  )
+  private Path socket = WXMEnvironment.serverSocket();
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public WXMCommandServer(
+    final CLPCommandContextType inContext)
+  {
+    super(inContext);
+    this.messages = WXMMessages.create();
+    this.requestLocks = new WXMServerRequestLocks();
+  }
+
+  /**
+   * Determine whether a command may be forwarded to a server.
+   *
+   * @param arguments The command-line arguments
+   *
+   * @return {@code true} if the command can be executed by a server
+   */
+
+  public static boolean isForwardable(
+    final List<String> arguments)
+  {
+    return arguments.isEmpty() || !LOCAL_COMMANDS.contains(arguments.get(0));
+  }
+
+  @Override
+  public String extendedHelp()
+  {
+    return this.messages.format("serverHelp");
+  }
+
+  @Override
+  public String name()
+  {
+    return "server";
+  }
+
+  @Override
+  protected Status executeActual()
+    throws Exception
+  {
+    if (this.socket == null) {
+      LOG.error("{}", this.messages.format("errorServerSocketMissing"));
+      return FAILURE;
+    }
+
+    final var originalOut = System.out;
+    final var originalErr = System.err;
+    final var routedOut = new WXMServerRoutedOutputStream(originalOut);
+    final var routedErr = new WXMServerRoutedOutputStream(originalErr);
+
+    try (var clients = WXMServerClientCache.create(WXMServices.clients())) {
+      WXMServices.setClientsOverride(clients);
+      System.setOut(new PrintStream(routedOut, true, UTF_8));
+      System.setErr(new PrintStream(routedErr, true, UTF_8));
+
+      try (var server = WXMServer.create(
+        this.socket,
+        (request, output, error) ->
+          this.handle(routedOut, routedErr, request, output, error))) {
+        final var shutdown = new Thread(() -> closeOnShutdown(server));
+        Runtime.getRuntime().addShutdownHook(shutdown);
+        server.run();
+      }
+    } finally {
+      WXMServices.setClientsOverride(null);
+      System.setOut(originalOut);
+      System.setErr(originalErr);
+    }
+    return SUCCESS;
+  }
+
+  private static void closeOnShutdown(
+    final WXMServer server)
+  {
+    try {
+      server.close();
+    } catch (final IOException e) {
+      LOG.error("unable to close server: ", e);
+    }
+  }
+
+  private int handle(
+    final WXMServerRoutedOutputStream routedOut,
+    final WXMServerRoutedOutputStream routedErr,
+    final WXMServerRequest request,
+    final OutputStream output,
+    final OutputStream error)
+    throws WXMException
+  {
+    WXMEnvironment.setConfigurationFileOverride(request.configurationFile());
+    WXMEnvironment.setWorkingDirectoryOverride(request.workingDirectory());
+    routedOut.routeTo(output);
+    routedErr.routeTo(error);
+
+    try {
+      final var arguments = request.arguments();
+      if (!isForwardable(arguments)) {
+        LOG.error(
+          "{}",
+          this.messages.format("errorServerLocalCommand", arguments.get(0))
+        );
+        return 1;
+      }
+
+      try (var ignored = this.requestLocks.lockFor(arguments)) {
+        final var main = new Main(arguments.toArray(new String[0]));
+        main.run();
+        return main.exitCode();
+      }
+    } finally {
+      System.out.flush();
+      System.err.flush();
+      routedOut.unroute();
+      routedErr.unroute();
+      WXMEnvironment.clearConfigurationFileOverride();
+      WXMEnvironment.clearWorkingDirectoryOverride();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMCommandServer 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
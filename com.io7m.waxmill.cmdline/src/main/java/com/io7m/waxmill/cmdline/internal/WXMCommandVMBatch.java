@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.waxmill.cmdline.Main;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The "vm-batch" command.
+ */
+
+@Parameters(commandDescription = "Execute a sequence of commands.")
+public final class WXMCommandVMBatch extends WXMAbstractCommandWithConfiguration
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMCommandVMBatch.class);
+
+  private static final Set<String> EXCLUDED_COMMANDS =
+    Set.of(
+      "server",
+      "vm-batch",
+      "vm-console",
+      "vm-run",
+      "vm-run-many",
+      "vm-watch"
+    );
+
+  @Parameter(
+    names = "--file",
+    description = "The file containing commands (or - to read standard input)",
+    required = false
+  )
+  private Path file = Path.of("-");
+
+  @Parameter(
+    names = "--keep-going",
+    description = "Continue executing commands after a command fails",
+    required = false,
+    arity = 1
+  )
+  private boolean keepGoing;
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public WXMCommandVMBatch(
+    final CLPCommandContextType inContext)
+  {
+    super(LOG, inContext);
+  }
+
+  @Override
+  public String extendedHelp()
+  {
+    return this.messages().format("vmBatchHelp");
+  }
+
+  @Override
+  public String name()
+  {
+    return "vm-batch";
+  }
+
+  @Override
+  protected Status executeActualWithConfiguration(
+    final Path configurationPath)
+    throws Exception
+  {
+    final List<WXMBatchScripts.Command> commands;
+    try {
+      commands = this.readCommands();
+    } catch (final ParseException e) {
+      this.error(
+        "errorBatchParse",
+        this.file,
+        Integer.valueOf(e.getErrorOffset()),
+        e.getMessage()
+      );
+      return FAILURE;
+    }
+
+    for (final var command : commands) {
+      final var name = commandName(command.arguments());
+      if (name.isPresent() && EXCLUDED_COMMANDS.contains(name.get())) {
+        this.error(
+          "errorBatchCommandNotAllowed",
+          Integer.valueOf(command.line()),
+          name.get()
+        );
+        return FAILURE;
+      }
+    }
+
+    boolean failed;
+    try (var clients = new WXMBatchClients(
+      WXMServices.clients(),
+      WXMServices.vmSerializers(),
+      WXMServices.vmParsers())) {
+      WXMServices.setClientsOverride(clients);
+      WXMEnvironment.setConfigurationFileOverride(
+        Optional.of(configurationPath));
+
+      failed = this.executeCommands(clients, commands);
+      clients.flushUnless(Optional.empty());
+      failed |= this.reportWriteFailures(clients);
+    } finally {
+      WXMServices.setClientsOverride(null);
+      WXMEnvironment.clearConfigurationFileOverride();
+    }
+
+    return failed ? FAILURE : SUCCESS;
+  }
+
+  private boolean executeCommands(
+    final WXMBatchClients clients,
+    final List<WXMBatchScripts.Command> commands)
+  {
+    boolean failed = false;
+    for (int index = 0; index < commands.size(); ++index) {
+      final var command = commands.get(index);
+      final var arguments = command.arguments();
+      LOG.debug("{}: {}", Integer.valueOf(command.line()), arguments);
+
+      clients.setLine(command.line());
+      final var main = new Main(arguments.toArray(new String[0]));
+      main.run();
+
+      final var commandFailed = main.exitCode() != 0;
+      if (commandFailed) {
+        this.error(
+          "errorBatchCommandFailed",
+          Integer.valueOf(command.line()),
+          String.join(" ", arguments)
+        );
+      }
+
+      final Optional<Set<UUID>> nextMachines;
+      if (index + 1 < commands.size()) {
+        nextMachines = WXMServerRequestLocks.machinesOf(
+          commands.get(index + 1).arguments());
+      } else {
+        nextMachines = Optional.empty();
+      }
+      clients.flushUnless(nextMachines);
+
+      final var writesFailed = this.reportWriteFailures(clients);
+      if (commandFailed || writesFailed) {
+        failed = true;
+        if (!this.keepGoing) {
+          break;
+        }
+      }
+    }
+
+    return failed;
+  }
+
+  private boolean reportWriteFailures(
+    final WXMBatchClients clients)
+  {
+    final var failures = clients.takeFailures();
+    for (final var failure : failures) {
+      this.error(
+        "errorBatchWriteFailed",
+        Integer.valueOf(failure.line()),
+        failure.exception().getMessage()
+      );
+    }
+    return !failures.isEmpty();
+  }
+
+  private List<WXMBatchScripts.Command> readCommands()
+    throws IOException, ParseException
+  {
+    if ("-".equals(this.file.toString())) {
+      final var reader =
+        new BufferedReader(new InputStreamReader(System.in, UTF_8));
+      return WXMBatchScripts.parse(reader);
+    }
+
+    try (var reader = Files.newBufferedReader(this.file, UTF_8)) {
+      return WXMBatchScripts.parse(reader);
+    }
+  }
+
+  private static Optional<String> commandName(
+    final List<String> arguments)
+  {
+    final var names =
+      Main.commandNames()
+        .collect(Collectors.toSet());
+
+    return arguments.stream()
+      .filter(names::contains)
+      .findFirst();
+  }
+}
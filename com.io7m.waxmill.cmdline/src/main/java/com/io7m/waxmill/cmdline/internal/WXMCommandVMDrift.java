@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.waxmill.client.api.WXMDriftResult;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+
+/**
+ * The "vm-drift" command.
+ */
+
+@Parameters(commandDescription = "Find virtual machines whose configurations have changed since they were started.")
+public final class WXMCommandVMDrift extends WXMAbstractCommandWithConfiguration
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMCommandVMDrift.class);
+
+  @Parameter(
+    names = "--machine",
+    description = "The ID(s) of the virtual machines (defaults to all machines)",
+    required = false,
+    converter = WXMUUIDConverter.class
+  )
+  private List<UUID> ids = new ArrayList<>();
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public WXMCommandVMDrift(
+    final CLPCommandContextType inContext)
+  {
+    super(LOG, inContext);
+  }
+
+  @Override
+  public String extendedHelp()
+  {
+    return this.messages().format("vmDriftHelp");
+  }
+
+  @Override
+  public String name()
+  {
+    return "vm-drift";
+  }
+
+  @Override
+  protected Status executeActualWithConfiguration(
+    final Path configurationPath)
+    throws Exception
+  {
+    try (var client = WXMServices.clients().open(configurationPath)) {
+      final var machines = new ArrayList<WXMVirtualMachine>();
+      if (this.ids.isEmpty()) {
+        machines.addAll(client.vmList().machines().values());
+      } else {
+        for (final var id : this.ids) {
+          machines.add(client.vmFind(id));
+        }
+      }
+
+      if (machines.isEmpty()) {
+        return SUCCESS;
+      }
+
+      System.out.printf("# %-40s %-18s %s%n", "ID", "Status", "Boot");
+      for (final var machine : machines) {
+        showResult(client.vmDrift(machine));
+      }
+    }
+    return SUCCESS;
+  }
+
+  private static void showResult(
+    final WXMDriftResult result)
+  {
+    System.out.printf(
+      "%-42s %-18s %s%n",
+      result.machine(),
+      result.status().externalName(),
+      result.bootConfiguration()
+        .map(WXMBootConfigurationName::value)
+        .orElse("-")
+    );
+  }
+}
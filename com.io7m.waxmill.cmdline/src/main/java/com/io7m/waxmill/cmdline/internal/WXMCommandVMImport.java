@@ -45,7 +45,8 @@ public final class WXMCommandVMImport extends
   @Parameter(
     names = "--file",
     description = "Files containing virtual machine descriptions",
-    required = false
+    required = false,
+    converter = WXMPathConverter.class
   )
   private List<Path> files = List.of();
 
@@ -56,6 +56,21 @@ public final class WXMCommandVMRealize extends
   )
   private boolean dryRun;
 
+  @Parameter(
+    names = "--force",
+    description = "Realize the virtual machine even if already realized with the current definition.",
+    required = false,
+    arity = 1
+  )
+  private boolean force;
+
+  @Parameter(
+    names = "--max-concurrent-steps",
+    description = "The maximum number of realization steps that may execute at any given time.",
+    required = false
+  )
+  private int maxConcurrentSteps = 4;
+
   /**
    * Construct a command.
    *
@@ -81,7 +96,12 @@ public final class WXMCommandVMRealize extends
   {
     try (var client = WXMServices.clients().open(configurationPath)) {
       final var machine = client.vmFind(this.id);
-      client.vmRealize(machine, this.dryRun ? DRY_RUN : EXECUTE);
+      client.vmRealize(
+        machine,
+        this.dryRun ? DRY_RUN : EXECUTE,
+        this.maxConcurrentSteps,
+        this.force
+      );
     }
     return SUCCESS;
   }
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.client.api.WXMRealizeManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeResult;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMTag;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+
+/**
+ * The "vm-realize-many" command.
+ */
+
+@Parameters(commandDescription = "Realize a set of virtual machines.")
+public final class WXMCommandVMRealizeMany
+  extends WXMAbstractCommandWithConfiguration
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMCommandVMRealizeMany.class);
+
+  @Parameter(
+    names = "--machine",
+    description = "The ID(s) of the virtual machines",
+    required = false,
+    converter = WXMUUIDConverter.class
+  )
+  private List<UUID> ids = new ArrayList<>();
+
+  @Parameter(
+    names = "--tag",
+    description = "Realize the virtual machines that have the given tag(s)",
+    required = false,
+    converter = WXMTagConverter.class
+  )
+  private List<WXMTag> tags = new ArrayList<>();
+
+  @Parameter(
+    names = "--all",
+    description = "Realize all virtual machines.",
+    required = false,
+    arity = 1
+  )
+  private boolean all;
+
+  @Parameter(
+    names = "--max-concurrent-steps",
+    description = "The maximum number of realization steps that may execute at any given time.",
+    required = false
+  )
+  private int maxConcurrentSteps = 4;
+
+  @Parameter(
+    names = "--batch-zfs",
+    description = "Create all missing ZFS filesystems and volumes in a single batch.",
+    required = false,
+    arity = 1
+  )
+  private boolean batchZFS;
+
+  @Parameter(
+    names = "--force",
+    description = "Realize the virtual machines even if already realized with the current definition.",
+    required = false,
+    arity = 1
+  )
+  private boolean force;
+
+  @Parameter(
+    names = "--dry-run",
+    description = "Show the commands that would be executed, but do not execute them.",
+    required = false,
+    arity = 1
+  )
+  private boolean dryRun;
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public WXMCommandVMRealizeMany(
+    final CLPCommandContextType inContext)
+  {
+    super(LOG, inContext);
+  }
+
+  @Override
+  public String extendedHelp()
+  {
+    return this.messages().format("vmRealizeManyHelp");
+  }
+
+  @Override
+  public String name()
+  {
+    return "vm-realize-many";
+  }
+
+  @Override
+  protected Status executeActualWithConfiguration(
+    final Path configurationPath)
+    throws Exception
+  {
+    if (!this.all && this.ids.isEmpty() && this.tags.isEmpty()) {
+      this.error("errorRealizeManyNothingSelected");
+      return FAILURE;
+    }
+
+    try (var client = WXMServices.clients().open(configurationPath)) {
+      final var machines = this.selectMachines(client);
+
+      final var result =
+        client.vmRealizeMany(
+          WXMRealizeManyConfiguration.builder()
+            .setMaxConcurrentSteps(this.maxConcurrentSteps)
+            .setBatchZFSCreation(this.batchZFS)
+            .setForce(this.force)
+            .addAllMachines(machines)
+            .build(),
+          this.dryRun ? DRY_RUN : EXECUTE
+        );
+
+      if (result.results().isEmpty()) {
+        return SUCCESS;
+      }
+
+      System.out.printf("# %-40s %-8s %s%n", "ID", "Steps", "Time (ms)");
+      for (final var machineResult : result.results()) {
+        showResult(machineResult);
+      }
+
+      final var failed =
+        result.results()
+          .stream()
+          .filter(r -> r.failure().isPresent())
+          .count();
+
+      if (failed > 0L) {
+        for (final var machineResult : result.results()) {
+          final var failure = machineResult.failure();
+          if (failure.isPresent()) {
+            this.error(
+              "errorMachineRealizeFailed",
+              machineResult.machine(),
+              failure.get()
+            );
+          }
+        }
+        this.error(
+          "errorMachinesFailedToRealize",
+          Long.valueOf(failed),
+          Integer.valueOf(result.results().size())
+        );
+        return FAILURE;
+      }
+    }
+    return SUCCESS;
+  }
+
+  private Collection<WXMVirtualMachine> selectMachines(
+    final WXMClientType client)
+    throws WXMException
+  {
+    final var selected = new LinkedHashMap<UUID, WXMVirtualMachine>();
+    for (final var id : this.ids) {
+      selected.put(id, client.vmFind(id));
+    }
+
+    if (this.all || !this.tags.isEmpty()) {
+      for (final var machine : client.vmList().machines().values()) {
+        if (this.all || this.tags.stream().anyMatch(machine.tags()::contains)) {
+          selected.putIfAbsent(machine.id(), machine);
+        }
+      }
+    }
+    return selected.values();
+  }
+
+  private static void showResult(
+    final WXMRealizeResult result)
+  {
+    System.out.printf(
+      "%-42s %-8d %d%n",
+      result.machine(),
+      Integer.valueOf(result.steps()),
+      Long.valueOf(result.duration().toMillis())
+    );
+  }
+}
@@ -94,9 +94,8 @@ public final class WXMCommandVMRun extends WXMAbstractCommandWithConfiguration
     throws Exception
   {
     try (var client = WXMServices.clients().open(configurationPath)) {
-      final var machine = client.vmFind(this.id);
       client.vmRun(
-        machine,
+        this.id,
         this.bootConfiguration,
         this.dryRun ? DRY_RUN : EXECUTE
       );
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.waxmill.client.api.WXMRunManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyListenerType;
+import com.io7m.waxmill.client.api.WXMStartDependency;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+
+/**
+ * The "vm-run-many" command.
+ */
+
+@Parameters(commandDescription = "Run a set of virtual machines as child processes.")
+public final class WXMCommandVMRunMany extends WXMAbstractCommandWithConfiguration
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMCommandVMRunMany.class);
+
+  @Parameter(
+    names = "--machine",
+    description = "The ID(s) of the virtual machines",
+    required = true,
+    converter = WXMUUIDConverter.class
+  )
+  private List<UUID> ids = new ArrayList<>();
+
+  @Parameter(
+    names = "--boot-configuration",
+    description = "The name of the boot configuration to use for each machine.",
+    required = true,
+    converter = WXMBootConfigurationNameConverter.class
+  )
+  private WXMBootConfigurationName bootConfiguration;
+
+  @Parameter(
+    names = "--max-concurrent-starts",
+    description = "The maximum number of machines that may be starting at any given time.",
+    required = false
+  )
+  private int maxConcurrentStarts = 4;
+
+  @Parameter(
+    names = "--start-after",
+    description = "A start-order dependency of the form TAG:TAG.",
+    required = false,
+    converter = WXMStartDependencyConverter.class
+  )
+  private List<WXMStartDependency> startDependencies = new ArrayList<>();
+
+  @Parameter(
+    names = "--dry-run",
+    description = "Show the commands that would be executed, but do not execute them.",
+    required = false,
+    arity = 1
+  )
+  private boolean dryRun;
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public WXMCommandVMRunMany(
+    final CLPCommandContextType inContext)
+  {
+    super(LOG, inContext);
+  }
+
+  @Override
+  public String extendedHelp()
+  {
+    return this.messages().format("vmRunManyHelp");
+  }
+
+  @Override
+  public String name()
+  {
+    return "vm-run-many";
+  }
+
+  @Override
+  protected Status executeActualWithConfiguration(
+    final Path configurationPath)
+    throws Exception
+  {
+    try (var client = WXMServices.clients().open(configurationPath)) {
+      final var configuration =
+        WXMRunManyConfiguration.builder()
+          .setBootConfigurationName(this.bootConfiguration)
+          .setMaxConcurrentStarts(this.maxConcurrentStarts)
+          .addAllStartDependencies(this.startDependencies);
+
+      for (final var id : this.ids) {
+        configuration.addMachines(client.vmFind(id));
+      }
+
+      final var result =
+        client.vmRunMany(
+          configuration.build(),
+          new Listener(),
+          this.dryRun ? DRY_RUN : EXECUTE
+        );
+
+      final var failed =
+        result.results()
+          .stream()
+          .filter(r -> r.failure().isPresent())
+          .count();
+
+      if (failed > 0L) {
+        this.error(
+          "errorMachinesFailedToStart",
+          Long.valueOf(failed),
+          Integer.valueOf(result.results().size())
+        );
+        return FAILURE;
+      }
+    }
+    return SUCCESS;
+  }
+
+  private final class Listener implements WXMRunManyListenerType
+  {
+    Listener()
+    {
+
+    }
+
+    @Override
+    public void onMachineStarted(
+      final UUID machine,
+      final Duration waitTime,
+      final Duration startLatency)
+    {
+      WXMCommandVMRunMany.this.info(
+        "infoMachineStarted",
+        machine,
+        String.valueOf(startLatency.toMillis()),
+        String.valueOf(waitTime.toMillis())
+      );
+    }
+
+    @Override
+    public void onMachineExited(
+      final UUID machine,
+      final int exitCode)
+    {
+      WXMCommandVMRunMany.this.info(
+        "infoMachineExited",
+        machine,
+        Integer.valueOf(exitCode)
+      );
+    }
+  }
+}
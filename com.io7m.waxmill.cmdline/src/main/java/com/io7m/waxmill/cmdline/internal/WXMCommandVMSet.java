@@ -19,13 +19,28 @@ package com.io7m.waxmill.cmdline.internal;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.exceptions.WXMException;
 import com.io7m.waxmill.machines.WXMFlags;
+import com.io7m.waxmill.machines.WXMTag;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
+import static com.io7m.claypot.core.CLPCommandType.Status.FAILURE;
 import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
 
 /**
@@ -38,13 +53,78 @@ public final class WXMCommandVMSet extends WXMAbstractCommandWithConfiguration
   private static final Logger LOG =
     LoggerFactory.getLogger(WXMCommandVMSet.class);
 
+  private static final List<FlagField> FLAG_FIELDS =
+    List.of(
+      new FlagField(
+        "--disable-mptable-generation",
+        WXMFlags::disableMPTableGeneration),
+      new FlagField(
+        "--exit-on-PAUSE",
+        WXMFlags::exitOnPAUSE),
+      new FlagField(
+        "--force-msi-interrupts",
+        WXMFlags::forceVirtualIOPCIToUseMSI),
+      new FlagField(
+        "--generate-acpi-tables",
+        WXMFlags::generateACPITables),
+      new FlagField(
+        "--guest-apic-is-x2apic",
+        WXMFlags::guestAPICIsX2APIC),
+      new FlagField(
+        "--ignore-unimplemented-msr",
+        WXMFlags::ignoreUnimplementedModelSpecificRegisters),
+      new FlagField(
+        "--include-guest-memory-cores",
+        WXMFlags::includeGuestMemoryInCoreFiles),
+      new FlagField(
+        "--rtc-is-utc",
+        WXMFlags::realTimeClockIsUTC),
+      new FlagField(
+        "--wire-guest-memory",
+        WXMFlags::wireGuestMemory),
+      new FlagField(
+        "--yield-on-HLT",
+        WXMFlags::yieldCPUOnHLT)
+    );
+
   @Parameter(
     names = "--machine",
-    description = "The ID of the virtual machine",
-    required = true,
+    description = "The ID(s) of the virtual machines",
+    required = false,
     converter = WXMUUIDConverter.class
   )
-  private UUID id;
+  private List<UUID> ids = new ArrayList<>();
+
+  @Parameter(
+    names = "--tag",
+    description = "Select the virtual machines that have the given tag(s)",
+    required = false,
+    converter = WXMTagConverter.class
+  )
+  private List<WXMTag> tags = new ArrayList<>();
+
+  @Parameter(
+    names = "--name-pattern",
+    description = "Select the virtual machines with names that match the given glob pattern(s)",
+    required = false
+  )
+  private List<String> namePatterns = new ArrayList<>();
+
+  @Parameter(
+    names = "--all",
+    description = "Select all virtual machines.",
+    required = false,
+    arity = 1
+  )
+  private boolean all;
+
+  @Parameter(
+    names = "--dry-run",
+    description = "Show the changes that would be made to each machine, but do not make them.",
+    required = false,
+    arity = 1
+  )
+  private boolean dryRun;
 
   @Parameter(
     names = "--wire-guest-memory",
@@ -145,59 +225,173 @@ public final class WXMCommandVMSet extends WXMAbstractCommandWithConfiguration
     final Path configurationPath)
     throws Exception
   {
+    if (!this.all
+      && this.ids.isEmpty()
+      && this.tags.isEmpty()
+      && this.namePatterns.isEmpty()) {
+      this.error("errorSetNothingSelected");
+      return FAILURE;
+    }
+
     try (var client = WXMServices.clients().open(configurationPath)) {
-      final var machine = client.vmFind(this.id);
-
-      final var flagBuilder =
-        WXMFlags.builder()
-          .from(machine.flags());
-
-      handleFlag(
-        this.disableMPTableGeneration,
-        flagBuilder::setDisableMPTableGeneration
-      );
-      handleFlag(
-        this.exitOnPAUSE,
-        flagBuilder::setExitOnPAUSE
-      );
-      handleFlag(
-        this.forceMSIInterrupts,
-        flagBuilder::setForceVirtualIOPCIToUseMSI
-      );
-      handleFlag(
-        this.generateACPITables,
-        flagBuilder::setGenerateACPITables
-      );
-      handleFlag(
-        this.guestAPICIsX2APIC,
-        flagBuilder::setGuestAPICIsX2APIC
-      );
-      handleFlag(
-        this.ignoreUnimplementedModelSpecificRegisters,
-        flagBuilder::setIgnoreUnimplementedModelSpecificRegisters
-      );
-      handleFlag(
-        this.includeGuestMemoryInCoreFiles,
-        flagBuilder::setIncludeGuestMemoryInCoreFiles
-      );
-      handleFlag(
-        this.realTimeClockIsUTC,
-        flagBuilder::setRealTimeClockIsUTC
-      );
-      handleFlag(
-        this.wireGuestMemory,
-        flagBuilder::setWireGuestMemory
-      );
-      handleFlag(
-        this.yieldOnHLT,
-        flagBuilder::setYieldCPUOnHLT
-      );
-
-      client.vmUpdate(machine.withFlags(flagBuilder.build()));
+      final var changed = new TreeMap<UUID, WXMVirtualMachine>();
+      for (final var machine : this.selectMachines(client)) {
+        final var flags = this.applyFlags(machine.flags());
+        if (this.dryRun) {
+          showDifferences(machine, flags);
+        }
+        if (!flags.equals(machine.flags())) {
+          changed.put(machine.id(), machine.withFlags(flags));
+        }
+      }
+
+      if (!this.dryRun) {
+        client.vmUpdateAll(
+          WXMVirtualMachineSet.builder()
+            .setMachines(changed)
+            .build()
+        );
+      }
     }
     return SUCCESS;
   }
 
+  private Collection<WXMVirtualMachine> selectMachines(
+    final WXMClientType client)
+    throws WXMException
+  {
+    final var selected = new LinkedHashMap<UUID, WXMVirtualMachine>();
+    for (final var id : this.ids) {
+      selected.put(id, client.vmFind(id));
+    }
+
+    if (this.all || !this.tags.isEmpty() || !this.namePatterns.isEmpty()) {
+      final var namePredicates =
+        this.namePatterns.stream()
+          .map(WXMCommandVMSet::globPredicate)
+          .collect(Collectors.toList());
+
+      for (final var machine : client.vmList().machines().values()) {
+        final var name = machine.name().value();
+        final var matches =
+          this.all
+            || this.tags.stream().anyMatch(machine.tags()::contains)
+            || namePredicates.stream().anyMatch(p -> p.test(name));
+        if (matches) {
+          selected.putIfAbsent(machine.id(), machine);
+        }
+      }
+    }
+    return selected.values();
+  }
+
+  /**
+   * Compile a glob pattern, in which {@code *} matches any sequence of
+   * characters and {@code ?} matches any single character.
+   *
+   * @param glob The glob pattern
+   *
+   * @return A predicate that matches names against the pattern
+   */
+
+  private static Predicate<String> globPredicate(
+    final String glob)
+  {
+    final var regex = new StringBuilder(glob.length() * 2);
+    final var literal = new StringBuilder();
+    for (int index = 0; index < glob.length(); ++index) {
+      final var c = glob.charAt(index);
+      if (c == '*' || c == '?') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '*' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString()).asMatchPredicate();
+  }
+
+  private static void showDifferences(
+    final WXMVirtualMachine machine,
+    final WXMFlags flags)
+  {
+    System.out.printf("%s %s%n", machine.id(), machine.name().value());
+
+    var differences = 0;
+    for (final var field : FLAG_FIELDS) {
+      final var before = field.getter.test(machine.flags());
+      final var after = field.getter.test(flags);
+      if (before != after) {
+        System.out.printf(
+          "  %s %s -> %s%n",
+          field.name,
+          Boolean.valueOf(before),
+          Boolean.valueOf(after)
+        );
+        ++differences;
+      }
+    }
+    if (differences == 0) {
+      System.out.println("  (unchanged)");
+    }
+  }
+
+  private WXMFlags applyFlags(
+    final WXMFlags flags)
+  {
+    final var flagBuilder =
+      WXMFlags.builder()
+        .from(flags);
+
+    handleFlag(
+      this.disableMPTableGeneration,
+      flagBuilder::setDisableMPTableGeneration
+    );
+    handleFlag(
+      this.exitOnPAUSE,
+      flagBuilder::setExitOnPAUSE
+    );
+    handleFlag(
+      this.forceMSIInterrupts,
+      flagBuilder::setForceVirtualIOPCIToUseMSI
+    );
+    handleFlag(
+      this.generateACPITables,
+      flagBuilder::setGenerateACPITables
+    );
+    handleFlag(
+      this.guestAPICIsX2APIC,
+      flagBuilder::setGuestAPICIsX2APIC
+    );
+    handleFlag(
+      this.ignoreUnimplementedModelSpecificRegisters,
+      flagBuilder::setIgnoreUnimplementedModelSpecificRegisters
+    );
+    handleFlag(
+      this.includeGuestMemoryInCoreFiles,
+      flagBuilder::setIncludeGuestMemoryInCoreFiles
+    );
+    handleFlag(
+      this.realTimeClockIsUTC,
+      flagBuilder::setRealTimeClockIsUTC
+    );
+    handleFlag(
+      this.wireGuestMemory,
+      flagBuilder::setWireGuestMemory
+    );
+    handleFlag(
+      this.yieldOnHLT,
+      flagBuilder::setYieldCPUOnHLT
+    );
+    return flagBuilder.build();
+  }
+
   interface FlagSetterType
   {
     void set(boolean flag);
@@ -211,4 +405,18 @@ public final class WXMCommandVMSet extends WXMAbstractCommandWithConfiguration
       flagSetter.set(flag.booleanValue());
     }
   }
+
+  private static final class FlagField
+  {
+    private final String name;
+    private final Predicate<WXMFlags> getter;
+
+    FlagField(
+      final String inName,
+      final Predicate<WXMFlags> inGetter)
+    {
+      this.name = Objects.requireNonNull(inName, "name");
+      this.getter = Objects.requireNonNull(inGetter, "getter");
+    }
+  }
 }
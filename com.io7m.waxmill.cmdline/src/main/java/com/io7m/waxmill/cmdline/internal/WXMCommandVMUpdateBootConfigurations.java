@@ -54,7 +54,8 @@ public final class WXMCommandVMUpdateBootConfigurations
   @Parameter(
     names = "--file",
     description = "A file containing boot configurations",
-    required = true
+    required = true,
+    converter = WXMPathConverter.class
   )
   private Path file;
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.claypot.core.CLPCommandContextType;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMVirtualMachineEvent;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import static com.io7m.claypot.core.CLPCommandType.Status.SUCCESS;
+
+/**
+ * The "vm-watch" command.
+ */
+
+@Parameters(commandDescription = "Watch virtual machine definitions for changes.")
+public final class WXMCommandVMWatch extends WXMAbstractCommandWithConfiguration
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMCommandVMWatch.class);
+
+  @Parameter(
+    names = "--mode",
+    description = "The means by which changes are detected.",
+    required = false
+  )
+  private WXMVirtualMachineWatchMode mode = WXMVirtualMachineWatchMode.AUTOMATIC;
+
+  @Parameter(
+    names = "--debounce-ms",
+    description = "The period in milliseconds over which changes are coalesced.",
+    required = false
+  )
+  private long debounceMilliseconds = 250L;
+
+  @Parameter(
+    names = "--poll-interval-ms",
+    description = "The time in milliseconds between polls when polling.",
+    required = false
+  )
+  private long pollIntervalMilliseconds = 2000L;
+
+  /**
+   * Construct a command.
+   *
+   * @param inContext The command context
+   */
+
+  public WXMCommandVMWatch(
+    final CLPCommandContextType inContext)
+  {
+    super(LOG, inContext);
+  }
+
+  @Override
+  public String extendedHelp()
+  {
+    return this.messages().format("vmWatchHelp");
+  }
+
+  @Override
+  public String name()
+  {
+    return "vm-watch";
+  }
+
+  @Override
+  protected Status executeActualWithConfiguration(
+    final Path configurationPath)
+    throws Exception
+  {
+    final var configuration =
+      WXMVirtualMachineWatchConfiguration.builder()
+        .setMode(this.mode)
+        .setDebounce(Duration.ofMillis(this.debounceMilliseconds))
+        .setPollInterval(Duration.ofMillis(this.pollIntervalMilliseconds))
+        .build();
+
+    try (var client = WXMServices.clients().open(configurationPath)) {
+      try (var watch = client.vmWatch(configuration, new Listener())) {
+        LOG.debug("watching with mode {}", watch.mode());
+        new CountDownLatch(1).await();
+      }
+    }
+    return SUCCESS;
+  }
+
+  private final class Listener implements WXMVirtualMachineWatchListenerType
+  {
+    Listener()
+    {
+
+    }
+
+    @Override
+    public void onEvent(
+      final WXMVirtualMachineEvent event)
+    {
+      System.out.printf(
+        "%-8s %s %s%n",
+        event.kind().name().toLowerCase(Locale.ROOT),
+        event.machineId(),
+        event.machine()
+          .map(machine -> machine.name().value())
+          .orElse("-")
+      );
+      System.out.flush();
+    }
+
+    @Override
+    public void onError(
+      final WXMException exception)
+    {
+      WXMCommandVMWatch.this.error(
+        "errorWatchFailed",
+        exception.getMessage()
+      );
+    }
+  }
+}
@@ -19,6 +19,8 @@ package com.io7m.waxmill.cmdline.internal;
 import org.slf4j.Logger;
 
 import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
  * Environment variable handling.
@@ -26,17 +28,104 @@ import java.nio.file.Path;
 
 public final class WXMEnvironment
 {
+  private static final ThreadLocal<Optional<Path>> CONFIGURATION_OVERRIDE =
+    new ThreadLocal<>();
+  private static final ThreadLocal<Path> WORKING_DIRECTORY_OVERRIDE =
+    new ThreadLocal<>();
+
   private WXMEnvironment()
   {
 
   }
 
+  /**
+   * Set the configuration file path for commands constructed on the current
+   * thread, in place of the value of the environment variable. This is used
+   * by the server to honour the environment of the thin client that sent a
+   * request, rather than that of the server.
+   *
+   * @param configurationFile The configuration file path, if any
+   */
+
+  public static void setConfigurationFileOverride(
+    final Optional<Path> configurationFile)
+  {
+    CONFIGURATION_OVERRIDE.set(configurationFile);
+  }
+
+  /**
+   * Remove the configuration file override for the current thread.
+   */
+
+  public static void clearConfigurationFileOverride()
+  {
+    CONFIGURATION_OVERRIDE.remove();
+  }
+
+  /**
+   * Set the directory against which relative paths are resolved for
+   * commands executed on the current thread. This is used by the server to
+   * resolve paths given to a thin client against the working directory of
+   * the thin client, rather than that of the server.
+   *
+   * @param directory The absolute path of the working directory
+   */
+
+  public static void setWorkingDirectoryOverride(
+    final Path directory)
+  {
+    Objects.requireNonNull(directory, "directory");
+    if (!directory.isAbsolute()) {
+      throw new IllegalArgumentException(String.format(
+        "Working directory %s must be absolute",
+        directory
+      ));
+    }
+    WORKING_DIRECTORY_OVERRIDE.set(directory);
+  }
+
+  /**
+   * Remove the working directory override for the current thread.
+   */
+
+  public static void clearWorkingDirectoryOverride()
+  {
+    WORKING_DIRECTORY_OVERRIDE.remove();
+  }
+
+  /**
+   * Resolve a path given on the command line. Relative paths are resolved
+   * against the working directory override for the current thread, if one
+   * is set, and are otherwise left to be resolved against the working
+   * directory of the current process.
+   *
+   * @param path The path
+   *
+   * @return The resolved path
+   */
+
+  public static Path resolve(
+    final Path path)
+  {
+    Objects.requireNonNull(path, "path");
+    final var directory = WORKING_DIRECTORY_OVERRIDE.get();
+    if (directory != null && !path.isAbsolute()) {
+      return directory.resolve(path);
+    }
+    return path;
+  }
+
   /**
    * @return The configuration file path
    */
 
   public static Path configurationFile()
   {
+    final var override = CONFIGURATION_OVERRIDE.get();
+    if (override != null) {
+      return override.map(Path::toAbsolutePath).orElse(null);
+    }
+
     final var path = System.getenv("WAXMILL_CONFIGURATION_FILE");
     if (path != null) {
       return Path.of(path).toAbsolutePath();
@@ -44,6 +133,19 @@ public final class WXMEnvironment
     return null;
   }
 
+  /**
+   * @return The server socket path, if one is specified
+   */
+
+  public static Path serverSocket()
+  {
+    final var path = System.getenv("WAXMILL_SERVER_SOCKET");
+    if (path != null) {
+      return Path.of(path).toAbsolutePath();
+    }
+    return null;
+  }
+
   /**
    * Check a configuration file is specified.
    *
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.io7m.waxmill.locks.WXMLockHandleType;
+import com.io7m.waxmill.locks.WXMMachineLocks;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The locks that serialize the requests executed by a server. Requests
+ * that only read the machine database execute without locks. Requests
+ * that name the machines they affect with {@code --machine} are serialized
+ * per machine, so that, for example, two concurrent vm-set commands on the
+ * same machine cannot lose each other's changes, whilst commands on
+ * different machines execute in parallel. Requests that may affect
+ * machines that cannot be determined from their arguments exclude all
+ * other mutating requests.
+ */
+
+final class WXMServerRequestLocks
+{
+  private static final Set<String> READ_ONLY_COMMANDS =
+    Set.of(
+      "help",
+      "schema",
+      "version",
+      "vm-drift",
+      "vm-export",
+      "vm-id-of",
+      "vm-list",
+      "vm-list-with-name"
+    );
+
+  private static final Set<String> UNBOUNDED_OPTIONS =
+    Set.of("--all", "--name-pattern", "--tag");
+
+  private final WXMMachineLocks locks;
+
+  WXMServerRequestLocks()
+  {
+    this.locks = new WXMMachineLocks();
+  }
+
+  /**
+   * Lock whatever the given request requires.
+   *
+   * @param arguments The request arguments
+   *
+   * @return A handle that releases the locks
+   */
+
+  WXMLockHandleType lockFor(
+    final List<String> arguments)
+  {
+    Objects.requireNonNull(arguments, "arguments");
+
+    if (arguments.isEmpty() || READ_ONLY_COMMANDS.contains(arguments.get(0))) {
+      return () -> {
+      };
+    }
+
+    final var machines = machinesOf(arguments);
+    if (machines.isPresent()) {
+      return this.locks.lockMachines(machines.get());
+    }
+    return this.locks.lockAll();
+  }
+
+  /**
+   * Determine the machines named by a request, if they can be determined.
+   *
+   * @param arguments The request arguments
+   *
+   * @return The machines, or nothing if the request may affect other
+   * machines
+   */
+
+  static Optional<Set<UUID>> machinesOf(
+    final List<String> arguments)
+  {
+    final var machines = new HashSet<UUID>();
+    var index = 1;
+    while (index < arguments.size()) {
+      final var argument = arguments.get(index);
+      if (argument.startsWith("@") || UNBOUNDED_OPTIONS.contains(argument)) {
+        return Optional.empty();
+      }
+
+      if ("--machine".equals(argument) && index + 1 < arguments.size()) {
+        try {
+          machines.add(UUID.fromString(arguments.get(index + 1)));
+        } catch (final IllegalArgumentException e) {
+          return Optional.empty();
+        }
+        ++index;
+      }
+      ++index;
+    }
+
+    if (machines.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(machines);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMServerRequestLocks 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -22,14 +22,23 @@ import com.io7m.waxmill.client.api.WXMClientProviderType;
 import com.io7m.waxmill.parser.api.WXMBootConfigurationParserProviderType;
 import com.io7m.waxmill.parser.api.WXMVirtualMachineParserProviderType;
 import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.serializer.api.WXMClientConfigurationSerializerProviderType;
 import com.io7m.waxmill.serializer.api.WXMVirtualMachineSerializerProviderType;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 final class WXMServices
 {
+  private static final ConcurrentHashMap<Class<?>, Object> SERVICES =
+    new ConcurrentHashMap<>();
+
+  private static final AtomicReference<WXMClientProviderType> CLIENTS_OVERRIDE =
+    new AtomicReference<>();
+
   private WXMServices()
   {
 
@@ -37,9 +46,32 @@ final class WXMServices
 
   public static WXMClientProviderType clients()
   {
+    final var override = CLIENTS_OVERRIDE.get();
+    if (override != null) {
+      return override;
+    }
     return findService(WXMClientProviderType.class);
   }
 
+  /**
+   * Replace the client provider returned by {@link #clients()}. This is used
+   * by the server to share open clients between commands.
+   *
+   * @param clients The client provider, or {@code null} to use the
+   *                provider found by the service loader
+   */
+
+  public static void setClientsOverride(
+    final WXMClientProviderType clients)
+  {
+    CLIENTS_OVERRIDE.set(clients);
+  }
+
+  public static WXMClientConfigurationSerializerProviderType clientConfigurationSerializers()
+  {
+    return findService(WXMClientConfigurationSerializerProviderType.class);
+  }
+
   public static WXMVirtualMachineSerializerProviderType vmSerializers()
   {
     return findService(WXMVirtualMachineSerializerProviderType.class);
@@ -60,8 +92,22 @@ final class WXMServices
     return findService(WXMProcessesType.class);
   }
 
+  /*
+   * Service providers are stateless, so the first provider found for each
+   * service is cached for the lifetime of the process; instantiating a
+   * provider requires scanning the module path (or the classpath) each time.
+   */
+
   private static <T> T findService(
     final Class<T> service)
+  {
+    return service.cast(
+      SERVICES.computeIfAbsent(service, WXMServices::loadService)
+    );
+  }
+
+  private static Object loadService(
+    final Class<?> service)
   {
     return ServiceLoader.load(service)
       .findFirst()
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.beust.jcommander.IStringConverter;
+import com.io7m.waxmill.client.api.WXMStartDependency;
+import com.io7m.waxmill.machines.WXMTag;
+
+/**
+ * A converter for {@link WXMStartDependency} values.
+ */
+
+public final class WXMStartDependencyConverter
+  implements IStringConverter<WXMStartDependency>
+{
+  private final WXMMessages messages;
+
+  /**
+   * A converter of start-order dependency values.
+   */
+
+  public WXMStartDependencyConverter()
+  {
+    this.messages = WXMMessages.create();
+  }
+
+  @Override
+  public WXMStartDependency convert(
+    final String value)
+  {
+    final var segments = value.split(":");
+    if (segments.length == 2) {
+      try {
+        return WXMStartDependency.of(
+          WXMTag.of(segments[0]),
+          WXMTag.of(segments[1])
+        );
+      } catch (final Exception e) {
+        throw new IllegalArgumentException(this.errorSyntaxMessage(value), e);
+      }
+    }
+
+    throw new IllegalArgumentException(this.errorSyntaxMessage(value));
+  }
+
+  private String errorSyntaxMessage(
+    final String value)
+  {
+    return this.messages.format(
+      "errorInvalidStartDependency",
+      this.messages.format("startDependencySpec"),
+      value
+    );
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMStartDependencyConverter 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.cmdline.internal;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.cmdline.MainExitless;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The commands executed by a class data sharing training run.
+ */
+
+public final class WXMTraining
+{
+  private WXMTraining()
+  {
+
+  }
+
+  /**
+   * Execute a representative set of commands against a new configuration
+   * created in the given directory.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException On errors
+   */
+
+  public static void train(
+    final Path directory)
+    throws IOException
+  {
+    final var configFile = directory.resolve("config.xml");
+    final var vmDirectory = directory.resolve("vm");
+    Files.createDirectories(vmDirectory);
+
+    WXMServices.clientConfigurationSerializers()
+      .serialize(
+        configFile,
+        directory.resolve("config.xml.tmp"),
+        WXMClientConfiguration.builder()
+          .setVirtualMachineConfigurationDirectory(vmDirectory)
+          .setVirtualMachineRuntimeFilesystem(
+            WXMZFSFilesystem.builder()
+              .setMountPoint(directory.resolve("zfs"))
+              .setName("storage/vm")
+              .build())
+          .build()
+      );
+
+    final var config = configFile.toString();
+    final var id = UUID.randomUUID().toString();
+
+    final List<List<String>> commands =
+      List.of(
+        List.of("version"),
+        List.of("help"),
+        List.of("help", "vm-list"),
+        List.of(
+          "vm-define",
+          "--configuration", config,
+          "--machine", id,
+          "--name", "training"),
+        List.of(
+          "vm-set",
+          "--configuration", config,
+          "--machine", id,
+          "--rtc-is-utc", "true"),
+        List.of(
+          "vm-set",
+          "--configuration", config,
+          "--name-pattern", "train*",
+          "--rtc-is-utc", "false",
+          "--dry-run", "true"),
+        List.of("vm-list", "--configuration", config),
+        List.of(
+          "vm-list-with-name",
+          "--configuration", config,
+          "--name", "training"),
+        List.of(
+          "vm-id-of",
+          "--configuration", config,
+          "--name", "training"),
+        List.of(
+          "vm-export",
+          "--configuration", config,
+          "--machine", id),
+        List.of(
+          "vm-delete",
+          "--configuration", config,
+          "--machine", id)
+      );
+
+    for (final var command : commands) {
+      MainExitless.main(command.toArray(new String[0]));
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMTraining 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
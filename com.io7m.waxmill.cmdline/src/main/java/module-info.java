@@ -17,6 +17,7 @@
 import com.io7m.waxmill.client.api.WXMClientProviderType;
 import com.io7m.waxmill.parser.api.WXMBootConfigurationParserProviderType;
 import com.io7m.waxmill.parser.api.WXMVirtualMachineParserProviderType;
+import com.io7m.waxmill.serializer.api.WXMClientConfigurationSerializerProviderType;
 import com.io7m.waxmill.serializer.api.WXMVirtualMachineSerializerProviderType;
 
 /**
@@ -35,10 +36,13 @@ module com.io7m.waxmill.cmdline
   requires com.io7m.junreachable.core;
   requires com.io7m.jxe.core;
   requires com.io7m.waxmill.client.api;
+  requires com.io7m.waxmill.exceptions;
+  requires com.io7m.waxmill.locks;
   requires com.io7m.waxmill.machines;
   requires com.io7m.waxmill.parser.api;
   requires com.io7m.waxmill.process.api;
   requires com.io7m.waxmill.serializer.api;
+  requires com.io7m.waxmill.server;
   requires com.io7m.waxmill.strings.api;
   requires com.io7m.waxmill.xml;
   requires jcommander;
@@ -48,6 +52,7 @@ module com.io7m.waxmill.cmdline
   opens com.io7m.waxmill.cmdline.internal to jcommander;
 
   uses WXMBootConfigurationParserProviderType;
+  uses WXMClientConfigurationSerializerProviderType;
   uses WXMClientProviderType;
   uses WXMVirtualMachineParserProviderType;
   uses WXMVirtualMachineSerializerProviderType;
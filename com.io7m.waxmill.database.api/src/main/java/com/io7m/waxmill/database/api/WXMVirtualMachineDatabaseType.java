@@ -17,29 +17,44 @@
 package com.io7m.waxmill.database.api;
 
 import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionConcurrentModification;
 import com.io7m.waxmill.exceptions.WXMExceptionDuplicate;
 import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
 import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMVirtualMachineSet;
 import com.io7m.waxmill.machines.WXMVirtualMachineSets;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchType;
 
 import java.util.Optional;
 import java.util.UUID;
 
 /**
  * A virtual machine database.
+ *
+ * The database also stores templates. A template is a virtual machine
+ * definition that other machines may refer to with
+ * {@link WXMVirtualMachine#template()}. Machines based on templates are
+ * stored as overrides, and are resolved against their templates each time
+ * they are read.
+ *
+ * @see com.io7m.waxmill.machines.WXMVirtualMachineTemplates
  */
 
 public interface WXMVirtualMachineDatabaseType extends WXMDatabaseType
 {
   /**
-   * Find an existing virtual machine with the given ID.
+   * Find an existing virtual machine with the given ID. A machine based on a
+   * template is returned in resolved form.
    *
    * @param machineId The virtual machine ID
    *
    * @return The virtual machine, if any
    *
-   * @throws WXMException On errors
+   * @throws WXMExceptionNonexistent If the machine refers to a nonexistent
+   *                                 template
+   * @throws WXMException            On errors
    */
 
   Optional<WXMVirtualMachine> vmGet(
@@ -47,7 +62,9 @@ public interface WXMVirtualMachineDatabaseType extends WXMDatabaseType
     throws WXMException;
 
   /**
-   * Define a set of new virtual machines.
+   * Define a set of new virtual machines. The devices and boot
+   * configurations of a machine based on a template are treated as
+   * overrides of those of the template.
    *
    * @param machines The virtual machine
    *
@@ -76,7 +93,11 @@ public interface WXMVirtualMachineDatabaseType extends WXMDatabaseType
   }
 
   /**
-   * Update an existing virtual machine.
+   * Update an existing virtual machine. A machine based on a template is
+   * expected in resolved form, as returned by {@link #vmGet(UUID)}, and is
+   * stored as the overrides that differ from the template. If the machine
+   * no longer contains every device and boot configuration of the template,
+   * it cannot be expressed as overrides and is stored without a template.
    *
    * @param machine The virtual machine
    *
@@ -88,7 +109,45 @@ public interface WXMVirtualMachineDatabaseType extends WXMDatabaseType
     throws WXMException;
 
   /**
-   * @return The available virtual machines
+   * Update a set of existing virtual machines. The machines are locked
+   * together, so no other update of any of the machines can interleave with
+   * the set, and are then written in parallel. Machines based on templates
+   * are treated as in {@link #vmUpdate(WXMVirtualMachine)}. A failure to
+   * write one machine does not prevent the others from being written.
+   *
+   * @param machines The virtual machines
+   *
+   * @throws WXMException On errors
+   */
+
+  void vmUpdateAll(
+    WXMVirtualMachineSet machines)
+    throws WXMException;
+
+  /**
+   * Update an existing virtual machine, if and only if it has not been
+   * modified since {@code expected} was read. The comparison and the
+   * update are performed atomically with respect to all other updates of
+   * the same machine.
+   *
+   * @param expected The virtual machine as it was read
+   * @param machine  The updated virtual machine
+   *
+   * @throws WXMExceptionNonexistent             If the virtual machine no
+   *                                             longer exists
+   * @throws WXMExceptionConcurrentModification If the virtual machine has
+   *                                             been modified
+   * @throws WXMException                        On errors
+   */
+
+  void vmUpdateIfUnchanged(
+    WXMVirtualMachine expected,
+    WXMVirtualMachine machine)
+    throws WXMException;
+
+  /**
+   * @return The available virtual machines, with machines based on templates
+   * in resolved form
    *
    * @throws WXMException On errors
    */
@@ -107,4 +166,90 @@ public interface WXMVirtualMachineDatabaseType extends WXMDatabaseType
 
   void vmDelete(UUID id)
     throws WXMException;
+
+  /**
+   * Find an existing template with the given ID.
+   *
+   * @param templateId The template ID
+   *
+   * @return The template, if any
+   *
+   * @throws WXMException On errors
+   */
+
+  Optional<WXMVirtualMachine> templateGet(
+    UUID templateId)
+    throws WXMException;
+
+  /**
+   * Define a new template. A template cannot itself be based on a template.
+   *
+   * @param template The template
+   *
+   * @throws WXMExceptionDuplicate If a template already exists with the
+   *                               same ID
+   * @throws WXMException          On errors
+   */
+
+  void templateDefine(
+    WXMVirtualMachine template)
+    throws WXMException, WXMExceptionDuplicate;
+
+  /**
+   * Update an existing template. The change is visible to every machine
+   * based on the template the next time the machine is read. The update is
+   * rejected if any machine based on the template would be invalid when
+   * resolved against the updated template.
+   *
+   * @param template The template
+   *
+   * @throws WXMExceptionNonexistent If the template does not exist
+   * @throws WXMException            On errors
+   */
+
+  void templateUpdate(
+    WXMVirtualMachine template)
+    throws WXMException;
+
+  /**
+   * @return The available templates
+   *
+   * @throws WXMException On errors
+   */
+
+  WXMVirtualMachineSet templateList()
+    throws WXMException;
+
+  /**
+   * Delete a template. A template cannot be deleted while machines are
+   * based on it.
+   *
+   * @param id The template ID
+   *
+   * @throws WXMExceptionNonexistent If the template does not exist
+   * @throws WXMException            On errors
+   */
+
+  void templateDelete(UUID id)
+    throws WXMException;
+
+  /**
+   * Watch the database for changes. The listener receives an event each
+   * time a virtual machine is defined, updated, or deleted after this
+   * method returns, whether the change was made through this database or
+   * by another process. Changes to the same machine that occur in quick
+   * succession may be coalesced into a single event.
+   *
+   * @param configuration The watch configuration
+   * @param listener      The listener that will receive events
+   *
+   * @return A watch that must be closed to stop watching
+   *
+   * @throws WXMException On errors
+   */
+
+  WXMVirtualMachineWatchType vmWatch(
+    WXMVirtualMachineWatchConfiguration configuration,
+    WXMVirtualMachineWatchListenerType listener)
+    throws WXMException;
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.database.vanilla.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The modification time, size, and file key of a file. Files in the
+ * database are replaced by atomic renames, so the file key changes on every
+ * write even when the modification time does not.
+ */
+
+final class WXMFileStamp
+{
+  private final FileTime modified;
+  private final long size;
+  private final Object fileKey;
+
+  private WXMFileStamp(
+    final FileTime inModified,
+    final long inSize,
+    final Object inFileKey)
+  {
+    this.modified = Objects.requireNonNull(inModified, "modified");
+    this.size = inSize;
+    this.fileKey = inFileKey;
+  }
+
+  /**
+   * Read the stamp of a file.
+   *
+   * @param file The file
+   *
+   * @return The stamp of the file, or nothing if the file does not exist
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static Optional<WXMFileStamp> of(
+    final Path file)
+    throws IOException
+  {
+    try {
+      final var attributes =
+        Files.readAttributes(file, BasicFileAttributes.class);
+      return Optional.of(new WXMFileStamp(
+        attributes.lastModifiedTime(),
+        attributes.size(),
+        attributes.fileKey()
+      ));
+    } catch (final NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public boolean equals(
+    final Object other)
+  {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || !Objects.equals(this.getClass(), other.getClass())) {
+      return false;
+    }
+    final var that = (WXMFileStamp) other;
+    return this.size == that.size
+      && this.modified.equals(that.modified)
+      && Objects.equals(this.fileKey, that.fileKey);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(this.modified, Long.valueOf(this.size), this.fileKey);
+  }
+}
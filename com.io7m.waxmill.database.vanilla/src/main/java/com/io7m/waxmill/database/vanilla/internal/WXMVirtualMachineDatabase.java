@@ -19,14 +19,21 @@ package com.io7m.waxmill.database.vanilla.internal;
 import com.io7m.waxmill.database.api.WXMDatabaseConfiguration;
 import com.io7m.waxmill.database.api.WXMVirtualMachineDatabaseType;
 import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionConcurrentModification;
 import com.io7m.waxmill.exceptions.WXMExceptionDuplicate;
 import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
 import com.io7m.waxmill.exceptions.WXMExceptions;
-import com.io7m.waxmill.locks.WXMFileLock;
+import com.io7m.waxmill.locks.WXMLockHandleType;
+import com.io7m.waxmill.locks.WXMMachineLocks;
+import com.io7m.waxmill.locks.WXMSharedFileLock;
 import com.io7m.waxmill.machines.WXMMachineMessages;
 import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMVirtualMachineSet;
 import com.io7m.waxmill.machines.WXMVirtualMachineSets;
+import com.io7m.waxmill.machines.WXMVirtualMachineTemplates;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchType;
 import com.io7m.waxmill.parser.api.WXMVirtualMachineParserProviderType;
 import com.io7m.waxmill.serializer.api.WXMVirtualMachineSerializerProviderType;
 
@@ -36,10 +43,18 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -49,16 +64,56 @@ import static java.nio.file.StandardOpenOption.CREATE;
 
 /**
  * A virtual machine database.
+ *
+ * The database may be used by many threads at once. Reads are not
+ * serialized; machine files are replaced atomically, so a reader always
+ * sees either the old or the new version of a machine. Writes to the same
+ * machine are serialized, and writes to different machines proceed in
+ * parallel, even when performed through different database instances
+ * that share the same directory. A file lock excludes other processes
+ * while any write is in progress.
+ *
+ * Templates are stored in the {@code templates} subdirectory of the
+ * database directory, using the same format as machines. Each database
+ * keeps a cache of parsed templates, keyed by template ID and validated
+ * against the stamp of the template file on every use, so resolving many
+ * machines based on the same template parses the template only once, and
+ * changes made to templates by other processes are observed.
+ *
+ * A write to a machine locks the template on which the machine is based, as
+ * well as the machine itself, and a change to a template locks every
+ * machine based on it, so a template cannot change while a machine based on
+ * it is being validated against it, and vice versa.
+ *
+ * Closing the database closes any watches that were opened on it.
  */
 
 public final class WXMVirtualMachineDatabase
   implements WXMVirtualMachineDatabaseType
 {
+  /**
+   * The name of the subdirectory of the database directory that holds
+   * templates.
+   */
+
+  static final String TEMPLATE_DIRECTORY_NAME = "templates";
+
+  private static final ConcurrentHashMap<Path, WXMMachineLocks> MACHINE_LOCKS =
+    new ConcurrentHashMap<>();
+
+  private static final ThreadFactory WRITERS =
+    Thread.ofVirtual()
+      .name("com.io7m.waxmill.database.write-", 0L)
+      .factory();
+
   private final WXMDatabaseConfiguration configuration;
-  private final Path lockFile;
+  private final WXMSharedFileLock fileLock;
+  private final WXMMachineLocks machineLocks;
   private final WXMVirtualMachineParserProviderType parsers;
   private final WXMVirtualMachineSerializerProviderType serializers;
   private final WXMMachineMessages machineMessages;
+  private final Set<WXMVirtualMachineDatabaseWatch> watches;
+  private final ConcurrentHashMap<UUID, CachedTemplate> templateCache;
 
   private WXMVirtualMachineDatabase(
     final WXMMachineMessages inMachineMessages,
@@ -75,8 +130,18 @@ public final class WXMVirtualMachineDatabase
       Objects.requireNonNull(inSerializers, "inSerializers");
     this.configuration =
       Objects.requireNonNull(inConfiguration, "inConfiguration");
-    this.lockFile =
-      Objects.requireNonNull(inLockFile, "lockFile");
+    this.fileLock =
+      WXMSharedFileLock.forFile(
+        Objects.requireNonNull(inLockFile, "lockFile"));
+    this.watches =
+      ConcurrentHashMap.newKeySet();
+    this.templateCache =
+      new ConcurrentHashMap<>();
+    this.machineLocks =
+      MACHINE_LOCKS.computeIfAbsent(
+        inConfiguration.databaseDirectory().toAbsolutePath().normalize(),
+        ignored -> new WXMMachineLocks()
+      );
   }
 
   /**
@@ -122,20 +187,43 @@ public final class WXMVirtualMachineDatabase
     }
   }
 
-  private static boolean appearsToBeVirtualMachine(
+  static boolean appearsToBeVirtualMachine(
     final Path path)
   {
     return path.toString().toUpperCase(Locale.ROOT).endsWith(".WVMX");
   }
 
-  private WXMFileLock acquireWriteLock()
+  private static Set<UUID> lockIdsOf(
+    final Collection<WXMVirtualMachine> machines)
+  {
+    final var ids = new HashSet<UUID>(machines.size() * 2);
+    for (final var machine : machines) {
+      ids.add(machine.id());
+      machine.template().ifPresent(ids::add);
+    }
+    return ids;
+  }
+
+  private WXMLockHandleType acquireWriteLock(
+    final Collection<UUID> machines)
     throws WXMException
   {
+    final var machineLock = this.machineLocks.lockMachines(machines);
+    final WXMLockHandleType processLock;
     try {
-      return WXMFileLock.acquire(this.lockFile);
+      processLock = this.fileLock.acquire();
     } catch (final IOException e) {
+      machineLock.close();
       throw new WXMException(e);
     }
+
+    return () -> {
+      try {
+        processLock.close();
+      } finally {
+        machineLock.close();
+      }
+    };
   }
 
   @Override
@@ -150,7 +238,7 @@ public final class WXMVirtualMachineDatabase
         .resolve(machineId + ".wvmx");
 
     if (Files.exists(file)) {
-      final var set = this.parsers.parse(file);
+      final var set = this.readMachineFile(file);
       final var machine = set.machines().get(machineId);
       return Optional.ofNullable(machine);
     }
@@ -158,6 +246,307 @@ public final class WXMVirtualMachineDatabase
     return Optional.empty();
   }
 
+  private Path templateDirectory()
+  {
+    return this.configuration.databaseDirectory()
+      .resolve(TEMPLATE_DIRECTORY_NAME);
+  }
+
+  private Path templateFile(
+    final UUID templateId)
+  {
+    return this.templateDirectory().resolve(templateId + ".wvmx");
+  }
+
+  private WXMVirtualMachineSet readMachineFile(
+    final Path file)
+    throws WXMException
+  {
+    final var set = this.parsers.parse(file);
+    final var machines = set.machines();
+    final var templated =
+      machines.values()
+        .stream()
+        .anyMatch(machine -> machine.template().isPresent());
+
+    if (!templated) {
+      return set;
+    }
+
+    final var resolved = new TreeMap<UUID, WXMVirtualMachine>();
+    for (final var machine : machines.values()) {
+      resolved.put(machine.id(), this.resolve(machine));
+    }
+    return WXMVirtualMachineSet.builder()
+      .setMachines(resolved)
+      .build();
+  }
+
+  private WXMVirtualMachine resolve(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    final var templateId = machine.template();
+    if (templateId.isEmpty()) {
+      return machine;
+    }
+
+    final var template = this.templateFind(templateId.get());
+    try {
+      return WXMVirtualMachineTemplates.resolve(template, machine);
+    } catch (final RuntimeException e) {
+      throw new WXMException(e);
+    }
+  }
+
+  private WXMVirtualMachine templateFind(
+    final UUID templateId)
+    throws WXMException
+  {
+    return this.templateGet(templateId)
+      .orElseThrow(() -> new WXMExceptionNonexistent(
+        this.machineMessages.format("errorTemplateNonexistent", templateId)
+      ));
+  }
+
+  @Override
+  public Optional<WXMVirtualMachine> templateGet(
+    final UUID templateId)
+    throws WXMException
+  {
+    Objects.requireNonNull(templateId, "templateId");
+
+    final var file = this.templateFile(templateId);
+
+    /*
+     * The stamp is read before the file is parsed. If the file is replaced
+     * in between, the cached stamp is older than the cached template, and
+     * the next lookup will simply parse the file again.
+     */
+
+    final Optional<WXMFileStamp> stampOpt;
+    try {
+      stampOpt = WXMFileStamp.of(file);
+    } catch (final IOException e) {
+      throw new WXMException(e);
+    }
+
+    if (stampOpt.isEmpty()) {
+      this.templateCache.remove(templateId);
+      return Optional.empty();
+    }
+
+    final var stamp = stampOpt.get();
+    final var cached = this.templateCache.get(templateId);
+    if (cached != null && cached.stamp.equals(stamp)) {
+      return Optional.of(cached.template);
+    }
+
+    final var template =
+      this.parsers.parse(file)
+        .machines()
+        .get(templateId);
+
+    if (template == null) {
+      this.templateCache.remove(templateId);
+      return Optional.empty();
+    }
+
+    this.templateCache.put(templateId, new CachedTemplate(stamp, template));
+    return Optional.of(template);
+  }
+
+  @Override
+  public void templateDefine(
+    final WXMVirtualMachine template)
+    throws WXMException, WXMExceptionDuplicate
+  {
+    Objects.requireNonNull(template, "template");
+
+    final var templateId = template.id();
+    try (var ignored = this.acquireWriteLock(List.of(templateId))) {
+      if (this.templateGet(templateId).isPresent()) {
+        throw new WXMExceptionDuplicate(
+          this.machineMessages.format("errorTemplateAlreadyExists", templateId)
+        );
+      }
+      this.templateWrite(template);
+    }
+  }
+
+  @Override
+  public void templateUpdate(
+    final WXMVirtualMachine template)
+    throws WXMException
+  {
+    Objects.requireNonNull(template, "template");
+
+    /*
+     * The machines based on the template must be locked along with the
+     * template, but can only be found by reading the machine files. The
+     * machines are therefore found before the locks are taken, and found
+     * again once the locks are held; if a machine has been based on the
+     * template in the meantime, the locks are retaken to include it.
+     */
+
+    final var templateId = template.id();
+    final var locked = new HashSet<UUID>();
+    locked.add(templateId);
+    locked.addAll(machineIds(this.machinesBasedOn(templateId)));
+
+    while (true) {
+      try (var ignored = this.acquireWriteLock(locked)) {
+        this.templateFind(templateId);
+
+        final var machines = this.machinesBasedOn(templateId);
+        final var machineIds = machineIds(machines);
+        if (!locked.containsAll(machineIds)) {
+          locked.addAll(machineIds);
+          continue;
+        }
+
+        final var exceptions = new WXMExceptions();
+        for (final var machine : machines) {
+          try {
+            WXMVirtualMachineTemplates.resolve(template, machine);
+          } catch (final Exception e) {
+            exceptions.add(e);
+          }
+        }
+        exceptions.throwIfRequired();
+
+        this.templateWrite(template);
+        return;
+      }
+    }
+  }
+
+  private static Set<UUID> machineIds(
+    final Collection<WXMVirtualMachine> machines)
+  {
+    return machines.stream()
+      .map(WXMVirtualMachine::id)
+      .collect(Collectors.toSet());
+  }
+
+  private void templateWrite(
+    final WXMVirtualMachine template)
+    throws WXMException
+  {
+    final var templateId = template.id();
+    final var referenced = template.template();
+    if (referenced.isPresent()) {
+      throw new WXMException(
+        this.machineMessages.format(
+          "errorTemplateNested",
+          templateId,
+          referenced.get())
+      );
+    }
+
+    final var base = this.templateDirectory();
+    try {
+      Files.createDirectories(base);
+    } catch (final IOException e) {
+      throw new WXMException(e);
+    }
+
+    final var exceptions = new WXMExceptions();
+    this.templateCache.remove(templateId);
+    this.writeChecked(base, exceptions, template);
+    exceptions.throwIfRequired();
+  }
+
+  private List<WXMVirtualMachine> machinesBasedOn(
+    final UUID templateId)
+    throws WXMException
+  {
+    final var exceptions = new WXMExceptions();
+    final var machines = new ArrayList<WXMVirtualMachine>();
+    for (final var file : this.machineFiles(exceptions)) {
+      try {
+        for (final var machine : this.parsers.parse(file).machines().values()) {
+          if (Objects.equals(machine.template(), Optional.of(templateId))) {
+            machines.add(machine);
+          }
+        }
+      } catch (final WXMException e) {
+        exceptions.add(e);
+      }
+    }
+
+    exceptions.throwIfRequired();
+    return machines;
+  }
+
+  @Override
+  public WXMVirtualMachineSet templateList()
+    throws WXMException
+  {
+    final var directory = this.templateDirectory();
+    if (!Files.isDirectory(directory)) {
+      return WXMVirtualMachineSet.builder().build();
+    }
+
+    final var exceptions = new WXMExceptions();
+    final var sets = new ArrayList<WXMVirtualMachineSet>();
+    try (var stream = Files.list(directory)) {
+      final var list =
+        stream.map(Path::toAbsolutePath)
+          .filter(WXMVirtualMachineDatabase::appearsToBeVirtualMachine)
+          .sorted()
+          .collect(Collectors.toList());
+      for (final var file : list) {
+        try {
+          sets.add(this.parsers.parse(file));
+        } catch (final WXMException e) {
+          exceptions.add(e);
+        }
+      }
+    } catch (final IOException e) {
+      exceptions.add(e);
+    }
+
+    exceptions.throwIfRequired();
+    return WXMVirtualMachineSets.merge(this.machineMessages, sets);
+  }
+
+  @Override
+  public void templateDelete(
+    final UUID id)
+    throws WXMException
+  {
+    Objects.requireNonNull(id, "id");
+
+    final var file = this.templateFile(id);
+    try (var ignored = this.acquireWriteLock(List.of(id))) {
+      final var users = this.machinesBasedOn(id);
+      if (!users.isEmpty()) {
+        throw new WXMException(
+          this.machineMessages.format(
+            "errorTemplateInUse",
+            id,
+            users.stream()
+              .map(machine -> machine.id().toString())
+              .collect(Collectors.joining(" "))
+          )
+        );
+      }
+
+      try {
+        this.templateCache.remove(id);
+        Files.delete(file);
+      } catch (final NoSuchFileException e) {
+        throw new WXMExceptionNonexistent(
+          this.machineMessages.format("errorTemplateNonexistent", id),
+          e
+        );
+      } catch (final IOException e) {
+        throw new WXMException(e);
+      }
+    }
+  }
+
   @Override
   public void vmDefineAll(
     final WXMVirtualMachineSet machines)
@@ -167,7 +556,8 @@ public final class WXMVirtualMachineDatabase
 
     final Path base = this.configuration.databaseDirectory();
 
-    try (var ignored = this.acquireWriteLock()) {
+    final var ids = lockIdsOf(machines.machines().values());
+    try (var ignored = this.acquireWriteLock(ids)) {
       final var entries = machines.machines().entrySet();
       for (final var entry : entries) {
         final var machineId = entry.getKey();
@@ -183,7 +573,7 @@ public final class WXMVirtualMachineDatabase
 
       final var exceptions = new WXMExceptions();
       for (final var entry : entries) {
-        this.serializeChecked(base, exceptions, entry.getValue());
+        this.serializeChecked(base, exceptions, entry.getValue(), true);
       }
 
       exceptions.throwIfRequired();
@@ -207,6 +597,59 @@ public final class WXMVirtualMachineDatabase
   }
 
   private void serializeChecked(
+    final Path base,
+    final WXMExceptions exceptions,
+    final WXMVirtualMachine machine,
+    final boolean overrides)
+  {
+    final WXMVirtualMachine stored;
+    try {
+      stored = this.storageForm(machine, overrides);
+    } catch (final Exception e) {
+      exceptions.add(e);
+      return;
+    }
+    this.writeChecked(base, exceptions, stored);
+  }
+
+  /**
+   * Determine the form in which a machine is stored. A machine based on a
+   * template is stored as the overrides that differ from the template. The
+   * overrides are resolved against the template before anything is written,
+   * so a machine that would be invalid when read back is rejected.
+   *
+   * @param machine   The machine
+   * @param overrides {@code true} if the devices and boot configurations of
+   *                  the machine are overrides, {@code false} if the machine
+   *                  is in resolved form
+   */
+
+  private WXMVirtualMachine storageForm(
+    final WXMVirtualMachine machine,
+    final boolean overrides)
+    throws WXMException
+  {
+    final var templateId = machine.template();
+    if (templateId.isEmpty()) {
+      return machine;
+    }
+
+    final var template = this.templateFind(templateId.get());
+    final var resolved =
+      overrides
+        ? WXMVirtualMachineTemplates.resolve(template, machine)
+        : machine;
+    final var stored =
+      WXMVirtualMachineTemplates.overrides(template, resolved);
+
+    if (stored.isPresent()) {
+      WXMVirtualMachineTemplates.resolve(template, stored.get());
+      return stored.get();
+    }
+    return WXMVirtualMachineTemplates.detach(resolved);
+  }
+
+  private void writeChecked(
     final Path base,
     final WXMExceptions exceptions,
     final WXMVirtualMachine machine)
@@ -252,8 +695,80 @@ public final class WXMVirtualMachineDatabase
 
     final Path base = this.configuration.databaseDirectory();
     final var exceptions = new WXMExceptions();
-    try (var ignored = this.acquireWriteLock()) {
-      this.serializeChecked(base, exceptions, machine);
+    try (var ignored = this.acquireWriteLock(lockIdsOf(List.of(machine)))) {
+      this.serializeChecked(base, exceptions, machine, false);
+      exceptions.throwIfRequired();
+    }
+  }
+
+  @Override
+  public void vmUpdateAll(
+    final WXMVirtualMachineSet machines)
+    throws WXMException
+  {
+    Objects.requireNonNull(machines, "machines");
+
+    final var entries = machines.machines();
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    /*
+     * Each write serializes, parses, and renames one file, so the writes
+     * are bounded by the number of processors rather than started all at
+     * once; this also bounds the number of open files.
+     */
+
+    final var base = this.configuration.databaseDirectory();
+    final var exceptions = new WXMExceptions();
+    final var threads =
+      Math.min(entries.size(), Runtime.getRuntime().availableProcessors());
+
+    try (var ignored = this.acquireWriteLock(lockIdsOf(entries.values()))) {
+      try (var executor = Executors.newFixedThreadPool(threads, WRITERS)) {
+        for (final var machine : entries.values()) {
+          executor.execute(() -> {
+            this.serializeChecked(base, exceptions, machine, false);
+          });
+        }
+      }
+      exceptions.throwIfRequired();
+    }
+  }
+
+  @Override
+  public void vmUpdateIfUnchanged(
+    final WXMVirtualMachine expected,
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    Objects.requireNonNull(expected, "expected");
+    Objects.requireNonNull(machine, "machine");
+
+    if (!Objects.equals(expected.id(), machine.id())) {
+      throw new IllegalArgumentException(String.format(
+        "Machine IDs must match (expected %s, received %s)",
+        expected.id(),
+        machine.id()
+      ));
+    }
+
+    final Path base = this.configuration.databaseDirectory();
+    final var exceptions = new WXMExceptions();
+    try (var ignored = this.acquireWriteLock(lockIdsOf(List.of(machine)))) {
+      final var current = this.vmGet(machine.id());
+      if (current.isEmpty()) {
+        throw new WXMExceptionNonexistent(
+          this.machineMessages.format("errorMachineNonexistent", machine.id())
+        );
+      }
+      if (!Objects.equals(current.get(), expected)) {
+        throw new WXMExceptionConcurrentModification(
+          this.machineMessages.format("errorMachineModified", machine.id())
+        );
+      }
+
+      this.serializeChecked(base, exceptions, machine, false);
       exceptions.throwIfRequired();
     }
   }
@@ -265,27 +780,32 @@ public final class WXMVirtualMachineDatabase
     final var exceptions = new WXMExceptions();
 
     final var sets = new ArrayList<WXMVirtualMachineSet>();
-    try (var stream = Files.list(this.configuration.databaseDirectory())) {
-      final var list =
-        stream.map(Path::toAbsolutePath)
-          .filter(WXMVirtualMachineDatabase::appearsToBeVirtualMachine)
-          .sorted()
-          .collect(Collectors.toList());
-      for (final var file : list) {
-        try {
-          sets.add(this.parsers.parse(file));
-        } catch (final WXMException e) {
-          exceptions.add(e);
-        }
+    for (final var file : this.machineFiles(exceptions)) {
+      try {
+        sets.add(this.readMachineFile(file));
+      } catch (final WXMException e) {
+        exceptions.add(e);
       }
-    } catch (final IOException e) {
-      exceptions.add(e);
     }
 
     exceptions.throwIfRequired();
     return WXMVirtualMachineSets.merge(this.machineMessages, sets);
   }
 
+  private List<Path> machineFiles(
+    final WXMExceptions exceptions)
+  {
+    try (var stream = Files.list(this.configuration.databaseDirectory())) {
+      return stream.map(Path::toAbsolutePath)
+        .filter(WXMVirtualMachineDatabase::appearsToBeVirtualMachine)
+        .sorted()
+        .collect(Collectors.toList());
+    } catch (final IOException e) {
+      exceptions.add(e);
+      return List.of();
+    }
+  }
+
   @Override
   public void vmDelete(final UUID id)
     throws WXMException
@@ -296,7 +816,7 @@ public final class WXMVirtualMachineDatabase
       this.configuration.databaseDirectory()
         .resolve(id + ".wvmx");
 
-    try (var ignored = this.acquireWriteLock()) {
+    try (var ignored = this.acquireWriteLock(List.of(id))) {
       try {
         Files.delete(file);
       } catch (final NoSuchFileException e) {
@@ -311,9 +831,39 @@ public final class WXMVirtualMachineDatabase
   }
 
   @Override
-  public void close()
+  public WXMVirtualMachineWatchType vmWatch(
+    final WXMVirtualMachineWatchConfiguration watchConfiguration,
+    final WXMVirtualMachineWatchListenerType listener)
+    throws WXMException
   {
+    Objects.requireNonNull(watchConfiguration, "watchConfiguration");
+    Objects.requireNonNull(listener, "listener");
+
+    final var watch =
+      WXMVirtualMachineDatabaseWatch.start(
+        this.configuration.databaseDirectory(),
+        watchConfiguration,
+        listener,
+        this::readMachineFile,
+        this.watches::remove
+      );
+    this.watches.add(watch);
+    return watch;
+  }
 
+  @Override
+  public void close()
+    throws WXMException
+  {
+    final var exceptions = new WXMExceptions();
+    for (final var watch : List.copyOf(this.watches)) {
+      try {
+        watch.close();
+      } catch (final WXMException e) {
+        exceptions.add(e);
+      }
+    }
+    exceptions.throwIfRequired();
   }
 
   @Override
@@ -324,4 +874,18 @@ public final class WXMVirtualMachineDatabase
       Long.toUnsignedString(System.identityHashCode(this), 16)
     );
   }
+
+  private static final class CachedTemplate
+  {
+    private final WXMFileStamp stamp;
+    private final WXMVirtualMachine template;
+
+    CachedTemplate(
+      final WXMFileStamp inStamp,
+      final WXMVirtualMachine inTemplate)
+    {
+      this.stamp = Objects.requireNonNull(inStamp, "stamp");
+      this.template = Objects.requireNonNull(inTemplate, "template");
+    }
+  }
 }
@@ -0,0 +1,705 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.database.vanilla.internal;
+
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineEvent;
+import com.io7m.waxmill.machines.WXMVirtualMachineEventKind;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchMode;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * A watch on the machine files of a database directory.
+ *
+ * The watch maintains an index of the modification time, size, and file key
+ * of every machine file, along with the IDs of the machines that each file
+ * defined when it was last parsed. A file is parsed only when its entry in
+ * the index no longer matches the file (see {@link WXMFileStamp}).
+ *
+ * Machines are read with the same reader that the database uses, so machines
+ * based on templates are published in their resolved form. The template
+ * files in the {@code templates} subdirectory are indexed and examined in
+ * the same way as machine files, and the index records the templates on
+ * which the machines of each file are based. When a template file is
+ * created, changed, or removed, every machine file that defines a machine
+ * based on that template is read again, whether or not the machine file
+ * itself has changed, and so produces events as if it had been rewritten.
+ * The {@code templates} subdirectory is watched from the moment that it is
+ * created, if it does not exist when the watch is started.
+ *
+ * In notification mode, the names of changed files are collected from a
+ * {@link WatchService} for the debounce period following the first
+ * notification, and only those files are examined. Changed templates are
+ * examined before changed machine files, so a machine file that is read
+ * again because of a template change is not read a second time. In polling
+ * mode, or when the watch service reports that notifications were lost,
+ * every file in both directories is examined.
+ *
+ * The index is accessed only by the thread owned by the watch.
+ */
+
+final class WXMVirtualMachineDatabaseWatch
+  implements WXMVirtualMachineWatchType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMVirtualMachineDatabaseWatch.class);
+
+  private static final ThreadFactory THREADS =
+    Thread.ofVirtual()
+      .name("com.io7m.waxmill.database.watch-", 0L)
+      .factory();
+
+  private final Path directory;
+  private final Path templateDirectory;
+  private final WXMVirtualMachineWatchConfiguration configuration;
+  private final WXMVirtualMachineWatchListenerType listener;
+  private final WXMMachineFileReaderType reader;
+  private final Optional<WatchService> watchService;
+  private final Consumer<WXMVirtualMachineDatabaseWatch> onClose;
+  private final Map<Path, IndexEntry> index;
+  private final Map<Path, WXMFileStamp> templateIndex;
+  private final CountDownLatch closedLatch;
+  private final AtomicBoolean closed;
+  private final Thread thread;
+
+  private WXMVirtualMachineDatabaseWatch(
+    final Path inDirectory,
+    final WXMVirtualMachineWatchConfiguration inConfiguration,
+    final WXMVirtualMachineWatchListenerType inListener,
+    final WXMMachineFileReaderType inReader,
+    final Optional<WatchService> inWatchService,
+    final Consumer<WXMVirtualMachineDatabaseWatch> inOnClose)
+  {
+    this.directory =
+      Objects.requireNonNull(inDirectory, "directory");
+    this.templateDirectory =
+      templateDirectoryOf(inDirectory);
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.listener =
+      Objects.requireNonNull(inListener, "listener");
+    this.reader =
+      Objects.requireNonNull(inReader, "reader");
+    this.watchService =
+      Objects.requireNonNull(inWatchService, "watchService");
+    this.onClose =
+      Objects.requireNonNull(inOnClose, "onClose");
+    this.index =
+      new HashMap<>();
+    this.templateIndex =
+      new HashMap<>();
+    this.closedLatch =
+      new CountDownLatch(1);
+    this.closed =
+      new AtomicBoolean(false);
+    this.thread =
+      THREADS.newThread(this::run);
+  }
+
+  /**
+   * Start watching a database directory. The index is populated before this
+   * method returns, and the contents of the directory at that time do not
+   * produce events.
+   *
+   * @param directory     The database directory
+   * @param configuration The watch configuration
+   * @param listener      The listener
+   * @param reader        A reader of machine files
+   * @param onClose       A function called when the watch is closed
+   *
+   * @return A running watch
+   *
+   * @throws WXMException On errors
+   */
+
+  static WXMVirtualMachineDatabaseWatch start(
+    final Path directory,
+    final WXMVirtualMachineWatchConfiguration configuration,
+    final WXMVirtualMachineWatchListenerType listener,
+    final WXMMachineFileReaderType reader,
+    final Consumer<WXMVirtualMachineDatabaseWatch> onClose)
+    throws WXMException
+  {
+    Objects.requireNonNull(directory, "directory");
+    Objects.requireNonNull(configuration, "configuration");
+    Objects.requireNonNull(listener, "listener");
+    Objects.requireNonNull(reader, "reader");
+    Objects.requireNonNull(onClose, "onClose");
+
+    final var watchService =
+      openWatchService(directory, configuration.mode());
+    final var watch =
+      new WXMVirtualMachineDatabaseWatch(
+        directory,
+        configuration,
+        listener,
+        reader,
+        watchService,
+        onClose
+      );
+
+    try {
+      watch.populateIndex();
+    } catch (final IOException e) {
+      watch.close();
+      throw new WXMException(e);
+    }
+
+    watch.thread.start();
+    return watch;
+  }
+
+  private static Path templateDirectoryOf(
+    final Path directory)
+  {
+    return directory.resolve(WXMVirtualMachineDatabase.TEMPLATE_DIRECTORY_NAME)
+      .toAbsolutePath();
+  }
+
+  private static Optional<WatchService> openWatchService(
+    final Path directory,
+    final WXMVirtualMachineWatchMode mode)
+    throws WXMException
+  {
+    switch (mode) {
+      case POLLING:
+        return Optional.empty();
+      case NOTIFICATION:
+        try {
+          return Optional.of(registerWatchService(directory));
+        } catch (final IOException e) {
+          throw new WXMException(e);
+        } catch (final UnsupportedOperationException e) {
+          throw new WXMException(new IOException(e));
+        }
+      case AUTOMATIC:
+        try {
+          return Optional.of(registerWatchService(directory));
+        } catch (final IOException | UnsupportedOperationException e) {
+          LOG.debug(
+            "filesystem notifications unavailable, falling back to polling: ",
+            e);
+          return Optional.empty();
+        }
+    }
+    throw new IllegalStateException("Unrecognized watch mode: " + mode);
+  }
+
+  private static WatchService registerWatchService(
+    final Path directory)
+    throws IOException
+  {
+    final var service = directory.getFileSystem().newWatchService();
+    try {
+      directory.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      registerTemplateDirectory(service, templateDirectoryOf(directory));
+      return service;
+    } catch (final IOException | RuntimeException e) {
+      service.close();
+      throw e;
+    }
+  }
+
+  private static boolean registerTemplateDirectory(
+    final WatchService service,
+    final Path templateDirectory)
+    throws IOException
+  {
+    if (!Files.isDirectory(templateDirectory)) {
+      return false;
+    }
+
+    try {
+      templateDirectory.register(
+        service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      return true;
+    } catch (final NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public WXMVirtualMachineWatchMode mode()
+  {
+    return this.watchService.isPresent()
+      ? WXMVirtualMachineWatchMode.NOTIFICATION
+      : WXMVirtualMachineWatchMode.POLLING;
+  }
+
+  @Override
+  public void close()
+    throws WXMException
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      this.closedLatch.countDown();
+
+      try {
+        if (this.watchService.isPresent()) {
+          this.watchService.get().close();
+        }
+      } catch (final IOException e) {
+        throw new WXMException(e);
+      } finally {
+        this.onClose.accept(this);
+      }
+
+      if (this.thread.isAlive() && Thread.currentThread() != this.thread) {
+        try {
+          this.thread.join();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  private void run()
+  {
+    try {
+      if (this.watchService.isPresent()) {
+        try {
+          this.runNotification(this.watchService.get());
+        } catch (final IOException e) {
+          this.publishError(new WXMException(e));
+          LOG.warn("filesystem notifications failed, falling back to polling");
+        }
+      }
+      this.runPolling();
+    } catch (final ClosedWatchServiceException | InterruptedException e) {
+      LOG.trace("watch closed: ", e);
+    }
+  }
+
+  private void runPolling()
+    throws InterruptedException
+  {
+    final var interval = this.configuration.pollInterval();
+    while (!this.closedLatch.await(interval.toNanos(), TimeUnit.NANOSECONDS)) {
+      this.examineAll();
+    }
+  }
+
+  private void runNotification(
+    final WatchService service)
+    throws InterruptedException, IOException
+  {
+    final var debounce = this.configuration.debounce().toNanos();
+
+    while (!this.closed.get()) {
+      final var changed = new TreeSet<Path>();
+      boolean overflow = this.collect(service, service.take(), changed);
+
+      final var deadline = System.nanoTime() + debounce;
+      while (true) {
+        final var remaining = deadline - System.nanoTime();
+        if (remaining <= 0L) {
+          break;
+        }
+        final var key = service.poll(remaining, TimeUnit.NANOSECONDS);
+        if (key == null) {
+          break;
+        }
+        overflow |= this.collect(service, key, changed);
+      }
+
+      if (overflow) {
+        this.examineAll();
+      } else {
+        for (final var file : changed) {
+          if (this.isTemplateFile(file)) {
+            this.examineTemplate(file);
+          }
+        }
+        for (final var file : changed) {
+          if (!this.isTemplateFile(file)) {
+            this.examine(file, false);
+          }
+        }
+      }
+    }
+  }
+
+  private boolean isTemplateFile(
+    final Path file)
+  {
+    return this.templateDirectory.equals(file.getParent());
+  }
+
+  private boolean collect(
+    final WatchService service,
+    final WatchKey key,
+    final Set<Path> changed)
+    throws IOException
+  {
+    final var watched = ((Path) key.watchable()).toAbsolutePath();
+    final var inTemplates = watched.equals(this.templateDirectory);
+
+    boolean overflow = false;
+    for (final var event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        overflow = true;
+        continue;
+      }
+
+      final var name = (Path) event.context();
+      final var file = watched.resolve(name);
+      if (WXMVirtualMachineDatabase.appearsToBeVirtualMachine(name)) {
+        changed.add(file);
+        continue;
+      }
+
+      /*
+       * Templates written before the new directory was registered do not
+       * produce notifications, so the directory is listed once registered.
+       */
+
+      if (!inTemplates
+        && event.kind() == ENTRY_CREATE
+        && file.equals(this.templateDirectory)
+        && registerTemplateDirectory(service, this.templateDirectory)) {
+        changed.addAll(this.listFiles(this.templateDirectory));
+      }
+    }
+
+    /*
+     * The watch on the template directory becomes invalid if the directory
+     * is deleted. The directory is registered again if it is recreated.
+     */
+
+    if (!key.reset() && !inTemplates) {
+      throw new IOException(
+        String.format(
+          "Watch on %s is no longer valid",
+          this.directory));
+    }
+    return overflow;
+  }
+
+  private void populateIndex()
+    throws IOException
+  {
+    for (final var file : this.listFiles(this.templateDirectory)) {
+      final var stampOpt = WXMFileStamp.of(file);
+      if (stampOpt.isPresent()) {
+        this.templateIndex.put(file, stampOpt.get());
+      }
+    }
+
+    for (final var file : this.listFiles(this.directory)) {
+      final var stampOpt = WXMFileStamp.of(file);
+      if (stampOpt.isPresent()) {
+        try {
+          this.index.put(
+            file,
+            IndexEntry.of(stampOpt.get(), this.reader.read(file).machines()));
+        } catch (final WXMException e) {
+          /*
+           * The listener is only called from the watch thread, so the
+           * error is logged rather than published. The file will produce
+           * events once it has been rewritten.
+           */
+
+          LOG.warn("unparseable machine file {}: ", file, e);
+          this.index.put(
+            file,
+            new IndexEntry(stampOpt.get(), Set.of(), Set.of()));
+        }
+      }
+    }
+  }
+
+  private Set<Path> listFiles(
+    final Path listed)
+    throws IOException
+  {
+    if (listed.equals(this.templateDirectory)
+      && !Files.isDirectory(listed)) {
+      return new TreeSet<>();
+    }
+
+    try (var stream = Files.list(listed)) {
+      return stream.map(Path::toAbsolutePath)
+        .filter(WXMVirtualMachineDatabase::appearsToBeVirtualMachine)
+        .collect(Collectors.toCollection(TreeSet::new));
+    } catch (final NoSuchFileException e) {
+      if (listed.equals(this.templateDirectory)) {
+        return new TreeSet<>();
+      }
+      throw e;
+    }
+  }
+
+  private void examineAll()
+  {
+    final var templates = new TreeSet<>(this.templateIndex.keySet());
+    final var files = new TreeSet<>(this.index.keySet());
+    try {
+      templates.addAll(this.listFiles(this.templateDirectory));
+      files.addAll(this.listFiles(this.directory));
+    } catch (final IOException e) {
+      this.publishError(new WXMException(e));
+      return;
+    }
+
+    for (final var file : templates) {
+      this.examineTemplate(file);
+    }
+    for (final var file : files) {
+      this.examine(file, false);
+    }
+  }
+
+  private void examineTemplate(
+    final Path file)
+  {
+    final var previous = this.templateIndex.get(file);
+
+    final Optional<WXMFileStamp> currentOpt;
+    try {
+      currentOpt = WXMFileStamp.of(file);
+    } catch (final IOException e) {
+      this.publishError(new WXMException(e));
+      return;
+    }
+
+    if (currentOpt.isEmpty()) {
+      if (previous == null) {
+        return;
+      }
+      this.templateIndex.remove(file);
+    } else {
+      final var current = currentOpt.get();
+      if (current.equals(previous)) {
+        return;
+      }
+      this.templateIndex.put(file, current);
+    }
+
+    final var templateIdOpt = templateIdOf(file);
+    if (templateIdOpt.isEmpty()) {
+      return;
+    }
+
+    final var templateId = templateIdOpt.get();
+    final var dependents =
+      this.index.entrySet()
+        .stream()
+        .filter(entry -> entry.getValue().templates.contains(templateId))
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toCollection(TreeSet::new));
+
+    for (final var dependent : dependents) {
+      this.examine(dependent, true);
+    }
+  }
+
+  private static Optional<UUID> templateIdOf(
+    final Path file)
+  {
+    final var name = String.valueOf(file.getFileName());
+    try {
+      return Optional.of(
+        UUID.fromString(name.substring(0, name.length() - ".wvmx".length())));
+    } catch (final IllegalArgumentException e) {
+      LOG.debug("template file {} is not named after a template", file);
+      return Optional.empty();
+    }
+  }
+
+  private void examine(
+    final Path file,
+    final boolean force)
+  {
+    final var previous = this.index.get(file);
+
+    final Optional<WXMFileStamp> currentOpt;
+    try {
+      currentOpt = WXMFileStamp.of(file);
+    } catch (final IOException e) {
+      this.publishError(new WXMException(e));
+      return;
+    }
+
+    if (currentOpt.isEmpty()) {
+      this.examineRemoved(file, previous);
+      return;
+    }
+
+    final var current = currentOpt.get();
+    if (!force && previous != null && previous.stamp.equals(current)) {
+      return;
+    }
+
+    final var previousEntry =
+      previous == null ? new IndexEntry(current, Set.of(), Set.of()) : previous;
+    this.read(file, current, previousEntry);
+  }
+
+  private void read(
+    final Path file,
+    final WXMFileStamp current,
+    final IndexEntry previous)
+  {
+    final SortedMap<UUID, WXMVirtualMachine> machines;
+    try {
+      machines = this.reader.read(file).machines();
+    } catch (final WXMException e) {
+      this.index.put(
+        file,
+        new IndexEntry(current, previous.machines, previous.templates));
+      this.publishError(e);
+      return;
+    }
+
+    this.index.put(file, IndexEntry.of(current, machines));
+    this.publishChanges(previous.machines, machines);
+  }
+
+  private void examineRemoved(
+    final Path file,
+    final IndexEntry previous)
+  {
+    if (previous != null) {
+      this.index.remove(file);
+      for (final var id : previous.machines) {
+        this.publish(WXMVirtualMachineEvent.of(
+          WXMVirtualMachineEventKind.DELETED, id, Optional.empty()));
+      }
+    }
+  }
+
+  private void publishChanges(
+    final Set<UUID> previousIds,
+    final SortedMap<UUID, WXMVirtualMachine> machines)
+  {
+    for (final var id : previousIds) {
+      if (!machines.containsKey(id)) {
+        this.publish(WXMVirtualMachineEvent.of(
+          WXMVirtualMachineEventKind.DELETED, id, Optional.empty()));
+      }
+    }
+    for (final var entry : machines.entrySet()) {
+      final var kind =
+        previousIds.contains(entry.getKey())
+          ? WXMVirtualMachineEventKind.UPDATED
+          : WXMVirtualMachineEventKind.DEFINED;
+      this.publish(WXMVirtualMachineEvent.of(
+        kind, entry.getKey(), Optional.of(entry.getValue())));
+    }
+  }
+
+  private void publish(
+    final WXMVirtualMachineEvent event)
+  {
+    if (this.closed.get()) {
+      return;
+    }
+
+    try {
+      this.listener.onEvent(event);
+    } catch (final Exception e) {
+      LOG.error("ignored exception raised by listener: ", e);
+    }
+  }
+
+  private void publishError(
+    final WXMException exception)
+  {
+    if (this.closed.get()) {
+      return;
+    }
+
+    try {
+      this.listener.onError(exception);
+    } catch (final Exception e) {
+      LOG.error("ignored exception raised by listener: ", e);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMVirtualMachineDatabaseWatch 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+
+  private static final class IndexEntry
+  {
+    private final WXMFileStamp stamp;
+    private final Set<UUID> machines;
+    private final Set<UUID> templates;
+
+    IndexEntry(
+      final WXMFileStamp inStamp,
+      final Set<UUID> inMachines,
+      final Set<UUID> inTemplates)
+    {
+      this.stamp = Objects.requireNonNull(inStamp, "stamp");
+      this.machines = Objects.requireNonNull(inMachines, "machines");
+      this.templates = Objects.requireNonNull(inTemplates, "templates");
+    }
+
+    static IndexEntry of(
+      final WXMFileStamp stamp,
+      final SortedMap<UUID, WXMVirtualMachine> machines)
+    {
+      return new IndexEntry(
+        stamp,
+        Set.copyOf(machines.keySet()),
+        machines.values()
+          .stream()
+          .flatMap(machine -> machine.template().stream())
+          .collect(Collectors.toUnmodifiableSet())
+      );
+    }
+  }
+}
@@ -35,6 +35,7 @@ module com.io7m.waxmill.database.vanilla
   requires com.io7m.waxmill.machines;
   requires com.io7m.waxmill.parser.api;
   requires com.io7m.waxmill.serializer.api;
+  requires org.slf4j;
 
   uses WXMVirtualMachineParserProviderType;
   uses WXMVirtualMachineSerializerProviderType;
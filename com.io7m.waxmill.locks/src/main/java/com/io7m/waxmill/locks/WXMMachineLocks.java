@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.locks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process locks that serialize operations on individual virtual machines.
+ *
+ * Each machine has a fair lock, so operations on the same machine are
+ * executed one at a time in the order in which they arrived, while
+ * operations on different machines proceed in parallel. An operation whose
+ * set of machines cannot be known in advance may instead lock every
+ * machine, excluding all other operations until it completes. Threads
+ * holding locks on individual machines must not attempt to lock every
+ * machine.
+ *
+ * The locks are released by closing the returned handles. Locks are
+ * created on demand and discarded when no thread holds or is waiting for
+ * them.
+ */
+
+public final class WXMMachineLocks
+{
+  private final ReentrantReadWriteLock all;
+  private final ConcurrentHashMap<UUID, MachineLock> machines;
+
+  /**
+   * Create a set of machine locks.
+   */
+
+  public WXMMachineLocks()
+  {
+    this.all = new ReentrantReadWriteLock(true);
+    this.machines = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Lock the given machines, blocking until all of the locks are held.
+   * Machines are always locked in the same order, so threads locking
+   * overlapping sets of machines cannot deadlock.
+   *
+   * @param ids The machines
+   *
+   * @return A handle that releases the locks
+   */
+
+  public WXMLockHandleType lockMachines(
+    final Collection<UUID> ids)
+  {
+    Objects.requireNonNull(ids, "ids");
+
+    final var sorted = new TreeSet<>(ids);
+    final var acquired = new ArrayList<MachineLock>(sorted.size());
+
+    this.all.readLock().lock();
+    for (final var id : sorted) {
+      final var lock = this.reference(id);
+      lock.lock.lock();
+      acquired.add(lock);
+    }
+
+    final var released = new AtomicBoolean(false);
+    return () -> {
+      if (released.compareAndSet(false, true)) {
+        this.release(acquired);
+      }
+    };
+  }
+
+  /**
+   * Lock every machine, blocking until no other thread holds a lock on any
+   * machine.
+   *
+   * @return A handle that releases the lock
+   */
+
+  public WXMLockHandleType lockAll()
+  {
+    final var lock = this.all.writeLock();
+    lock.lock();
+
+    final var released = new AtomicBoolean(false);
+    return () -> {
+      if (released.compareAndSet(false, true)) {
+        lock.unlock();
+      }
+    };
+  }
+
+  /**
+   * @return The number of machines that currently have locks that are
+   * held or awaited
+   */
+
+  public int size()
+  {
+    return this.machines.size();
+  }
+
+  private void release(
+    final List<MachineLock> acquired)
+  {
+    try {
+      for (int index = acquired.size() - 1; index >= 0; --index) {
+        final var lock = acquired.get(index);
+        lock.lock.unlock();
+        this.dereference(lock);
+      }
+    } finally {
+      this.all.readLock().unlock();
+    }
+  }
+
+  private MachineLock reference(
+    final UUID id)
+  {
+    return this.machines.compute(id, (key, existing) -> {
+      final var lock = existing != null ? existing : new MachineLock(key);
+      ++lock.users;
+      return lock;
+    });
+  }
+
+  private void dereference(
+    final MachineLock lock)
+  {
+    this.machines.computeIfPresent(lock.id, (key, existing) -> {
+      --existing.users;
+      return existing.users == 0 ? null : existing;
+    });
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMMachineLocks 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+
+  private static final class MachineLock
+  {
+    private final UUID id;
+    private final ReentrantLock lock;
+    private int users;
+
+    MachineLock(
+      final UUID inId)
+    {
+      this.id = inId;
+      this.lock = new ReentrantLock(true);
+    }
+  }
+}
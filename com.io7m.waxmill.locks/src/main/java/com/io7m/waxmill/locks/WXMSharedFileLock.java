@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.locks;
+
+import com.io7m.waxmill.exceptions.WXMException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A file lock that may be held by several threads of the same process at
+ * once. The JVM does not permit two threads to hold overlapping locks on
+ * the same file, so a {@link WXMFileLock} cannot be used by concurrent
+ * threads. A shared file lock acquires the underlying file lock when the
+ * first thread acquires the shared lock, and releases it when the last
+ * thread releases the shared lock. Other processes are excluded for as long
+ * as any thread holds the lock; threads of the same process must exclude
+ * each other by other means, such as {@link WXMMachineLocks}.
+ */
+
+public final class WXMSharedFileLock
+{
+  private static final ConcurrentHashMap<Path, WXMSharedFileLock> LOCKS =
+    new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final ReentrantLock lock;
+  private WXMFileLock held;
+  private int holders;
+
+  private WXMSharedFileLock(
+    final Path inFile)
+  {
+    this.file = Objects.requireNonNull(inFile, "file");
+    this.lock = new ReentrantLock();
+  }
+
+  /**
+   * Return the shared lock for the given file. All callers in the same
+   * process receive the same shared lock for the same file.
+   *
+   * @param file The lock file
+   *
+   * @return A shared lock
+   */
+
+  public static WXMSharedFileLock forFile(
+    final Path file)
+  {
+    return LOCKS.computeIfAbsent(
+      file.toAbsolutePath().normalize(),
+      WXMSharedFileLock::new
+    );
+  }
+
+  /**
+   * Acquire the lock, blocking until any other process holding the
+   * underlying file lock has released it.
+   *
+   * @return A handle that releases the lock
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public WXMLockHandleType acquire()
+    throws IOException
+  {
+    this.lock.lock();
+    try {
+      if (this.holders == 0) {
+        this.held = WXMFileLock.acquire(this.file);
+      }
+      ++this.holders;
+    } finally {
+      this.lock.unlock();
+    }
+
+    final var released = new AtomicBoolean(false);
+    return () -> {
+      if (released.compareAndSet(false, true)) {
+        this.release();
+      }
+    };
+  }
+
+  private void release()
+    throws WXMException
+  {
+    this.lock.lock();
+    try {
+      --this.holders;
+      if (this.holders == 0) {
+        final var current = this.held;
+        this.held = null;
+        current.close();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMSharedFileLock 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -400,6 +400,12 @@ public interface WXMBootConfigurationType
 
     Kind kind();
 
+    /**
+     * @return The name of the boot configuration that was evaluated
+     */
+
+    WXMBootConfigurationName name();
+
     /**
      * @return The files required to exist by the boot configuration
      */
@@ -417,6 +423,14 @@ public interface WXMBootConfigurationType
      */
 
     WXMEvaluatedBootCommands commands();
+
+    /**
+     * @return The fingerprint of the evaluated configuration
+     *
+     * @see WXMBootFingerprints
+     */
+
+    String fingerprint();
   }
 
   /**
@@ -465,9 +479,19 @@ public interface WXMBootConfigurationType
     @Override
     Set<Path> requiredNMDMs();
 
+    @Override
+    WXMBootConfigurationName name();
+
     @Override
     WXMEvaluatedBootCommands commands();
 
+    @Override
+    @Value.Lazy
+    default String fingerprint()
+    {
+      return WXMBootFingerprints.fingerprint(this);
+    }
+
     /**
      * @return A file that will contain a GRUB device map
      */
@@ -533,9 +557,19 @@ public interface WXMBootConfigurationType
     @Override
     Set<Path> requiredNMDMs();
 
+    @Override
+    WXMBootConfigurationName name();
+
     @Override
     WXMEvaluatedBootCommands commands();
 
+    @Override
+    @Value.Lazy
+    default String fingerprint()
+    {
+      return WXMBootFingerprints.fingerprint(this);
+    }
+
     /**
      * Check preconditions for the type.
      */
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.machines;
+
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+
+import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationGRUBBhyveType;
+import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationType;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Functions to compute fingerprints of evaluated boot configurations. A
+ * fingerprint covers every command executed to boot a machine (including
+ * the final bhyve invocation), and the GRUB configuration and device map
+ * files, if any. Two evaluations produce the same fingerprint if and only
+ * if booting with either of them would execute the same commands with the
+ * same files. Each value is length-prefixed before being hashed, so that
+ * distinct sequences of values cannot produce the same digest input.
+ */
+
+public final class WXMBootFingerprints
+{
+  /**
+   * The prefix applied to all fingerprints, naming the hash algorithm.
+   */
+
+  public static final String FINGERPRINT_PREFIX = "sha256:";
+
+  private WXMBootFingerprints()
+  {
+
+  }
+
+  /**
+   * Compute the fingerprint of an evaluated boot configuration.
+   *
+   * @param configuration The evaluated configuration
+   *
+   * @return The fingerprint
+   */
+
+  public static String fingerprint(
+    final WXMEvaluatedBootConfigurationType configuration)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var digest = createDigest();
+    updateString(digest, configuration.kind().name());
+
+    final var commands = configuration.commands();
+    final var configurationCommands = commands.configurationCommands();
+    updateInt(digest, configurationCommands.size());
+    for (final var command : configurationCommands) {
+      updateCommand(digest, command);
+    }
+
+    final var lastOpt = commands.lastExecution();
+    updateInt(digest, lastOpt.isPresent() ? 1 : 0);
+    lastOpt.ifPresent(last -> updateCommand(digest, last));
+
+    if (configuration instanceof WXMEvaluatedBootConfigurationGRUBBhyveType) {
+      final var grub =
+        (WXMEvaluatedBootConfigurationGRUBBhyveType) configuration;
+      updateString(digest, grub.deviceMapFile().toString());
+      updateLines(digest, grub.deviceMap());
+      updateString(digest, grub.grubConfigurationFile().toString());
+      updateLines(digest, grub.grubConfiguration());
+    }
+
+    return FINGERPRINT_PREFIX + HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static MessageDigest createDigest()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      // SHA-256 is required to be present on all Java platforms.
+      throw new UnreachableCodeException(e);
+    }
+  }
+
+  private static void updateCommand(
+    final MessageDigest digest,
+    final WXMCommandExecution command)
+  {
+    updateString(digest, command.executable().toString());
+    updateLines(digest, command.arguments());
+    updateInt(digest, command.ignoreFailure() ? 1 : 0);
+  }
+
+  private static void updateLines(
+    final MessageDigest digest,
+    final List<String> lines)
+  {
+    updateInt(digest, lines.size());
+    for (final var line : lines) {
+      updateString(digest, line);
+    }
+  }
+
+  private static void updateString(
+    final MessageDigest digest,
+    final String text)
+  {
+    final var bytes = text.getBytes(UTF_8);
+    updateInt(digest, bytes.length);
+    digest.update(bytes);
+  }
+
+  private static void updateInt(
+    final MessageDigest digest,
+    final int value)
+  {
+    digest.update(ByteBuffer.allocate(4).putInt(value).array());
+  }
+}
@@ -21,7 +21,9 @@ import com.io7m.jaffirm.core.Preconditions;
 import org.immutables.value.Value;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * An execution of an external command.
@@ -43,6 +45,12 @@ public abstract class WXMCommandExecutionType
 
   abstract List<String> arguments();
 
+  /**
+   * @return The maximum time that the command may run, if any
+   */
+
+  abstract Optional<Duration> timeout();
+
   /**
    * @return If the failure of this command should be ignored
    */
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.machines;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static com.io7m.waxmill.machines.WXMVirtualMachineEventKind.DELETED;
+
+/**
+ * A change to the definition of a virtual machine.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMVirtualMachineEventType
+{
+  /**
+   * @return The kind of change
+   */
+
+  @Value.Parameter
+  WXMVirtualMachineEventKind kind();
+
+  /**
+   * @return The ID of the virtual machine that changed
+   */
+
+  @Value.Parameter
+  UUID machineId();
+
+  /**
+   * @return The new definition of the virtual machine, present for all
+   * events except deletions
+   */
+
+  @Value.Parameter
+  Optional<WXMVirtualMachine> machine();
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    final var machineOpt = this.machine();
+    final var machineId = this.machineId();
+    Preconditions.checkPreconditionV(
+      machineOpt.isPresent() == (this.kind() != DELETED),
+      "Only deletion events may omit the machine"
+    );
+    machineOpt.ifPresent(machine -> {
+      final var id = machine.id();
+      Preconditions.checkPreconditionV(
+        id.equals(machineId),
+        "Machine ID %s must match event ID %s",
+        id,
+        machineId
+      );
+    });
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.machines;
+
+import com.io7m.jaffirm.core.Preconditions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Functions over virtual machine templates.
+ *
+ * A template is an ordinary virtual machine definition that is not itself
+ * based on a template. A machine based on a template is stored as a set of
+ * overrides: the devices and boot configurations that are not present in
+ * the template, or that differ from the items in the template with the same
+ * device slot or name. All other properties of the machine belong to the
+ * machine alone.
+ */
+
+public final class WXMVirtualMachineTemplates
+{
+  private WXMVirtualMachineTemplates()
+  {
+
+  }
+
+  private static void checkTemplate(
+    final WXMVirtualMachine template,
+    final WXMVirtualMachine machine)
+  {
+    final var templateId = template.id();
+    Preconditions.checkPreconditionV(
+      template.template().isEmpty(),
+      "Template %s must not itself be based on a template",
+      templateId
+    );
+    Preconditions.checkPreconditionV(
+      Objects.equals(machine.template(), Optional.of(templateId)),
+      "Machine %s must be based on template %s",
+      machine.id(),
+      templateId
+    );
+  }
+
+  /**
+   * Resolve a machine against its template. The devices and boot
+   * configurations of the machine replace those of the template with the
+   * same device slot or name. The resulting machine is checked as if it had
+   * been defined without a template, and then retains its reference to the
+   * template.
+   *
+   * @param template The template
+   * @param machine  The machine based on the template
+   *
+   * @return The resolved machine
+   */
+
+  public static WXMVirtualMachine resolve(
+    final WXMVirtualMachine template,
+    final WXMVirtualMachine machine)
+  {
+    Objects.requireNonNull(template, "template");
+    Objects.requireNonNull(machine, "machine");
+    checkTemplate(template, machine);
+
+    final var devices =
+      new TreeMap<WXMDeviceSlot, WXMDeviceType>(template.deviceMap());
+    devices.putAll(machine.deviceMap());
+
+    final var bootConfigurations =
+      new LinkedHashMap<WXMBootConfigurationName, WXMBootConfigurationType>();
+    for (final var bootConfiguration : template.bootConfigurations()) {
+      bootConfigurations.put(bootConfiguration.name(), bootConfiguration);
+    }
+    for (final var bootConfiguration : machine.bootConfigurations()) {
+      bootConfigurations.put(bootConfiguration.name(), bootConfiguration);
+    }
+
+    return WXMVirtualMachine.builder()
+      .from(machine)
+      .setTemplate(Optional.empty())
+      .setDevices(devices.values())
+      .setBootConfigurations(bootConfigurations.values())
+      .build()
+      .withTemplate(template.id());
+  }
+
+  /**
+   * Reduce a resolved machine to the overrides that, when resolved against
+   * the template, produce the same machine. Overrides cannot express the
+   * removal of an item of the template, so no overrides exist if the machine
+   * lacks any device slot or boot configuration name that the template
+   * defines.
+   *
+   * @param template The template
+   * @param machine  The resolved machine based on the template
+   *
+   * @return The overrides, if the machine can be expressed as overrides
+   */
+
+  public static Optional<WXMVirtualMachine> overrides(
+    final WXMVirtualMachine template,
+    final WXMVirtualMachine machine)
+  {
+    Objects.requireNonNull(template, "template");
+    Objects.requireNonNull(machine, "machine");
+    checkTemplate(template, machine);
+
+    final var machineDevices = machine.deviceMap();
+    final var machineBoots = machine.bootConfigurationMap();
+    if (!machineDevices.keySet().containsAll(template.deviceMap().keySet())) {
+      return Optional.empty();
+    }
+    final var templateBoots = template.bootConfigurationMap();
+    if (!machineBoots.keySet().containsAll(templateBoots.keySet())) {
+      return Optional.empty();
+    }
+
+    final var templateDevices = template.deviceMap();
+    final var devices = new ArrayList<WXMDeviceType>();
+    for (final var device : machine.devices()) {
+      final var existing = templateDevices.get(device.deviceSlot());
+      if (!Objects.equals(existing, device)) {
+        devices.add(device);
+      }
+    }
+
+    final var bootConfigurations = new ArrayList<WXMBootConfigurationType>();
+    for (final var bootConfiguration : machine.bootConfigurations()) {
+      final var existing = templateBoots.get(bootConfiguration.name());
+      if (!Objects.equals(existing, bootConfiguration)) {
+        bootConfigurations.add(bootConfiguration);
+      }
+    }
+
+    return Optional.of(
+      WXMVirtualMachine.builder()
+        .from(machine)
+        .setDevices(devices)
+        .setBootConfigurations(bootConfigurations)
+        .build()
+    );
+  }
+
+  /**
+   * Detach a resolved machine from its template, yielding a machine that
+   * carries all of its devices and boot configurations itself.
+   *
+   * @param machine The resolved machine
+   *
+   * @return The detached machine
+   */
+
+  public static WXMVirtualMachine detach(
+    final WXMVirtualMachine machine)
+  {
+    Objects.requireNonNull(machine, "machine");
+
+    return WXMVirtualMachine.builder()
+      .from(machine)
+      .setTemplate(Optional.empty())
+      .build();
+  }
+}
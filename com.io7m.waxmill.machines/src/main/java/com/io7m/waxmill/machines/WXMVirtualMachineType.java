@@ -127,6 +127,19 @@ public interface WXMVirtualMachineType
 
   Optional<URI> configurationFile();
 
+  /**
+   * A machine that refers to a template inherits the devices and boot
+   * configurations of the template. The devices and boot configurations of
+   * the machine itself are treated as additions to, or replacements for, the
+   * items of the template with the same device slot or name.
+   *
+   * @return The ID of the template upon which this machine is based, if any
+   *
+   * @see WXMVirtualMachineTemplates
+   */
+
+  Optional<UUID> template();
+
   /**
    * @return The set of attached devices, ordered by device slot
    */
@@ -168,7 +181,16 @@ public interface WXMVirtualMachineType
   {
     this.checkAtMostOneLPC();
     this.checkAtMostOneHostBridge();
-    this.checkBootConfigurationsReferences();
+
+    /*
+     * The boot configurations of a machine based on a template may refer to
+     * devices that are only present in the template. The references are
+     * checked when the template is resolved.
+     */
+
+    if (this.template().isEmpty()) {
+      this.checkBootConfigurationsReferences();
+    }
     this.checkRequiresWiredMemory();
     this.checkUniqueMACs();
   }
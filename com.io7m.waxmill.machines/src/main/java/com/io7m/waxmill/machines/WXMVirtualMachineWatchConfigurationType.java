@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.machines;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.jaffirm.core.Preconditions;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+
+/**
+ * The configuration for a watch on a set of virtual machine definitions.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMVirtualMachineWatchConfigurationType
+{
+  /**
+   * @return The means by which changes are detected
+   */
+
+  @Value.Default
+  default WXMVirtualMachineWatchMode mode()
+  {
+    return WXMVirtualMachineWatchMode.AUTOMATIC;
+  }
+
+  /**
+   * Changes that are observed within this period of the first change are
+   * coalesced, so that a machine that is written several times in quick
+   * succession produces a single event.
+   *
+   * @return The period over which notifications are coalesced
+   */
+
+  @Value.Default
+  default Duration debounce()
+  {
+    return Duration.ofMillis(250L);
+  }
+
+  /**
+   * @return The time between polls when changes are detected by polling
+   */
+
+  @Value.Default
+  default Duration pollInterval()
+  {
+    return Duration.ofSeconds(2L);
+  }
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    Preconditions.checkPreconditionV(
+      !this.debounce().isNegative(),
+      "Debounce period must be non-negative"
+    );
+    Preconditions.checkPreconditionV(
+      !this.pollInterval().isNegative() && !this.pollInterval().isZero(),
+      "Poll interval must be positive"
+    );
+  }
+}
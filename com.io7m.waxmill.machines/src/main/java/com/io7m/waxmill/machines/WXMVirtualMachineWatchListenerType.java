@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.machines;
+
+import com.io7m.waxmill.exceptions.WXMException;
+
+/**
+ * A listener that receives changes to virtual machine definitions. Methods
+ * are called from a single thread owned by the watch that delivers them.
+ */
+
+public interface WXMVirtualMachineWatchListenerType
+{
+  /**
+   * The definition of a virtual machine changed.
+   *
+   * @param event The change
+   */
+
+  void onEvent(WXMVirtualMachineEvent event);
+
+  /**
+   * An error occurred whilst examining changes. The watch continues to
+   * deliver events after errors.
+   *
+   * @param exception The error
+   */
+
+  default void onError(
+    final WXMException exception)
+  {
+
+  }
+}
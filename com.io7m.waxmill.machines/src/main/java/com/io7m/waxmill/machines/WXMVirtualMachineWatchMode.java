@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.machines;
+
+/**
+ * The means by which a watch detects changes to virtual machine definitions.
+ */
+
+public enum WXMVirtualMachineWatchMode
+{
+  /**
+   * Use the filesystem notification service of the host if it is
+   * available, and fall back to polling otherwise.
+   */
+
+  AUTOMATIC,
+
+  /**
+   * Use the filesystem notification service of the host, failing if it is
+   * not available.
+   */
+
+  NOTIFICATION,
+
+  /**
+   * Periodically compare the modification times of virtual machine
+   * definitions against those recorded by the previous poll.
+   */
+
+  POLLING
+}
@@ -21,8 +21,11 @@ import com.io7m.jaffirm.core.Preconditions;
 import org.immutables.value.Value;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
 
 /**
  * A description of a process to be created.
@@ -50,6 +53,47 @@ public interface WXMProcessDescriptionType
 
   Map<String, String> environment();
 
+  /**
+   * The maximum time that the process may run. A process that runs for
+   * longer than this is terminated, and waiting for it fails with a
+   * {@link WXMProcessTimeoutException}. Timeouts are only enforced by
+   * methods that wait for the process on behalf of the caller.
+   *
+   * @return The maximum time the process may run
+   *
+   * @see WXMProcessesType#processStartAsync(WXMProcessDescription)
+   * @see WXMProcessesType#processStartAndWait(WXMProcessDescription)
+   */
+
+  Optional<Duration> timeout();
+
+  /**
+   * The maximum number of bytes of output retained for the process by
+   * methods that capture output on behalf of the caller. If no limit is
+   * specified, the default limit of the process provider is used.
+   *
+   * @return The maximum number of bytes of output retained
+   *
+   * @see WXMProcessesType#processStartAsync(WXMProcessDescription)
+   * @see WXMProcessesType#processStartAndWait(WXMProcessDescription)
+   */
+
+  OptionalInt outputCaptureLimit();
+
+  /**
+   * The time that a process is given to exit after being asked to terminate
+   * (with {@code SIGTERM}) before it is forcibly killed (with
+   * {@code SIGKILL}).
+   *
+   * @return The termination grace period
+   */
+
+  @Value.Default
+  default Duration terminationGracePeriod()
+  {
+    return Duration.ofSeconds(5L);
+  }
+
   /**
    * Check preconditions for the type.
    */
@@ -62,5 +106,27 @@ public interface WXMProcessDescriptionType
       this.executable().isAbsolute(),
       path -> "Executable path must be absolute"
     );
+
+    this.timeout().ifPresent(timeout -> {
+      Preconditions.checkPrecondition(
+        timeout,
+        timeout.isPositive(),
+        t -> "Timeout must be positive"
+      );
+    });
+
+    this.outputCaptureLimit().ifPresent(limit -> {
+      Preconditions.checkPreconditionI(
+        limit,
+        limit > 0,
+        l -> "Output capture limit must be positive"
+      );
+    });
+
+    Preconditions.checkPrecondition(
+      this.terminationGracePeriod(),
+      !this.terminationGracePeriod().isNegative(),
+      t -> "Termination grace period must be non-negative"
+    );
   }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import org.immutables.value.Value;
+
+/**
+ * The result of executing a process to completion.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMProcessResultType
+{
+  /**
+   * @return The description of the process that was executed
+   */
+
+  WXMProcessDescription description();
+
+  /**
+   * @return The exit code of the process
+   */
+
+  int exitCode();
+
+  /**
+   * The combined standard output and standard error of the process, decoded
+   * as UTF-8. Implementations may retain only a bounded amount of output, in
+   * which case this is the most recent output produced by the process.
+   *
+   * @return The captured output of the process
+   */
+
+  String output();
+
+  /**
+   * @return The number of bytes of output that were discarded to keep the
+   * captured output within bounds
+   */
+
+  @Value.Default
+  default long outputDiscarded()
+  {
+    return 0L;
+  }
+
+  /**
+   * @return {@code true} if the process exited with a zero exit code
+   */
+
+  default boolean succeeded()
+  {
+    return this.exitCode() == 0;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.api;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A process did not exit within its timeout, and was terminated.
+ *
+ * @see WXMProcessDescription#timeout()
+ */
+
+public final class WXMProcessTimeoutException extends IOException
+{
+  private final WXMProcessDescription description;
+  private final Duration timeout;
+
+  /**
+   * Construct an exception.
+   *
+   * @param message       The message
+   * @param inDescription The process that timed out
+   * @param inTimeout     The timeout that elapsed
+   */
+
+  public WXMProcessTimeoutException(
+    final String message,
+    final WXMProcessDescription inDescription,
+    final Duration inTimeout)
+  {
+    super(Objects.requireNonNull(message, "message"));
+    this.description =
+      Objects.requireNonNull(inDescription, "description");
+    this.timeout =
+      Objects.requireNonNull(inTimeout, "timeout");
+  }
+
+  /**
+   * @return The process that timed out
+   */
+
+  public WXMProcessDescription description()
+  {
+    return this.description;
+  }
+
+  /**
+   * @return The timeout that elapsed
+   */
+
+  public Duration timeout()
+  {
+    return this.timeout;
+  }
+}
@@ -17,6 +17,7 @@
 package com.io7m.waxmill.process.api;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An API for creating processes.
@@ -56,15 +57,52 @@ public interface WXMProcessesType
    * process upon which the caller can wait, extract data from streams, etc.
    * This method is equivalent to calling {@link #processStart(WXMProcessDescription)},
    * waiting indefinitely for the process to exit, and throwing an
-   * {@link IOException} if the process returns a non-zero exit code.
+   * {@link IOException} if the process returns a non-zero exit code. The
+   * output of the process is drained while waiting, and the most recent
+   * output is included in the exception. If the description specifies a
+   * timeout, and the process does not exit within the timeout, the process
+   * is terminated and a {@link WXMProcessTimeoutException} is raised. If the
+   * current thread is interrupted while waiting, the process is terminated.
    *
    * @param description The description
    *
    * @throws IOException If the process cannot be started, or if the process
    *                     exits with a non-zero error code
+   * @throws WXMProcessTimeoutException If the process times out
    * @throws InterruptedException If waiting for the process is interrupted
    */
 
   void processStartAndWait(WXMProcessDescription description)
     throws IOException, InterruptedException;
+
+  /**
+   * Start a process described by the given description, without waiting for
+   * it to exit. The returned future is completed when the process has exited
+   * and all of its output has been read, regardless of the exit code of the
+   * process. The standard input of the process is closed immediately. The
+   * future is completed exceptionally with an {@link IOException} if the
+   * process cannot be started, or if its output cannot be read. This method
+   * returns as soon as the process has started, and the calling thread is
+   * not blocked waiting for the process to exit. Implementations may block
+   * threads of their own for each process; the JDK implementation, for
+   * example, dedicates a reaper thread to each child process, and output is
+   * read on platform threads that block until the process closes its
+   * output.
+   * <p>
+   * If the description specifies a timeout, and the process does not exit
+   * within the timeout, the future is completed exceptionally with a
+   * {@link WXMProcessTimeoutException} and the process is terminated.
+   * Cancelling the returned future also terminates the process. Processes
+   * are terminated by sending {@code SIGTERM}, followed by {@code SIGKILL}
+   * if the process has not exited after
+   * {@link WXMProcessDescription#terminationGracePeriod()}.
+   * </p>
+   *
+   * @param description The description
+   *
+   * @return A future representing the result of the process
+   */
+
+  CompletableFuture<WXMProcessResult> processStartAsync(
+    WXMProcessDescription description);
 }
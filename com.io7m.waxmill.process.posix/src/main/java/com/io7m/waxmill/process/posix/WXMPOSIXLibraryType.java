@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.posix;
+
+import com.sun.jna.Library;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * The subset of the C library used to create and manage processes.
+ */
+
+interface WXMPOSIXLibraryType extends Library
+{
+  /**
+   * The signal sent to request termination.
+   */
+
+  int SIGTERM = 15;
+
+  /**
+   * The signal sent to forcibly terminate a process.
+   */
+
+  int SIGKILL = 9;
+
+  /**
+   * The error code indicating an interrupted system call.
+   */
+
+  int EINTR = 4;
+
+  /**
+   * The {@code fcntl} command to set file descriptor flags.
+   */
+
+  int F_SETFD = 2;
+
+  /**
+   * The close-on-exec file descriptor flag.
+   */
+
+  int FD_CLOEXEC = 1;
+
+  int execve(
+    String executable,
+    String[] argv,
+    String[] env
+  );
+
+  String strerror(
+    int errno);
+
+  int posix_spawn(
+    IntByReference pid,
+    String path,
+    Pointer fileActions,
+    Pointer attributes,
+    String[] argv,
+    String[] env);
+
+  int posix_spawn_file_actions_init(
+    Pointer fileActions);
+
+  int posix_spawn_file_actions_destroy(
+    Pointer fileActions);
+
+  int posix_spawn_file_actions_adddup2(
+    Pointer fileActions,
+    int fd,
+    int newFd);
+
+  int pipe(
+    int[] fds);
+
+  int fcntl(
+    int fd,
+    int command,
+    int argument);
+
+  int close(
+    int fd);
+
+  NativeLong read(
+    int fd,
+    byte[] buffer,
+    NativeLong count);
+
+  NativeLong write(
+    int fd,
+    byte[] buffer,
+    NativeLong count);
+
+  int waitpid(
+    int pid,
+    IntByReference status,
+    int options);
+
+  int kill(
+    int pid,
+    int signal);
+}
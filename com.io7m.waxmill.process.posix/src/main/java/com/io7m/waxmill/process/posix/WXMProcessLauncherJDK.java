@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.posix;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static java.lang.ProcessBuilder.Redirect.PIPE;
+
+/**
+ * A process launcher based on {@link ProcessBuilder}.
+ */
+
+final class WXMProcessLauncherJDK implements WXMProcessLauncherType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMProcessLauncherJDK.class);
+
+  WXMProcessLauncherJDK()
+  {
+
+  }
+
+  @Override
+  public Process launch(
+    final WXMProcessDescription description)
+    throws IOException
+  {
+    final var builder = new ProcessBuilder();
+    builder.environment().clear();
+    builder.environment().putAll(description.environment());
+    builder.redirectOutput(PIPE);
+    builder.redirectError(PIPE);
+    builder.redirectInput(PIPE);
+    builder.redirectErrorStream(true);
+
+    final var command = new ArrayList<String>();
+    command.add(description.executable().toString());
+    command.addAll(description.arguments());
+    builder.command(command);
+
+    LOG.debug("execute {}", command);
+    return builder.start();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMProcessLauncherJDK 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
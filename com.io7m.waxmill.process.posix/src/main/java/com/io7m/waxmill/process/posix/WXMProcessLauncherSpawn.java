@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.posix;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.posix.internal.WXMProcessMessages;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.ptr.IntByReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.io7m.waxmill.process.posix.WXMPOSIXLibraryType.FD_CLOEXEC;
+import static com.io7m.waxmill.process.posix.WXMPOSIXLibraryType.F_SETFD;
+
+/**
+ * A process launcher based on {@code posix_spawn}. Unlike
+ * {@link ProcessBuilder}, no helper process is executed: the child is
+ * created directly, and its standard streams are set up with explicit
+ * file actions.
+ */
+
+final class WXMProcessLauncherSpawn implements WXMProcessLauncherType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMProcessLauncherSpawn.class);
+
+  /**
+   * The size of the opaque {@code posix_spawn_file_actions_t} type varies
+   * between C libraries (it is a single pointer on FreeBSD, and 80 bytes
+   * with glibc). The allocation is deliberately generous.
+   */
+
+  private static final int FILE_ACTIONS_SIZE = 256;
+
+  /**
+   * Processes are reaped by platform threads blocked in {@code waitpid},
+   * in the same manner as the JDK's own process reaper.
+   */
+
+  private static final ExecutorService REAPER =
+    Executors.newCachedThreadPool(
+      Thread.ofPlatform()
+        .daemon()
+        .name("waxmill-process-reaper-", 0L)
+        .factory()
+    );
+
+  /**
+   * Pipes are created and marked as close-on-exec before the child is
+   * spawned. Spawning is serialized so that a child spawned by another
+   * thread cannot inherit the pipe of a sibling between the two steps.
+   */
+
+  private static final Object SPAWN_LOCK = new Object();
+
+  private final WXMPOSIXLibraryType library;
+  private final WXMProcessMessages messages;
+
+  WXMProcessLauncherSpawn(
+    final WXMPOSIXLibraryType inLibrary,
+    final WXMProcessMessages inMessages)
+  {
+    this.library =
+      Objects.requireNonNull(inLibrary, "library");
+    this.messages =
+      Objects.requireNonNull(inMessages, "messages");
+  }
+
+  @Override
+  public Process launch(
+    final WXMProcessDescription description)
+    throws IOException
+  {
+    final List<String> descArguments = description.arguments();
+    final var arguments = new String[descArguments.size() + 1];
+    final var executable = description.executable().toString();
+    arguments[0] = executable;
+    for (int index = 0; index < descArguments.size(); ++index) {
+      arguments[index + 1] = descArguments.get(index);
+    }
+
+    final var descEnvironment = description.environment();
+    final var environment = new String[descEnvironment.size()];
+    var envIndex = 0;
+    for (final var entry : descEnvironment.entrySet()) {
+      environment[envIndex] =
+        String.format("%s=%s", entry.getKey(), entry.getValue());
+      ++envIndex;
+    }
+
+    LOG.debug("spawn {} {}", executable, descArguments);
+
+    synchronized (SPAWN_LOCK) {
+      final var stdin = this.pipe();
+      final int[] stdout;
+      try {
+        stdout = this.pipe();
+      } catch (final IOException e) {
+        this.closeAll(stdin);
+        throw e;
+      }
+
+      final int pid;
+      try {
+        pid = this.spawn(description, arguments, environment, stdin, stdout);
+      } catch (final IOException e) {
+        this.closeAll(stdin);
+        this.closeAll(stdout);
+        throw e;
+      }
+
+      this.library.close(stdin[0]);
+      this.library.close(stdout[1]);
+      return WXMSpawnedProcess.create(
+        this.library, REAPER, pid, stdin[1], stdout[0]);
+    }
+  }
+
+  private int spawn(
+    final WXMProcessDescription description,
+    final String[] arguments,
+    final String[] environment,
+    final int[] stdin,
+    final int[] stdout)
+    throws IOException
+  {
+    final var fileActions = new Memory(FILE_ACTIONS_SIZE);
+    this.check(
+      description,
+      this.library.posix_spawn_file_actions_init(fileActions));
+
+    try {
+      this.check(
+        description,
+        this.library.posix_spawn_file_actions_adddup2(fileActions, stdin[0], 0));
+      this.check(
+        description,
+        this.library.posix_spawn_file_actions_adddup2(fileActions, stdout[1], 1));
+      this.check(
+        description,
+        this.library.posix_spawn_file_actions_adddup2(fileActions, stdout[1], 2));
+
+      final var pid = new IntByReference();
+      this.check(
+        description,
+        this.library.posix_spawn(
+          pid,
+          arguments[0],
+          fileActions,
+          null,
+          arguments,
+          environment)
+      );
+      return pid.getValue();
+    } finally {
+      this.library.posix_spawn_file_actions_destroy(fileActions);
+    }
+  }
+
+  private int[] pipe()
+    throws IOException
+  {
+    final var fds = new int[2];
+    if (this.library.pipe(fds) != 0) {
+      throw new IOException(
+        "pipe: " + this.library.strerror(Native.getLastError()));
+    }
+    this.library.fcntl(fds[0], F_SETFD, FD_CLOEXEC);
+    this.library.fcntl(fds[1], F_SETFD, FD_CLOEXEC);
+    return fds;
+  }
+
+  private void closeAll(
+    final int[] fds)
+  {
+    for (final var fd : fds) {
+      this.library.close(fd);
+    }
+  }
+
+  private void check(
+    final WXMProcessDescription description,
+    final int errorCode)
+    throws IOException
+  {
+    if (errorCode != 0) {
+      throw new IOException(this.messages.format(
+        "errorCannotExecute",
+        description.executable().toString(),
+        String.join(" ", description.arguments()),
+        this.library.strerror(errorCode),
+        Integer.valueOf(errorCode)
+      ));
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMProcessLauncherSpawn 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
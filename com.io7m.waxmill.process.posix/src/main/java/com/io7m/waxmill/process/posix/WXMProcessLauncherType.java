@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.posix;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+
+import java.io.IOException;
+
+/**
+ * A means to launch child processes. Launched processes have their standard
+ * input and standard output connected to pipes, and their standard error
+ * redirected to standard output.
+ */
+
+interface WXMProcessLauncherType
+{
+  /**
+   * Launch a child process.
+   *
+   * @param description The process description
+   *
+   * @return A running process
+   *
+   * @throws IOException If the process cannot be started
+   */
+
+  Process launch(WXMProcessDescription description)
+    throws IOException;
+}
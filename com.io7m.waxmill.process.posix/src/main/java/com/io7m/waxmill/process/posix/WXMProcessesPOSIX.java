@@ -16,20 +16,29 @@
 
 package com.io7m.waxmill.process.posix;
 
+import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
+import com.io7m.waxmill.process.api.WXMProcessTimeoutException;
 import com.io7m.waxmill.process.api.WXMProcessesType;
 import com.io7m.waxmill.process.posix.internal.WXMProcessMessages;
-import com.sun.jna.Library;
+import com.io7m.waxmill.process.posix.internal.WXMProcessOutputRing;
 import com.sun.jna.Native;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
-
-import static java.lang.ProcessBuilder.Redirect.PIPE;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A JNA POSIX implementation of the process creator.
@@ -40,43 +49,186 @@ public final class WXMProcessesPOSIX implements WXMProcessesType
   private static final Logger LOG =
     LoggerFactory.getLogger(WXMProcessesPOSIX.class);
 
+  /**
+   * The default maximum number of bytes of output retained for each process.
+   */
+
+  public static final int DEFAULT_OUTPUT_CAPTURE_LIMIT = 64 * 1024;
+
+  /**
+   * The system property used to select the means by which processes are
+   * launched. The value {@code posix_spawn} selects
+   * {@link #createWithPosixSpawn()}, and the value {@code jdk} (or no value)
+   * selects {@link #create()}.
+   */
+
+  public static final String LAUNCHER_PROPERTY =
+    "com.io7m.waxmill.process.launcher";
+
+  /*
+   * The output of each process is drained by a platform thread. The
+   * posix_spawn launcher reads its pipes with blocking native calls, and
+   * a virtual thread blocked in a native call pins its carrier thread for
+   * as long as the process runs.
+   */
+
+  private static final ExecutorService OUTPUT_READERS =
+    Executors.newCachedThreadPool(
+      Thread.ofPlatform()
+        .daemon()
+        .name("waxmill-process-output-", 0L)
+        .factory()
+    );
+
+  /*
+   * Timeouts and termination grace periods are scheduled on a single shared
+   * timer thread. Each scheduled task refers to its process and result, so
+   * tasks are cancelled, and removed from the queue, as soon as they are no
+   * longer needed; otherwise they would remain reachable for the entire
+   * length of the timeout.
+   */
+
+  private static final ScheduledThreadPoolExecutor TIMERS =
+    createTimers();
+
   private final WXMProcessMessages messages;
-  private final CLibraryType library;
+  private final WXMPOSIXLibraryType library;
+  private final WXMProcessLauncherType launcher;
+  private final int outputCaptureLimit;
 
   private WXMProcessesPOSIX(
     final WXMProcessMessages inMessages,
-    final CLibraryType inLibrary)
+    final WXMPOSIXLibraryType inLibrary,
+    final WXMProcessLauncherType inLauncher,
+    final int inOutputCaptureLimit)
   {
     this.messages =
       Objects.requireNonNull(inMessages, "messages");
     this.library =
       Objects.requireNonNull(inLibrary, "library");
+    this.launcher =
+      Objects.requireNonNull(inLauncher, "launcher");
+    this.outputCaptureLimit =
+      inOutputCaptureLimit;
   }
 
-  private interface CLibraryType extends Library
+  /**
+   * @return A new process creator.
+   */
+
+  public static WXMProcessesType create()
   {
-    int execve(
-      String executable,
-      String[] argv,
-      String[] env
+    return create(DEFAULT_OUTPUT_CAPTURE_LIMIT);
+  }
+
+  /**
+   * Create a new process creator. The output of processes started with
+   * {@link #processStartAsync(WXMProcessDescription)} and
+   * {@link #processStartAndWait(WXMProcessDescription)} is drained
+   * continuously, and only the last {@code outputCaptureLimit} bytes are
+   * retained.
+   *
+   * @param outputCaptureLimit The maximum number of bytes of output retained
+   *                           for each process
+   *
+   * @return A new process creator.
+   */
+
+  public static WXMProcessesType create(
+    final int outputCaptureLimit)
+  {
+    checkOutputCaptureLimit(outputCaptureLimit);
+
+    final WXMPOSIXLibraryType library =
+      Native.load("c", WXMPOSIXLibraryType.class);
+    final var messages =
+      WXMProcessMessages.create();
+
+    return new WXMProcessesPOSIX(
+      messages,
+      library,
+      new WXMProcessLauncherJDK(),
+      outputCaptureLimit
     );
+  }
+
+  /**
+   * @return A new process creator that launches processes with
+   * {@code posix_spawn}
+   */
 
-    String strerror(
-      int errno);
+  public static WXMProcessesType createWithPosixSpawn()
+  {
+    return createWithPosixSpawn(DEFAULT_OUTPUT_CAPTURE_LIMIT);
   }
 
   /**
+   * Create a new process creator that launches processes with
+   * {@code posix_spawn}, rather than with {@link ProcessBuilder}. The
+   * {@link Process} values returned by
+   * {@link #processStart(WXMProcessDescription)} have their standard error
+   * redirected to standard output, as with the default implementation, but
+   * do not support {@link Process#toHandle()} or {@link Process#info()}.
+   *
+   * @param outputCaptureLimit The maximum number of bytes of output retained
+   *                           for each process
+   *
    * @return A new process creator.
+   *
+   * @see #create(int)
    */
 
-  public static WXMProcessesType create()
+  public static WXMProcessesType createWithPosixSpawn(
+    final int outputCaptureLimit)
   {
-    final CLibraryType library =
-      Native.load("c", CLibraryType.class);
+    checkOutputCaptureLimit(outputCaptureLimit);
+
+    final WXMPOSIXLibraryType library =
+      Native.load("c", WXMPOSIXLibraryType.class);
     final var messages =
       WXMProcessMessages.create();
 
-    return new WXMProcessesPOSIX(messages, library);
+    return new WXMProcessesPOSIX(
+      messages,
+      library,
+      new WXMProcessLauncherSpawn(library, messages),
+      outputCaptureLimit
+    );
+  }
+
+  /**
+   * Create a new process creator using the launcher named by the
+   * {@link #LAUNCHER_PROPERTY} system property.
+   *
+   * @return A new process creator.
+   */
+
+  public static WXMProcessesType createFromSystemProperties()
+  {
+    final var launcher = System.getProperty(LAUNCHER_PROPERTY, "jdk");
+    switch (launcher) {
+      case "posix_spawn":
+        return createWithPosixSpawn();
+      case "jdk":
+        return create();
+      default:
+        LOG.warn(
+          "unrecognized value for {}: {} (using the default launcher)",
+          LAUNCHER_PROPERTY,
+          launcher
+        );
+        return create();
+    }
+  }
+
+  private static void checkOutputCaptureLimit(
+    final int outputCaptureLimit)
+  {
+    Preconditions.checkPreconditionI(
+      outputCaptureLimit,
+      outputCaptureLimit > 0,
+      x -> "Output capture limit must be positive"
+    );
   }
 
   @Override
@@ -138,21 +290,7 @@ public final class WXMProcessesPOSIX implements WXMProcessesType
   {
     Objects.requireNonNull(description, "description");
 
-    final var builder = new ProcessBuilder();
-    builder.environment().clear();
-    builder.environment().putAll(description.environment());
-    builder.redirectOutput(PIPE);
-    builder.redirectError(PIPE);
-    builder.redirectInput(PIPE);
-    builder.redirectErrorStream(true);
-
-    final var command = new ArrayList<String>();
-    command.add(description.executable().toString());
-    command.addAll(description.arguments());
-    builder.command(command);
-
-    LOG.debug("execute {}", command);
-    return builder.start();
+    return this.launcher.launch(description);
   }
 
   @Override
@@ -160,19 +298,195 @@ public final class WXMProcessesPOSIX implements WXMProcessesType
     final WXMProcessDescription description)
     throws IOException, InterruptedException
   {
-    final var process = this.processStart(description);
-    final int result = process.waitFor();
+    final var future = this.processStartAsync(description);
+    final WXMProcessResult result;
+    try {
+      result = future.get();
+    } catch (final InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (final ExecutionException e) {
+      final var cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
 
-    if (result != 0) {
+    if (!result.succeeded()) {
       throw new IOException(this.messages.format(
         "errorCommandFailed",
         description.executable(),
         String.join(" ", description.arguments()),
-        Integer.valueOf(result)
+        Integer.valueOf(result.exitCode()),
+        Long.toString(result.outputDiscarded()),
+        result.output().indent(4)
       ));
     }
   }
 
+  @Override
+  public CompletableFuture<WXMProcessResult> processStartAsync(
+    final WXMProcessDescription description)
+  {
+    Objects.requireNonNull(description, "description");
+
+    final Process process;
+    try {
+      process = this.processStart(description);
+    } catch (final IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    try {
+      process.getOutputStream().close();
+    } catch (final IOException e) {
+      LOG.debug("unable to close process input: ", e);
+    }
+
+    /*
+     * The output of the process must be consumed as it is produced, or
+     * the process will block once the pipe buffer is full and will never
+     * exit. Only the most recent output is retained, so a chatty process
+     * cannot exhaust the heap.
+     */
+
+    final var output = new CompletableFuture<WXMProcessOutputRing>();
+    final var ring =
+      WXMProcessOutputRing.create(
+        description.outputCaptureLimit().orElse(this.outputCaptureLimit));
+    OUTPUT_READERS.execute(() -> readOutput(process, ring, output));
+
+    final var completed =
+      process.onExit()
+        .thenCombine(output, (exited, captured) -> {
+          return WXMProcessResult.builder()
+            .setDescription(description)
+            .setExitCode(exited.exitValue())
+            .setOutput(captured.toText())
+            .setOutputDiscarded(captured.discarded())
+            .build();
+        });
+
+    /*
+     * The returned future is distinct from the completion of the process so
+     * that it can be completed early by a timeout, or by cancellation, without
+     * waiting for the process (or any descendants holding its output pipe)
+     * to actually exit.
+     */
+
+    final var result = new CompletableFuture<WXMProcessResult>();
+    completed.whenComplete((r, e) -> {
+      if (e != null) {
+        result.completeExceptionally(e);
+      } else {
+        result.complete(r);
+      }
+    });
+
+    description.timeout().ifPresent(timeout -> {
+      final var timer =
+        schedule(
+          () -> this.onTimeout(description, timeout, process, result),
+          timeout
+        );
+      result.whenComplete((r, e) -> timer.cancel(false));
+    });
+
+    result.whenComplete((r, e) -> {
+      if (e instanceof CancellationException) {
+        LOG.debug("cancelled: {}", description.executable());
+        terminate(description, process);
+      }
+    });
+    return result;
+  }
+
+  private void onTimeout(
+    final WXMProcessDescription description,
+    final Duration timeout,
+    final Process process,
+    final CompletableFuture<WXMProcessResult> result)
+  {
+    final var timedOut =
+      result.completeExceptionally(new WXMProcessTimeoutException(
+        this.messages.format(
+          "errorCommandTimedOut",
+          description.executable(),
+          String.join(" ", description.arguments()),
+          timeout
+        ),
+        description,
+        timeout
+      ));
+
+    if (timedOut) {
+      LOG.debug("timed out: {}", description.executable());
+      terminate(description, process);
+    }
+  }
+
+  /**
+   * Ask a process to terminate, and forcibly kill it if it has not exited
+   * after the grace period.
+   */
+
+  private static void terminate(
+    final WXMProcessDescription description,
+    final Process process)
+  {
+    if (!process.isAlive()) {
+      return;
+    }
+
+    process.destroy();
+    final var kill =
+      schedule(
+        () -> {
+          if (process.isAlive()) {
+            LOG.debug("killing: {}", description.executable());
+            process.destroyForcibly();
+          }
+        },
+        description.terminationGracePeriod()
+      );
+    process.onExit().whenComplete((p, e) -> kill.cancel(false));
+  }
+
+  private static ScheduledFuture<?> schedule(
+    final Runnable task,
+    final Duration delay)
+  {
+    return TIMERS.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private static ScheduledThreadPoolExecutor createTimers()
+  {
+    final var timers =
+      new ScheduledThreadPoolExecutor(
+        1,
+        Thread.ofPlatform()
+          .daemon()
+          .name("waxmill-process-timer-", 0L)
+          .factory()
+      );
+    timers.setRemoveOnCancelPolicy(true);
+    return timers;
+  }
+
+  private static void readOutput(
+    final Process process,
+    final WXMProcessOutputRing ring,
+    final CompletableFuture<WXMProcessOutputRing> output)
+  {
+    try (var stream = process.getInputStream()) {
+      ring.drain(stream);
+      output.complete(ring);
+    } catch (final IOException e) {
+      output.completeExceptionally(e);
+    }
+  }
+
   @Override
   public String toString()
   {
@@ -17,12 +17,16 @@
 package com.io7m.waxmill.process.posix;
 
 import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
 import com.io7m.waxmill.process.api.WXMProcessesType;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * A JNA POSIX implementation of the process creator.
+ * A JNA POSIX implementation of the process creator. The means by which
+ * processes are launched is selected with the
+ * {@link WXMProcessesPOSIX#LAUNCHER_PROPERTY} system property.
  */
 
 public final class WXMProcessesPOSIXService implements WXMProcessesType
@@ -35,7 +39,7 @@ public final class WXMProcessesPOSIXService implements WXMProcessesType
 
   public WXMProcessesPOSIXService()
   {
-    this.delegate = WXMProcessesPOSIX.create();
+    this.delegate = WXMProcessesPOSIX.createFromSystemProperties();
   }
 
   @Override
@@ -62,6 +66,13 @@ public final class WXMProcessesPOSIXService implements WXMProcessesType
     this.delegate.processStartAndWait(description);
   }
 
+  @Override
+  public CompletableFuture<WXMProcessResult> processStartAsync(
+    final WXMProcessDescription description)
+  {
+    return this.delegate.processStartAsync(description);
+  }
+
   @Override
   public String toString()
   {
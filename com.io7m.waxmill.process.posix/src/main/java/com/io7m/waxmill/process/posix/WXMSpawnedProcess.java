@@ -0,0 +1,464 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.posix;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.ptr.IntByReference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.io7m.waxmill.process.posix.WXMPOSIXLibraryType.EINTR;
+import static com.io7m.waxmill.process.posix.WXMPOSIXLibraryType.SIGKILL;
+import static com.io7m.waxmill.process.posix.WXMPOSIXLibraryType.SIGTERM;
+
+/**
+ * A process started with {@code posix_spawn}. The process is reaped by a
+ * task that blocks in {@code waitpid}; the standard output and standard
+ * input of the process are pipes read and written directly through their
+ * file descriptors. Standard error is redirected to standard output.
+ */
+
+final class WXMSpawnedProcess extends Process
+{
+  private final WXMPOSIXLibraryType library;
+  private final int pid;
+  private final OutputStream input;
+  private final InputStream output;
+  private final CompletableFuture<Integer> exit;
+
+  private WXMSpawnedProcess(
+    final WXMPOSIXLibraryType inLibrary,
+    final int inPid,
+    final int inInputFd,
+    final int inOutputFd)
+  {
+    this.library =
+      Objects.requireNonNull(inLibrary, "library");
+    this.pid = inPid;
+    this.input =
+      new FileDescriptorOutputStream(inLibrary, inInputFd);
+    this.output =
+      new FileDescriptorInputStream(inLibrary, inOutputFd);
+    this.exit =
+      new CompletableFuture<>();
+  }
+
+  /**
+   * Begin supervising a spawned process.
+   *
+   * @param library  The C library
+   * @param reaper   The executor used to wait for the process to exit
+   * @param pid      The process ID
+   * @param inputFd  The write end of the standard input pipe
+   * @param outputFd The read end of the standard output pipe
+   *
+   * @return A process
+   */
+
+  static WXMSpawnedProcess create(
+    final WXMPOSIXLibraryType library,
+    final Executor reaper,
+    final int pid,
+    final int inputFd,
+    final int outputFd)
+  {
+    final var process =
+      new WXMSpawnedProcess(library, pid, inputFd, outputFd);
+    reaper.execute(process::reap);
+    return process;
+  }
+
+  private void reap()
+  {
+    final var status = new IntByReference();
+    while (true) {
+      final var r = this.library.waitpid(this.pid, status, 0);
+      if (r == this.pid) {
+        this.exit.complete(Integer.valueOf(exitCodeOf(status.getValue())));
+        return;
+      }
+      if (r == -1 && Native.getLastError() == EINTR) {
+        continue;
+      }
+      this.exit.completeExceptionally(new IOException(
+        "waitpid: " + this.library.strerror(Native.getLastError())));
+      return;
+    }
+  }
+
+  /**
+   * Decode a {@code waitpid} status in the same manner as the JDK: processes
+   * killed by a signal are given an exit code of {@code 128} plus the signal
+   * number.
+   */
+
+  private static int exitCodeOf(
+    final int status)
+  {
+    final var signal = status & 0x7f;
+    if (signal == 0) {
+      return (status >> 8) & 0xff;
+    }
+    return 0x80 + signal;
+  }
+
+  @Override
+  public OutputStream getOutputStream()
+  {
+    return this.input;
+  }
+
+  @Override
+  public InputStream getInputStream()
+  {
+    return this.output;
+  }
+
+  @Override
+  public InputStream getErrorStream()
+  {
+    return InputStream.nullInputStream();
+  }
+
+  @Override
+  public int waitFor()
+    throws InterruptedException
+  {
+    try {
+      return this.exit.get().intValue();
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Override
+  public boolean waitFor(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    try {
+      this.exit.get(timeout, unit);
+      return true;
+    } catch (final TimeoutException e) {
+      return false;
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Override
+  public int exitValue()
+  {
+    if (!this.exit.isDone()) {
+      throw new IllegalThreadStateException("Process has not exited");
+    }
+    return this.exit.join().intValue();
+  }
+
+  @Override
+  public void destroy()
+  {
+    this.signal(SIGTERM);
+  }
+
+  @Override
+  public Process destroyForcibly()
+  {
+    this.signal(SIGKILL);
+    return this;
+  }
+
+  private void signal(
+    final int signal)
+  {
+    /*
+     * A process that has been reaped must not be signalled, as its process
+     * ID may have been reused.
+     */
+
+    if (!this.exit.isDone()) {
+      this.library.kill(this.pid, signal);
+    }
+  }
+
+  @Override
+  public boolean supportsNormalTermination()
+  {
+    return true;
+  }
+
+  @Override
+  public boolean isAlive()
+  {
+    return !this.exit.isDone();
+  }
+
+  @Override
+  public long pid()
+  {
+    return this.pid;
+  }
+
+  @Override
+  public CompletableFuture<Process> onExit()
+  {
+    return this.exit.thenApply(x -> this);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMSpawnedProcess 0x%s %d]",
+      Long.toUnsignedString(System.identityHashCode(this), 16),
+      Integer.valueOf(this.pid)
+    );
+  }
+
+  /**
+   * A file descriptor shared by a stream. A descriptor that is closed while
+   * a read or write is in progress is not released until that call returns:
+   * the number could otherwise be reused by an unrelated file opened in the
+   * meantime, and the call would then read or write the wrong file.
+   */
+
+  private static final class Descriptor
+  {
+    private final WXMPOSIXLibraryType library;
+    private final int fd;
+    private final Object lock;
+    private int users;
+    private boolean closed;
+
+    Descriptor(
+      final WXMPOSIXLibraryType inLibrary,
+      final int inFd)
+    {
+      this.library = inLibrary;
+      this.fd = inFd;
+      this.lock = new Object();
+    }
+
+    int acquire()
+      throws IOException
+    {
+      synchronized (this.lock) {
+        if (this.closed) {
+          throw new IOException(
+            String.format("Stream closed (descriptor %d)", this.fd));
+        }
+        ++this.users;
+        return this.fd;
+      }
+    }
+
+    void release()
+    {
+      final boolean releasing;
+      synchronized (this.lock) {
+        --this.users;
+        releasing = this.closed && this.users == 0;
+      }
+      if (releasing) {
+        this.library.close(this.fd);
+      }
+    }
+
+    void close()
+    {
+      final boolean releasing;
+      synchronized (this.lock) {
+        if (this.closed) {
+          return;
+        }
+        this.closed = true;
+        releasing = this.users == 0;
+      }
+      if (releasing) {
+        this.library.close(this.fd);
+      }
+    }
+  }
+
+  private static final class FileDescriptorInputStream extends InputStream
+  {
+    private final WXMPOSIXLibraryType library;
+    private final Descriptor descriptor;
+
+    FileDescriptorInputStream(
+      final WXMPOSIXLibraryType inLibrary,
+      final int inFd)
+    {
+      this.library = inLibrary;
+      this.descriptor = new Descriptor(inLibrary, inFd);
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      final var buffer = new byte[1];
+      final var r = this.read(buffer, 0, 1);
+      if (r == -1) {
+        return -1;
+      }
+      return buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(
+      final byte[] buffer,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      Objects.checkFromIndexSize(offset, length, buffer.length);
+      final var fd = this.descriptor.acquire();
+      try {
+        if (length == 0) {
+          return 0;
+        }
+        return this.readFrom(fd, buffer, offset, length);
+      } finally {
+        this.descriptor.release();
+      }
+    }
+
+    private int readFrom(
+      final int fd,
+      final byte[] buffer,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      final var target =
+        offset == 0 ? buffer : new byte[length];
+
+      while (true) {
+        final var r =
+          this.library.read(fd, target, new NativeLong(length))
+            .intValue();
+
+        if (r == 0) {
+          return -1;
+        }
+        if (r > 0) {
+          if (target != buffer) {
+            System.arraycopy(target, 0, buffer, offset, r);
+          }
+          return r;
+        }
+
+        final var error = Native.getLastError();
+        if (error != EINTR) {
+          throw new IOException("read: " + this.library.strerror(error));
+        }
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      this.descriptor.close();
+    }
+  }
+
+  private static final class FileDescriptorOutputStream extends OutputStream
+  {
+    private final WXMPOSIXLibraryType library;
+    private final Descriptor descriptor;
+
+    FileDescriptorOutputStream(
+      final WXMPOSIXLibraryType inLibrary,
+      final int inFd)
+    {
+      this.library = inLibrary;
+      this.descriptor = new Descriptor(inLibrary, inFd);
+    }
+
+    @Override
+    public void write(
+      final int value)
+      throws IOException
+    {
+      this.write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(
+      final byte[] buffer,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      Objects.checkFromIndexSize(offset, length, buffer.length);
+      final var fd = this.descriptor.acquire();
+      try {
+        this.writeTo(fd, buffer, offset, length);
+      } finally {
+        this.descriptor.release();
+      }
+    }
+
+    private void writeTo(
+      final int fd,
+      final byte[] buffer,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      var position = offset;
+      var remaining = length;
+      while (remaining > 0) {
+        final var chunk = new byte[remaining];
+        System.arraycopy(buffer, position, chunk, 0, remaining);
+
+        final var r =
+          this.library.write(fd, chunk, new NativeLong(remaining))
+            .intValue();
+
+        if (r >= 0) {
+          position += r;
+          remaining -= r;
+          continue;
+        }
+
+        final var error = Native.getLastError();
+        if (error != EINTR) {
+          throw new IOException("write: " + this.library.strerror(error));
+        }
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      this.descriptor.close();
+    }
+  }
+}
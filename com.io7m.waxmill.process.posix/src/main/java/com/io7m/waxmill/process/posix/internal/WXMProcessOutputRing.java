@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.posix.internal;
+
+import com.io7m.jaffirm.core.Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A fixed-capacity ring buffer that retains the most recent bytes written
+ * to it. Process output is streamed through the buffer so that the output
+ * of a process can be drained continuously without the memory used being
+ * proportional to the amount of output produced.
+ */
+
+public final class WXMProcessOutputRing
+{
+  private final byte[] data;
+  private int writeIndex;
+  private long written;
+
+  private WXMProcessOutputRing(
+    final int capacity)
+  {
+    this.data = new byte[capacity];
+  }
+
+  /**
+   * Create a new ring buffer.
+   *
+   * @param capacity The maximum number of bytes retained
+   *
+   * @return A new buffer
+   */
+
+  public static WXMProcessOutputRing create(
+    final int capacity)
+  {
+    Preconditions.checkPreconditionI(
+      capacity,
+      capacity > 0,
+      c -> "Capacity must be positive"
+    );
+    return new WXMProcessOutputRing(capacity);
+  }
+
+  /**
+   * @return The maximum number of bytes retained
+   */
+
+  public int capacity()
+  {
+    return this.data.length;
+  }
+
+  /**
+   * @return The total number of bytes ever written to the buffer
+   */
+
+  public long written()
+  {
+    return this.written;
+  }
+
+  /**
+   * @return The number of bytes that have been discarded to make room for
+   * newer bytes
+   */
+
+  public long discarded()
+  {
+    return Math.max(0L, this.written - this.data.length);
+  }
+
+  /**
+   * Write bytes to the buffer, discarding the oldest bytes if necessary.
+   *
+   * @param bytes  The source array
+   * @param offset The offset of the first byte in the source array
+   * @param length The number of bytes to write
+   */
+
+  public void write(
+    final byte[] bytes,
+    final int offset,
+    final int length)
+  {
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+
+    final var capacity = this.data.length;
+    this.written += length;
+
+    var srcOffset = offset;
+    var remaining = length;
+    if (remaining > capacity) {
+      srcOffset += remaining - capacity;
+      remaining = capacity;
+    }
+
+    while (remaining > 0) {
+      final var count = Math.min(remaining, capacity - this.writeIndex);
+      System.arraycopy(bytes, srcOffset, this.data, this.writeIndex, count);
+      srcOffset += count;
+      remaining -= count;
+      this.writeIndex = (this.writeIndex + count) % capacity;
+    }
+  }
+
+  /**
+   * Read the given stream until end-of-stream, writing everything read
+   * into the buffer.
+   *
+   * @param stream The input stream
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void drain(
+    final InputStream stream)
+    throws IOException
+  {
+    final var buffer = new byte[8192];
+    while (true) {
+      final var count = stream.read(buffer);
+      if (count == -1) {
+        return;
+      }
+      this.write(buffer, 0, count);
+    }
+  }
+
+  /**
+   * @return The retained bytes, oldest first
+   */
+
+  public byte[] toByteArray()
+  {
+    final var capacity = this.data.length;
+    if (this.written <= capacity) {
+      return Arrays.copyOf(this.data, (int) this.written);
+    }
+
+    final var result = new byte[capacity];
+    final var tail = capacity - this.writeIndex;
+    System.arraycopy(this.data, this.writeIndex, result, 0, tail);
+    System.arraycopy(this.data, 0, result, tail, this.writeIndex);
+    return result;
+  }
+
+  /**
+   * @return The retained bytes, oldest first, decoded as UTF-8
+   */
+
+  public String toText()
+  {
+    return StandardCharsets.UTF_8
+      .decode(ByteBuffer.wrap(this.toByteArray()))
+      .toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMProcessOutputRing 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
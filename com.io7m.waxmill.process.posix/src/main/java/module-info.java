@@ -16,6 +16,7 @@
 
 import com.io7m.waxmill.process.api.WXMProcessesType;
 import com.io7m.waxmill.process.posix.WXMProcessesPOSIXService;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIXSpawnService;
 
 /**
  * FreeBSD BHyve Manager (Process JNA POSIX implementation)
@@ -26,12 +27,15 @@ module com.io7m.waxmill.process.posix
   requires static org.osgi.annotation.bundle;
   requires static org.osgi.annotation.versioning;
 
+  requires com.io7m.jaffirm.core;
   requires com.io7m.waxmill.process.api;
   requires com.io7m.waxmill.strings.api;
   requires com.sun.jna;
   requires org.slf4j;
 
-  provides WXMProcessesType with WXMProcessesPOSIXService;
+  provides WXMProcessesType with
+    WXMProcessesPOSIXService,
+    WXMProcessesPOSIXSpawnService;
 
   exports com.io7m.waxmill.process.posix;
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.recording;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.recording.internal.WXMProcessRecordingWriter;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Functions to read and write process recordings.
+ *
+ * <p>A recording is an XML document containing one {@code Process} element
+ * for each recorded process operation, in the order that the operations
+ * completed. Process output and failure messages are stored in base64 form,
+ * as they may contain characters that cannot appear in XML.</p>
+ */
+
+public final class WXMProcessRecordings
+{
+  /**
+   * The XML namespace used for recordings.
+   */
+
+  public static final String NAMESPACE =
+    WXMProcessRecordingWriter.NAMESPACE;
+
+  private WXMProcessRecordings()
+  {
+
+  }
+
+  /**
+   * Write a complete recording to the given stream.
+   *
+   * @param stream     The output stream
+   * @param recordings The recorded processes
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void write(
+    final OutputStream stream,
+    final List<WXMRecordedProcess> recordings)
+    throws IOException
+  {
+    Objects.requireNonNull(stream, "stream");
+    Objects.requireNonNull(recordings, "recordings");
+
+    try (var writer = WXMProcessRecordingWriter.open(stream)) {
+      for (final var recording : recordings) {
+        writer.write(recording);
+      }
+    }
+  }
+
+  /**
+   * Read a recording from the given file.
+   *
+   * @param file The file
+   *
+   * @return The recorded processes, in the order in which they were recorded
+   *
+   * @throws IOException On I/O or parse errors
+   */
+
+  public static List<WXMRecordedProcess> read(
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    try (var stream = Files.newInputStream(file)) {
+      return read(stream);
+    }
+  }
+
+  /**
+   * Read a recording from the given stream.
+   *
+   * @param stream The stream
+   *
+   * @return The recorded processes, in the order in which they were recorded
+   *
+   * @throws IOException On I/O or parse errors
+   */
+
+  public static List<WXMRecordedProcess> read(
+    final InputStream stream)
+    throws IOException
+  {
+    Objects.requireNonNull(stream, "stream");
+
+    final var factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(
+      XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+    try {
+      final var reader = factory.createXMLStreamReader(stream);
+      try {
+        return readDocument(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (final XMLStreamException | IllegalArgumentException
+                   | DateTimeParseException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static List<WXMRecordedProcess> readDocument(
+    final XMLStreamReader reader)
+    throws XMLStreamException
+  {
+    final var results = new ArrayList<WXMRecordedProcess>();
+    reader.nextTag();
+    reader.require(XMLStreamConstants.START_ELEMENT, NAMESPACE, "ProcessRecording");
+
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      reader.require(XMLStreamConstants.START_ELEMENT, NAMESPACE, "Process");
+      results.add(readProcess(reader));
+    }
+    return List.copyOf(results);
+  }
+
+  private static WXMRecordedProcess readProcess(
+    final XMLStreamReader reader)
+    throws XMLStreamException
+  {
+    final var builder = WXMRecordedProcess.builder();
+    final var description = WXMProcessDescription.builder();
+
+    builder.setKind(
+      WXMRecordedProcessKind.ofExternalName(required(reader, "kind")));
+    builder.setDuration(
+      Duration.parse(required(reader, "duration")));
+    description.setExecutable(
+      Paths.get(required(reader, "executable")));
+    description.setTerminationGracePeriod(
+      Duration.parse(required(reader, "terminationGracePeriod")));
+
+    final var timeout = reader.getAttributeValue(null, "timeout");
+    if (timeout != null) {
+      description.setTimeout(Duration.parse(timeout));
+    }
+    final var outputCaptureLimit =
+      reader.getAttributeValue(null, "outputCaptureLimit");
+    if (outputCaptureLimit != null) {
+      description.setOutputCaptureLimit(Integer.parseInt(outputCaptureLimit));
+    }
+    final var exitCode = reader.getAttributeValue(null, "exitCode");
+    if (exitCode != null) {
+      builder.setExitCode(Integer.parseInt(exitCode));
+    }
+    final var discarded = reader.getAttributeValue(null, "outputDiscarded");
+    if (discarded != null) {
+      builder.setOutputDiscarded(Long.parseLong(discarded));
+    }
+    final var timedOut = reader.getAttributeValue(null, "timedOut");
+    if (timedOut != null) {
+      builder.setTimedOut(Boolean.parseBoolean(timedOut));
+    }
+
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      switch (reader.getLocalName()) {
+        case "Argument" -> {
+          description.addArguments(required(reader, "value"));
+          reader.nextTag();
+        }
+        case "Environment" -> {
+          description.putEnvironment(
+            required(reader, "name"),
+            required(reader, "value"));
+          reader.nextTag();
+        }
+        case "Output" -> {
+          builder.setOutput(decode(reader.getElementText()));
+        }
+        case "Failure" -> {
+          builder.setFailure(decode(reader.getElementText()));
+        }
+        default -> {
+          throw new XMLStreamException(
+            String.format("Unrecognized element: %s", reader.getLocalName()),
+            reader.getLocation());
+        }
+      }
+    }
+
+    builder.setDescription(description.build());
+    return builder.build();
+  }
+
+  private static String decode(
+    final String text)
+  {
+    return UTF_8.decode(
+      ByteBuffer.wrap(Base64.getMimeDecoder().decode(text.trim()))
+    ).toString();
+  }
+
+  private static String required(
+    final XMLStreamReader reader,
+    final String name)
+    throws XMLStreamException
+  {
+    final var value = reader.getAttributeValue(null, name);
+    if (value == null) {
+      throw new XMLStreamException(
+        String.format(
+          "Element %s is missing the required attribute %s",
+          reader.getLocalName(),
+          name),
+        reader.getLocation()
+      );
+    }
+    return value;
+  }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.recording;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
+import com.io7m.waxmill.process.api.WXMProcessTimeoutException;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.process.recording.internal.WXMProcessRecordingWriter;
+import com.io7m.waxmill.process.recording.internal.WXMRecordingProcess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A process creator that delegates to another process creator, recording
+ * the description, duration, and outcome of every process to a file. The
+ * resulting recording can be served back by {@link WXMProcessesReplaying}.
+ *
+ * <p>A successful call to {@link #processReplaceCurrent(WXMProcessDescription)}
+ * never returns, so the call is recorded before it is made, and is always
+ * recorded as successful.</p>
+ *
+ * <p>The output of a process started with
+ * {@link #processStart(WXMProcessDescription)} is recorded as the caller
+ * reads it, up to the output capture limit of the process description, or
+ * {@link #DEFAULT_OUTPUT_CAPTURE_LIMIT} bytes if the description does not
+ * specify a limit. The process is recorded once it has exited and its output
+ * has been read to the end or closed. A process that has exited but whose
+ * output is still open when the recording is closed is recorded with the
+ * output read so far. A process that is still running when the recording is
+ * closed is not recorded.</p>
+ */
+
+public final class WXMProcessesRecording
+  implements WXMProcessesType, Closeable
+{
+  /**
+   * The number of bytes of output recorded for a process started with
+   * {@link #processStart(WXMProcessDescription)}, if the process description
+   * does not specify a limit.
+   */
+
+  public static final int DEFAULT_OUTPUT_CAPTURE_LIMIT = 64 * 1024;
+
+  private final WXMProcessesType delegate;
+  private final WXMProcessRecordingWriter writer;
+  private final AtomicReference<IOException> deferredFailure;
+  private final Map<WXMRecordingProcess, CompletableFuture<Void>> capturing;
+
+  private WXMProcessesRecording(
+    final WXMProcessesType inDelegate,
+    final WXMProcessRecordingWriter inWriter)
+  {
+    this.delegate =
+      Objects.requireNonNull(inDelegate, "delegate");
+    this.writer =
+      Objects.requireNonNull(inWriter, "writer");
+    this.deferredFailure =
+      new AtomicReference<>();
+    this.capturing =
+      new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Create a recording process creator that writes to the given file,
+   * replacing any existing file.
+   *
+   * @param delegate The process creator that actually runs processes
+   * @param file     The recording file
+   *
+   * @return A recording process creator
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WXMProcessesRecording open(
+    final WXMProcessesType delegate,
+    final Path file)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    return open(delegate, Files.newOutputStream(file));
+  }
+
+  /**
+   * Create a recording process creator that writes to the given stream.
+   * The stream is closed when the recording process creator is closed.
+   *
+   * @param delegate The process creator that actually runs processes
+   * @param stream   The output stream
+   *
+   * @return A recording process creator
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WXMProcessesRecording open(
+    final WXMProcessesType delegate,
+    final OutputStream stream)
+    throws IOException
+  {
+    Objects.requireNonNull(delegate, "delegate");
+    Objects.requireNonNull(stream, "stream");
+    return new WXMProcessesRecording(
+      delegate,
+      WXMProcessRecordingWriter.open(stream)
+    );
+  }
+
+  @Override
+  public void processReplaceCurrent(
+    final WXMProcessDescription description)
+    throws IOException
+  {
+    Objects.requireNonNull(description, "description");
+
+    this.writer.write(
+      WXMRecordedProcess.builder()
+        .setKind(WXMRecordedProcessKind.PROCESS_REPLACE_CURRENT)
+        .setDescription(description)
+        .setDuration(Duration.ZERO)
+        .build()
+    );
+    this.delegate.processReplaceCurrent(description);
+  }
+
+  @Override
+  public Process processStart(
+    final WXMProcessDescription description)
+    throws IOException
+  {
+    Objects.requireNonNull(description, "description");
+
+    final var builder =
+      WXMRecordedProcess.builder()
+        .setKind(WXMRecordedProcessKind.PROCESS_START)
+        .setDescription(description);
+
+    final var timeThen = System.nanoTime();
+    final Process process;
+    try {
+      process = this.delegate.processStart(description);
+    } catch (final IOException e) {
+      this.writer.write(failed(builder, timeThen, e));
+      throw e;
+    }
+
+    final var recording =
+      new WXMRecordingProcess(
+        process,
+        description.outputCaptureLimit()
+          .orElse(DEFAULT_OUTPUT_CAPTURE_LIMIT)
+      );
+    final var exited =
+      process.onExit().handle((exitedProcess, failure) -> {
+        builder.setDuration(since(timeThen));
+        if (failure == null) {
+          builder.setExitCode(exitedProcess.exitValue());
+        }
+        return null;
+      });
+
+    final var written =
+      exited.thenCombine(recording.outputFinished(), (x, y) -> null)
+        .thenRun(() -> {
+          this.writeDeferred(
+            builder.setOutput(recording.output())
+              .setOutputDiscarded(recording.outputDiscarded())
+              .build()
+          );
+        });
+
+    this.capturing.put(recording, written);
+    written.whenComplete((x, y) -> this.capturing.remove(recording));
+    return recording;
+  }
+
+  @Override
+  public void processStartAndWait(
+    final WXMProcessDescription description)
+    throws IOException, InterruptedException
+  {
+    Objects.requireNonNull(description, "description");
+
+    final var builder =
+      WXMRecordedProcess.builder()
+        .setKind(WXMRecordedProcessKind.PROCESS_START_AND_WAIT)
+        .setDescription(description);
+
+    final var timeThen = System.nanoTime();
+    try {
+      this.delegate.processStartAndWait(description);
+    } catch (final IOException e) {
+      this.writer.write(failed(builder, timeThen, e));
+      throw e;
+    }
+
+    this.writer.write(
+      builder.setDuration(since(timeThen))
+        .setExitCode(0)
+        .build()
+    );
+  }
+
+  @Override
+  public CompletableFuture<WXMProcessResult> processStartAsync(
+    final WXMProcessDescription description)
+  {
+    Objects.requireNonNull(description, "description");
+
+    final var builder =
+      WXMRecordedProcess.builder()
+        .setKind(WXMRecordedProcessKind.PROCESS_START_ASYNC)
+        .setDescription(description);
+
+    final var timeThen = System.nanoTime();
+    final var future = this.delegate.processStartAsync(description);
+
+    /*
+     * The returned future completes only once the result has been
+     * recorded, so that a caller observing the result can rely on the
+     * recording containing it. Cancellation is propagated to the delegate.
+     */
+
+    final var recorded =
+      future.whenComplete((result, failure) -> {
+        final var cause = unwrap(failure);
+        if (cause instanceof CancellationException) {
+          return;
+        }
+        if (cause != null) {
+          this.writeDeferred(failed(builder, timeThen, cause));
+          return;
+        }
+        this.writeDeferred(
+          builder.setDuration(since(timeThen))
+            .setExitCode(result.exitCode())
+            .setOutput(result.output())
+            .setOutputDiscarded(result.outputDiscarded())
+            .build()
+        );
+      });
+
+    recorded.whenComplete((result, failure) -> {
+      if (unwrap(failure) instanceof CancellationException) {
+        future.cancel(true);
+      }
+    });
+    return recorded;
+  }
+
+  private static Throwable unwrap(
+    final Throwable failure)
+  {
+    if (failure instanceof CompletionException) {
+      return failure.getCause();
+    }
+    return failure;
+  }
+
+  private static WXMRecordedProcess failed(
+    final WXMRecordedProcess.Builder builder,
+    final long timeThen,
+    final Throwable failure)
+  {
+    return builder.setDuration(since(timeThen))
+      .setFailure(String.valueOf(failure.getMessage()))
+      .setTimedOut(failure instanceof WXMProcessTimeoutException)
+      .build();
+  }
+
+  private static Duration since(
+    final long timeThen)
+  {
+    return Duration.ofNanos(System.nanoTime() - timeThen);
+  }
+
+  private void writeDeferred(
+    final WXMRecordedProcess recording)
+  {
+    try {
+      this.writer.write(recording);
+    } catch (final IOException e) {
+      this.deferredFailure.compareAndSet(null, e);
+    }
+  }
+
+  /**
+   * Finish the recording. Any failure to record the outcome of a process
+   * that completed asynchronously is raised here.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    for (final var entry : Map.copyOf(this.capturing).entrySet()) {
+      final var recording = entry.getKey();
+      recording.finishCapture();
+      if (!recording.isAlive()) {
+        entry.getValue().join();
+      }
+    }
+    this.writer.close();
+
+    final var failure = this.deferredFailure.get();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMProcessesRecording 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
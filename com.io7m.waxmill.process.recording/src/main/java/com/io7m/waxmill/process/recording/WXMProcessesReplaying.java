@@ -0,0 +1,284 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.recording;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
+import com.io7m.waxmill.process.api.WXMProcessTimeoutException;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.process.recording.internal.WXMRecordingMessages;
+import com.io7m.waxmill.process.recording.internal.WXMReplayedProcess;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A process creator that runs no processes, and instead serves back the
+ * results of processes recorded by {@link WXMProcessesRecording}.
+ *
+ * <p>Each call is matched against the recorded processes with an equal
+ * description, in the order in which they were recorded. Matching is by
+ * description rather than by overall order so that recordings remain usable
+ * when independent operations are executed concurrently in a different
+ * order. A call for which no recorded process remains fails with an
+ * {@link IOException}. Each call completes after the recorded duration of
+ * the process, multiplied by a latency scale; a scale of {@code 0.0} replays
+ * as quickly as possible.</p>
+ */
+
+public final class WXMProcessesReplaying implements WXMProcessesType
+{
+  private final WXMRecordingMessages messages;
+  private final Map<WXMProcessDescription, ArrayDeque<WXMRecordedProcess>> recordings;
+  private final double latencyScale;
+
+  private WXMProcessesReplaying(
+    final WXMRecordingMessages inMessages,
+    final Map<WXMProcessDescription, ArrayDeque<WXMRecordedProcess>> inRecordings,
+    final double inLatencyScale)
+  {
+    this.messages =
+      Objects.requireNonNull(inMessages, "messages");
+    this.recordings =
+      Objects.requireNonNull(inRecordings, "recordings");
+    this.latencyScale =
+      inLatencyScale;
+  }
+
+  /**
+   * Create a replaying process creator.
+   *
+   * @param recordings   The recorded processes
+   * @param latencyScale The factor by which recorded durations are scaled
+   *
+   * @return A replaying process creator
+   */
+
+  public static WXMProcessesReplaying create(
+    final List<WXMRecordedProcess> recordings,
+    final double latencyScale)
+  {
+    Objects.requireNonNull(recordings, "recordings");
+    if (!(latencyScale >= 0.0 && Double.isFinite(latencyScale))) {
+      throw new IllegalArgumentException(
+        String.format("Latency scale must be non-negative: %f", latencyScale));
+    }
+
+    final var byDescription =
+      new HashMap<WXMProcessDescription, ArrayDeque<WXMRecordedProcess>>();
+    for (final var recording : recordings) {
+      byDescription.computeIfAbsent(
+        recording.description(), k -> new ArrayDeque<>())
+        .add(recording);
+    }
+
+    return new WXMProcessesReplaying(
+      WXMRecordingMessages.create(),
+      byDescription,
+      latencyScale
+    );
+  }
+
+  /**
+   * Create a replaying process creator from a recording file.
+   *
+   * @param file         The recording file
+   * @param latencyScale The factor by which recorded durations are scaled
+   *
+   * @return A replaying process creator
+   *
+   * @throws IOException On I/O or parse errors
+   */
+
+  public static WXMProcessesReplaying open(
+    final Path file,
+    final double latencyScale)
+    throws IOException
+  {
+    return create(WXMProcessRecordings.read(file), latencyScale);
+  }
+
+  /**
+   * @return The recorded processes that have not yet been replayed
+   */
+
+  public List<WXMRecordedProcess> remaining()
+  {
+    synchronized (this.recordings) {
+      final var results = new ArrayList<WXMRecordedProcess>();
+      for (final var queue : this.recordings.values()) {
+        results.addAll(queue);
+      }
+      return List.copyOf(results);
+    }
+  }
+
+  private WXMRecordedProcess take(
+    final WXMProcessDescription description)
+    throws IOException
+  {
+    Objects.requireNonNull(description, "description");
+
+    synchronized (this.recordings) {
+      final var queue = this.recordings.get(description);
+      if (queue != null && !queue.isEmpty()) {
+        return queue.poll();
+      }
+    }
+
+    throw new IOException(this.messages.format(
+      "errorNoRecording",
+      description.executable(),
+      String.join(" ", description.arguments())
+    ));
+  }
+
+  private Duration latency(
+    final WXMRecordedProcess recording)
+  {
+    return Duration.ofNanos(
+      (long) (recording.duration().toNanos() * this.latencyScale));
+  }
+
+  private Executor delayed(
+    final WXMRecordedProcess recording)
+  {
+    return CompletableFuture.delayedExecutor(
+      this.latency(recording).toNanos(),
+      TimeUnit.NANOSECONDS
+    );
+  }
+
+  private IOException failureOf(
+    final WXMRecordedProcess recording)
+  {
+    final var description = recording.description();
+    final var failure = recording.failure();
+    if (failure.isPresent()) {
+      if (recording.timedOut()) {
+        return new WXMProcessTimeoutException(
+          failure.get(),
+          description,
+          description.timeout().orElse(recording.duration())
+        );
+      }
+      return new IOException(failure.get());
+    }
+
+    return new IOException(this.messages.format(
+      "errorCommandFailed",
+      description.executable(),
+      String.join(" ", description.arguments()),
+      Integer.valueOf(recording.exitCode().orElse(0))
+    ));
+  }
+
+  @Override
+  public void processReplaceCurrent(
+    final WXMProcessDescription description)
+    throws IOException
+  {
+    final var recording = this.take(description);
+    if (recording.failure().isPresent()) {
+      throw this.failureOf(recording);
+    }
+  }
+
+  @Override
+  public Process processStart(
+    final WXMProcessDescription description)
+    throws IOException
+  {
+    final var recording = this.take(description);
+    if (recording.exitCode().isEmpty()) {
+      throw this.failureOf(recording);
+    }
+
+    return WXMReplayedProcess.start(
+      recording.output().getBytes(UTF_8),
+      recording.exitCode().getAsInt(),
+      this.delayed(recording)
+    );
+  }
+
+  @Override
+  public void processStartAndWait(
+    final WXMProcessDescription description)
+    throws IOException, InterruptedException
+  {
+    final var recording = this.take(description);
+    Thread.sleep(this.latency(recording));
+
+    if (recording.failure().isPresent()
+      || recording.exitCode().orElse(0) != 0) {
+      throw this.failureOf(recording);
+    }
+  }
+
+  @Override
+  public CompletableFuture<WXMProcessResult> processStartAsync(
+    final WXMProcessDescription description)
+  {
+    final WXMRecordedProcess recording;
+    try {
+      recording = this.take(description);
+    } catch (final IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    final var result = new CompletableFuture<WXMProcessResult>();
+    CompletableFuture.runAsync(() -> {
+      if (recording.failure().isPresent()
+        || recording.exitCode().isEmpty()) {
+        result.completeExceptionally(this.failureOf(recording));
+        return;
+      }
+
+      result.complete(
+        WXMProcessResult.builder()
+          .setDescription(description)
+          .setExitCode(recording.exitCode().getAsInt())
+          .setOutput(recording.output())
+          .setOutputDiscarded(recording.outputDiscarded())
+          .build()
+      );
+    }, this.delayed(recording));
+    return result;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMProcessesReplaying 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
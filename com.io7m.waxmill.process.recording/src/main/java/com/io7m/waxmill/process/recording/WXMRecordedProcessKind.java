@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.recording;
+
+/**
+ * The kind of process operation that was recorded.
+ */
+
+public enum WXMRecordedProcessKind
+{
+  /**
+   * The process was started with
+   * {@link com.io7m.waxmill.process.api.WXMProcessesType#processStart}.
+   */
+
+  PROCESS_START("start"),
+
+  /**
+   * The process was started with
+   * {@link com.io7m.waxmill.process.api.WXMProcessesType#processStartAndWait}.
+   */
+
+  PROCESS_START_AND_WAIT("start-and-wait"),
+
+  /**
+   * The process was started with
+   * {@link com.io7m.waxmill.process.api.WXMProcessesType#processStartAsync}.
+   */
+
+  PROCESS_START_ASYNC("start-async"),
+
+  /**
+   * The process was started with
+   * {@link com.io7m.waxmill.process.api.WXMProcessesType#processReplaceCurrent}.
+   */
+
+  PROCESS_REPLACE_CURRENT("replace-current");
+
+  private final String externalName;
+
+  WXMRecordedProcessKind(
+    final String inExternalName)
+  {
+    this.externalName = inExternalName;
+  }
+
+  /**
+   * @return The external name of the kind
+   */
+
+  public String externalName()
+  {
+    return this.externalName;
+  }
+
+  /**
+   * Find the kind with the given external name.
+   *
+   * @param name The external name
+   *
+   * @return The kind
+   *
+   * @throws IllegalArgumentException If no kind has the given name
+   */
+
+  public static WXMRecordedProcessKind ofExternalName(
+    final String name)
+  {
+    for (final var kind : values()) {
+      if (kind.externalName.equals(name)) {
+        return kind;
+      }
+    }
+    throw new IllegalArgumentException(
+      String.format("Unrecognized process kind: %s", name));
+  }
+}
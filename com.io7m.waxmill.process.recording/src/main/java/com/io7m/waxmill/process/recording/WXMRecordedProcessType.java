@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.recording;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * A recorded process execution.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMRecordedProcessType
+{
+  /**
+   * @return The operation used to start the process
+   */
+
+  WXMRecordedProcessKind kind();
+
+  /**
+   * @return The description of the process
+   */
+
+  WXMProcessDescription description();
+
+  /**
+   * @return The time taken for the operation to complete
+   */
+
+  Duration duration();
+
+  /**
+   * @return The exit code of the process, if the process exited and the
+   * exit code could be observed
+   */
+
+  OptionalInt exitCode();
+
+  /**
+   * @return The captured output of the process, if the operation captures
+   * output
+   */
+
+  @Value.Default
+  default String output()
+  {
+    return "";
+  }
+
+  /**
+   * @return The number of bytes of output that were discarded
+   */
+
+  @Value.Default
+  default long outputDiscarded()
+  {
+    return 0L;
+  }
+
+  /**
+   * @return The message of the exception raised by the operation, if any
+   */
+
+  Optional<String> failure();
+
+  /**
+   * @return {@code true} if the operation failed because the process timed
+   * out
+   */
+
+  @Value.Default
+  default boolean timedOut()
+  {
+    return false;
+  }
+}
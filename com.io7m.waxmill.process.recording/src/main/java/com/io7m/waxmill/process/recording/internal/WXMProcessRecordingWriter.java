@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.recording.internal;
+
+import com.io7m.waxmill.process.recording.WXMRecordedProcess;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An incremental writer of process recordings. Each recorded process is
+ * flushed to the underlying stream as soon as it is written, so that a
+ * recording is as complete as possible even if the recording process
+ * terminates abruptly.
+ */
+
+public final class WXMProcessRecordingWriter implements Closeable
+{
+  /**
+   * The XML namespace used for recordings.
+   */
+
+  public static final String NAMESPACE =
+    "urn:com.io7m.waxmill.process-recording:1:0";
+
+  private final OutputStream stream;
+  private final XMLStreamWriter writer;
+  private boolean closed;
+
+  private WXMProcessRecordingWriter(
+    final OutputStream inStream,
+    final XMLStreamWriter inWriter)
+  {
+    this.stream =
+      Objects.requireNonNull(inStream, "stream");
+    this.writer =
+      Objects.requireNonNull(inWriter, "writer");
+  }
+
+  /**
+   * Open a writer, writing the start of the recording document.
+   *
+   * @param stream The output stream
+   *
+   * @return A writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WXMProcessRecordingWriter open(
+    final OutputStream stream)
+    throws IOException
+  {
+    try {
+      final var writer =
+        XMLOutputFactory.newFactory()
+          .createXMLStreamWriter(stream, "UTF-8");
+
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeCharacters("\n\n");
+      writer.setDefaultNamespace(NAMESPACE);
+      writer.writeStartElement(NAMESPACE, "ProcessRecording");
+      writer.writeDefaultNamespace(NAMESPACE);
+      writer.writeCharacters("\n");
+      writer.flush();
+      stream.flush();
+      return new WXMProcessRecordingWriter(stream, writer);
+    } catch (final XMLStreamException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Write a recorded process.
+   *
+   * @param recording The recorded process
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public synchronized void write(
+    final WXMRecordedProcess recording)
+    throws IOException
+  {
+    Objects.requireNonNull(recording, "recording");
+
+    if (this.closed) {
+      throw new IOException("Writer is closed");
+    }
+
+    try {
+      this.writeProcess(recording);
+      this.writer.flush();
+      this.stream.flush();
+    } catch (final XMLStreamException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private void writeProcess(
+    final WXMRecordedProcess recording)
+    throws XMLStreamException
+  {
+    final var description = recording.description();
+
+    this.writer.writeCharacters("  ");
+    this.writer.writeStartElement(NAMESPACE, "Process");
+    this.writer.writeAttribute("kind", recording.kind().externalName());
+    this.writer.writeAttribute("duration", recording.duration().toString());
+    this.writer.writeAttribute(
+      "executable", description.executable().toString());
+    this.writer.writeAttribute(
+      "terminationGracePeriod",
+      description.terminationGracePeriod().toString());
+
+    final var timeout = description.timeout();
+    if (timeout.isPresent()) {
+      this.writer.writeAttribute("timeout", timeout.get().toString());
+    }
+    final var outputCaptureLimit = description.outputCaptureLimit();
+    if (outputCaptureLimit.isPresent()) {
+      this.writer.writeAttribute(
+        "outputCaptureLimit",
+        Integer.toString(outputCaptureLimit.getAsInt()));
+    }
+    final var exitCode = recording.exitCode();
+    if (exitCode.isPresent()) {
+      this.writer.writeAttribute(
+        "exitCode", Integer.toString(exitCode.getAsInt()));
+    }
+    this.writer.writeAttribute(
+      "outputDiscarded", Long.toString(recording.outputDiscarded()));
+    this.writer.writeAttribute(
+      "timedOut", Boolean.toString(recording.timedOut()));
+    this.writer.writeCharacters("\n");
+
+    for (final var argument : description.arguments()) {
+      this.writer.writeCharacters("    ");
+      this.writer.writeEmptyElement(NAMESPACE, "Argument");
+      this.writer.writeAttribute("value", argument);
+      this.writer.writeCharacters("\n");
+    }
+
+    for (final var entry : description.environment().entrySet()) {
+      this.writer.writeCharacters("    ");
+      this.writer.writeEmptyElement(NAMESPACE, "Environment");
+      this.writer.writeAttribute("name", entry.getKey());
+      this.writer.writeAttribute("value", entry.getValue());
+      this.writer.writeCharacters("\n");
+    }
+
+    if (!recording.output().isEmpty()) {
+      this.writer.writeCharacters("    ");
+      this.writer.writeStartElement(NAMESPACE, "Output");
+      this.writer.writeCharacters(encode(recording.output()));
+      this.writer.writeEndElement();
+      this.writer.writeCharacters("\n");
+    }
+
+    final var failure = recording.failure();
+    if (failure.isPresent()) {
+      this.writer.writeCharacters("    ");
+      this.writer.writeStartElement(NAMESPACE, "Failure");
+      this.writer.writeCharacters(encode(failure.get()));
+      this.writer.writeEndElement();
+      this.writer.writeCharacters("\n");
+    }
+
+    this.writer.writeCharacters("  ");
+    this.writer.writeEndElement();
+    this.writer.writeCharacters("\n");
+  }
+
+  private static String encode(
+    final String text)
+  {
+    return Base64.getEncoder().encodeToString(text.getBytes(UTF_8));
+  }
+
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    try {
+      this.writer.writeEndElement();
+      this.writer.writeCharacters("\n");
+      this.writer.writeEndDocument();
+      this.writer.close();
+      this.stream.close();
+    } catch (final XMLStreamException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMProcessRecordingWriter 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
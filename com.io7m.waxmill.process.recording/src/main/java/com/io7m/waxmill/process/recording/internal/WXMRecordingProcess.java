@@ -0,0 +1,310 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.process.recording.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A process that delegates to another process, keeping a copy of the first
+ * {@code captureLimit} bytes that are read from the standard output of the
+ * process. Output beyond the limit is passed through to the reader, but is
+ * only counted.
+ */
+
+public final class WXMRecordingProcess extends Process
+{
+  private final Process delegate;
+  private final CapturingInputStream input;
+  private final CompletableFuture<Void> outputFinished;
+
+  /**
+   * Construct a recording process.
+   *
+   * @param inDelegate     The process
+   * @param inCaptureLimit The maximum number of bytes of output to keep
+   */
+
+  public WXMRecordingProcess(
+    final Process inDelegate,
+    final int inCaptureLimit)
+  {
+    this.delegate =
+      Objects.requireNonNull(inDelegate, "delegate");
+    if (inCaptureLimit < 0) {
+      throw new IllegalArgumentException(String.format(
+        "Capture limit %d must be non-negative",
+        Integer.valueOf(inCaptureLimit)
+      ));
+    }
+
+    this.outputFinished = new CompletableFuture<>();
+    this.input =
+      new CapturingInputStream(
+        this.delegate.getInputStream(),
+        inCaptureLimit,
+        this.outputFinished
+      );
+  }
+
+  /**
+   * @return A future that completes when the output of the process has
+   * been read to the end, or closed, or {@link #finishCapture()} is called
+   */
+
+  public CompletableFuture<Void> outputFinished()
+  {
+    return this.outputFinished.copy();
+  }
+
+  /**
+   * Stop waiting for the output of the process to be read. Output that is
+   * read later is not captured.
+   */
+
+  public void finishCapture()
+  {
+    this.input.finish();
+  }
+
+  /**
+   * @return The output captured so far
+   */
+
+  public String output()
+  {
+    return this.input.captured();
+  }
+
+  /**
+   * @return The number of bytes of output read but not captured so far
+   */
+
+  public long outputDiscarded()
+  {
+    return this.input.discarded();
+  }
+
+  @Override
+  public OutputStream getOutputStream()
+  {
+    return this.delegate.getOutputStream();
+  }
+
+  @Override
+  public InputStream getInputStream()
+  {
+    return this.input;
+  }
+
+  @Override
+  public InputStream getErrorStream()
+  {
+    return this.delegate.getErrorStream();
+  }
+
+  @Override
+  public int waitFor()
+    throws InterruptedException
+  {
+    return this.delegate.waitFor();
+  }
+
+  @Override
+  public boolean waitFor(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    return this.delegate.waitFor(timeout, unit);
+  }
+
+  @Override
+  public int exitValue()
+  {
+    return this.delegate.exitValue();
+  }
+
+  @Override
+  public void destroy()
+  {
+    this.delegate.destroy();
+  }
+
+  @Override
+  public Process destroyForcibly()
+  {
+    this.delegate.destroyForcibly();
+    return this;
+  }
+
+  @Override
+  public boolean supportsNormalTermination()
+  {
+    return this.delegate.supportsNormalTermination();
+  }
+
+  @Override
+  public boolean isAlive()
+  {
+    return this.delegate.isAlive();
+  }
+
+  @Override
+  public long pid()
+  {
+    return this.delegate.pid();
+  }
+
+  @Override
+  public ProcessHandle toHandle()
+  {
+    return this.delegate.toHandle();
+  }
+
+  @Override
+  public ProcessHandle.Info info()
+  {
+    return this.delegate.info();
+  }
+
+  @Override
+  public Stream<ProcessHandle> children()
+  {
+    return this.delegate.children();
+  }
+
+  @Override
+  public Stream<ProcessHandle> descendants()
+  {
+    return this.delegate.descendants();
+  }
+
+  @Override
+  public CompletableFuture<Process> onExit()
+  {
+    return this.delegate.onExit().thenApply(x -> this);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMRecordingProcess 0x%s %d]",
+      Long.toUnsignedString(System.identityHashCode(this), 16),
+      Long.valueOf(this.delegate.pid())
+    );
+  }
+
+  private static final class CapturingInputStream extends FilterInputStream
+  {
+    private final ByteArrayOutputStream capture;
+    private final int captureLimit;
+    private final CompletableFuture<Void> finished;
+    private long discarded;
+
+    CapturingInputStream(
+      final InputStream inStream,
+      final int inCaptureLimit,
+      final CompletableFuture<Void> inFinished)
+    {
+      super(inStream);
+      this.capture = new ByteArrayOutputStream();
+      this.captureLimit = inCaptureLimit;
+      this.finished = inFinished;
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      final var b = super.read();
+      if (b == -1) {
+        this.finish();
+      } else {
+        this.keep(new byte[]{(byte) b}, 0, 1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(
+      final byte[] buffer,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      final var count = super.read(buffer, offset, length);
+      if (count == -1) {
+        this.finish();
+      } else {
+        this.keep(buffer, offset, count);
+      }
+      return count;
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      try {
+        super.close();
+      } finally {
+        this.finish();
+      }
+    }
+
+    private synchronized void keep(
+      final byte[] buffer,
+      final int offset,
+      final int count)
+    {
+      if (this.finished.isDone()) {
+        return;
+      }
+
+      final var kept =
+        Math.min(count, this.captureLimit - this.capture.size());
+      this.capture.write(buffer, offset, kept);
+      this.discarded += count - kept;
+    }
+
+    void finish()
+    {
+      this.finished.complete(null);
+    }
+
+    synchronized String captured()
+    {
+      return this.capture.toString(UTF_8);
+    }
+
+    synchronized long discarded()
+    {
+      return this.discarded;
+    }
+  }
+}
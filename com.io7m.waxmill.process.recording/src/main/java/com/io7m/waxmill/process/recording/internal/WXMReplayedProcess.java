@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.process.recording.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simulated process that produces recorded output and exits with a
+ * recorded exit code after a delay.
+ */
+
+public final class WXMReplayedProcess extends Process
+{
+  private static final int SIGTERM_EXIT = 0x80 + 15;
+  private static final int SIGKILL_EXIT = 0x80 + 9;
+
+  private static final AtomicLong PID_POOL = new AtomicLong(1_000_000L);
+
+  private final long pid;
+  private final byte[] output;
+  private final CompletableFuture<Integer> exit;
+
+  private WXMReplayedProcess(
+    final long inPid,
+    final byte[] inOutput)
+  {
+    this.pid = inPid;
+    this.output = inOutput.clone();
+    this.exit = new CompletableFuture<>();
+  }
+
+  /**
+   * Start a simulated process.
+   *
+   * @param output   The output the process produces
+   * @param exitCode The exit code of the process
+   * @param delay    An executor that runs tasks after the process lifetime
+   *
+   * @return A simulated process
+   */
+
+  public static WXMReplayedProcess start(
+    final byte[] output,
+    final int exitCode,
+    final Executor delay)
+  {
+    final var process =
+      new WXMReplayedProcess(PID_POOL.getAndIncrement(), output);
+    CompletableFuture.runAsync(
+      () -> process.exit.complete(Integer.valueOf(exitCode)),
+      delay
+    );
+    return process;
+  }
+
+  @Override
+  public OutputStream getOutputStream()
+  {
+    return OutputStream.nullOutputStream();
+  }
+
+  @Override
+  public InputStream getInputStream()
+  {
+    return new ByteArrayInputStream(this.output);
+  }
+
+  @Override
+  public InputStream getErrorStream()
+  {
+    return InputStream.nullInputStream();
+  }
+
+  @Override
+  public int waitFor()
+    throws InterruptedException
+  {
+    try {
+      return this.exit.get().intValue();
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Override
+  public boolean waitFor(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    try {
+      this.exit.get(timeout, unit);
+      return true;
+    } catch (final TimeoutException e) {
+      return false;
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Override
+  public int exitValue()
+  {
+    if (!this.exit.isDone()) {
+      throw new IllegalThreadStateException("Process has not exited");
+    }
+    return this.exit.join().intValue();
+  }
+
+  @Override
+  public void destroy()
+  {
+    this.exit.complete(Integer.valueOf(SIGTERM_EXIT));
+  }
+
+  @Override
+  public Process destroyForcibly()
+  {
+    this.exit.complete(Integer.valueOf(SIGKILL_EXIT));
+    return this;
+  }
+
+  @Override
+  public boolean supportsNormalTermination()
+  {
+    return true;
+  }
+
+  @Override
+  public boolean isAlive()
+  {
+    return !this.exit.isDone();
+  }
+
+  @Override
+  public long pid()
+  {
+    return this.pid;
+  }
+
+  @Override
+  public CompletableFuture<Process> onExit()
+  {
+    return this.exit.thenApply(x -> this);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMReplayedProcess 0x%s %d]",
+      Long.toUnsignedString(System.identityHashCode(this), 16),
+      Long.valueOf(this.pid)
+    );
+  }
+}
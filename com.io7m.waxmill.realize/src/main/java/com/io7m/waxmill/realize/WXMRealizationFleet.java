@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeManyResult;
+import com.io7m.waxmill.client.api.WXMRealizeResult;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.realize.internal.WXMRealizationStepExecutor;
+import com.io7m.waxmill.realize.internal.WXMRealizationStepOutcome;
+import com.io7m.waxmill.realize.internal.WXMRealizeMessages;
+import com.io7m.waxmill.realize.internal.WXMZFSBatchCreate;
+import com.io7m.waxmill.realize.internal.WXMZFSInventoryLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+
+/**
+ * A realization operation for a set of virtual machines. The steps of all
+ * of the machines are executed by a single executor, so the concurrency
+ * limit applies across the whole set, and steps that perform identical work
+ * for different machines are executed once.
+ */
+
+public final class WXMRealizationFleet
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMRealizationFleet.class);
+
+  private final WXMProcessesType processes;
+  private final WXMClientConfiguration clientConfiguration;
+  private final WXMRealizeManyConfiguration realizeConfiguration;
+
+  private WXMRealizationFleet(
+    final WXMProcessesType inProcesses,
+    final WXMClientConfiguration inClientConfiguration,
+    final WXMRealizeManyConfiguration inRealizeConfiguration)
+  {
+    this.processes =
+      Objects.requireNonNull(inProcesses, "inProcesses");
+    this.clientConfiguration =
+      Objects.requireNonNull(inClientConfiguration, "inClientConfiguration");
+    this.realizeConfiguration =
+      Objects.requireNonNull(inRealizeConfiguration, "inRealizeConfiguration");
+  }
+
+  /**
+   * Create a realization operation for a set of virtual machines.
+   *
+   * @param inProcesses            The process provider
+   * @param inClientConfiguration  The client configuration
+   * @param inRealizeConfiguration The set of machines to realize
+   *
+   * @return A realization operation
+   */
+
+  public static WXMRealizationFleet create(
+    final WXMProcessesType inProcesses,
+    final WXMClientConfiguration inClientConfiguration,
+    final WXMRealizeManyConfiguration inRealizeConfiguration)
+  {
+    return new WXMRealizationFleet(
+      inProcesses,
+      inClientConfiguration,
+      inRealizeConfiguration
+    );
+  }
+
+  /**
+   * Realize all of the machines.
+   *
+   * @param dryRun Whether or not the operation is a dry run
+   *
+   * @return The per-machine results
+   *
+   * @throws InterruptedException If the operation was interrupted
+   */
+
+  public WXMRealizeManyResult execute(
+    final WXMDryRun dryRun)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    final var machines = this.realizeConfiguration.machines();
+    final var plans = new ArrayList<MachinePlan>(machines.size());
+    final var allSteps = new ArrayList<WXMRealizationStepType>();
+    final var inventory =
+      new WXMZFSInventoryLoader(this.clientConfiguration, this.processes);
+    final Optional<WXMZFSBatchCreate> batch;
+    if (this.realizeConfiguration.batchZFSCreation()) {
+      batch = Optional.of(new WXMZFSBatchCreate(
+        this.clientConfiguration,
+        WXMRealizeMessages.create(),
+        this.processes,
+        inventory,
+        this.realizeConfiguration.maxConcurrentSteps()
+      ));
+    } else {
+      batch = Optional.empty();
+    }
+
+    for (final var machine : machines) {
+      final var plan = new MachinePlan(machine);
+      try {
+        final var instructions =
+          WXMRealizations.create(
+            this.processes,
+            this.clientConfiguration,
+            machine,
+            inventory,
+            batch,
+            this.realizeConfiguration.force()
+          ).evaluate();
+
+        plan.firstStep = allSteps.size();
+        plan.stepCount = instructions.steps().size();
+        allSteps.addAll(instructions.steps());
+      } catch (final WXMException e) {
+        LOG.error("machine {} could not be evaluated: ", machine.id(), e);
+        plan.evaluationFailure = e;
+      }
+      plans.add(plan);
+    }
+
+    final var timeStart = System.nanoTime();
+    final var outcomes =
+      WXMRealizationStepExecutor.create(
+        this.realizeConfiguration.maxConcurrentSteps())
+        .executeEach(allSteps, dryRun);
+
+    final var results = WXMRealizeManyResult.builder();
+    for (final var plan : plans) {
+      final var result =
+        plan.toResult(
+          timeStart,
+          outcomes.subList(plan.firstStep, plan.firstStep + plan.stepCount)
+        );
+
+      if (dryRun == EXECUTE
+        && result.failure().isEmpty()
+        && plan.stepCount > 0) {
+        this.recordRealized(plan);
+      }
+      results.addResults(result);
+    }
+    return results.build();
+  }
+
+  private void recordRealized(
+    final MachinePlan plan)
+  {
+    try {
+      WXMRealizationMarkers.record(
+        this.clientConfiguration,
+        plan.machine,
+        plan.stepCount
+      );
+    } catch (final IOException e) {
+      LOG.warn(
+        "unable to record realization of machine {}: {}",
+        plan.machine.id(),
+        e.getMessage());
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMRealizationFleet 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+
+  private static final class MachinePlan
+  {
+    private final WXMVirtualMachine machine;
+    private int firstStep;
+    private int stepCount;
+    private WXMException evaluationFailure;
+
+    MachinePlan(
+      final WXMVirtualMachine inMachine)
+    {
+      this.machine =
+        Objects.requireNonNull(inMachine, "machine");
+    }
+
+    WXMRealizeResult toResult(
+      final long timeStart,
+      final List<WXMRealizationStepOutcome> outcomes)
+    {
+      var timeEnd = timeStart;
+      final var failures =
+        Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+      final var messages = new ArrayList<String>();
+
+      if (this.evaluationFailure != null) {
+        messages.add(this.evaluationFailure.getMessage());
+      }
+
+      for (final var outcome : outcomes) {
+        timeEnd = Math.max(timeEnd, outcome.timeCompleted());
+        final var failure = outcome.failure();
+        if (failure.isPresent() && failures.add(failure.get())) {
+          messages.add(failure.get().getMessage());
+        }
+      }
+
+      return WXMRealizeResult.builder()
+        .setMachine(this.machine.id())
+        .setSteps(this.stepCount)
+        .setDuration(Duration.ofNanos(timeEnd - timeStart))
+        .setFailure(
+          messages.isEmpty()
+            ? Optional.empty()
+            : Optional.of(String.join("\n", messages)))
+        .build();
+    }
+  }
+}
@@ -17,11 +17,14 @@
 package com.io7m.waxmill.realize;
 
 import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.waxmill.exceptions.WXMException;
 import com.io7m.waxmill.exceptions.WXMExceptions;
 import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.realize.internal.WXMRealizationStepExecutor;
 import org.immutables.value.Value;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -39,6 +42,25 @@ public interface WXMRealizationInstructionsType
 
   List<WXMRealizationStepType> steps();
 
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    final var steps = this.steps();
+    final var earlier = new ArrayList<WXMRealizationStepType>(steps.size());
+    for (final var step : steps) {
+      Preconditions.checkPrecondition(
+        step,
+        earlier.containsAll(step.dependencies()),
+        s -> "Step dependencies must appear before the step that uses them"
+      );
+      earlier.add(step);
+    }
+  }
+
   /**
    * Execute the realization.
    *
@@ -63,4 +85,30 @@ public interface WXMRealizationInstructionsType
     }
     exceptions.throwIfRequired();
   }
+
+  /**
+   * Execute the realization, executing up to {@code maxConcurrentSteps}
+   * steps at any given time. A step is not started until all of its
+   * {@link WXMRealizationStepType#dependencies()} have completed
+   * successfully; a step with a failed dependency is not executed and is
+   * reported as a failure. Errors are reported in the order in which the
+   * steps are declared, regardless of the order in which they occurred.
+   *
+   * @param dryRun             If this is a dry run
+   * @param maxConcurrentSteps The maximum number of steps that may execute
+   *                           concurrently
+   *
+   * @throws WXMException On errors
+   */
+
+  default void execute(
+    final WXMDryRun dryRun,
+    final int maxConcurrentSteps)
+    throws WXMException
+  {
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    WXMRealizationStepExecutor.create(maxConcurrentSteps)
+      .execute(this.steps(), dryRun);
+  }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize;
+
+import com.io7m.junreachable.UnreachableCodeException;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.machines.WXMDeviceAHCIDisk;
+import com.io7m.waxmill.machines.WXMDeviceVirtioBlockStorage;
+import com.io7m.waxmill.machines.WXMStorageBackendFile;
+import com.io7m.waxmill.machines.WXMStorageBackendZFSVolume;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystems;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+
+import static com.io7m.waxmill.machines.WXMDeviceType.WXMStorageBackendType;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Functions to record that virtual machines have been realized. A marker
+ * file is written to the machine's runtime filesystem after a successful
+ * realization. The marker contains a fingerprint of the parts of the
+ * machine definition that affect realization (the runtime filesystem and
+ * the storage devices), and the results of the realization. A realization
+ * whose fingerprint matches the recorded marker has nothing to do.
+ */
+
+public final class WXMRealizationMarkers
+{
+  /**
+   * The name of the file, within the machine's runtime directory, to which
+   * the realization marker is written.
+   */
+
+  public static final String MARKER_FILE_NAME =
+    "realization.properties";
+
+  /**
+   * The prefix applied to all fingerprints, naming the hash algorithm.
+   */
+
+  public static final String FINGERPRINT_PREFIX = "sha256:";
+
+  private static final String KEY_FINGERPRINT =
+    "fingerprint";
+  private static final String KEY_STEPS =
+    "steps";
+  private static final String KEY_TIME =
+    "time";
+
+  private WXMRealizationMarkers()
+  {
+
+  }
+
+  /**
+   * Determine the file to which the realization marker is written for the
+   * given machine.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   *
+   * @return The marker file
+   */
+
+  public static Path markerFile(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine)
+  {
+    Objects.requireNonNull(clientConfiguration, "clientConfiguration");
+    Objects.requireNonNull(machine, "machine");
+
+    return WXMZFSFilesystems.resolve(
+      clientConfiguration.virtualMachineRuntimeFilesystem(),
+      machine.id().toString()
+    ).mountPoint()
+      .resolve(MARKER_FILE_NAME);
+  }
+
+  /**
+   * Compute the fingerprint of the parts of the given machine that affect
+   * realization. Devices that are not realized (such as network devices)
+   * do not contribute to the fingerprint.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   *
+   * @return The fingerprint
+   */
+
+  public static String fingerprint(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine)
+  {
+    Objects.requireNonNull(clientConfiguration, "clientConfiguration");
+    Objects.requireNonNull(machine, "machine");
+
+    final var digest = createDigest();
+    final var filesystem =
+      clientConfiguration.virtualMachineRuntimeFilesystem();
+
+    updateString(digest, machine.id().toString());
+    updateString(digest, filesystem.name());
+    updateString(digest, filesystem.mountPoint().toString());
+
+    for (final var device : machine.devices()) {
+      switch (device.kind()) {
+        case WXM_AHCI_CD:
+        case WXM_E1000:
+        case WXM_FRAMEBUFFER:
+        case WXM_HOSTBRIDGE:
+        case WXM_LPC:
+        case WXM_PASSTHRU:
+        case WXM_VIRTIO_NETWORK:
+          continue;
+
+        case WXM_VIRTIO_BLOCK:
+          updateString(digest, device.kind().name());
+          updateString(digest, device.deviceSlot().toString());
+          updateBackend(
+            digest, ((WXMDeviceVirtioBlockStorage) device).backend());
+          continue;
+
+        case WXM_AHCI_HD:
+          updateString(digest, device.kind().name());
+          updateString(digest, device.deviceSlot().toString());
+          updateBackend(
+            digest, ((WXMDeviceAHCIDisk) device).backend());
+          continue;
+      }
+    }
+
+    return FINGERPRINT_PREFIX + HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Determine whether the given machine has been realized with its current
+   * definition. A marker that is missing or unreadable is treated as not
+   * matching.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   *
+   * @return {@code true} if the recorded marker matches the machine
+   */
+
+  public static boolean isRealized(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine)
+  {
+    final var file = markerFile(clientConfiguration, machine);
+
+    final Optional<String> recorded;
+    try {
+      recorded = Optional.ofNullable(read(file).getProperty(KEY_FINGERPRINT));
+    } catch (final IOException e) {
+      return false;
+    }
+
+    return recorded
+      .map(r -> Objects.equals(r, fingerprint(clientConfiguration, machine)))
+      .orElse(Boolean.FALSE)
+      .booleanValue();
+  }
+
+  /**
+   * Atomically record that the given machine has been realized.
+   *
+   * @param clientConfiguration The client configuration
+   * @param machine             The machine
+   * @param steps               The number of realization steps executed
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void record(
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine,
+    final int steps)
+    throws IOException
+  {
+    final var file = markerFile(clientConfiguration, machine);
+
+    final var properties = new Properties();
+    properties.setProperty(
+      KEY_FINGERPRINT, fingerprint(clientConfiguration, machine));
+    properties.setProperty(
+      KEY_STEPS, Integer.toString(steps));
+    properties.setProperty(
+      KEY_TIME, Instant.now().toString());
+
+    final var fileTmp = file.getFileSystem().getPath(file + ".tmp");
+    try (var writer = Files.newBufferedWriter(fileTmp, UTF_8)) {
+      properties.store(writer, "Automatically generated. Do not edit.");
+    }
+    Files.move(fileTmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  private static Properties read(
+    final Path file)
+    throws IOException
+  {
+    final var properties = new Properties();
+    try (var reader = Files.newBufferedReader(file, UTF_8)) {
+      properties.load(reader);
+    }
+    return properties;
+  }
+
+  private static void updateBackend(
+    final MessageDigest digest,
+    final WXMStorageBackendType backend)
+  {
+    updateString(digest, backend.kind().name());
+    switch (backend.kind()) {
+      case WXM_STORAGE_FILE: {
+        final var file = (WXMStorageBackendFile) backend;
+        updateString(digest, file.file().toString());
+        break;
+      }
+      case WXM_STORAGE_ZFS_VOLUME: {
+        final var volume = (WXMStorageBackendZFSVolume) backend;
+        updateString(
+          digest,
+          volume.expectedSize().map(Object::toString).orElse(""));
+        break;
+      }
+    }
+  }
+
+  private static MessageDigest createDigest()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      // SHA-256 is required to be present on all Java platforms.
+      throw new UnreachableCodeException(e);
+    }
+  }
+
+  private static void updateString(
+    final MessageDigest digest,
+    final String text)
+  {
+    final var bytes = text.getBytes(UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
+}
@@ -22,6 +22,7 @@ import com.io7m.waxmill.process.api.WXMProcessDescription;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * A single step within a realization.
@@ -41,6 +42,32 @@ public interface WXMRealizationStepType
 
   List<WXMProcessDescription> processes();
 
+  /**
+   * The steps that must complete successfully before this step can be
+   * executed. Each of the steps must appear before this step in the
+   * enclosing instructions.
+   *
+   * @return The steps upon which this step depends
+   */
+
+  default List<WXMRealizationStepType> dependencies()
+  {
+    return List.of();
+  }
+
+  /**
+   * A key that identifies the work performed by this step. Steps with equal
+   * keys perform the same work; when such steps are executed together, only
+   * the first is executed and the others share its outcome.
+   *
+   * @return The deduplication key, if the step can be deduplicated
+   */
+
+  default Optional<String> deduplicationKey()
+  {
+    return Optional.empty();
+  }
+
   /**
    * Execute the step.
    *
@@ -27,10 +27,15 @@ import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.process.api.WXMProcessesType;
 import com.io7m.waxmill.realize.internal.WXMFileCheck;
 import com.io7m.waxmill.realize.internal.WXMRealizeMessages;
+import com.io7m.waxmill.realize.internal.WXMZFSBatchCreate;
+import com.io7m.waxmill.realize.internal.WXMZFSInventoryLoader;
 import com.io7m.waxmill.realize.internal.WXMZFSRuntimeFilesystemCreate;
 import com.io7m.waxmill.realize.internal.WXMZFSVolumeCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * Functions to construct realizations.
@@ -38,16 +43,25 @@ import java.util.Objects;
 
 public final class WXMRealizations implements WXMRealizationType
 {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMRealizations.class);
+
   private final WXMProcessesType processes;
   private final WXMRealizeMessages messages;
   private final WXMClientConfiguration clientConfiguration;
   private final WXMVirtualMachine machine;
+  private final WXMZFSInventoryLoader inventory;
+  private final Optional<WXMZFSBatchCreate> batch;
+  private final boolean force;
 
   private WXMRealizations(
     final WXMProcessesType inProcesses,
     final WXMRealizeMessages inMessages,
     final WXMClientConfiguration inClientConfiguration,
-    final WXMVirtualMachine inMachine)
+    final WXMVirtualMachine inMachine,
+    final WXMZFSInventoryLoader inInventory,
+    final Optional<WXMZFSBatchCreate> inBatch,
+    final boolean inForce)
   {
     this.processes =
       Objects.requireNonNull(inProcesses, "inProcesses");
@@ -57,28 +71,102 @@ public final class WXMRealizations implements WXMRealizationType
       Objects.requireNonNull(inClientConfiguration, "clientConfiguration");
     this.machine =
       Objects.requireNonNull(inMachine, "machine");
+    this.inventory =
+      Objects.requireNonNull(inInventory, "inventory");
+    this.batch =
+      Objects.requireNonNull(inBatch, "batch");
+    this.force =
+      inForce;
   }
 
   /**
-   * Create a realization operation for the given virtual machine.
+   * Create a realization operation for the given virtual machine. The
+   * machine's realization marker is not consulted, and so every step is
+   * always evaluated.
    *
    * @param processes           A process interface
    * @param clientConfiguration The client configuration
    * @param machine             The virtual machine
    *
    * @return A realization operation
+   *
+   * @see WXMRealizationMarkers
    */
 
   public static WXMRealizationType create(
     final WXMProcessesType processes,
     final WXMClientConfiguration clientConfiguration,
     final WXMVirtualMachine machine)
+  {
+    return create(processes, clientConfiguration, machine, true);
+  }
+
+  /**
+   * Create a realization operation for the given virtual machine. Unless
+   * {@code force} is {@code true}, the operation produces no steps if the
+   * machine's realization marker shows that the machine has already been
+   * realized with its current definition.
+   *
+   * @param processes           A process interface
+   * @param clientConfiguration The client configuration
+   * @param machine             The virtual machine
+   * @param force               {@code true} if the realization marker
+   *                            should be ignored
+   *
+   * @return A realization operation
+   *
+   * @see WXMRealizationMarkers
+   */
+
+  public static WXMRealizationType create(
+    final WXMProcessesType processes,
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine,
+    final boolean force)
+  {
+    return create(
+      processes,
+      clientConfiguration,
+      machine,
+      new WXMZFSInventoryLoader(clientConfiguration, processes),
+      Optional.empty(),
+      force
+    );
+  }
+
+  /**
+   * Create a realization operation for the given virtual machine, sharing
+   * an existing ZFS dataset inventory. If a batch is provided, the machine's
+   * ZFS datasets are added to the batch, and the batch step is included in
+   * the instructions.
+   *
+   * @param processes           A process interface
+   * @param clientConfiguration The client configuration
+   * @param machine             The virtual machine
+   * @param inventory           The ZFS dataset inventory
+   * @param batch               The batch that creates missing datasets
+   * @param force               {@code true} if the realization marker
+   *                            should be ignored
+   *
+   * @return A realization operation
+   */
+
+  static WXMRealizationType create(
+    final WXMProcessesType processes,
+    final WXMClientConfiguration clientConfiguration,
+    final WXMVirtualMachine machine,
+    final WXMZFSInventoryLoader inventory,
+    final Optional<WXMZFSBatchCreate> batch,
+    final boolean force)
   {
     return new WXMRealizations(
       processes,
       WXMRealizeMessages.create(),
       clientConfiguration,
-      machine
+      machine,
+      inventory,
+      batch,
+      force
     );
   }
 
@@ -86,15 +174,24 @@ public final class WXMRealizations implements WXMRealizationType
   public WXMRealizationInstructions evaluate()
   {
     final var builder = WXMRealizationInstructions.builder();
+    if (!this.force && this.isAlreadyRealized()) {
+      LOG.info("machine {} is already realized", this.machine.id());
+      return builder.build();
+    }
 
-    builder.addSteps(
+    this.batch.ifPresent(builder::addSteps);
+
+    final var filesystemStep =
       new WXMZFSRuntimeFilesystemCreate(
         this.clientConfiguration,
         this.messages,
         this.processes,
-        this.machine.id()
-      )
-    );
+        this.machine.id(),
+        this.inventory,
+        this.batch
+      );
+
+    builder.addSteps(filesystemStep);
 
     for (final var device : this.machine.devices()) {
       switch (device.kind()) {
@@ -110,6 +207,7 @@ public final class WXMRealizations implements WXMRealizationType
         case WXM_VIRTIO_BLOCK:
           this.evaluateVirtioBlock(
             builder,
+            filesystemStep,
             (WXMDeviceVirtioBlockStorage) device
           );
           continue;
@@ -117,6 +215,7 @@ public final class WXMRealizations implements WXMRealizationType
         case WXM_AHCI_HD:
           this.evaluateAHCIDisk(
             builder,
+            filesystemStep,
             (WXMDeviceAHCIDisk) device
           );
           continue;
@@ -126,8 +225,17 @@ public final class WXMRealizations implements WXMRealizationType
     return builder.build();
   }
 
+  private boolean isAlreadyRealized()
+  {
+    return WXMRealizationMarkers.isRealized(
+      this.clientConfiguration,
+      this.machine
+    );
+  }
+
   private void evaluateAHCIDisk(
     final WXMRealizationInstructions.Builder builder,
+    final WXMRealizationStepType filesystemStep,
     final WXMDeviceAHCIDisk device)
   {
     final var backend = device.backend();
@@ -138,7 +246,10 @@ public final class WXMRealizations implements WXMRealizationType
       }
       case WXM_STORAGE_ZFS_VOLUME: {
         this.evaluateZFSVolume(
-          builder, device, (WXMStorageBackendZFSVolume) backend);
+          builder,
+          filesystemStep,
+          device,
+          (WXMStorageBackendZFSVolume) backend);
         break;
       }
       case WXM_SCSI:
@@ -162,6 +273,7 @@ public final class WXMRealizations implements WXMRealizationType
 
   private void evaluateVirtioBlock(
     final WXMRealizationInstructions.Builder builder,
+    final WXMRealizationStepType filesystemStep,
     final WXMDeviceVirtioBlockStorage device)
   {
     final var backend = device.backend();
@@ -172,7 +284,10 @@ public final class WXMRealizations implements WXMRealizationType
       }
       case WXM_STORAGE_ZFS_VOLUME: {
         this.evaluateZFSVolume(
-          builder, device, (WXMStorageBackendZFSVolume) backend);
+          builder,
+          filesystemStep,
+          device,
+          (WXMStorageBackendZFSVolume) backend);
         break;
       }
       case WXM_SCSI:
@@ -182,6 +297,7 @@ public final class WXMRealizations implements WXMRealizationType
 
   private void evaluateZFSVolume(
     final WXMRealizationInstructions.Builder builder,
+    final WXMRealizationStepType filesystemStep,
     final WXMDeviceType device,
     final WXMStorageBackendZFSVolume zfs)
   {
@@ -192,7 +308,10 @@ public final class WXMRealizations implements WXMRealizationType
         this.processes,
         this.machine.id(),
         device.deviceSlot(),
-        zfs
+        zfs,
+        filesystemStep,
+        this.inventory,
+        this.batch
       )
     );
   }
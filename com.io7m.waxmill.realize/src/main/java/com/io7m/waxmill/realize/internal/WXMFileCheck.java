@@ -28,6 +28,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 
 import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
@@ -84,6 +85,12 @@ public final class WXMFileCheck implements WXMRealizationStepType
     return List.of();
   }
 
+  @Override
+  public Optional<String> deduplicationKey()
+  {
+    return Optional.of(String.format("file:%s", this.file));
+  }
+
   @Override
   public void execute(
     final WXMDryRun dryRun)
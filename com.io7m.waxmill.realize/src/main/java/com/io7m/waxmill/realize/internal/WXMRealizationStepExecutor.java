@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize.internal;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptions;
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.realize.WXMRealizationStepType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+
+/**
+ * An executor that executes realization steps concurrently, respecting the
+ * dependencies between steps.
+ */
+
+public final class WXMRealizationStepExecutor
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMRealizationStepExecutor.class);
+
+  private final WXMRealizeMessages messages;
+  private final int maxConcurrentSteps;
+
+  private WXMRealizationStepExecutor(
+    final WXMRealizeMessages inMessages,
+    final int inMaxConcurrentSteps)
+  {
+    this.messages =
+      Objects.requireNonNull(inMessages, "messages");
+    this.maxConcurrentSteps =
+      inMaxConcurrentSteps;
+  }
+
+  /**
+   * Create a step executor.
+   *
+   * @param maxConcurrentSteps The maximum number of steps that may execute
+   *                           concurrently
+   *
+   * @return A step executor
+   */
+
+  public static WXMRealizationStepExecutor create(
+    final int maxConcurrentSteps)
+  {
+    Preconditions.checkPreconditionI(
+      maxConcurrentSteps,
+      maxConcurrentSteps >= 1,
+      i -> "Maximum concurrent steps must be at least 1"
+    );
+
+    return new WXMRealizationStepExecutor(
+      WXMRealizeMessages.create(),
+      maxConcurrentSteps
+    );
+  }
+
+  /**
+   * Execute the given steps. Each step must appear after all of its
+   * dependencies.
+   *
+   * @param steps  The steps
+   * @param dryRun If this is a dry run
+   *
+   * @throws WXMException On errors
+   */
+
+  public void execute(
+    final List<WXMRealizationStepType> steps,
+    final WXMDryRun dryRun)
+    throws WXMException
+  {
+    final List<WXMRealizationStepOutcome> outcomes;
+    try {
+      outcomes = this.executeEach(steps, dryRun);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WXMException(e);
+    }
+
+    final var exceptions = new WXMExceptions();
+    final var reported =
+      Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+    for (final var outcome : outcomes) {
+      final var failure = outcome.failure();
+      if (failure.isPresent() && reported.add(failure.get())) {
+        exceptions.add(failure.get());
+      }
+    }
+    exceptions.throwIfRequired();
+  }
+
+  /**
+   * Execute the given steps, returning the outcome of each step in the
+   * order in which the steps were given. Each step must appear after all of
+   * its dependencies. Steps that have the same
+   * {@link WXMRealizationStepType#deduplicationKey()} as an earlier step are
+   * not executed, and share the outcome of the earlier step. Steps are
+   * executed one at a time for dry runs, so that the commands that would be
+   * executed are logged in order.
+   *
+   * @param steps  The steps
+   * @param dryRun If this is a dry run
+   *
+   * @return The outcome of each step
+   *
+   * @throws InterruptedException If the operation is interrupted
+   */
+
+  public List<WXMRealizationStepOutcome> executeEach(
+    final List<WXMRealizationStepType> steps,
+    final WXMDryRun dryRun)
+    throws InterruptedException
+  {
+    Objects.requireNonNull(steps, "steps");
+    Objects.requireNonNull(dryRun, "dryRun");
+
+    final var executor =
+      createExecutor(dryRun == DRY_RUN ? 1 : this.maxConcurrentSteps);
+    final var results =
+      new IdentityHashMap<WXMRealizationStepType, CompletableFuture<WXMRealizationStepOutcome>>(
+        steps.size());
+    final var shared =
+      new HashMap<String, CompletableFuture<WXMRealizationStepOutcome>>(
+        steps.size());
+    final var ordered =
+      new ArrayList<CompletableFuture<WXMRealizationStepOutcome>>(steps.size());
+
+    try {
+      for (final var step : steps) {
+        final var key = step.deduplicationKey();
+        final var existing = key.map(shared::get);
+
+        final CompletableFuture<WXMRealizationStepOutcome> result;
+        if (existing.isPresent()) {
+          LOG.debug("step {} duplicates {}", step, key.get());
+          result = existing.get();
+        } else {
+          final var waitingOn =
+            step.dependencies()
+              .stream()
+              .map(results::get)
+              .collect(Collectors.toList());
+
+          result =
+            CompletableFuture.allOf(waitingOn.toArray(new CompletableFuture[0]))
+              .thenApplyAsync(
+                ignored -> this.executeOne(step, waitingOn, dryRun),
+                executor
+              );
+          key.ifPresent(k -> shared.put(k, result));
+        }
+
+        results.put(step, result);
+        ordered.add(result);
+      }
+
+      final var outcomes =
+        new ArrayList<WXMRealizationStepOutcome>(ordered.size());
+      for (final var result : ordered) {
+        try {
+          outcomes.add(result.get());
+        } catch (final ExecutionException e) {
+          outcomes.add(WXMRealizationStepOutcome.failed(e.getCause()));
+        }
+      }
+      return outcomes;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private WXMRealizationStepOutcome executeOne(
+    final WXMRealizationStepType step,
+    final List<CompletableFuture<WXMRealizationStepOutcome>> dependencies,
+    final WXMDryRun dryRun)
+  {
+    for (final var dependency : dependencies) {
+      if (dependency.join().failure().isPresent()) {
+        return WXMRealizationStepOutcome.failed(
+          new WXMException(this.dependencyFailed(step)));
+      }
+    }
+
+    LOG.debug("executing step {}", step);
+
+    try {
+      step.execute(dryRun);
+      return WXMRealizationStepOutcome.succeeded();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return WXMRealizationStepOutcome.failed(e);
+    } catch (final Exception e) {
+      return WXMRealizationStepOutcome.failed(e);
+    }
+  }
+
+  private String dependencyFailed(
+    final WXMRealizationStepType step)
+  {
+    return this.messages.format(
+      "errorStepDependencyFailed",
+      step.description()
+    );
+  }
+
+  private static ExecutorService createExecutor(
+    final int threadLimit)
+  {
+    final var threadIndex = new AtomicInteger(0);
+    return Executors.newFixedThreadPool(threadLimit, runnable -> {
+      final var thread = new Thread(runnable);
+      thread.setName(String.format(
+        "com.io7m.waxmill.realize.step[%d]",
+        Integer.valueOf(threadIndex.incrementAndGet())));
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMRealizationStepExecutor 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
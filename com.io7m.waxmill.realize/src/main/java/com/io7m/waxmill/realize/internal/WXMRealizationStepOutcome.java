@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize.internal;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The outcome of executing a single realization step.
+ */
+
+public final class WXMRealizationStepOutcome
+{
+  private final Optional<Throwable> failure;
+  private final long timeCompleted;
+
+  private WXMRealizationStepOutcome(
+    final Optional<Throwable> inFailure,
+    final long inTimeCompleted)
+  {
+    this.failure =
+      Objects.requireNonNull(inFailure, "failure");
+    this.timeCompleted =
+      inTimeCompleted;
+  }
+
+  /**
+   * @return An outcome for a step that completed successfully now
+   */
+
+  public static WXMRealizationStepOutcome succeeded()
+  {
+    return new WXMRealizationStepOutcome(Optional.empty(), System.nanoTime());
+  }
+
+  /**
+   * @param failure The failure
+   *
+   * @return An outcome for a step that failed now
+   */
+
+  public static WXMRealizationStepOutcome failed(
+    final Throwable failure)
+  {
+    return new WXMRealizationStepOutcome(
+      Optional.of(failure),
+      System.nanoTime()
+    );
+  }
+
+  /**
+   * @return The reason the step failed, if it failed
+   */
+
+  public Optional<Throwable> failure()
+  {
+    return this.failure;
+  }
+
+  /**
+   * @return The value of {@link System#nanoTime()} when the step completed
+   */
+
+  public long timeCompleted()
+  {
+    return this.timeCompleted;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMRealizationStepOutcome %s]",
+      this.failure.map(Throwable::getMessage).orElse("succeeded")
+    );
+  }
+}
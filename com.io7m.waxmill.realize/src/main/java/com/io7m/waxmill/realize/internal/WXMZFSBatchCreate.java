@@ -0,0 +1,478 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize.internal;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.machines.WXMZFSVolume;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.realize.WXMRealizationStepType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+
+/**
+ * A realization step that creates all of the missing ZFS filesystems and
+ * volumes required by one or more machines as a single batch. The
+ * {@link WXMZFSRuntimeFilesystemCreate} and {@link WXMZFSVolumeCheck} steps
+ * depend on this step, and consult {@link #outcomeFor(String)} to find out
+ * whether their dataset was created by the batch. Datasets that already
+ * exist, or that could not be listed, are left to the individual steps.
+ *
+ * Volumes are created with {@code zfs create -p}, so a filesystem that
+ * contains a volume in the batch does not require a command of its own.
+ * The commands are executed concurrently, with at most a given number
+ * executing at any given time. Volumes within the same new filesystem are
+ * created one after another, as concurrent {@code zfs create -p} commands
+ * would race to create the filesystem.
+ *
+ * A dry run lists the existing datasets as usual, and prints the commands
+ * that would create the missing datasets instead of executing them.
+ */
+
+public final class WXMZFSBatchCreate implements WXMRealizationStepType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMZFSBatchCreate.class);
+
+  private final WXMClientConfiguration clientConfiguration;
+  private final WXMRealizeMessages messages;
+  private final WXMProcessesType processes;
+  private final WXMZFSInventoryLoader inventory;
+  private final LinkedHashSet<String> filesystems;
+  private final LinkedHashMap<String, BigInteger> volumes;
+  private final Map<String, WXMRealizationStepOutcome> outcomes;
+  private final int maxConcurrentCommands;
+  private List<WXMProcessDescription> processList;
+
+  /**
+   * A realization step that creates ZFS datasets as a batch.
+   *
+   * @param inClientConfiguration   The client configuration
+   * @param inMessages              The realization string resources
+   * @param inProcesses             The process provider
+   * @param inInventory             The shared ZFS dataset inventory
+   * @param inMaxConcurrentCommands The maximum number of commands that may
+   *                                execute concurrently
+   */
+
+  public WXMZFSBatchCreate(
+    final WXMClientConfiguration inClientConfiguration,
+    final WXMRealizeMessages inMessages,
+    final WXMProcessesType inProcesses,
+    final WXMZFSInventoryLoader inInventory,
+    final int inMaxConcurrentCommands)
+  {
+    Preconditions.checkPreconditionI(
+      inMaxConcurrentCommands,
+      inMaxConcurrentCommands >= 1,
+      i -> "Maximum concurrent commands must be at least 1"
+    );
+
+    this.clientConfiguration =
+      Objects.requireNonNull(inClientConfiguration, "clientConfiguration");
+    this.messages =
+      Objects.requireNonNull(inMessages, "messages");
+    this.processes =
+      Objects.requireNonNull(inProcesses, "processes");
+    this.inventory =
+      Objects.requireNonNull(inInventory, "inventory");
+
+    this.filesystems = new LinkedHashSet<>();
+    this.volumes = new LinkedHashMap<>();
+    this.outcomes = new HashMap<>();
+    this.maxConcurrentCommands = inMaxConcurrentCommands;
+    this.processList = List.of();
+  }
+
+  /**
+   * Add a filesystem to the batch. The filesystem is created if it does not
+   * exist when the batch is executed.
+   *
+   * @param filesystem The filesystem
+   */
+
+  public synchronized void addFilesystem(
+    final WXMZFSFilesystem filesystem)
+  {
+    Objects.requireNonNull(filesystem, "filesystem");
+    this.filesystems.add(filesystem.name());
+    this.processList = this.plan(this.filesystems, this.volumes.keySet());
+  }
+
+  /**
+   * Add a volume to the batch. The volume is created if it does not exist
+   * when the batch is executed.
+   *
+   * @param volume The volume
+   * @param size   The size of the volume
+   */
+
+  public synchronized void addVolume(
+    final WXMZFSVolume volume,
+    final BigInteger size)
+  {
+    Objects.requireNonNull(volume, "volume");
+    Objects.requireNonNull(size, "size");
+    this.volumes.put(volume.name(), size);
+    this.processList = this.plan(this.filesystems, this.volumes.keySet());
+  }
+
+  /**
+   * @param name The dataset name
+   *
+   * @return The outcome of creating the given dataset, or nothing if the
+   * dataset was not created by this batch
+   */
+
+  public synchronized Optional<WXMRealizationStepOutcome> outcomeFor(
+    final String name)
+  {
+    Objects.requireNonNull(name, "name");
+    return Optional.ofNullable(this.outcomes.get(name));
+  }
+
+  /**
+   * Determine whether the given dataset was created by this batch.
+   *
+   * @param name The dataset name
+   *
+   * @return {@code true} if the dataset was created by this batch, or
+   * {@code false} if the batch did not attempt to create the dataset
+   *
+   * @throws WXMException If the batch failed to create the dataset
+   */
+
+  public boolean created(
+    final String name)
+    throws WXMException
+  {
+    final var outcomeOpt = this.outcomeFor(name);
+    if (outcomeOpt.isEmpty()) {
+      return false;
+    }
+
+    final var failure = outcomeOpt.get().failure();
+    if (failure.isPresent()) {
+      throw new WXMException(failure.get());
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized String description()
+  {
+    final var names = new ArrayList<String>(
+      this.filesystems.size() + this.volumes.size());
+    names.addAll(this.filesystems);
+    names.addAll(this.volumes.keySet());
+    return this.messages.format(
+      "zfsBatchCreate",
+      String.join(" ", names)
+    );
+  }
+
+  @Override
+  public synchronized List<WXMProcessDescription> processes()
+  {
+    return List.copyOf(this.processList);
+  }
+
+  @Override
+  public Optional<String> deduplicationKey()
+  {
+    return Optional.of(String.format(
+      "zfs-batch:%s",
+      Integer.toUnsignedString(System.identityHashCode(this), 16)
+    ));
+  }
+
+  @Override
+  public synchronized void execute(
+    final WXMDryRun dryRun)
+    throws InterruptedException
+  {
+    final var inventoryOpt = this.inventory.load();
+    if (inventoryOpt.isEmpty()) {
+      LOG.debug("ZFS datasets could not be listed; not batching creation");
+      this.processList = List.of();
+      return;
+    }
+
+    final var existing = inventoryOpt.get();
+    final var missingFilesystems =
+      this.filesystems.stream()
+        .filter(name -> existing.find(name).isEmpty())
+        .collect(Collectors.toList());
+    final var missingVolumes =
+      this.volumes.keySet()
+        .stream()
+        .filter(name -> existing.find(name).isEmpty())
+        .collect(Collectors.toList());
+
+    this.processList = this.plan(missingFilesystems, missingVolumes);
+    if (dryRun == DRY_RUN) {
+      for (final var process : this.processList) {
+        System.out.printf(
+          "%s %s%n",
+          process.executable(),
+          String.join(" ", process.arguments())
+        );
+      }
+      return;
+    }
+
+    LOG.info(
+      "creating {} ZFS datasets with {} commands",
+      Integer.valueOf(missingFilesystems.size() + missingVolumes.size()),
+      Integer.valueOf(this.processList.size()));
+
+    this.outcomes.putAll(
+      this.createAll(this.group(missingFilesystems, missingVolumes)));
+
+    for (final var name : missingFilesystems) {
+      if (this.outcomes.containsKey(name)) {
+        continue;
+      }
+
+      final var contained =
+        missingVolumes.stream()
+          .filter(volume -> isWithin(name, volume))
+          .map(this.outcomes::get)
+          .collect(Collectors.toList());
+
+      /*
+       * The filesystem was created implicitly by the creation of any of the
+       * volumes within it.
+       */
+
+      this.outcomes.put(
+        name,
+        contained.stream()
+          .filter(outcome -> outcome.failure().isEmpty())
+          .findFirst()
+          .orElse(contained.get(0))
+      );
+    }
+  }
+
+  /**
+   * Group the commands required to create the given datasets. The groups
+   * may execute concurrently, but the commands within a group must execute
+   * in order.
+   */
+
+  private List<List<Map.Entry<String, WXMProcessDescription>>> group(
+    final List<String> missingFilesystems,
+    final List<String> missingVolumes)
+  {
+    final var groups =
+      new LinkedHashMap<String, List<Map.Entry<String, WXMProcessDescription>>>();
+
+    for (final var name : missingVolumes) {
+      final var key =
+        missingFilesystems.stream()
+          .filter(filesystem -> isWithin(filesystem, name))
+          .findFirst()
+          .orElse(name);
+
+      groups.computeIfAbsent(key, k -> new ArrayList<>())
+        .add(Map.entry(name, this.createVolume(name)));
+    }
+
+    for (final var name : missingFilesystems) {
+      if (!groups.containsKey(name)) {
+        groups.put(name, List.of(Map.entry(name, this.createFilesystem(name))));
+      }
+    }
+    return List.copyOf(groups.values());
+  }
+
+  private Map<String, WXMRealizationStepOutcome> createAll(
+    final List<List<Map.Entry<String, WXMProcessDescription>>> groups)
+    throws InterruptedException
+  {
+    final var results = new HashMap<String, WXMRealizationStepOutcome>();
+    if (groups.isEmpty()) {
+      return results;
+    }
+
+    final var executor =
+      createExecutor(Math.min(this.maxConcurrentCommands, groups.size()));
+
+    try {
+      final var futures =
+        new ArrayList<Future<Map<String, WXMRealizationStepOutcome>>>(
+          groups.size());
+      for (final var group : groups) {
+        futures.add(executor.submit(() -> this.createGroup(group)));
+      }
+      for (int index = 0; index < groups.size(); ++index) {
+        results.putAll(waitForGroup(groups.get(index), futures.get(index)));
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Map<String, WXMRealizationStepOutcome> waitForGroup(
+    final List<Map.Entry<String, WXMProcessDescription>> group,
+    final Future<Map<String, WXMRealizationStepOutcome>> future)
+    throws InterruptedException
+  {
+    try {
+      return future.get();
+    } catch (final ExecutionException e) {
+      final var outcome = WXMRealizationStepOutcome.failed(e.getCause());
+      final var results = new HashMap<String, WXMRealizationStepOutcome>();
+      for (final var command : group) {
+        results.put(command.getKey(), outcome);
+      }
+      return results;
+    }
+  }
+
+  private Map<String, WXMRealizationStepOutcome> createGroup(
+    final List<Map.Entry<String, WXMProcessDescription>> group)
+    throws InterruptedException
+  {
+    final var results = new HashMap<String, WXMRealizationStepOutcome>();
+    for (final var command : group) {
+      results.put(command.getKey(), this.create(command.getValue()));
+    }
+    return results;
+  }
+
+  private static ExecutorService createExecutor(
+    final int threadLimit)
+  {
+    final var threadIndex = new AtomicInteger(0);
+    return Executors.newFixedThreadPool(threadLimit, runnable -> {
+      final var thread = new Thread(runnable);
+      thread.setName(String.format(
+        "com.io7m.waxmill.realize.zfs[%d]",
+        Integer.valueOf(threadIndex.incrementAndGet())));
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private WXMRealizationStepOutcome create(
+    final WXMProcessDescription process)
+    throws InterruptedException
+  {
+    try {
+      this.processes.processStartAndWait(process);
+      return WXMRealizationStepOutcome.succeeded();
+    } catch (final InterruptedException e) {
+      throw e;
+    } catch (final Exception e) {
+      return WXMRealizationStepOutcome.failed(e);
+    }
+  }
+
+  private List<WXMProcessDescription> plan(
+    final Iterable<String> filesystemNames,
+    final Iterable<String> volumeNames)
+  {
+    final var plan = new ArrayList<WXMProcessDescription>();
+    for (final var name : filesystemNames) {
+      if (!containsAnyOf(name, volumeNames)) {
+        plan.add(this.createFilesystem(name));
+      }
+    }
+    for (final var name : volumeNames) {
+      plan.add(this.createVolume(name));
+    }
+    return List.copyOf(plan);
+  }
+
+  private static boolean containsAnyOf(
+    final String filesystem,
+    final Iterable<String> volumeNames)
+  {
+    for (final var volume : volumeNames) {
+      if (isWithin(filesystem, volume)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isWithin(
+    final String filesystem,
+    final String volume)
+  {
+    return volume.startsWith(filesystem + "/");
+  }
+
+  private WXMProcessDescription createFilesystem(
+    final String name)
+  {
+    return WXMProcessDescription.builder()
+      .setExecutable(this.clientConfiguration.zfsExecutable())
+      .setTimeout(this.clientConfiguration.zfsTimeout())
+      .addArguments("create")
+      .addArguments(name)
+      .build();
+  }
+
+  private WXMProcessDescription createVolume(
+    final String name)
+  {
+    return WXMProcessDescription.builder()
+      .setExecutable(this.clientConfiguration.zfsExecutable())
+      .setTimeout(this.clientConfiguration.zfsTimeout())
+      .addArguments("create")
+      .addArguments("-p")
+      .addArguments("-V")
+      .addArguments(this.volumes.get(name).toString())
+      .addArguments(name)
+      .build();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMZFSBatchCreate 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize.internal;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import org.immutables.value.Value;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A ZFS dataset, as listed by {@code zfs list}.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WXMZFSDatasetType
+{
+  /**
+   * @return The full name of the dataset
+   */
+
+  String name();
+
+  /**
+   * @return The type of the dataset, such as {@code filesystem} or
+   * {@code volume}
+   */
+
+  String type();
+
+  /**
+   * @return The exact size of the volume in bytes, if the dataset is a volume
+   */
+
+  Optional<BigInteger> volumeSize();
+
+  /**
+   * @return The mount point of the dataset, if the dataset is a mounted
+   * filesystem
+   */
+
+  Optional<Path> mountPoint();
+
+  /**
+   * @return {@code true} if the dataset is a filesystem
+   */
+
+  default boolean isFilesystem()
+  {
+    return "filesystem".equals(this.type());
+  }
+
+  /**
+   * @return {@code true} if the dataset is a volume
+   */
+
+  default boolean isVolume()
+  {
+    return "volume".equals(this.type());
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * An in-memory snapshot of the ZFS datasets beneath a root dataset, as
+ * produced by {@code zfs list -H -p -o name,type,volsize,mountpoint -r root}.
+ */
+
+public final class WXMZFSInventory
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMZFSInventory.class);
+
+  private final String root;
+  private final Map<String, WXMZFSDataset> datasets;
+
+  private WXMZFSInventory(
+    final String inRoot,
+    final Map<String, WXMZFSDataset> inDatasets)
+  {
+    this.root =
+      Objects.requireNonNull(inRoot, "root");
+    this.datasets =
+      Objects.requireNonNull(inDatasets, "datasets");
+  }
+
+  /**
+   * @return The arguments passed to {@code zfs} to produce a listing that
+   * can be parsed by {@link #parse(String, List)}
+   *
+   * @param root The root dataset
+   */
+
+  public static List<String> listArguments(
+    final String root)
+  {
+    return List.of(
+      "list",
+      "-H",
+      "-p",
+      "-o",
+      "name,type,volsize,mountpoint",
+      "-r",
+      root
+    );
+  }
+
+  /**
+   * Parse the output of {@code zfs list}. Lines that are not valid listing
+   * lines (such as warnings written to the standard error stream) are
+   * ignored. A listing that does not include the root dataset is rejected,
+   * because it cannot be distinguished from a failed listing.
+   *
+   * @param root  The root dataset
+   * @param lines The lines of output
+   *
+   * @return An inventory, or nothing if the listing is not usable
+   */
+
+  public static Optional<WXMZFSInventory> parse(
+    final String root,
+    final List<String> lines)
+  {
+    Objects.requireNonNull(root, "root");
+    Objects.requireNonNull(lines, "lines");
+
+    final var datasets = new HashMap<String, WXMZFSDataset>(lines.size());
+    for (final var line : lines) {
+      final var fields = line.split("\t", -1);
+      if (fields.length != 4) {
+        LOG.debug("ignoring zfs list output: {}", line);
+        continue;
+      }
+
+      final var builder =
+        WXMZFSDataset.builder()
+          .setName(fields[0])
+          .setType(fields[1]);
+
+      try {
+        if (!"-".equals(fields[2])) {
+          builder.setVolumeSize(new BigInteger(fields[2]));
+        }
+      } catch (final NumberFormatException e) {
+        LOG.debug("ignoring zfs list output: {}", line);
+        continue;
+      }
+
+      if (fields[3].startsWith("/")) {
+        builder.setMountPoint(Paths.get(fields[3]));
+      }
+
+      final var dataset = builder.build();
+      datasets.put(dataset.name(), dataset);
+    }
+
+    if (!datasets.containsKey(root)) {
+      LOG.debug("zfs list output did not include the root dataset {}", root);
+      return Optional.empty();
+    }
+    return Optional.of(new WXMZFSInventory(root, Map.copyOf(datasets)));
+  }
+
+  /**
+   * @return The root dataset
+   */
+
+  public String root()
+  {
+    return this.root;
+  }
+
+  /**
+   * @return The datasets, by name
+   */
+
+  public Map<String, WXMZFSDataset> datasets()
+  {
+    return this.datasets;
+  }
+
+  /**
+   * Find a dataset.
+   *
+   * @param name The dataset name
+   *
+   * @return The dataset, if it exists
+   */
+
+  public Optional<WXMZFSDataset> find(
+    final String name)
+  {
+    return Optional.ofNullable(this.datasets.get(name));
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMZFSInventory 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.realize.internal;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * A loader that lists the ZFS datasets beneath the virtual machine runtime
+ * filesystem at most once, and shares the resulting inventory between all
+ * of the realization steps that need it. If the datasets cannot be listed,
+ * no inventory is produced and steps are expected to fall back to examining
+ * the filesystem directly.
+ */
+
+public final class WXMZFSInventoryLoader
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMZFSInventoryLoader.class);
+
+  /*
+   * The maximum size of a listing. Each line of the listing describes a
+   * single dataset in well under a hundred bytes, so this is sufficient for
+   * tens of thousands of datasets.
+   */
+
+  private static final int LISTING_CAPTURE_LIMIT = 4 * 1024 * 1024;
+
+  private final WXMClientConfiguration clientConfiguration;
+  private final WXMProcessesType processes;
+  private Optional<WXMZFSInventory> inventory;
+  private boolean loaded;
+
+  /**
+   * Construct a loader.
+   *
+   * @param inClientConfiguration The client configuration
+   * @param inProcesses           The process provider
+   */
+
+  public WXMZFSInventoryLoader(
+    final WXMClientConfiguration inClientConfiguration,
+    final WXMProcessesType inProcesses)
+  {
+    this.clientConfiguration =
+      Objects.requireNonNull(inClientConfiguration, "clientConfiguration");
+    this.processes =
+      Objects.requireNonNull(inProcesses, "processes");
+    this.inventory =
+      Optional.empty();
+  }
+
+  /**
+   * Load the inventory, if it has not already been loaded.
+   *
+   * @return The inventory, or nothing if the datasets could not be listed
+   *
+   * @throws InterruptedException If the operation is interrupted
+   */
+
+  public synchronized Optional<WXMZFSInventory> load()
+    throws InterruptedException
+  {
+    if (!this.loaded) {
+      this.inventory = this.list();
+      this.loaded = true;
+    }
+    return this.inventory;
+  }
+
+  private Optional<WXMZFSInventory> list()
+    throws InterruptedException
+  {
+    final var root =
+      this.clientConfiguration.virtualMachineRuntimeFilesystem().name();
+    final var description =
+      WXMProcessDescription.builder()
+        .setExecutable(this.clientConfiguration.zfsExecutable())
+        .setTimeout(this.clientConfiguration.zfsTimeout())
+        .setOutputCaptureLimit(LISTING_CAPTURE_LIMIT)
+        .addAllArguments(WXMZFSInventory.listArguments(root))
+        .build();
+
+    LOG.debug("listing ZFS datasets beneath {}", root);
+
+    final var future = this.processes.processStartAsync(description);
+    final WXMProcessResult listing;
+    try {
+      listing = future.get();
+    } catch (final InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (final ExecutionException e) {
+      LOG.warn("unable to list ZFS datasets: {}", e.getCause().getMessage());
+      return Optional.empty();
+    }
+
+    if (listing.exitCode() != 0) {
+      LOG.warn(
+        "unable to list ZFS datasets: zfs exited with code {}",
+        Integer.valueOf(listing.exitCode()));
+      return Optional.empty();
+    }
+    if (listing.outputDiscarded() > 0L) {
+      LOG.warn(
+        "unable to list ZFS datasets: the listing exceeded {} bytes",
+        Integer.valueOf(LISTING_CAPTURE_LIMIT));
+      return Optional.empty();
+    }
+
+    final var lines = listing.output().lines().collect(Collectors.toList());
+    final var result = WXMZFSInventory.parse(root, lines);
+    result.ifPresentOrElse(
+      i -> LOG.debug("listed {} ZFS datasets", i.datasets().size()),
+      () -> LOG.warn("zfs list did not produce a usable listing for {}", root)
+    );
+    return result;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMZFSInventoryLoader 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -31,6 +31,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 
 import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
@@ -49,6 +50,8 @@ public final class WXMZFSRuntimeFilesystemCreate
   private final UUID machineId;
   private final WXMClientConfiguration clientConfiguration;
   private final WXMProcessesType processes;
+  private final WXMZFSInventoryLoader inventory;
+  private final Optional<WXMZFSBatchCreate> batch;
   private List<WXMProcessDescription> processesList;
 
   /**
@@ -58,13 +61,18 @@ public final class WXMZFSRuntimeFilesystemCreate
    * @param inMessages            The realization string resources
    * @param inProcesses           The process provider
    * @param inMachineId           The machine ID
+   * @param inInventory           The shared ZFS dataset inventory
+   * @param inBatch               The batch that creates missing datasets, if
+   *                              datasets are being created in batches
    */
 
   public WXMZFSRuntimeFilesystemCreate(
     final WXMClientConfiguration inClientConfiguration,
     final WXMRealizeMessages inMessages,
     final WXMProcessesType inProcesses,
-    final UUID inMachineId)
+    final UUID inMachineId,
+    final WXMZFSInventoryLoader inInventory,
+    final Optional<WXMZFSBatchCreate> inBatch)
   {
     this.clientConfiguration =
       Objects.requireNonNull(inClientConfiguration, "clientConfiguration");
@@ -74,6 +82,15 @@ public final class WXMZFSRuntimeFilesystemCreate
       Objects.requireNonNull(inProcesses, "inProcesses");
     this.machineId =
       Objects.requireNonNull(inMachineId, "inMachineId");
+    this.inventory =
+      Objects.requireNonNull(inInventory, "inventory");
+    this.batch =
+      Objects.requireNonNull(inBatch, "batch");
+    this.batch.ifPresent(b -> b.addFilesystem(
+      WXMZFSFilesystems.resolve(
+        this.clientConfiguration.virtualMachineRuntimeFilesystem(),
+        this.machineId.toString()
+      )));
 
     this.processesList = List.of();
   }
@@ -96,6 +113,25 @@ public final class WXMZFSRuntimeFilesystemCreate
     return List.copyOf(this.processesList);
   }
 
+  @Override
+  public List<WXMRealizationStepType> dependencies()
+  {
+    return this.batch.<List<WXMRealizationStepType>>map(List::of)
+      .orElse(List.of());
+  }
+
+  @Override
+  public Optional<String> deduplicationKey()
+  {
+    return Optional.of(String.format(
+      "zfs-filesystem:%s",
+      WXMZFSFilesystems.resolve(
+        this.clientConfiguration.virtualMachineRuntimeFilesystem(),
+        this.machineId.toString()
+      ).name()
+    ));
+  }
+
   @Override
   public void execute(
     final WXMDryRun dryRun)
@@ -114,22 +150,41 @@ public final class WXMZFSRuntimeFilesystemCreate
         this.machineId.toString()
       );
 
-    final var mountPoint = machineFilesystem.mountPoint();
-    LOG.info("checking if {} is a directory", mountPoint);
+    final var fsName = machineFilesystem.name();
+    if (this.batch.isPresent() && this.batch.get().created(fsName)) {
+      LOG.info("ZFS filesystem {} was created in a batch", fsName);
+      return;
+    }
 
-    if (Files.exists(mountPoint)) {
-      if (Files.isDirectory(mountPoint)) {
-        LOG.info("{} is a directory", mountPoint);
-        return;
+    final var inventoryOpt = this.inventory.load();
+    if (inventoryOpt.isPresent()) {
+      final var datasetOpt = inventoryOpt.get().find(fsName);
+      if (datasetOpt.isPresent()) {
+        final var dataset = datasetOpt.get();
+        if (dataset.isFilesystem()) {
+          LOG.info("ZFS filesystem {} exists", fsName);
+          return;
+        }
+        throw new WXMException(this.wrongType(dataset));
+      }
+    } else {
+      final var mountPoint = machineFilesystem.mountPoint();
+      LOG.info("checking if {} is a directory", mountPoint);
+
+      if (Files.exists(mountPoint)) {
+        if (Files.isDirectory(mountPoint)) {
+          LOG.info("{} is a directory", mountPoint);
+          return;
+        }
+        throw new WXMException(this.notADirectory(mountPoint));
       }
-      throw new WXMException(this.notADirectory(mountPoint));
     }
 
-    final var fsName = machineFilesystem.name();
     LOG.info("creating ZFS filesystem {}", fsName);
     final var process =
       WXMProcessDescription.builder()
         .setExecutable(this.clientConfiguration.zfsExecutable())
+        .setTimeout(this.clientConfiguration.zfsTimeout())
         .addArguments("create")
         .addArguments(fsName)
         .build();
@@ -138,6 +193,17 @@ public final class WXMZFSRuntimeFilesystemCreate
     this.processes.processStartAndWait(process);
   }
 
+  private String wrongType(
+    final WXMZFSDataset dataset)
+  {
+    return this.messages.format(
+      "zfsDatasetWrongType",
+      dataset.name(),
+      "filesystem",
+      dataset.type()
+    );
+  }
+
   private String notADirectory(
     final Path path)
   {
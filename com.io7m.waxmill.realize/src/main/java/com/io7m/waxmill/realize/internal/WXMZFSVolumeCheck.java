@@ -58,6 +58,9 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
   private final WXMRealizeMessages messages;
   private final WXMStorageBackendZFSVolume zfsVolume;
   private final WXMZFSVolume volume;
+  private final WXMRealizationStepType filesystemStep;
+  private final WXMZFSInventoryLoader inventory;
+  private final Optional<WXMZFSBatchCreate> batch;
   private List<WXMProcessDescription> processList;
 
   /**
@@ -69,6 +72,11 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
    * @param inMachineId           A machine ID
    * @param inSlot                A device slot
    * @param inZFSVolume           The ZFS volume
+   * @param inFilesystemStep      The step that creates the filesystem that
+   *                              will contain the volume
+   * @param inInventory           The shared ZFS dataset inventory
+   * @param inBatch               The batch that creates missing datasets, if
+   *                              datasets are being created in batches
    */
 
   public WXMZFSVolumeCheck(
@@ -77,7 +85,10 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
     final WXMProcessesType inProcesses,
     final UUID inMachineId,
     final WXMDeviceSlot inSlot,
-    final WXMStorageBackendZFSVolume inZFSVolume)
+    final WXMStorageBackendZFSVolume inZFSVolume,
+    final WXMRealizationStepType inFilesystemStep,
+    final WXMZFSInventoryLoader inInventory,
+    final Optional<WXMZFSBatchCreate> inBatch)
   {
     this.clientConfiguration =
       Objects.requireNonNull(inClientConfiguration, "clientConfiguration");
@@ -89,6 +100,12 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
       Objects.requireNonNull(inSlot, "slot");
     this.zfsVolume =
       Objects.requireNonNull(inZFSVolume, "zfsVolume");
+    this.filesystemStep =
+      Objects.requireNonNull(inFilesystemStep, "filesystemStep");
+    this.inventory =
+      Objects.requireNonNull(inInventory, "inventory");
+    this.batch =
+      Objects.requireNonNull(inBatch, "batch");
     final var machineId =
       Objects.requireNonNull(inMachineId, "machineId");
 
@@ -103,6 +120,11 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
 
     this.processOpt = this.makeProcesses();
     this.processList = this.processOpt.map(List::of).orElseGet(List::of);
+
+    if (this.batch.isPresent()) {
+      this.zfsVolume.expectedSize()
+        .ifPresent(size -> this.batch.get().addVolume(this.volume, size));
+    }
   }
 
   private Optional<WXMProcessDescription> makeProcesses()
@@ -110,6 +132,7 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
     return this.zfsVolume.expectedSize()
       .map(size -> WXMProcessDescription.builder()
         .setExecutable(this.clientConfiguration.zfsExecutable())
+        .setTimeout(this.clientConfiguration.zfsTimeout())
         .addArguments("create")
         .addArguments("-V")
         .addArguments(size.toString())
@@ -147,12 +170,42 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
   }
 
   @Override
-  public void execute(
-    final WXMDryRun dryRun)
-    throws WXMException
+  public List<WXMRealizationStepType> dependencies()
   {
-    if (dryRun == DRY_RUN) {
-      return;
+    return List.of(this.filesystemStep);
+  }
+
+  @Override
+  public Optional<String> deduplicationKey()
+  {
+    return Optional.of(String.format("zfs-volume:%s", this.volume.name()));
+  }
+
+  private boolean volumeExists()
+    throws WXMException, InterruptedException
+  {
+    final var inventoryOpt = this.inventory.load();
+    if (inventoryOpt.isPresent()) {
+      final var datasetOpt = inventoryOpt.get().find(this.volume.name());
+      if (datasetOpt.isEmpty()) {
+        return false;
+      }
+
+      final var dataset = datasetOpt.get();
+      if (!dataset.isVolume()) {
+        throw new WXMException(this.wrongType(dataset));
+      }
+
+      final var expectedOpt = this.zfsVolume.expectedSize();
+      final var sizeOpt = dataset.volumeSize();
+      if (expectedOpt.isPresent() && sizeOpt.isPresent()) {
+        final var expectedSize = expectedOpt.get();
+        final var size = sizeOpt.get();
+        if (!Objects.equals(size, expectedSize)) {
+          LOG.warn("{}", this.zfsVolumeSizeMismatch(expectedSize, size));
+        }
+      }
+      return true;
     }
 
     final var deviceNode = this.volume.device();
@@ -162,14 +215,35 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
         final var expectedSize = sizeOpt.get();
 
         try {
-          final var size = Files.size(deviceNode);
-          if (!Objects.equals(BigInteger.valueOf(size), expectedSize)) {
+          final var size = BigInteger.valueOf(Files.size(deviceNode));
+          if (!Objects.equals(size, expectedSize)) {
             LOG.warn("{}", this.zfsVolumeSizeMismatch(expectedSize, size));
           }
         } catch (final IOException e) {
           throw new WXMException(e);
         }
       }
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void execute(
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    if (dryRun == DRY_RUN) {
+      return;
+    }
+
+    final var volumeName = this.volume.name();
+    if (this.batch.isPresent() && this.batch.get().created(volumeName)) {
+      LOG.debug("ZFS volume {} was created in a batch", volumeName);
+      return;
+    }
+
+    if (this.volumeExists()) {
       return;
     }
 
@@ -190,6 +264,17 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
     }
   }
 
+  private String wrongType(
+    final WXMZFSDataset dataset)
+  {
+    return this.messages.format(
+      "zfsDatasetWrongType",
+      dataset.name(),
+      "volume",
+      dataset.type()
+    );
+  }
+
   private String zfsVolumeMissingNoSize()
   {
     return this.messages.format(
@@ -201,13 +286,13 @@ public final class WXMZFSVolumeCheck implements WXMRealizationStepType
 
   private String zfsVolumeSizeMismatch(
     final BigInteger expectedSize,
-    final long size)
+    final BigInteger size)
   {
     return this.messages.format(
       "zfsVolumeSizeMismatch",
       this.volume.name(),
       expectedSize,
-      Long.valueOf(size),
+      size,
       this.slot
     );
   }
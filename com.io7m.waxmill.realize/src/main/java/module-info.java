@@ -25,6 +25,7 @@ module com.io7m.waxmill.realize
   requires static org.osgi.annotation.bundle;
   requires static org.osgi.annotation.versioning;
 
+  requires com.io7m.jaffirm.core;
   requires com.io7m.junreachable.core;
   requires com.io7m.waxmill.client.api;
   requires com.io7m.waxmill.exceptions;
@@ -0,0 +1,333 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server;
+
+import com.io7m.waxmill.server.internal.WXMServerFrameOutputStream;
+import com.io7m.waxmill.server.internal.WXMServerProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * A server that accepts commands from thin clients over a UNIX domain
+ * socket and executes them with a handler. The server stays resident, so
+ * the cost of starting a JVM, loading services, and opening clients is paid
+ * once rather than once per command.
+ *
+ * Each request is handled on its own virtual thread, so requests are
+ * executed concurrently and a request blocked on I/O or on a lock does not
+ * occupy a platform thread. Handlers are responsible for serializing any
+ * requests that must not execute concurrently.
+ */
+
+public final class WXMServer implements Closeable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMServer.class);
+
+  private final Path socketPath;
+  private final ServerSocketChannel channel;
+  private final WXMServerHandlerType handler;
+  private final ExecutorService executor;
+  private volatile boolean closed;
+
+  private WXMServer(
+    final Path inSocketPath,
+    final ServerSocketChannel inChannel,
+    final WXMServerHandlerType inHandler)
+  {
+    this.socketPath =
+      Objects.requireNonNull(inSocketPath, "socketPath");
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.handler =
+      Objects.requireNonNull(inHandler, "handler");
+    this.executor =
+      Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual()
+          .name("com.io7m.waxmill.server.request-", 0L)
+          .factory()
+      );
+  }
+
+  /**
+   * Create a server listening on the given socket. A stale socket file left
+   * behind by a server that is no longer running is replaced. The socket is
+   * made accessible only to the owner of the server process, because
+   * anyone who can connect to the socket can execute commands with the
+   * privileges of the server. The socket is bound inside a directory that
+   * only the owner can enter, and is moved into place once its permissions
+   * have been set, so that nobody else can connect to it at any point.
+   *
+   * @param socketPath The path of the socket
+   * @param handler    The request handler
+   *
+   * @return A server
+   *
+   * @throws IOException If the socket cannot be created, its permissions
+   *                     cannot be set, or another server is already
+   *                     listening on it
+   */
+
+  public static WXMServer create(
+    final Path socketPath,
+    final WXMServerHandlerType handler)
+    throws IOException
+  {
+    Objects.requireNonNull(socketPath, "socketPath");
+    Objects.requireNonNull(handler, "handler");
+
+    final var path = socketPath.toAbsolutePath();
+    if (Files.exists(path)) {
+      if (isListening(path)) {
+        throw new IOException(String.format(
+          "A server is already listening on %s",
+          path
+        ));
+      }
+      LOG.debug("removing stale socket {}", path);
+      Files.delete(path);
+    }
+
+    final var channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      bindPrivately(channel, path);
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    LOG.info("listening on {}", path);
+    return new WXMServer(path, channel, handler);
+  }
+
+  private static void bindPrivately(
+    final ServerSocketChannel channel,
+    final Path path)
+    throws IOException
+  {
+    final var parent = path.getParent();
+    if (parent == null) {
+      throw new IOException(String.format(
+        "Socket path %s has no parent directory",
+        path
+      ));
+    }
+
+    try {
+      final var directory =
+        Files.createTempDirectory(
+          parent,
+          ".wxm",
+          PosixFilePermissions.asFileAttribute(
+            PosixFilePermissions.fromString("rwx------"))
+        );
+
+      final var temporary = directory.resolve("s");
+      try {
+        channel.bind(UnixDomainSocketAddress.of(temporary));
+        Files.setPosixFilePermissions(
+          temporary,
+          PosixFilePermissions.fromString("rw-------")
+        );
+        Files.move(temporary, path, ATOMIC_MOVE);
+      } catch (final IOException | UnsupportedOperationException e) {
+        deleteAfterFailure(temporary, e);
+        deleteAfterFailure(directory, e);
+        throw e;
+      }
+      Files.delete(directory);
+    } catch (final UnsupportedOperationException e) {
+      throw new IOException(
+        String.format("Unable to restrict access to %s", path),
+        e
+      );
+    }
+  }
+
+  private static void deleteAfterFailure(
+    final Path file,
+    final Exception failure)
+  {
+    try {
+      Files.deleteIfExists(file);
+    } catch (final IOException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  private static boolean isListening(
+    final Path path)
+  {
+    try (var ignored =
+           SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+      return true;
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return The path of the socket
+   */
+
+  public Path socketPath()
+  {
+    return this.socketPath;
+  }
+
+  /**
+   * Accept requests until the server is closed. Each request is executed on
+   * a new virtual thread.
+   *
+   * @throws IOException On errors accepting connections
+   */
+
+  public void run()
+    throws IOException
+  {
+    while (!this.closed) {
+      final SocketChannel client;
+      try {
+        client = this.channel.accept();
+      } catch (final ClosedChannelException e) {
+        return;
+      }
+      try {
+        this.executor.execute(() -> this.serve(client));
+      } catch (final RejectedExecutionException e) {
+        client.close();
+        return;
+      }
+    }
+  }
+
+  private void serve(
+    final SocketChannel client)
+  {
+    try (client) {
+      final var input =
+        new DataInputStream(
+          new BufferedInputStream(Channels.newInputStream(client)));
+      final var output =
+        new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(client)));
+
+      final WXMServerRequest request;
+      try {
+        request = WXMServerProtocol.readRequest(input);
+      } catch (final EOFException e) {
+        LOG.debug("client disconnected without sending a request");
+        return;
+      } catch (final IOException e) {
+        LOG.error("malformed request: ", e);
+        return;
+      }
+
+      final var outputLock =
+        new ReentrantLock();
+      final var requestOut =
+        new WXMServerFrameOutputStream(
+          output, outputLock, WXMServerProtocol.FRAME_OUTPUT);
+      final var requestErr =
+        new WXMServerFrameOutputStream(
+          output, outputLock, WXMServerProtocol.FRAME_ERROR);
+
+      int exitCode;
+      try {
+        LOG.debug("request: {}", request.arguments());
+        exitCode = this.handler.handle(request, requestOut, requestErr);
+      } catch (final Exception e) {
+        LOG.error("request failed: ", e);
+        final var errorStream = new PrintStream(requestErr, true, UTF_8);
+        errorStream.printf("error: %s%n", e.getMessage());
+        exitCode = 1;
+      }
+
+      outputLock.lock();
+      try {
+        WXMServerProtocol.writeExitFrame(output, exitCode);
+      } finally {
+        outputLock.unlock();
+      }
+    } catch (final IOException e) {
+      LOG.debug("client connection failed: ", e);
+    }
+  }
+
+  /**
+   * Stop accepting requests, wait for requests that are executing to
+   * complete, and remove the socket.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    try {
+      this.channel.close();
+    } finally {
+      try {
+        this.executor.close();
+      } finally {
+        Files.deleteIfExists(this.socketPath);
+      }
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMServer 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
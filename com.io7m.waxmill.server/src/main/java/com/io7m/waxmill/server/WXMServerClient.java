@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server;
+
+import com.io7m.waxmill.server.internal.WXMServerProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * A thin client that forwards commands to a server.
+ */
+
+public final class WXMServerClient
+{
+  private WXMServerClient()
+  {
+
+  }
+
+  /**
+   * Send a request to the server listening on the given socket, copying
+   * the server's output to the given streams.
+   *
+   * @param socketPath The path of the socket
+   * @param request    The request
+   * @param output     The standard output stream
+   * @param error      The standard error stream
+   *
+   * @return The exit code returned by the server
+   *
+   * @throws WXMServerUnavailableException If the server cannot be reached
+   * @throws IOException                    If the server fails to return an
+   *                                        exit code
+   */
+
+  public static int execute(
+    final Path socketPath,
+    final WXMServerRequest request,
+    final OutputStream output,
+    final OutputStream error)
+    throws IOException
+  {
+    Objects.requireNonNull(socketPath, "socketPath");
+    Objects.requireNonNull(request, "request");
+    Objects.requireNonNull(output, "output");
+    Objects.requireNonNull(error, "error");
+
+    final SocketChannel connection;
+    try {
+      connection = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+    } catch (final IOException e) {
+      throw new WXMServerUnavailableException(
+        String.format("Unable to connect to the server at %s", socketPath),
+        e
+      );
+    }
+
+    try (var channel = connection) {
+      final var channelOutput =
+        new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel)));
+      final var channelInput =
+        new DataInputStream(
+          new BufferedInputStream(Channels.newInputStream(channel)));
+
+      WXMServerProtocol.writeRequest(channelOutput, request);
+      return WXMServerProtocol.readResponse(channelInput, output, error);
+    }
+  }
+}
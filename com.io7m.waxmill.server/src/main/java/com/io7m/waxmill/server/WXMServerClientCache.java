@@ -0,0 +1,274 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMClientProviderType;
+import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptions;
+import com.io7m.waxmill.server.internal.WXMServerSharedClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A client provider that keeps clients open between requests. Opening a
+ * client with a configuration that has been seen before returns the client
+ * that was opened the first time, so the parsed configuration and any
+ * state cached by the client survive from one request to the next. A
+ * configuration file that has been modified since it was last opened is
+ * opened again.
+ *
+ * Closing a client returned by this provider releases it rather than
+ * closing it; the underlying client stays open for later requests. A client
+ * whose configuration file has been modified is retired, and is closed as
+ * soon as every request that opened it has released it. All clients are
+ * closed when the provider is closed. The provider may be used by many
+ * threads at once, and the clients it returns are shared between those
+ * threads.
+ */
+
+public final class WXMServerClientCache
+  implements WXMClientProviderType, AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMServerClientCache.class);
+
+  private final WXMClientProviderType delegate;
+  private final Map<Path, CachedFile> byFile;
+  private final Map<WXMClientConfiguration, WXMServerSharedClient> byConfiguration;
+  private final List<WXMServerSharedClient> retired;
+  private final ReentrantLock lock;
+  private boolean closed;
+
+  private WXMServerClientCache(
+    final WXMClientProviderType inDelegate)
+  {
+    this.delegate =
+      Objects.requireNonNull(inDelegate, "delegate");
+    this.byFile =
+      new HashMap<>();
+    this.byConfiguration =
+      new HashMap<>();
+    this.retired =
+      new ArrayList<>();
+    this.lock =
+      new ReentrantLock();
+  }
+
+  /**
+   * Create a caching provider.
+   *
+   * @param delegate The provider that will open clients
+   *
+   * @return A caching provider
+   */
+
+  public static WXMServerClientCache create(
+    final WXMClientProviderType delegate)
+  {
+    return new WXMServerClientCache(delegate);
+  }
+
+  @Override
+  public WXMClientType open(
+    final WXMClientConfiguration configuration)
+    throws WXMException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    this.lock.lock();
+    try {
+      this.checkNotClosed();
+
+      final var existing = this.byConfiguration.get(configuration);
+      if (existing != null) {
+        existing.acquire();
+        return existing;
+      }
+
+      final var client =
+        new WXMServerSharedClient(this.delegate.open(configuration));
+      client.acquire();
+      this.byConfiguration.put(configuration, client);
+      return client;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public WXMClientType open(
+    final Path configurationFile)
+    throws WXMException
+  {
+    Objects.requireNonNull(configurationFile, "configurationFile");
+
+    final var key =
+      configurationFile.toAbsolutePath().normalize();
+    final var modified =
+      lastModified(key);
+
+    WXMServerSharedClient stale = null;
+    final WXMServerSharedClient client;
+
+    this.lock.lock();
+    try {
+      this.checkNotClosed();
+
+      final var existing = this.byFile.get(key);
+      if (existing != null) {
+        if (Objects.equals(existing.modified, modified)) {
+          existing.client.acquire();
+          return existing.client;
+        }
+
+        LOG.debug("configuration file {} changed; reopening", key);
+        stale = existing.client;
+        this.retired.removeIf(WXMServerSharedClient::isClosed);
+        this.retired.add(stale);
+        this.byFile.remove(key);
+      }
+
+      client = new WXMServerSharedClient(this.delegate.open(key));
+      client.acquire();
+      this.byFile.put(key, new CachedFile(client, modified));
+    } finally {
+      this.lock.unlock();
+    }
+
+    if (stale != null) {
+      retire(stale);
+    }
+    return client;
+  }
+
+  private static void retire(
+    final WXMServerSharedClient client)
+  {
+    try {
+      client.retire();
+    } catch (final WXMException e) {
+      LOG.error("unable to close retired client: ", e);
+    }
+  }
+
+  private static Optional<FileTime> lastModified(
+    final Path file)
+  {
+    try {
+      return Optional.of(Files.getLastModifiedTime(file));
+    } catch (final IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  private void checkNotClosed()
+  {
+    if (this.closed) {
+      throw new IllegalStateException("Client cache is closed.");
+    }
+  }
+
+  /**
+   * @return The number of clients currently held open by the cache,
+   * including retired clients that are still in use
+   */
+
+  public int size()
+  {
+    this.lock.lock();
+    try {
+      this.retired.removeIf(WXMServerSharedClient::isClosed);
+      return this.byFile.size()
+        + this.byConfiguration.size()
+        + this.retired.size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void close()
+    throws WXMException
+  {
+    final var clients = new ArrayList<WXMServerSharedClient>();
+
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+
+      this.byFile.values().forEach(cached -> clients.add(cached.client));
+      clients.addAll(this.byConfiguration.values());
+      clients.addAll(this.retired);
+      this.byFile.clear();
+      this.byConfiguration.clear();
+      this.retired.clear();
+    } finally {
+      this.lock.unlock();
+    }
+
+    final var exceptions = new WXMExceptions();
+    for (final var client : clients) {
+      try {
+        client.closeNow();
+      } catch (final Exception e) {
+        exceptions.add(e);
+      }
+    }
+    exceptions.throwIfRequired();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMServerClientCache 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+
+  private static final class CachedFile
+  {
+    private final WXMServerSharedClient client;
+    private final Optional<FileTime> modified;
+
+    CachedFile(
+      final WXMServerSharedClient inClient,
+      final Optional<FileTime> inModified)
+    {
+      this.client = inClient;
+      this.modified = inModified;
+    }
+  }
+}
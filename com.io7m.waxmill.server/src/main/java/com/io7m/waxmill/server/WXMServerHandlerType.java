@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server;
+
+import java.io.OutputStream;
+
+/**
+ * A handler that executes requests on behalf of a server.
+ */
+
+public interface WXMServerHandlerType
+{
+  /**
+   * Execute a request. Anything written to {@code output} and {@code error}
+   * is delivered to the standard output and standard error streams of the
+   * client that sent the request.
+   *
+   * @param request The request
+   * @param output  The client's output stream
+   * @param error   The client's error stream
+   *
+   * @return The exit code that the client should return
+   *
+   * @throws Exception On errors
+   */
+
+  int handle(
+    WXMServerRequest request,
+    OutputStream output,
+    OutputStream error)
+    throws Exception;
+}
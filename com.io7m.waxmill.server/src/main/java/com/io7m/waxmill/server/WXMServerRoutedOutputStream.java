@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * An output stream that writes to a per-thread destination. A server
+ * installs routed streams as {@link System#out} and {@link System#err} so
+ * that anything printed while handling a request, including log messages,
+ * reaches the client that sent the request rather than the server's own
+ * terminal. Threads that have no route write to the fallback stream.
+ *
+ * Routes are inherited by threads created while a route is in effect, so
+ * output from worker threads started by a request also reaches the client.
+ */
+
+public final class WXMServerRoutedOutputStream extends OutputStream
+{
+  private final OutputStream fallback;
+  private final InheritableThreadLocal<OutputStream> route;
+
+  /**
+   * Construct a routed stream.
+   *
+   * @param inFallback The stream used by threads that have no route
+   */
+
+  public WXMServerRoutedOutputStream(
+    final OutputStream inFallback)
+  {
+    this.fallback = Objects.requireNonNull(inFallback, "fallback");
+    this.route = new InheritableThreadLocal<>();
+  }
+
+  /**
+   * Route output from the current thread to the given stream.
+   *
+   * @param target The target stream
+   */
+
+  public void routeTo(
+    final OutputStream target)
+  {
+    this.route.set(Objects.requireNonNull(target, "target"));
+  }
+
+  /**
+   * Return output from the current thread to the fallback stream.
+   */
+
+  public void unroute()
+  {
+    this.route.remove();
+  }
+
+  private OutputStream target()
+  {
+    final var target = this.route.get();
+    if (target != null) {
+      return target;
+    }
+    return this.fallback;
+  }
+
+  @Override
+  public void write(final int b)
+    throws IOException
+  {
+    this.target().write(b);
+  }
+
+  @Override
+  public void write(
+    final byte[] data,
+    final int offset,
+    final int length)
+    throws IOException
+  {
+    this.target().write(data, offset, length);
+  }
+
+  @Override
+  public void flush()
+    throws IOException
+  {
+    this.target().flush();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMServerRoutedOutputStream 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
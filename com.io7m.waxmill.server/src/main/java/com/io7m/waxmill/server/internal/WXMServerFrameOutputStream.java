@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server.internal;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An output stream that delivers data to a client as a sequence of output
+ * frames. Several frame streams may share the same underlying stream, in
+ * which case they must also share the same lock.
+ */
+
+public final class WXMServerFrameOutputStream extends OutputStream
+{
+  private final DataOutputStream output;
+  private final ReentrantLock lock;
+  private final byte kind;
+
+  /**
+   * Construct a frame stream.
+   *
+   * @param inOutput The underlying stream
+   * @param inLock   The lock that guards the underlying stream
+   * @param inKind   The kind of frames to write
+   */
+
+  public WXMServerFrameOutputStream(
+    final DataOutputStream inOutput,
+    final ReentrantLock inLock,
+    final byte inKind)
+  {
+    this.output = Objects.requireNonNull(inOutput, "output");
+    this.lock = Objects.requireNonNull(inLock, "lock");
+    this.kind = inKind;
+  }
+
+  @Override
+  public void write(final int b)
+    throws IOException
+  {
+    this.write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(
+    final byte[] data,
+    final int offset,
+    final int length)
+    throws IOException
+  {
+    Objects.checkFromIndexSize(offset, length, data.length);
+    if (length == 0) {
+      return;
+    }
+
+    this.lock.lock();
+    try {
+      WXMServerProtocol.writeOutputFrame(
+        this.output,
+        this.kind,
+        data,
+        offset,
+        length
+      );
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void flush()
+    throws IOException
+  {
+    this.lock.lock();
+    try {
+      this.output.flush();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMServerFrameOutputStream 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
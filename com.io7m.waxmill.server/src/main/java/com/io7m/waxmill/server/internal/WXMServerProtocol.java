@@ -0,0 +1,340 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server.internal;
+
+import com.io7m.waxmill.server.WXMServerRequest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The wire protocol spoken between thin clients and servers.
+ *
+ * A client sends a single request consisting of a magic number, a protocol
+ * version, the command-line arguments, the client's working directory, and
+ * an optional configuration file.
+ * The server responds with any number of output frames followed by exactly
+ * one exit frame, and then closes the connection.
+ */
+
+public final class WXMServerProtocol
+{
+  /**
+   * The magic number that begins every request ("WXMS").
+   */
+
+  public static final int MAGIC = 0x57584d53;
+
+  /**
+   * The protocol version.
+   */
+
+  public static final int VERSION = 2;
+
+  /**
+   * A frame containing bytes for the client's standard output.
+   */
+
+  public static final byte FRAME_OUTPUT = 1;
+
+  /**
+   * A frame containing bytes for the client's standard error.
+   */
+
+  public static final byte FRAME_ERROR = 2;
+
+  /**
+   * A frame containing the client's exit code.
+   */
+
+  public static final byte FRAME_EXIT = 3;
+
+  private static final int MAXIMUM_STRING_SIZE = 1_000_000;
+  private static final int MAXIMUM_ARGUMENTS = 10_000;
+
+  private WXMServerProtocol()
+  {
+
+  }
+
+  /**
+   * Write a request.
+   *
+   * @param output  The output stream
+   * @param request The request
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void writeRequest(
+    final DataOutputStream output,
+    final WXMServerRequest request)
+    throws IOException
+  {
+    Objects.requireNonNull(output, "output");
+    Objects.requireNonNull(request, "request");
+
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+
+    final var arguments = request.arguments();
+    output.writeInt(arguments.size());
+    for (final var argument : arguments) {
+      writeString(output, argument);
+    }
+
+    writeString(output, request.workingDirectory().toString());
+
+    final var configurationFile = request.configurationFile();
+    output.writeBoolean(configurationFile.isPresent());
+    if (configurationFile.isPresent()) {
+      writeString(output, configurationFile.get().toString());
+    }
+    output.flush();
+  }
+
+  /**
+   * Read a request.
+   *
+   * @param input The input stream
+   *
+   * @return A request
+   *
+   * @throws IOException On I/O errors, or malformed requests
+   */
+
+  public static WXMServerRequest readRequest(
+    final DataInputStream input)
+    throws IOException
+  {
+    Objects.requireNonNull(input, "input");
+
+    final var magic = input.readInt();
+    if (magic != MAGIC) {
+      throw new IOException(String.format(
+        "Unrecognized request magic number: 0x%08x (expected 0x%08x)",
+        Integer.valueOf(magic),
+        Integer.valueOf(MAGIC)
+      ));
+    }
+
+    final var version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format(
+        "Unsupported protocol version: %d (expected %d)",
+        Integer.valueOf(version),
+        Integer.valueOf(VERSION)
+      ));
+    }
+
+    final var count = input.readInt();
+    if (count < 0 || count > MAXIMUM_ARGUMENTS) {
+      throw new IOException(String.format(
+        "Unreasonable argument count: %d",
+        Integer.valueOf(count)
+      ));
+    }
+
+    final var arguments = new ArrayList<String>(count);
+    for (int index = 0; index < count; ++index) {
+      arguments.add(readString(input));
+    }
+
+    final var workingDirectory = Path.of(readString(input));
+    if (!workingDirectory.isAbsolute()) {
+      throw new IOException(String.format(
+        "Working directory must be absolute: %s",
+        workingDirectory
+      ));
+    }
+
+    final Optional<Path> configurationFile;
+    if (input.readBoolean()) {
+      configurationFile = Optional.of(Path.of(readString(input)));
+    } else {
+      configurationFile = Optional.empty();
+    }
+
+    return WXMServerRequest.builder()
+      .setArguments(arguments)
+      .setWorkingDirectory(workingDirectory)
+      .setConfigurationFile(configurationFile)
+      .build();
+  }
+
+  /**
+   * Write an output frame.
+   *
+   * @param output The output stream
+   * @param kind   The frame kind ({@link #FRAME_OUTPUT} or {@link #FRAME_ERROR})
+   * @param data   The frame data
+   * @param offset The offset of the data
+   * @param length The length of the data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void writeOutputFrame(
+    final DataOutputStream output,
+    final byte kind,
+    final byte[] data,
+    final int offset,
+    final int length)
+    throws IOException
+  {
+    output.writeByte(kind);
+    output.writeInt(length);
+    output.write(data, offset, length);
+  }
+
+  /**
+   * Write an exit frame.
+   *
+   * @param output   The output stream
+   * @param exitCode The exit code
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void writeExitFrame(
+    final DataOutputStream output,
+    final int exitCode)
+    throws IOException
+  {
+    output.writeByte(FRAME_EXIT);
+    output.writeInt(exitCode);
+    output.flush();
+  }
+
+  /**
+   * Read frames from a server until an exit frame is received, copying the
+   * contents of output frames to the given streams.
+   *
+   * @param input  The input stream
+   * @param output The standard output stream
+   * @param error  The standard error stream
+   *
+   * @return The exit code
+   *
+   * @throws IOException On I/O errors, or if the server closes the connection
+   *                     without sending an exit frame
+   */
+
+  public static int readResponse(
+    final DataInputStream input,
+    final OutputStream output,
+    final OutputStream error)
+    throws IOException
+  {
+    Objects.requireNonNull(input, "input");
+    Objects.requireNonNull(output, "output");
+    Objects.requireNonNull(error, "error");
+
+    while (true) {
+      final int kind;
+      try {
+        kind = input.readByte();
+      } catch (final EOFException e) {
+        throw new IOException(
+          "The server closed the connection without returning an exit code",
+          e
+        );
+      }
+
+      switch (kind) {
+        case FRAME_OUTPUT: {
+          copyFrame(input, output);
+          break;
+        }
+        case FRAME_ERROR: {
+          copyFrame(input, error);
+          break;
+        }
+        case FRAME_EXIT: {
+          output.flush();
+          error.flush();
+          return input.readInt();
+        }
+        default: {
+          throw new IOException(String.format(
+            "Unrecognized frame kind: %d",
+            Integer.valueOf(kind)
+          ));
+        }
+      }
+    }
+  }
+
+  private static void copyFrame(
+    final DataInputStream input,
+    final OutputStream output)
+    throws IOException
+  {
+    final var length = input.readInt();
+    if (length < 0) {
+      throw new IOException(String.format(
+        "Negative frame length: %d",
+        Integer.valueOf(length)
+      ));
+    }
+    final var data = input.readNBytes(length);
+    if (data.length != length) {
+      throw new EOFException();
+    }
+    output.write(data);
+    output.flush();
+  }
+
+  private static void writeString(
+    final DataOutputStream output,
+    final String text)
+    throws IOException
+  {
+    final var data = text.getBytes(UTF_8);
+    output.writeInt(data.length);
+    output.write(data);
+  }
+
+  private static String readString(
+    final DataInputStream input)
+    throws IOException
+  {
+    final var length = input.readInt();
+    if (length < 0 || length > MAXIMUM_STRING_SIZE) {
+      throw new IOException(String.format(
+        "Unreasonable string length: %d",
+        Integer.valueOf(length)
+      ));
+    }
+    final var data = input.readNBytes(length);
+    if (data.length != length) {
+      throw new EOFException();
+    }
+    return UTF_8.decode(ByteBuffer.wrap(data)).toString();
+  }
+}
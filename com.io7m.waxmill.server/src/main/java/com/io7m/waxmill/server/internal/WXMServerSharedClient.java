@@ -0,0 +1,352 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.server.internal;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.client.api.WXMDriftResult;
+import com.io7m.waxmill.client.api.WXMRealizeManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeManyResult;
+import com.io7m.waxmill.client.api.WXMRunManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyListenerType;
+import com.io7m.waxmill.client.api.WXMRunManyResult;
+import com.io7m.waxmill.client.api.WXMVirtualMachineEditType;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMDeviceType;
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineSet;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchListenerType;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchType;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A client that is shared between the requests handled by a server. Each
+ * request that opens the shared client acquires it, and releases it by
+ * closing it. The underlying client is closed once the shared client has
+ * been retired and every request that acquired it has released it.
+ */
+
+public final class WXMServerSharedClient implements WXMClientType
+{
+  private final WXMClientType delegate;
+  private final ReentrantLock lock;
+  private int users;
+  private boolean retired;
+  private boolean closed;
+
+  /**
+   * Construct a shared client.
+   *
+   * @param inDelegate The underlying client
+   */
+
+  public WXMServerSharedClient(
+    final WXMClientType inDelegate)
+  {
+    this.delegate = Objects.requireNonNull(inDelegate, "delegate");
+    this.lock = new ReentrantLock();
+  }
+
+  /**
+   * Acquire the client on behalf of a request. The request must release the
+   * client by closing it.
+   */
+
+  public void acquire()
+  {
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        throw new IllegalStateException("Shared client is closed.");
+      }
+      ++this.users;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Retire the client. A retired client is closed as soon as it has no
+   * users; if it has no users now, it is closed immediately.
+   *
+   * @throws WXMException On errors closing the underlying client
+   */
+
+  public void retire()
+    throws WXMException
+  {
+    this.lock.lock();
+    try {
+      this.retired = true;
+    } finally {
+      this.lock.unlock();
+    }
+    this.closeIfUnused();
+  }
+
+  /**
+   * Close the underlying client now, whether or not it is in use.
+   *
+   * @throws WXMException On errors closing the underlying client
+   */
+
+  public void closeNow()
+    throws WXMException
+  {
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        return;
+      }
+      this.retired = true;
+      this.closed = true;
+    } finally {
+      this.lock.unlock();
+    }
+    this.delegate.close();
+  }
+
+  /**
+   * @return {@code true} if the underlying client has been closed
+   */
+
+  public boolean isClosed()
+  {
+    this.lock.lock();
+    try {
+      return this.closed;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void close()
+    throws WXMException
+  {
+    this.lock.lock();
+    try {
+      if (this.users > 0) {
+        --this.users;
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    this.closeIfUnused();
+  }
+
+  private void closeIfUnused()
+    throws WXMException
+  {
+    this.lock.lock();
+    try {
+      if (this.closed || !this.retired || this.users > 0) {
+        return;
+      }
+      this.closed = true;
+    } finally {
+      this.lock.unlock();
+    }
+    this.delegate.close();
+  }
+
+  @Override
+  public WXMVirtualMachineSet vmList()
+    throws WXMException
+  {
+    return this.delegate.vmList();
+  }
+
+  @Override
+  public WXMVirtualMachine vmFind(
+    final UUID id)
+    throws WXMException
+  {
+    return this.delegate.vmFind(id);
+  }
+
+  @Override
+  public Optional<WXMVirtualMachine> vmFindOptional(
+    final UUID id)
+    throws WXMException
+  {
+    return this.delegate.vmFindOptional(id);
+  }
+
+  @Override
+  public void vmUpdate(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    this.delegate.vmUpdate(machine);
+  }
+
+  @Override
+  public void vmUpdateAll(
+    final WXMVirtualMachineSet machines)
+    throws WXMException
+  {
+    this.delegate.vmUpdateAll(machines);
+  }
+
+  @Override
+  public WXMVirtualMachineEditType vmEdit(
+    final UUID id)
+    throws WXMException
+  {
+    return this.delegate.vmEdit(id);
+  }
+
+  @Override
+  public WXMClientConfiguration configuration()
+  {
+    return this.delegate.configuration();
+  }
+
+  @Override
+  public WXMVirtualMachineWatchType vmWatch(
+    final WXMVirtualMachineWatchConfiguration configuration,
+    final WXMVirtualMachineWatchListenerType listener)
+    throws WXMException
+  {
+    return this.delegate.vmWatch(configuration, listener);
+  }
+
+  @Override
+  public void vmDefineAll(
+    final WXMVirtualMachineSet machines)
+    throws WXMException
+  {
+    this.delegate.vmDefineAll(machines);
+  }
+
+  @Override
+  public void vmRun(
+    final WXMVirtualMachine machine,
+    final WXMBootConfigurationName bootConfigurationName,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    this.delegate.vmRun(machine, bootConfigurationName, dryRun);
+  }
+
+  @Override
+  public void vmRun(
+    final UUID id,
+    final WXMBootConfigurationName bootConfigurationName,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    this.delegate.vmRun(id, bootConfigurationName, dryRun);
+  }
+
+  @Override
+  public WXMRunManyResult vmRunMany(
+    final WXMRunManyConfiguration configuration,
+    final WXMRunManyListenerType listener,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    return this.delegate.vmRunMany(configuration, listener, dryRun);
+  }
+
+  @Override
+  public WXMDriftResult vmDrift(
+    final WXMVirtualMachine machine)
+    throws WXMException
+  {
+    return this.delegate.vmDrift(machine);
+  }
+
+  @Override
+  public void vmDelete(
+    final UUID id)
+    throws WXMException
+  {
+    this.delegate.vmDelete(id);
+  }
+
+  @Override
+  public Optional<WXMDeviceType> vmConsoleGet(
+    final WXMVirtualMachine machine)
+  {
+    return this.delegate.vmConsoleGet(machine);
+  }
+
+  @Override
+  public Optional<WXMProcessDescription> vmConsole(
+    final WXMVirtualMachine machine)
+  {
+    return this.delegate.vmConsole(machine);
+  }
+
+  @Override
+  public void vmRealize(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun)
+    throws WXMException
+  {
+    this.delegate.vmRealize(machine, dryRun);
+  }
+
+  @Override
+  public void vmRealize(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun,
+    final int maxConcurrentSteps,
+    final boolean force)
+    throws WXMException
+  {
+    this.delegate.vmRealize(machine, dryRun, maxConcurrentSteps, force);
+  }
+
+  @Override
+  public WXMRealizeManyResult vmRealizeMany(
+    final WXMRealizeManyConfiguration configuration,
+    final WXMDryRun dryRun)
+    throws WXMException, InterruptedException
+  {
+    return this.delegate.vmRealizeMany(configuration, dryRun);
+  }
+
+  @Override
+  public void vmKill(
+    final WXMVirtualMachine machine,
+    final WXMDryRun dryRun)
+    throws WXMException
+  {
+    this.delegate.vmKill(machine, dryRun);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "[WXMServerSharedClient 0x%s]",
+      Long.toUnsignedString(System.identityHashCode(this), 16)
+    );
+  }
+}
@@ -27,9 +27,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Optional;
 
+import static com.io7m.waxmill.parser.api.WXMParseErrorType.Severity.ERROR;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -62,6 +64,42 @@ public abstract class WXMClientConfigurationParserContract
       config.virtualMachineConfigurationDirectory().toString());
   }
 
+  @Test
+  public void exampleDefaultTimeouts()
+    throws Exception
+  {
+    final var config = this.parseResource("config0.xml").orElseThrow();
+    assertEquals(Duration.ofMinutes(5L), config.zfsTimeout());
+    assertEquals(Duration.ofSeconds(30L), config.ifconfigTimeout());
+    assertEquals(Duration.ofMinutes(5L), config.grubBhyveTimeout());
+  }
+
+  @Test
+  public void exampleTimeoutsParses()
+    throws Exception
+  {
+    final var config =
+      this.parseResource("configTimeouts0.xml").orElseThrow();
+    assertEquals(
+      "/etc/waxmill/vm",
+      config.virtualMachineConfigurationDirectory().toString());
+    assertEquals("/sbin/zfs", config.zfsExecutable().toString());
+    assertEquals(Duration.ofMinutes(10L), config.zfsTimeout());
+    assertEquals(Duration.ofSeconds(90L), config.ifconfigTimeout());
+    assertEquals(Duration.ofMinutes(5L), config.grubBhyveTimeout());
+  }
+
+  @Test
+  public void exampleTimeoutsNegativeFails()
+    throws Exception
+  {
+    final var configOpt = this.parseResource("configTimeoutsNegative.xml");
+    assertTrue(configOpt.isEmpty());
+    assertTrue(
+      this.errors.stream()
+        .anyMatch(error -> error.severity() == ERROR));
+  }
+
   private Optional<WXMClientConfiguration> parseResource(
     final String name)
     throws IOException
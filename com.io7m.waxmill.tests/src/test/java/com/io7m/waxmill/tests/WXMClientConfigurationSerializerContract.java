@@ -69,6 +69,47 @@ public abstract class WXMClientConfigurationSerializerContract
     Assertions.assertEquals(cf0, cf1);
   }
 
+  @Test
+  public void timeoutsRoundTrip()
+    throws Exception
+  {
+    final var cf0 =
+      this.parseResource("configTimeouts0.xml");
+    final var output =
+      Files.newOutputStream(this.directory.resolve("output.xml"));
+
+    try (var serializer = this.serializers()
+      .create(URI.create("urn:unknown"), output, cf0)) {
+      serializer.execute();
+    }
+
+    final var text =
+      Files.readString(this.directory.resolve("output.xml"));
+    Assertions.assertTrue(text.contains("urn:com.io7m.waxmill.config:1:1"));
+
+    final var cf1 = this.parseTempFile("output.xml");
+    Assertions.assertEquals(cf0, cf1);
+  }
+
+  @Test
+  public void defaultTimeoutsVersion1p0()
+    throws Exception
+  {
+    final var cf0 =
+      this.parseResource("config0.xml");
+    final var output =
+      Files.newOutputStream(this.directory.resolve("output.xml"));
+
+    try (var serializer = this.serializers()
+      .create(URI.create("urn:unknown"), output, cf0)) {
+      serializer.execute();
+    }
+
+    final var text =
+      Files.readString(this.directory.resolve("output.xml"));
+    Assertions.assertFalse(text.contains("urn:com.io7m.waxmill.config:1:1"));
+  }
+
   private WXMClientConfiguration parseTempFile(
     final String name)
     throws IOException
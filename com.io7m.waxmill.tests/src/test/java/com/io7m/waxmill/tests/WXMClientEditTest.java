@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.vanilla.WXMClients;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionConcurrentModification;
+import com.io7m.waxmill.exceptions.WXMExceptionDuplicate;
+import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
+import com.io7m.waxmill.machines.WXMDeviceHostBridge;
+import com.io7m.waxmill.machines.WXMDeviceLPC;
+import com.io7m.waxmill.machines.WXMDevicePassthru;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMFlags;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMTTYBackendStdio;
+import com.io7m.waxmill.machines.WXMTag;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+
+import static com.io7m.waxmill.machines.WXMDeviceType.WXMDeviceHostBridgeType.Vendor.WXM_UNSPECIFIED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMClientEditTest
+{
+  private WXMClients clients;
+  private WXMClientConfiguration configuration;
+  private WXMVirtualMachine machine;
+
+  private static WXMDeviceSlot slot(
+    final int slot)
+  {
+    return WXMDeviceSlot.builder()
+      .setBusID(0)
+      .setSlotID(slot)
+      .setFunctionID(0)
+      .build();
+  }
+
+  private static WXMDeviceLPC lpc(
+    final int slot)
+  {
+    return WXMDeviceLPC.builder()
+      .setDeviceSlot(slot(slot))
+      .addBackends(
+        WXMTTYBackendStdio.builder()
+          .setDevice("com1")
+          .build())
+      .build();
+  }
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.clients =
+      new WXMClients();
+
+    final var directory =
+      WXMTestDirectories.createTempDirectory();
+
+    this.configuration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(directory.resolve("run"))
+            .setName("storage/vm")
+            .build()
+        )
+        .setVirtualMachineConfigurationDirectory(directory.resolve("etc"))
+        .build();
+
+    this.machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("com.io7m.example"))
+        .addDevices(
+          WXMDeviceHostBridge.builder()
+            .setDeviceSlot(slot(0))
+            .setVendor(WXM_UNSPECIFIED)
+            .build())
+        .build();
+  }
+
+  @Test
+  public void editManyChanges()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(this.machine);
+
+      final var edit = client.vmEdit(this.machine.id());
+      assertFalse(edit.isModified());
+
+      final var committed =
+        edit.addDevice(lpc(1), false)
+          .setComment("Edited")
+          .setFlags(edit.flags().withRealTimeClockIsUTC(true))
+          .addTag(WXMTag.of("web"))
+          .commit();
+
+      assertTrue(edit.isModified());
+
+      final var stored = client.vmFind(this.machine.id());
+      assertEquals("Edited", stored.comment());
+      assertTrue(stored.flags().realTimeClockIsUTC());
+      assertTrue(stored.tags().contains(WXMTag.of("web")));
+      assertTrue(stored.deviceMap().containsKey(slot(1)));
+      assertEquals(committed.devices(), stored.devices());
+    }
+  }
+
+  @Test
+  public void editValidatesOnCommit()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(this.machine);
+
+      final var passthru =
+        WXMDevicePassthru.builder()
+          .setDeviceSlot(slot(2))
+          .setHostPCISlot(slot(3))
+          .build();
+
+      client.vmEdit(this.machine.id())
+        .addDevice(passthru, false)
+        .setFlags(WXMFlags.builder().setWireGuestMemory(true).build())
+        .commit();
+
+      final var stored = client.vmFind(this.machine.id());
+      assertTrue(stored.flags().wireGuestMemory());
+      assertTrue(stored.deviceMap().containsKey(slot(2)));
+
+      final var edit =
+        client.vmEdit(this.machine.id())
+          .setFlags(WXMFlags.builder().setWireGuestMemory(false).build());
+
+      final var ex = assertThrows(WXMException.class, edit::commit);
+      assertInstanceOf(PreconditionViolationException.class, ex.getCause());
+      assertEquals(stored, client.vmFind(this.machine.id()));
+
+      final var fixed =
+        edit.removeDevice(slot(2))
+          .commit();
+
+      assertFalse(fixed.flags().wireGuestMemory());
+      assertFalse(fixed.deviceMap().containsKey(slot(2)));
+      assertEquals(fixed, client.vmFind(this.machine.id()));
+    }
+  }
+
+  @Test
+  public void editConcurrentModification()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(this.machine);
+
+      final var edit0 = client.vmEdit(this.machine.id());
+      final var edit1 = client.vmEdit(this.machine.id());
+
+      edit0.setComment("First").commit();
+      edit1.setComment("Second");
+
+      assertThrows(WXMExceptionConcurrentModification.class, edit1::commit);
+      assertEquals("First", client.vmFind(this.machine.id()).comment());
+    }
+  }
+
+  @Test
+  public void editDeleted()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(this.machine);
+
+      final var edit = client.vmEdit(this.machine.id());
+      client.vmDelete(this.machine.id());
+      edit.setComment("Changed");
+
+      assertThrows(WXMExceptionNonexistent.class, edit::commit);
+    }
+  }
+
+  @Test
+  public void editUnchangedDoesNotWrite()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(this.machine);
+
+      final var file =
+        this.configuration.virtualMachineConfigurationDirectory()
+          .resolve(this.machine.id() + ".wvmx");
+      final var timeThen = Files.getLastModifiedTime(file);
+      Thread.sleep(20L);
+
+      final var edit = client.vmEdit(this.machine.id());
+      assertEquals(edit.original(), edit.commit());
+      assertEquals(timeThen, Files.getLastModifiedTime(file));
+    }
+  }
+
+  @Test
+  public void editDuplicateDevice()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(this.machine);
+
+      final var edit = client.vmEdit(this.machine.id());
+      edit.addDevice(lpc(1), false);
+      assertThrows(WXMExceptionDuplicate.class, () -> {
+        edit.addDevice(lpc(1), false);
+      });
+      edit.addDevice(lpc(1), true);
+      edit.removeDevice(slot(1));
+      assertThrows(WXMExceptionNonexistent.class, () -> {
+        edit.removeDevice(slot(1));
+      });
+    }
+  }
+
+  @Test
+  public void editCommitTwice()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(this.machine);
+
+      final var edit = client.vmEdit(this.machine.id());
+      edit.commit();
+      assertThrows(IllegalStateException.class, edit::commit);
+    }
+  }
+
+  @Test
+  public void editNonexistent()
+    throws Exception
+  {
+    try (var client = this.clients.open(this.configuration)) {
+      assertThrows(WXMExceptionNonexistent.class, () -> {
+        client.vmEdit(UUID.randomUUID());
+      });
+    }
+  }
+}
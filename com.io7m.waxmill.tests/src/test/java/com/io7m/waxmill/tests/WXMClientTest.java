@@ -17,29 +17,42 @@
 package com.io7m.waxmill.tests;
 
 import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMClientType;
 import com.io7m.waxmill.client.vanilla.WXMClients;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMBootConfigurationUEFI;
 import com.io7m.waxmill.machines.WXMDeviceLPC;
 import com.io7m.waxmill.machines.WXMDeviceType;
 import com.io7m.waxmill.machines.WXMTTYBackendNMDM;
+import com.io7m.waxmill.machines.WXMMachineName;
 import com.io7m.waxmill.machines.WXMTTYBackendStdio;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMVirtualMachineSet;
 import com.io7m.waxmill.machines.WXMZFSFilesystem;
 import com.io7m.waxmill.parser.api.WXMParseError;
+import com.io7m.waxmill.xml.WXMClientConfigurationSerializers;
 import com.io7m.waxmill.xml.WXMVirtualMachineParsers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.URI;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 import static com.io7m.waxmill.machines.WXMBootConfigurationType.WXMBootConfigurationUEFIType;
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -283,6 +296,123 @@ public final class WXMClientTest
     }
   }
 
+  /**
+   * The configuration parse timing is reported for the first boot only.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void configurationParseTimingReportedOnce()
+    throws Exception
+  {
+    final var machine = this.uefiMachine();
+
+    final var configFile = this.directory.resolve("config.xml");
+    new WXMClientConfigurationSerializers()
+      .serialize(
+        configFile,
+        this.directory.resolve("config.xml.tmp"),
+        this.configuration
+      );
+
+    final var outputs = new ArrayList<String>();
+    try (var client = this.clients.open(configFile)) {
+      client.vmDefine(machine);
+      for (int index = 0; index < 2; ++index) {
+        outputs.add(dryRun(client, machine));
+      }
+    }
+
+    LOG.debug("{}", outputs);
+    assertTrue(outputs.get(0).contains("# timing configuration-parse"));
+    assertFalse(outputs.get(1).contains("# timing configuration-parse"));
+  }
+
+  /**
+   * Starting a machine by ID reports the time taken to look up the machine;
+   * starting a machine that was looked up separately does not.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void lookupTimingReportedForRunById()
+    throws Exception
+  {
+    final var machine = this.uefiMachine();
+
+    try (var client = this.clients.open(this.configuration)) {
+      client.vmDefine(machine);
+
+      final var byId = dryRun(client, machine.id());
+      LOG.debug("{}", byId);
+      assertTrue(byId.contains("# timing database-lookup"));
+
+      final var found = client.vmFind(machine.id());
+      final var byMachine = dryRun(client, found);
+      LOG.debug("{}", byMachine);
+      assertFalse(byMachine.contains("# timing database-lookup"));
+    }
+  }
+
+  private WXMVirtualMachine uefiMachine()
+    throws IOException
+  {
+    final var firmware = this.directory.resolve("firmware");
+    Files.writeString(firmware, "");
+
+    return WXMVirtualMachine.builder()
+      .setId(UUID.randomUUID())
+      .setName(WXMMachineName.of("vm"))
+      .addDevices(
+        WXMDeviceLPC.builder()
+          .setDeviceSlot(WXMDeviceIDTest.convert("0:1:0"))
+          .addBackends(
+            WXMTTYBackendStdio.builder()
+              .setDevice("com1")
+              .build())
+          .build())
+      .addBootConfigurations(
+        WXMBootConfigurationUEFI.builder()
+          .setName(WXMBootConfigurationName.of("run"))
+          .setFirmware(firmware)
+          .build())
+      .build();
+  }
+
+  private static String dryRun(
+    final WXMClientType client,
+    final WXMVirtualMachine machine)
+    throws Exception
+  {
+    final var saved = System.out;
+    final var bytes = new ByteArrayOutputStream();
+    try (var output = new PrintStream(bytes, true, UTF_8)) {
+      System.setOut(output);
+      client.vmRun(machine, WXMBootConfigurationName.of("run"), DRY_RUN);
+    } finally {
+      System.setOut(saved);
+    }
+    return bytes.toString(UTF_8);
+  }
+
+  private static String dryRun(
+    final WXMClientType client,
+    final UUID id)
+    throws Exception
+  {
+    final var saved = System.out;
+    final var bytes = new ByteArrayOutputStream();
+    try (var output = new PrintStream(bytes, true, UTF_8)) {
+      System.setOut(output);
+      client.vmRun(id, WXMBootConfigurationName.of("run"), DRY_RUN);
+    } finally {
+      System.setOut(saved);
+    }
+    return bytes.toString(UTF_8);
+  }
+
   private static WXMDeviceLPC toNMDM(
     final WXMDeviceLPC device)
   {
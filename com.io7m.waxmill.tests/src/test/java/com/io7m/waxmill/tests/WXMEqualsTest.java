@@ -75,6 +75,7 @@ public final class WXMEqualsTest
       new WXMClassUnderTest(
         WXMEvaluatedBootConfigurationGRUBBhyve.class,
         Set.of(
+          "name",
           "requiredPaths",
           "requiredNMDMs",
           "deviceMap",
@@ -85,6 +86,7 @@ public final class WXMEqualsTest
       new WXMClassUnderTest(
         WXMEvaluatedBootConfigurationUEFI.class,
         Set.of(
+          "name",
           "requiredPaths",
           "requiredNMDMs",
           "commands")),
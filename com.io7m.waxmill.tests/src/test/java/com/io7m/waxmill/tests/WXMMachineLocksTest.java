@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests;
+
+import com.io7m.waxmill.locks.WXMMachineLocks;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMMachineLocksTest
+{
+  private static final UUID MACHINE_0 =
+    UUID.fromString("a4a2f1a8-5d2e-4d1b-8b55-8d7e3b0f5d01");
+  private static final UUID MACHINE_1 =
+    UUID.fromString("b7c0e3d2-9a41-4f1e-a8c2-2f6b7e1d9c02");
+
+  /**
+   * Operations on the same machine never overlap.
+   */
+
+  @Test
+  public void testSameMachineSerialized()
+    throws Exception
+  {
+    final var locks = new WXMMachineLocks();
+    final var inside = new AtomicInteger();
+    final var maximum = new AtomicInteger();
+    final var counter = new int[1];
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final var futures = new ArrayList<Future<?>>();
+      for (int index = 0; index < 1000; ++index) {
+        futures.add(executor.submit(() -> {
+          try (var ignored = locks.lockMachines(List.of(MACHINE_0))) {
+            maximum.accumulateAndGet(inside.incrementAndGet(), Math::max);
+            counter[0] = counter[0] + 1;
+            Thread.yield();
+            inside.decrementAndGet();
+          }
+          return null;
+        }));
+      }
+      for (final var future : futures) {
+        future.get();
+      }
+    }
+
+    assertEquals(1, maximum.get());
+    assertEquals(1000, counter[0]);
+    assertEquals(0, locks.size());
+  }
+
+  /**
+   * Operations on different machines proceed in parallel.
+   */
+
+  @Test
+  public void testDifferentMachinesParallel()
+    throws Exception
+  {
+    final var locks = new WXMMachineLocks();
+    final var held = new CountDownLatch(1);
+    final var done = new CountDownLatch(1);
+
+    final var holder = Thread.ofVirtual().start(() -> {
+      try (var ignored = locks.lockMachines(List.of(MACHINE_0))) {
+        held.countDown();
+        done.await(10L, TimeUnit.SECONDS);
+      } catch (final Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    assertTrue(held.await(10L, TimeUnit.SECONDS));
+    final var acquired = new CountDownLatch(1);
+    final var other = Thread.ofVirtual().start(() -> {
+      try (var ignored = locks.lockMachines(List.of(MACHINE_1))) {
+        acquired.countDown();
+      } catch (final Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    assertTrue(acquired.await(10L, TimeUnit.SECONDS));
+    done.countDown();
+    holder.join();
+    other.join();
+    assertEquals(0, locks.size());
+  }
+
+  /**
+   * Locking every machine waits for operations on individual machines, and
+   * excludes them until released.
+   */
+
+  @Test
+  public void testLockAllExcludes()
+    throws Exception
+  {
+    final var locks = new WXMMachineLocks();
+    final var all = locks.lockAll();
+
+    final var acquired = new CountDownLatch(1);
+    final var waiter = Thread.ofVirtual().start(() -> {
+      try (var ignored = locks.lockMachines(Set.of(MACHINE_0, MACHINE_1))) {
+        acquired.countDown();
+      } catch (final Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    assertFalse(acquired.await(250L, TimeUnit.MILLISECONDS));
+    all.close();
+    assertTrue(acquired.await(10L, TimeUnit.SECONDS));
+    waiter.join();
+    assertEquals(0, locks.size());
+  }
+
+  /**
+   * Threads locking overlapping sets of machines in different orders do not
+   * deadlock.
+   */
+
+  @Test
+  public void testOverlappingNoDeadlock()
+    throws Exception
+  {
+    final var locks = new WXMMachineLocks();
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final var futures = new ArrayList<Future<?>>();
+      for (int index = 0; index < 1000; ++index) {
+        final var ids =
+          index % 2 == 0
+            ? List.of(MACHINE_0, MACHINE_1)
+            : List.of(MACHINE_1, MACHINE_0);
+        futures.add(executor.submit(() -> {
+          try (var ignored = locks.lockMachines(ids)) {
+            Thread.yield();
+          }
+          return null;
+        }));
+      }
+      for (final var future : futures) {
+        future.get(30L, TimeUnit.SECONDS);
+      }
+    }
+
+    assertEquals(0, locks.size());
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests;
+
+import com.io7m.waxmill.database.api.WXMDatabaseConfiguration;
+import com.io7m.waxmill.database.api.WXMVirtualMachineDatabaseType;
+import com.io7m.waxmill.database.vanilla.WXMVirtualMachineDatabases;
+import com.io7m.waxmill.machines.WXMCPUTopology;
+import com.io7m.waxmill.machines.WXMFlags;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMMemory;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load test for the virtual machine database under a mixed workload of
+ * reads and updates spread over a set of machines, as performed by a
+ * server executing many requests at once. The benchmark is run with
+ * increasing numbers of threads, up to the number of available processors;
+ * throughput should scale with the number of threads, because reads are
+ * not serialized and updates are serialized only per machine. Run with:
+ *
+ * <pre>
+ * java -cp ... com.io7m.waxmill.tests.WXMVirtualMachineDatabaseBenchmark
+ * </pre>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class WXMVirtualMachineDatabaseBenchmark
+{
+  private static final int MACHINES = 64;
+
+  @Param({"90", "50"})
+  private int readPercent;
+
+  private WXMVirtualMachineDatabaseType database;
+  private List<WXMVirtualMachine> machines;
+
+  /**
+   * Run the benchmark with 1, 2, 4, ... threads, up to the number of
+   * available processors.
+   *
+   * @param args Command-line arguments
+   *
+   * @throws RunnerException On errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws RunnerException
+  {
+    final var processors = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= processors; threads *= 2) {
+      new Runner(
+        new OptionsBuilder()
+          .include(WXMVirtualMachineDatabaseBenchmark.class.getSimpleName())
+          .threads(threads)
+          .build()
+      ).run();
+    }
+  }
+
+  /**
+   * Set up the benchmark.
+   *
+   * @throws Exception On errors
+   */
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    this.database =
+      new WXMVirtualMachineDatabases()
+        .open(WXMDatabaseConfiguration.builder()
+                .setDatabaseDirectory(WXMTestDirectories.createTempDirectory())
+                .build());
+
+    final var defined = new TreeMap<UUID, WXMVirtualMachine>();
+    for (int index = 0; index < MACHINES; ++index) {
+      final var machine =
+        WXMVirtualMachine.builder()
+          .setId(UUID.randomUUID())
+          .setName(WXMMachineName.of("vm" + index))
+          .setFlags(WXMFlags.builder().build())
+          .setMemory(
+            WXMMemory.builder()
+              .setGigabytes(BigInteger.ONE)
+              .setMegabytes(BigInteger.ZERO)
+              .build())
+          .setCpuTopology(WXMCPUTopology.builder().build())
+          .build();
+      defined.put(machine.id(), machine);
+    }
+
+    this.database.vmDefineAll(
+      WXMVirtualMachineSet.builder()
+        .setMachines(defined)
+        .build()
+    );
+    this.machines = new ArrayList<>(defined.values());
+  }
+
+  /**
+   * Close the database.
+   *
+   * @throws Exception On errors
+   */
+
+  @TearDown
+  public void tearDown()
+    throws Exception
+  {
+    this.database.close();
+  }
+
+  /**
+   * Read or update a randomly chosen machine.
+   *
+   * @return The machine read or written
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public Object mixed()
+    throws Exception
+  {
+    final var random = ThreadLocalRandom.current();
+    final var machine = this.machines.get(random.nextInt(MACHINES));
+
+    if (random.nextInt(100) < this.readPercent) {
+      return this.database.vmGet(machine.id()).orElseThrow();
+    }
+
+    final var updated =
+      machine.withName(WXMMachineName.of("vm" + random.nextInt(1000)));
+    this.database.vmUpdate(updated);
+    return updated;
+  }
+}
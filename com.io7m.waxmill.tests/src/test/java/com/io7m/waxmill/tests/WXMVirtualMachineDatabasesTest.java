@@ -27,7 +27,11 @@ import com.io7m.waxmill.machines.WXMFlags;
 import com.io7m.waxmill.machines.WXMMachineName;
 import com.io7m.waxmill.machines.WXMMemory;
 import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineEvent;
+import com.io7m.waxmill.machines.WXMVirtualMachineEventKind;
 import com.io7m.waxmill.machines.WXMVirtualMachineSet;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchMode;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -35,17 +39,28 @@ import java.math.BigInteger;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
 import java.nio.file.spi.FileSystemProvider;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class WXMVirtualMachineDatabasesTest
 {
@@ -171,6 +186,37 @@ public final class WXMVirtualMachineDatabasesTest
     );
   }
 
+  @Test
+  public void updateAllExists()
+    throws WXMException
+  {
+    this.database.vmDefineAll(
+      WXMVirtualMachineSet.builder()
+        .setMachines(new TreeMap<>(this.virtualMachineOthers))
+        .build()
+    );
+
+    final var updated = new TreeMap<UUID, WXMVirtualMachine>();
+    for (final var machine : this.virtualMachineOthers.values()) {
+      updated.put(machine.id(), machine.withComment("Updated"));
+    }
+
+    this.database.vmUpdateAll(
+      WXMVirtualMachineSet.builder()
+        .setMachines(updated)
+        .build()
+    );
+
+    for (final var machine : updated.values()) {
+      assertEquals(
+        machine,
+        this.database.vmGet(machine.id())
+          .orElseThrow()
+          .withConfigurationFile(Optional.empty())
+      );
+    }
+  }
+
   @Test
   public void deleteExisting()
     throws WXMException
@@ -189,4 +235,239 @@ public final class WXMVirtualMachineDatabasesTest
       this.database.vmDelete(this.virtualMachine0.id());
     });
   }
+
+  /**
+   * Concurrent reads and writes through several database instances sharing
+   * the same directory neither fail nor corrupt machine definitions.
+   */
+
+  @Test
+  public void concurrentReadsAndUpdates()
+    throws Exception
+  {
+    final var other =
+      new WXMVirtualMachineDatabases()
+        .open(WXMDatabaseConfiguration.builder()
+                .setDatabaseDirectory(this.directory)
+                .build());
+
+    this.database.vmDefineAll(
+      WXMVirtualMachineSet.builder()
+        .setMachines(new TreeMap<>(this.virtualMachineOthers))
+        .build()
+    );
+
+    final var machines = List.copyOf(this.virtualMachineOthers.values());
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final var futures = new ArrayList<Future<?>>();
+      for (int index = 0; index < 400; ++index) {
+        final var taskIndex = index;
+        final var target =
+          index % 2 == 0 ? this.database : other;
+        final var machine =
+          machines.get(index % machines.size());
+
+        futures.add(executor.submit(() -> {
+          if (taskIndex % 4 == 0) {
+            target.vmUpdate(
+              machine.withName(WXMMachineName.of("m" + taskIndex)));
+          } else if (taskIndex % 4 == 1) {
+            target.vmList();
+          } else {
+            target.vmGet(machine.id()).orElseThrow();
+          }
+          return null;
+        }));
+      }
+      for (final var future : futures) {
+        future.get();
+      }
+    }
+
+    assertEquals(
+      machines.size(),
+      this.database.vmList().machines().size()
+    );
+    other.close();
+  }
+
+  private static WXMVirtualMachineEvent takeEvent(
+    final BlockingQueue<WXMVirtualMachineEvent> events)
+    throws InterruptedException
+  {
+    final var event = events.poll(10L, TimeUnit.SECONDS);
+    assertNotNull(event, "An event must be delivered");
+    return event;
+  }
+
+  private static WXMVirtualMachineWatchConfiguration watchConfiguration(
+    final WXMVirtualMachineWatchMode mode)
+  {
+    return WXMVirtualMachineWatchConfiguration.builder()
+      .setMode(mode)
+      .setDebounce(Duration.ofMillis(100L))
+      .setPollInterval(Duration.ofMillis(50L))
+      .build();
+  }
+
+  private void checkWatchDefineUpdateDelete(
+    final WXMVirtualMachineWatchMode mode)
+    throws Exception
+  {
+    final var events = new LinkedBlockingQueue<WXMVirtualMachineEvent>();
+    try (var watch =
+           this.database.vmWatch(watchConfiguration(mode), events::add)) {
+      assertEquals(mode, watch.mode());
+
+      final var id = this.virtualMachine0.id();
+      this.database.vmDefine(this.virtualMachine0);
+
+      final var defined = takeEvent(events);
+      assertEquals(WXMVirtualMachineEventKind.DEFINED, defined.kind());
+      assertEquals(id, defined.machineId());
+      assertEquals(
+        this.virtualMachine0,
+        defined.machine().orElseThrow().withConfigurationFile(Optional.empty())
+      );
+
+      final var updatedMachine =
+        this.virtualMachine0.withName(WXMMachineName.of("updated"));
+      this.database.vmUpdate(updatedMachine);
+
+      final var updated = takeEvent(events);
+      assertEquals(WXMVirtualMachineEventKind.UPDATED, updated.kind());
+      assertEquals(id, updated.machineId());
+      assertEquals(
+        "updated",
+        updated.machine().orElseThrow().name().value()
+      );
+
+      this.database.vmDelete(id);
+
+      final var deleted = takeEvent(events);
+      assertEquals(WXMVirtualMachineEventKind.DELETED, deleted.kind());
+      assertEquals(id, deleted.machineId());
+      assertEquals(Optional.empty(), deleted.machine());
+    }
+  }
+
+  /**
+   * Watches using notifications observe definitions, updates, and
+   * deletions.
+   */
+
+  @Test
+  public void watchNotification()
+    throws Exception
+  {
+    this.checkWatchDefineUpdateDelete(WXMVirtualMachineWatchMode.NOTIFICATION);
+  }
+
+  /**
+   * Watches using polling observe definitions, updates, and deletions.
+   */
+
+  @Test
+  public void watchPolling()
+    throws Exception
+  {
+    this.checkWatchDefineUpdateDelete(WXMVirtualMachineWatchMode.POLLING);
+  }
+
+  /**
+   * Machines that exist when the watch is opened do not produce events,
+   * and changes made through another database instance are observed.
+   */
+
+  @Test
+  public void watchExistingAndOtherInstance()
+    throws Exception
+  {
+    this.database.vmDefine(this.virtualMachine0);
+
+    final var events = new LinkedBlockingQueue<WXMVirtualMachineEvent>();
+    final var configuration =
+      watchConfiguration(WXMVirtualMachineWatchMode.AUTOMATIC);
+
+    try (var other =
+           new WXMVirtualMachineDatabases()
+             .open(WXMDatabaseConfiguration.builder()
+                     .setDatabaseDirectory(this.directory)
+                     .build())) {
+      try (var ignored = this.database.vmWatch(configuration, events::add)) {
+        final var machine =
+          this.virtualMachineOthers.values().iterator().next();
+        other.vmDefine(machine);
+
+        final var defined = takeEvent(events);
+        assertEquals(WXMVirtualMachineEventKind.DEFINED, defined.kind());
+        assertEquals(machine.id(), defined.machineId());
+        assertNull(events.poll(500L, TimeUnit.MILLISECONDS));
+      }
+    }
+  }
+
+  /**
+   * Many updates to one machine within the debounce period are coalesced.
+   */
+
+  @Test
+  public void watchCoalesces()
+    throws Exception
+  {
+    this.database.vmDefine(this.virtualMachine0);
+
+    final var events = new LinkedBlockingQueue<WXMVirtualMachineEvent>();
+    final var configuration =
+      WXMVirtualMachineWatchConfiguration.builder()
+        .setMode(WXMVirtualMachineWatchMode.NOTIFICATION)
+        .setDebounce(Duration.ofSeconds(2L))
+        .build();
+
+    try (var ignored = this.database.vmWatch(configuration, events::add)) {
+      for (int index = 0; index < 20; ++index) {
+        this.database.vmUpdate(
+          this.virtualMachine0.withName(WXMMachineName.of("m" + index)));
+      }
+
+      final var received = new ArrayList<WXMVirtualMachineEvent>();
+      received.add(takeEvent(events));
+      while (true) {
+        final var event = events.poll(2500L, TimeUnit.MILLISECONDS);
+        if (event == null) {
+          break;
+        }
+        received.add(event);
+      }
+
+      assertTrue(received.size() < 20);
+      for (final var event : received) {
+        assertEquals(WXMVirtualMachineEventKind.UPDATED, event.kind());
+      }
+
+      final var last = received.get(received.size() - 1);
+      assertEquals("m19", last.machine().orElseThrow().name().value());
+    }
+  }
+
+  /**
+   * No events are delivered after a watch is closed.
+   */
+
+  @Test
+  public void watchClosed()
+    throws Exception
+  {
+    final var events = new LinkedBlockingQueue<WXMVirtualMachineEvent>();
+    final var watch =
+      this.database.vmWatch(
+        watchConfiguration(WXMVirtualMachineWatchMode.POLLING),
+        events::add
+      );
+    watch.close();
+    watch.close();
+
+    this.database.vmDefine(this.virtualMachine0);
+    assertNull(events.poll(500L, TimeUnit.MILLISECONDS));
+  }
 }
@@ -37,6 +37,7 @@ import com.io7m.waxmill.machines.WXMTap;
 import com.io7m.waxmill.machines.WXMVMNet;
 import com.io7m.waxmill.machines.WXMVirtualMachineSet;
 import com.io7m.waxmill.parser.api.WXMParseError;
+import com.io7m.waxmill.parser.api.WXMParseErrorType;
 import com.io7m.waxmill.parser.api.WXMVirtualMachineParserProviderType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -258,6 +259,47 @@ public abstract class WXMVirtualMachineParserContract
     assertEquals(machineSet0, machineSet1);
   }
 
+  /**
+   * Machines with templates are parsed from version 1.1 documents.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void exampleTemplateParses()
+    throws Exception
+  {
+    final var machineOpt = this.parseResource("vmTemplate0.xml");
+    assertTrue(machineOpt.isPresent());
+    final var machine =
+      machineOpt.get()
+        .machines()
+        .get(UUID.fromString("0d3b51ba-1c1e-4f34-9e52-3c0e5a2f5e83"));
+
+    assertEquals("templated0", machine.name().value());
+    assertEquals(
+      Optional.of(UUID.fromString("5560eb0a-cbf6-4116-a942-4db218adfa0c")),
+      machine.template()
+    );
+  }
+
+  /**
+   * Templates cannot be used in version 1.0 documents.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void exampleTemplateVersion1p0Fails()
+    throws Exception
+  {
+    this.parseResource("vmTemplateV1p0.xml");
+    assertTrue(
+      this.errors.stream()
+        .anyMatch(e -> e.severity() == WXMParseErrorType.Severity.ERROR)
+    );
+  }
+
   private Optional<WXMVirtualMachineSet> parseResource(
     final String name)
     throws IOException
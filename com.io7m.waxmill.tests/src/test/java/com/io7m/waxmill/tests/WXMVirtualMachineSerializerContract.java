@@ -70,6 +70,47 @@ public abstract class WXMVirtualMachineSerializerContract
     Assertions.assertEquals(vm0, vm1);
   }
 
+  @Test
+  public void templateRoundTrip()
+    throws Exception
+  {
+    final var vm0 =
+      this.parseResource("vmTemplate0.xml");
+    final var output =
+      Files.newOutputStream(this.directory.resolve("output.xml"));
+
+    try (var serializer = this.serializers()
+      .create(URI.create("urn:unknown"), output, vm0)) {
+      serializer.execute();
+    }
+
+    final var text =
+      Files.readString(this.directory.resolve("output.xml"));
+    Assertions.assertTrue(text.contains("urn:com.io7m.waxmill.vm:1:1"));
+
+    final var vm1 = this.parseTempFile("output.xml");
+    Assertions.assertEquals(vm0, vm1);
+  }
+
+  @Test
+  public void noTemplateVersion1p0()
+    throws Exception
+  {
+    final var vm0 =
+      this.parseResource("vmMini0.xml");
+    final var output =
+      Files.newOutputStream(this.directory.resolve("output.xml"));
+
+    try (var serializer = this.serializers()
+      .create(URI.create("urn:unknown"), output, vm0)) {
+      serializer.execute();
+    }
+
+    final var text =
+      Files.readString(this.directory.resolve("output.xml"));
+    Assertions.assertFalse(text.contains("urn:com.io7m.waxmill.vm:1:1"));
+  }
+
   private WXMVirtualMachineSet parseTempFile(
     final String name)
     throws IOException
@@ -0,0 +1,688 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.waxmill.database.api.WXMDatabaseConfiguration;
+import com.io7m.waxmill.database.api.WXMVirtualMachineDatabaseType;
+import com.io7m.waxmill.database.vanilla.WXMVirtualMachineDatabases;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.exceptions.WXMExceptionDuplicate;
+import com.io7m.waxmill.exceptions.WXMExceptionNonexistent;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMBootConfigurationUEFI;
+import com.io7m.waxmill.machines.WXMDeviceHostBridge;
+import com.io7m.waxmill.machines.WXMDeviceLPC;
+import com.io7m.waxmill.machines.WXMDevicePassthru;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMDeviceType.WXMDeviceHostBridgeType.Vendor;
+import com.io7m.waxmill.machines.WXMFlags;
+import com.io7m.waxmill.machines.WXMMachineMessages;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMTTYBackendStdio;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineEvent;
+import com.io7m.waxmill.machines.WXMVirtualMachineEventKind;
+import com.io7m.waxmill.machines.WXMVirtualMachineTemplates;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchConfiguration;
+import com.io7m.waxmill.machines.WXMVirtualMachineWatchMode;
+import com.io7m.waxmill.serializer.api.WXMVirtualMachineSerializerProviderType;
+import com.io7m.waxmill.xml.WXMVirtualMachineParsers;
+import com.io7m.waxmill.xml.WXMVirtualMachineSerializers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.io7m.waxmill.machines.WXMDeviceType.WXMDeviceHostBridgeType.Vendor.WXM_AMD;
+import static com.io7m.waxmill.machines.WXMDeviceType.WXMDeviceHostBridgeType.Vendor.WXM_UNSPECIFIED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMVirtualMachineTemplatesTest
+{
+  private Path directory;
+  private WXMVirtualMachineDatabaseType database;
+  private WXMVirtualMachine template;
+  private WXMVirtualMachine machine;
+
+  private static WXMDeviceSlot slot(
+    final int slot)
+  {
+    return WXMDeviceSlot.builder()
+      .setBusID(0)
+      .setSlotID(slot)
+      .setFunctionID(0)
+      .build();
+  }
+
+  private static WXMDeviceHostBridge hostBridge(
+    final Vendor vendor)
+  {
+    return WXMDeviceHostBridge.builder()
+      .setDeviceSlot(slot(0))
+      .setVendor(vendor)
+      .build();
+  }
+
+  private static WXMDeviceLPC lpc()
+  {
+    return WXMDeviceLPC.builder()
+      .setDeviceSlot(slot(1))
+      .addBackends(
+        WXMTTYBackendStdio.builder()
+          .setDevice("com1")
+          .build())
+      .build();
+  }
+
+  private static WXMBootConfigurationUEFI uefi(
+    final String name)
+  {
+    return WXMBootConfigurationUEFI.builder()
+      .setName(WXMBootConfigurationName.of(name))
+      .setFirmware(Paths.get("/tmp/firmware"))
+      .build();
+  }
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      WXMTestDirectories.createTempDirectory();
+    this.database =
+      new WXMVirtualMachineDatabases()
+        .open(WXMDatabaseConfiguration.builder()
+                .setDatabaseDirectory(this.directory)
+                .build());
+
+    this.template =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("template"))
+        .addDevices(hostBridge(WXM_UNSPECIFIED))
+        .addDevices(lpc())
+        .addBootConfigurations(uefi("run"))
+        .build();
+
+    this.machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("machine"))
+        .setTemplate(this.template.id())
+        .setFlags(
+          WXMFlags.builder()
+            .setWireGuestMemory(true)
+            .build())
+        .addDevices(
+          WXMDevicePassthru.builder()
+            .setDeviceSlot(slot(2))
+            .setHostPCISlot(slot(3))
+            .build())
+        .addBootConfigurations(uefi("install"))
+        .build();
+  }
+
+  private WXMVirtualMachine stored(
+    final UUID id)
+    throws WXMException
+  {
+    return new WXMVirtualMachineParsers()
+      .parse(this.directory.resolve(id + ".wvmx"))
+      .machines()
+      .get(id);
+  }
+
+  /**
+   * A machine based on a template is resolved when read, and only its
+   * overrides are stored.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void defineResolves()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+    this.database.vmDefine(this.machine);
+
+    final var resolved =
+      this.database.vmGet(this.machine.id()).orElseThrow();
+
+    assertEquals(Optional.of(this.template.id()), resolved.template());
+    assertEquals(
+      Set.of(slot(0), slot(1), slot(2)),
+      resolved.deviceMap().keySet());
+    assertEquals(
+      Set.of(
+        WXMBootConfigurationName.of("run"),
+        WXMBootConfigurationName.of("install")),
+      resolved.bootConfigurationMap().keySet());
+    assertTrue(resolved.flags().wireGuestMemory());
+
+    final var stored = this.stored(this.machine.id());
+    assertEquals(Set.of(slot(2)), stored.deviceMap().keySet());
+    assertEquals(
+      Set.of(WXMBootConfigurationName.of("install")),
+      stored.bootConfigurationMap().keySet());
+
+    assertEquals(
+      resolved,
+      this.database.vmList().machines().get(this.machine.id()));
+  }
+
+  /**
+   * Updating a template changes every machine based on it.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void templateUpdatePropagates()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+    this.database.vmDefine(this.machine);
+
+    final var before =
+      this.database.vmGet(this.machine.id()).orElseThrow();
+    assertEquals(hostBridge(WXM_UNSPECIFIED), before.deviceMap().get(slot(0)));
+
+    this.database.templateUpdate(
+      this.template.withDevices(hostBridge(WXM_AMD), lpc()));
+
+    final var after =
+      this.database.vmGet(this.machine.id()).orElseThrow();
+    assertEquals(hostBridge(WXM_AMD), after.deviceMap().get(slot(0)));
+    assertEquals(
+      Set.of(slot(2)),
+      this.stored(this.machine.id()).deviceMap().keySet());
+  }
+
+  /**
+   * Updating a resolved machine stores only the items that differ from the
+   * template.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void updateStoresOverrides()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+    this.database.vmDefine(this.machine);
+
+    final var resolved =
+      this.database.vmGet(this.machine.id()).orElseThrow();
+    final var changed =
+      WXMVirtualMachine.builder()
+        .from(resolved)
+        .setComment("Changed")
+        .setDevices(List.of(
+          hostBridge(WXM_AMD),
+          lpc(),
+          resolved.deviceMap().get(slot(2))))
+        .build();
+
+    this.database.vmUpdate(changed);
+
+    final var stored = this.stored(this.machine.id());
+    assertEquals(Optional.of(this.template.id()), stored.template());
+    assertEquals(Set.of(slot(0), slot(2)), stored.deviceMap().keySet());
+    assertEquals(hostBridge(WXM_AMD), stored.deviceMap().get(slot(0)));
+
+    final var reread =
+      this.database.vmGet(this.machine.id()).orElseThrow();
+    assertEquals("Changed", reread.comment());
+    assertEquals(hostBridge(WXM_AMD), reread.deviceMap().get(slot(0)));
+  }
+
+  /**
+   * Removing an item of the template from a machine detaches the machine
+   * from the template.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void updateRemovingTemplateDeviceDetaches()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+    this.database.vmDefine(this.machine);
+
+    final var resolved =
+      this.database.vmGet(this.machine.id()).orElseThrow();
+    final var removed =
+      WXMVirtualMachine.builder()
+        .from(resolved)
+        .setDevices(List.of(lpc(), resolved.deviceMap().get(slot(2))))
+        .build();
+
+    this.database.vmUpdate(removed);
+
+    final var reread =
+      this.database.vmGet(this.machine.id()).orElseThrow();
+    assertEquals(Optional.empty(), reread.template());
+    assertEquals(Set.of(slot(1), slot(2)), reread.deviceMap().keySet());
+    assertEquals(
+      Set.of(
+        WXMBootConfigurationName.of("run"),
+        WXMBootConfigurationName.of("install")),
+      reread.bootConfigurationMap().keySet());
+  }
+
+  /**
+   * A machine cannot be defined with a nonexistent template.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void defineTemplateNonexistent()
+    throws Exception
+  {
+    final var ex =
+      assertThrows(WXMException.class, () -> {
+        this.database.vmDefine(this.machine);
+      });
+
+    assertTrue(ex.getSuppressed()[0] instanceof WXMExceptionNonexistent);
+    assertEquals(Optional.empty(), this.database.vmGet(this.machine.id()));
+  }
+
+  /**
+   * A template update that would make a machine invalid is rejected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void templateUpdateInvalidForMachine()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+    this.database.vmDefine(this.machine);
+
+    final var withoutLPC =
+      this.template
+        .withBootConfigurations()
+        .withDevices(hostBridge(WXM_UNSPECIFIED));
+
+    final var ex =
+      assertThrows(WXMException.class, () -> {
+        this.database.templateUpdate(withoutLPC);
+      });
+
+    assertTrue(
+      ex.getSuppressed()[0] instanceof PreconditionViolationException);
+    assertEquals(
+      this.template.devices(),
+      this.database.templateGet(this.template.id()).orElseThrow().devices());
+  }
+
+  /**
+   * A template cannot be deleted while it is in use.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void templateDeleteInUse()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+    this.database.vmDefine(this.machine);
+
+    assertThrows(WXMException.class, () -> {
+      this.database.templateDelete(this.template.id());
+    });
+
+    this.database.vmDelete(this.machine.id());
+    this.database.templateDelete(this.template.id());
+
+    assertEquals(
+      Optional.empty(),
+      this.database.templateGet(this.template.id()));
+    assertTrue(this.database.templateList().machines().isEmpty());
+    assertThrows(WXMExceptionNonexistent.class, () -> {
+      this.database.templateDelete(this.template.id());
+    });
+  }
+
+  /**
+   * Templates cannot be defined twice, and cannot be based on templates.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void templateDefineInvalid()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+
+    assertThrows(WXMExceptionDuplicate.class, () -> {
+      this.database.templateDefine(this.template);
+    });
+    assertThrows(WXMException.class, () -> {
+      this.database.templateDefine(
+        this.template.withId(UUID.randomUUID())
+          .withTemplate(this.template.id()));
+    });
+    assertEquals(1, this.database.templateList().machines().size());
+  }
+
+  /**
+   * Reducing a resolved machine to overrides and resolving the overrides
+   * yields the resolved machine.
+   */
+
+  @Test
+  public void resolveOverridesRoundTrip()
+  {
+    final var resolved =
+      WXMVirtualMachineTemplates.resolve(this.template, this.machine);
+    final var overrides =
+      WXMVirtualMachineTemplates.overrides(this.template, resolved)
+        .orElseThrow();
+
+    assertEquals(this.machine.devices(), overrides.devices());
+    assertEquals(
+      this.machine.bootConfigurations(),
+      overrides.bootConfigurations());
+    assertEquals(
+      resolved,
+      WXMVirtualMachineTemplates.resolve(this.template, overrides));
+  }
+
+  /**
+   * Resolution checks the resolved machine as a whole.
+   */
+
+  @Test
+  public void resolveChecksReferences()
+  {
+    final var bare =
+      WXMVirtualMachine.builder()
+        .from(this.template)
+        .setDevices(List.of(hostBridge(WXM_UNSPECIFIED)))
+        .setBootConfigurations(List.of())
+        .build();
+
+    assertThrows(PreconditionViolationException.class, () -> {
+      WXMVirtualMachineTemplates.resolve(bare, this.machine);
+    });
+  }
+
+  private static WXMVirtualMachineWatchConfiguration watchConfiguration(
+    final WXMVirtualMachineWatchMode mode)
+  {
+    return WXMVirtualMachineWatchConfiguration.builder()
+      .setMode(mode)
+      .setDebounce(Duration.ofMillis(100L))
+      .setPollInterval(Duration.ofMillis(50L))
+      .build();
+  }
+
+  private static WXMVirtualMachineEvent takeEvent(
+    final BlockingQueue<WXMVirtualMachineEvent> events)
+    throws InterruptedException
+  {
+    final var event = events.poll(10L, TimeUnit.SECONDS);
+    assertNotNull(event, "An event must be delivered");
+    return event;
+  }
+
+  private void checkWatchTemplateUpdate(
+    final WXMVirtualMachineWatchMode mode,
+    final boolean templateFirst)
+    throws Exception
+  {
+    if (templateFirst) {
+      this.database.templateDefine(this.template);
+    }
+
+    final var events = new LinkedBlockingQueue<WXMVirtualMachineEvent>();
+    try (var ignored =
+           this.database.vmWatch(watchConfiguration(mode), events::add)) {
+      if (!templateFirst) {
+        this.database.templateDefine(this.template);
+      }
+      this.database.vmDefine(this.machine);
+
+      final var defined = takeEvent(events);
+      assertEquals(WXMVirtualMachineEventKind.DEFINED, defined.kind());
+      assertEquals(this.machine.id(), defined.machineId());
+
+      this.database.templateUpdate(
+        this.template.withDevices(hostBridge(WXM_AMD), lpc()));
+
+      final var updated = takeEvent(events);
+      assertEquals(WXMVirtualMachineEventKind.UPDATED, updated.kind());
+      assertEquals(this.machine.id(), updated.machineId());
+      assertEquals(
+        hostBridge(WXM_AMD),
+        updated.machine().orElseThrow().deviceMap().get(slot(0)));
+      assertNull(events.poll(500L, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  /**
+   * Watches using notifications observe updates to the templates on which
+   * machines are based.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void watchTemplateUpdateNotification()
+    throws Exception
+  {
+    this.checkWatchTemplateUpdate(
+      WXMVirtualMachineWatchMode.NOTIFICATION, true);
+  }
+
+  /**
+   * Watches using notifications observe updates to templates even if the
+   * template directory did not exist when the watch was opened.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void watchTemplateUpdateNotificationLateDirectory()
+    throws Exception
+  {
+    this.checkWatchTemplateUpdate(
+      WXMVirtualMachineWatchMode.NOTIFICATION, false);
+  }
+
+  /**
+   * Watches using polling observe updates to the templates on which
+   * machines are based.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void watchTemplateUpdatePolling()
+    throws Exception
+  {
+    this.checkWatchTemplateUpdate(WXMVirtualMachineWatchMode.POLLING, false);
+  }
+
+  private WXMVirtualMachineDatabaseType openBlocking(
+    final String blockedName,
+    final CountDownLatch entered,
+    final CountDownLatch release)
+    throws WXMException
+  {
+    final var serializers = new WXMVirtualMachineSerializers();
+    final WXMVirtualMachineSerializerProviderType blocking =
+      (uri, stream, value) -> {
+        final var blocked =
+          value.machines()
+            .values()
+            .stream()
+            .anyMatch(m -> Objects.equals(m.name().value(), blockedName));
+        if (blocked) {
+          entered.countDown();
+          try {
+            release.await();
+          } catch (final InterruptedException e) {
+            throw new IOException(e);
+          }
+        }
+        return serializers.create(uri, stream, value);
+      };
+
+    return new WXMVirtualMachineDatabases(
+      WXMMachineMessages.create(),
+      new WXMVirtualMachineParsers(),
+      blocking
+    ).open(WXMDatabaseConfiguration.builder()
+             .setDatabaseDirectory(this.directory)
+             .build());
+  }
+
+  /**
+   * A template update waits for writes to the machines based on the
+   * template to complete.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void templateUpdateLocksMachines()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+    this.database.vmDefine(this.machine);
+
+    final var entered = new CountDownLatch(1);
+    final var release = new CountDownLatch(1);
+    try (var blocking = this.openBlocking("blocked", entered, release)) {
+      final var machineUpdate =
+        CompletableFuture.runAsync(() -> {
+          try {
+            blocking.vmUpdate(
+              blocking.vmGet(this.machine.id())
+                .orElseThrow()
+                .withName(WXMMachineName.of("blocked")));
+          } catch (final WXMException e) {
+            throw new CompletionException(e);
+          }
+        });
+      assertTrue(entered.await(10L, TimeUnit.SECONDS));
+
+      final var templateUpdate =
+        CompletableFuture.runAsync(() -> {
+          try {
+            this.database.templateUpdate(
+              this.template.withDevices(hostBridge(WXM_AMD), lpc()));
+          } catch (final WXMException e) {
+            throw new CompletionException(e);
+          }
+        });
+
+      assertThrows(TimeoutException.class, () -> {
+        templateUpdate.get(500L, TimeUnit.MILLISECONDS);
+      });
+
+      release.countDown();
+      machineUpdate.get(10L, TimeUnit.SECONDS);
+      templateUpdate.get(10L, TimeUnit.SECONDS);
+    }
+
+    final var after = this.database.vmGet(this.machine.id()).orElseThrow();
+    assertEquals("blocked", after.name().value());
+    assertEquals(hostBridge(WXM_AMD), after.deviceMap().get(slot(0)));
+  }
+
+  /**
+   * A machine based on a template cannot be defined while the template is
+   * being updated.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void machineDefineLocksTemplate()
+    throws Exception
+  {
+    this.database.templateDefine(this.template);
+
+    final var entered = new CountDownLatch(1);
+    final var release = new CountDownLatch(1);
+    try (var blocking = this.openBlocking("blocked", entered, release)) {
+      final var templateUpdate =
+        CompletableFuture.runAsync(() -> {
+          try {
+            blocking.templateUpdate(
+              this.template.withName(WXMMachineName.of("blocked")));
+          } catch (final WXMException e) {
+            throw new CompletionException(e);
+          }
+        });
+      assertTrue(entered.await(10L, TimeUnit.SECONDS));
+
+      final var machineDefine =
+        CompletableFuture.runAsync(() -> {
+          try {
+            this.database.vmDefine(this.machine);
+          } catch (final WXMException e) {
+            throw new CompletionException(e);
+          }
+        });
+
+      assertThrows(TimeoutException.class, () -> {
+        machineDefine.get(500L, TimeUnit.MILLISECONDS);
+      });
+
+      release.countDown();
+      templateUpdate.get(10L, TimeUnit.SECONDS);
+      machineDefine.get(10L, TimeUnit.SECONDS);
+    }
+
+    assertEquals(
+      Optional.of(this.template.id()),
+      this.database.vmGet(this.machine.id()).orElseThrow().template());
+  }
+}
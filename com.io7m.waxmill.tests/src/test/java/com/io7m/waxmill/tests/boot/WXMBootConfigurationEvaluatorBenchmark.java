@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.boot;
+
+import com.io7m.waxmill.boot.WXMBootConfigurationEvaluator;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMBootConfigurationType.WXMEvaluatedBootConfigurationType;
+import com.io7m.waxmill.machines.WXMBootConfigurationUEFI;
+import com.io7m.waxmill.machines.WXMDeviceAHCIDisk;
+import com.io7m.waxmill.machines.WXMDeviceHostBridge;
+import com.io7m.waxmill.machines.WXMDeviceLPC;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMDeviceType;
+import com.io7m.waxmill.machines.WXMDeviceVirtioBlockStorage;
+import com.io7m.waxmill.machines.WXMDeviceVirtioNetwork;
+import com.io7m.waxmill.machines.WXMMACAddress;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMSectorSizes;
+import com.io7m.waxmill.machines.WXMStorageBackendFile;
+import com.io7m.waxmill.machines.WXMStorageBackendZFSVolume;
+import com.io7m.waxmill.machines.WXMTAPDeviceName;
+import com.io7m.waxmill.machines.WXMTTYBackendStdio;
+import com.io7m.waxmill.machines.WXMTap;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.io7m.waxmill.machines.WXMDeviceType.WXMDeviceHostBridgeType.Vendor.WXM_UNSPECIFIED;
+import static com.io7m.waxmill.machines.WXMOpenOption.NO_CACHE;
+import static com.io7m.waxmill.machines.WXMOpenOption.READ_ONLY;
+
+/**
+ * A benchmark of the evaluation of a UEFI boot configuration for a machine
+ * with 32 devices. Run with:
+ *
+ * <pre>
+ * java -cp ... com.io7m.waxmill.tests.boot.WXMBootConfigurationEvaluatorBenchmark
+ * </pre>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WXMBootConfigurationEvaluatorBenchmark
+{
+  private static final int DEVICE_COUNT = 32;
+
+  private WXMBootConfigurationEvaluator evaluator;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Command-line arguments
+   *
+   * @throws RunnerException On errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws RunnerException
+  {
+    new Runner(
+      new OptionsBuilder()
+        .include(WXMBootConfigurationEvaluatorBenchmark.class.getSimpleName())
+        .build()
+    ).run();
+  }
+
+  private static WXMDeviceSlot slot(
+    final int index)
+  {
+    return WXMDeviceSlot.builder()
+      .setBusID(0)
+      .setSlotID(index)
+      .setFunctionID(0)
+      .build();
+  }
+
+  private static WXMDeviceType device(
+    final int index)
+  {
+    switch (index % 4) {
+      case 0:
+        return WXMDeviceVirtioBlockStorage.builder()
+          .setDeviceSlot(slot(index))
+          .setBackend(WXMStorageBackendZFSVolume.builder().build())
+          .build();
+      case 1:
+        return WXMDeviceVirtioNetwork.builder()
+          .setDeviceSlot(slot(index))
+          .setBackend(
+            WXMTap.builder()
+              .setName(WXMTAPDeviceName.of(String.format("tap%d", index)))
+              .setHostMAC(WXMMACAddress.of(
+                String.format("1b:61:cb:ba:c0:%02x", index)))
+              .setGuestMAC(WXMMACAddress.of(
+                String.format("1b:61:cb:ba:c1:%02x", index)))
+              .build())
+          .build();
+      case 2:
+        return WXMDeviceAHCIDisk.builder()
+          .setDeviceSlot(slot(index))
+          .setBackend(
+            WXMStorageBackendFile.builder()
+              .setFile(Paths.get(String.format("/tmp/disk-%d", index)))
+              .setOptions(Set.of(NO_CACHE, READ_ONLY))
+              .setSectorSizes(
+                WXMSectorSizes.builder()
+                  .setLogical(BigInteger.valueOf(512L))
+                  .setPhysical(BigInteger.valueOf(4096L))
+                  .build())
+              .build())
+          .build();
+      default:
+        return WXMDeviceVirtioBlockStorage.builder()
+          .setDeviceSlot(slot(index))
+          .setBackend(
+            WXMStorageBackendFile.builder()
+              .setFile(Paths.get(String.format("/tmp/disk-%d", index)))
+              .build())
+          .build();
+    }
+  }
+
+  /**
+   * Construct a machine with 32 devices.
+   */
+
+  @Setup
+  public void setup()
+  {
+    final var clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(Paths.get("/tmp/configs"))
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(Paths.get("/tmp/vms"))
+            .setName("storage/vm")
+            .build())
+        .build();
+
+    final var devices = new ArrayList<WXMDeviceType>(DEVICE_COUNT);
+    devices.add(
+      WXMDeviceHostBridge.builder()
+        .setDeviceSlot(slot(0))
+        .setVendor(WXM_UNSPECIFIED)
+        .build());
+    devices.add(
+      WXMDeviceLPC.builder()
+        .setDeviceSlot(slot(1))
+        .addBackends(
+          WXMTTYBackendStdio.builder()
+            .setDevice("com1")
+            .build())
+        .build());
+
+    for (int index = DEVICE_COUNT - 1; index >= 2; --index) {
+      devices.add(device(index));
+    }
+
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("benchmark"))
+        .setDevices(devices)
+        .addBootConfigurations(
+          WXMBootConfigurationUEFI.builder()
+            .setName(WXMBootConfigurationName.of("run"))
+            .setFirmware(Paths.get("/tmp/firmware"))
+            .build())
+        .build();
+
+    this.evaluator =
+      new WXMBootConfigurationEvaluator(
+        clientConfiguration,
+        machine,
+        WXMBootConfigurationName.of("run")
+      );
+  }
+
+  /**
+   * Evaluate the boot configuration.
+   *
+   * @return The evaluated boot configuration
+   *
+   * @throws WXMException On errors
+   */
+
+  @Benchmark
+  public WXMEvaluatedBootConfigurationType evaluate()
+    throws WXMException
+  {
+    return this.evaluator.evaluate();
+  }
+}
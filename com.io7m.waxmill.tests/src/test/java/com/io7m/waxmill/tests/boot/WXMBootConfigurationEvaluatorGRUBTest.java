@@ -62,6 +62,7 @@ import java.math.BigInteger;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
@@ -718,6 +719,9 @@ public final class WXMBootConfigurationEvaluatorGRUBTest
     {
       final var cmd = configs.remove(0);
       assertEquals("/sbin/ifconfig", cmd.executable().toString());
+      assertEquals(
+        Optional.of(this.clientConfiguration.ifconfigTimeout()),
+        cmd.timeout());
       final var arguments = cmd.arguments();
       assertEquals("tap23", arguments.get(0));
       assertEquals("ether", arguments.get(1));
@@ -728,6 +732,9 @@ public final class WXMBootConfigurationEvaluatorGRUBTest
     {
       final var cmd = configs.remove(0);
       assertEquals("/usr/local/sbin/grub-bhyve", cmd.executable().toString());
+      assertEquals(
+        Optional.of(this.clientConfiguration.grubBhyveTimeout()),
+        cmd.timeout());
       final var arguments = cmd.arguments();
       assertEquals(5, arguments.size());
     }
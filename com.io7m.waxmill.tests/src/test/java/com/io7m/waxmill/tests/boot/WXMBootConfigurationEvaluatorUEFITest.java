@@ -177,6 +177,66 @@ public final class WXMBootConfigurationEvaluatorUEFITest
     );
   }
 
+  @Test
+  public void openbsdSectorSizesNoOptions()
+    throws WXMException
+  {
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("vm"))
+        .addBootConfigurations(
+          WXMBootConfigurationUEFI.builder()
+            .setName(WXMBootConfigurationName.of("install"))
+            .setFirmware(Paths.get("/tmp/firmware"))
+            .build()
+        )
+        .addDevices(
+          WXMDeviceLPC.builder()
+            .setDeviceSlot(convert("0:1:0"))
+            .addBackends(
+              WXMTTYBackendStdio.builder()
+                .setDevice("com1")
+                .build())
+            .build()
+        )
+        .addDevices(
+          WXMDeviceAHCIDisk.builder()
+            .setDeviceSlot(convert("0:0:0"))
+            .setBackend(
+              WXMStorageBackendFile.builder()
+                .setFile(Path.of("/tmp/file"))
+                .setSectorSizes(
+                  WXMSectorSizes.builder()
+                    .setLogical(BigInteger.valueOf(512L))
+                    .setPhysical(BigInteger.valueOf(4096L))
+                    .build())
+                .build()
+            ).build()
+        ).build();
+
+    final var evaluator =
+      new WXMBootConfigurationEvaluator(
+        this.clientConfiguration,
+        machine,
+        WXMBootConfigurationName.of("install")
+      );
+
+    final var evaluated =
+      (WXMEvaluatedBootConfigurationUEFI) evaluator.evaluate();
+    LOG.debug("evaluated: {}", evaluated);
+
+    final var lastExec =
+      evaluated.commands().lastExecution().orElseThrow();
+    assertEquals(
+      String.format(
+        "/usr/sbin/bhyve -U %s -P -A -w -H -c cpus=1,sockets=1,cores=1,threads=1 -m 512M -s 0:0:0,ahci-hd,/tmp/file,sectorsize=512/4096 -s 0:1:0,lpc -l com1,stdio -l bootrom,/tmp/firmware %s",
+        machine.id(),
+        WXMShortIDs.encode(machine.id())),
+      lastExec.toString()
+    );
+  }
+
   @Test
   public void openbsdVNC6()
     throws WXMException, UnknownHostException
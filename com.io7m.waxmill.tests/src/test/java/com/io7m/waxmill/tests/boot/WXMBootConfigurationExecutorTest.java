@@ -0,0 +1,333 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.boot;
+
+import com.io7m.waxmill.boot.WXMBootConfigurationExecutor;
+import com.io7m.waxmill.boot.WXMBootFingerprintRecords;
+import com.io7m.waxmill.boot.WXMBootTiming;
+import com.io7m.waxmill.boot.WXMBootTimings;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMCommandExecution;
+import com.io7m.waxmill.machines.WXMEvaluatedBootCommands;
+import com.io7m.waxmill.machines.WXMEvaluatedBootConfigurationUEFI;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public final class WXMBootConfigurationExecutorTest
+{
+  private Path directory;
+  private Path configs;
+  private Path vms;
+  private WXMClientConfiguration clientConfiguration;
+  private WXMVirtualMachine machine;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      WXMTestDirectories.createTempDirectory();
+    this.configs =
+      this.directory.resolve("configs");
+    this.vms =
+      this.directory.resolve("vms");
+
+    this.clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(this.configs)
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.vms)
+            .setName("storage/vm")
+            .build())
+        .build();
+
+    this.machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("vm"))
+        .build();
+  }
+
+  private static WXMEvaluatedBootConfigurationUEFI evaluated()
+  {
+    return WXMEvaluatedBootConfigurationUEFI.builder()
+      .setName(WXMBootConfigurationName.of("run"))
+      .setCommands(
+        WXMEvaluatedBootCommands.builder()
+          .addConfigurationCommands(
+            WXMCommandExecution.builder()
+              .setExecutable(Paths.get("/bin/true"))
+              .addArguments("config")
+              .build())
+          .setLastExecution(
+            WXMCommandExecution.builder()
+              .setExecutable(Paths.get("/bin/true"))
+              .addArguments("bhyve")
+              .build())
+          .build())
+      .build();
+  }
+
+  /**
+   * Executing a boot configuration writes the boot timings to the machine's
+   * runtime directory before the current process is replaced.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void executeWritesTimingsBeforeReplacement()
+    throws Exception
+  {
+    final var machineDirectory =
+      this.vms.resolve(this.machine.id().toString());
+    Files.createDirectories(machineDirectory);
+
+    final var timingsFile =
+      machineDirectory.resolve(WXMBootTimings.TIMINGS_FILE_NAME);
+    final var timingsAtReplace =
+      new AtomicReference<String>();
+
+    final var processes = mock(WXMProcessesType.class);
+    doAnswer(invocation -> {
+      timingsAtReplace.set(Files.readString(timingsFile, UTF_8));
+      return null;
+    }).when(processes).processReplaceCurrent(any(WXMProcessDescription.class));
+
+    final var timings = WXMBootTimings.create(this.machine.id());
+    WXMBootConfigurationExecutor.create(
+      processes,
+      this.clientConfiguration,
+      this.machine,
+      evaluated(),
+      timings
+    ).execute(EXECUTE);
+
+    Mockito.verify(processes, Mockito.times(1))
+      .processStartAndWait(any(WXMProcessDescription.class));
+    Mockito.verify(processes, Mockito.times(1))
+      .processReplaceCurrent(any(WXMProcessDescription.class));
+
+    final var fingerprintFile =
+      machineDirectory.resolve(WXMBootFingerprintRecords.FINGERPRINT_FILE_NAME);
+    final var fingerprint = new Properties();
+    try (var reader = Files.newBufferedReader(fingerprintFile, UTF_8)) {
+      fingerprint.load(reader);
+    }
+    assertEquals("run", fingerprint.getProperty("bootConfiguration"));
+    assertEquals(
+      evaluated().fingerprint(),
+      fingerprint.getProperty("fingerprint"));
+
+    final var text = timingsAtReplace.get();
+    assertNotNull(text);
+    assertTrue(text.contains(this.machine.id().toString()));
+    assertTrue(text.contains("\"phase\":\"required-paths\""));
+    assertTrue(text.contains("\"phase\":\"command\""));
+    assertTrue(text.contains("\"phase\":\"execve\""));
+
+    final var phases =
+      timings.timings()
+        .stream()
+        .map(WXMBootTiming::phase)
+        .toArray();
+
+    assertEquals(3, phases.length);
+    assertEquals("required-paths", phases[0]);
+    assertEquals("command", phases[1]);
+    assertEquals("execve", phases[2]);
+  }
+
+  /**
+   * A failure to write boot timings does not prevent a boot.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void executeTimingsUnwritable()
+    throws Exception
+  {
+    final var processes = mock(WXMProcessesType.class);
+
+    WXMBootConfigurationExecutor.create(
+      processes,
+      this.clientConfiguration,
+      this.machine,
+      evaluated()
+    ).execute(EXECUTE);
+
+    Mockito.verify(processes, Mockito.times(1))
+      .processReplaceCurrent(any(WXMProcessDescription.class));
+    assertFalse(Files.exists(this.vms));
+  }
+
+  /**
+   * Required paths that share a parent directory are all checked, and only
+   * the missing paths are reported.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void requiredPathsMissingReported()
+    throws Exception
+  {
+    final var zvols = this.directory.resolve("zvol");
+    Files.createDirectories(zvols);
+
+    final var evaluatedBuilder =
+      WXMEvaluatedBootConfigurationUEFI.builder()
+        .from(evaluated());
+
+    for (int index = 0; index < 16; ++index) {
+      final var path = zvols.resolve(String.format("disk-%d", index));
+      if (index % 4 != 0) {
+        Files.writeString(path, "x");
+      }
+      evaluatedBuilder.addRequiredPaths(path);
+    }
+    evaluatedBuilder.addRequiredPaths(this.directory.resolve("nonexistent"));
+    evaluatedBuilder.addRequiredPaths(
+      this.directory.resolve("nonexistent").resolve("a"));
+    evaluatedBuilder.addRequiredPaths(
+      this.directory.resolve("nonexistent").resolve("b"));
+
+    final var processes = mock(WXMProcessesType.class);
+    final var ex =
+      assertThrows(WXMException.class, () -> {
+        WXMBootConfigurationExecutor.create(
+          processes,
+          this.clientConfiguration,
+          this.machine,
+          evaluatedBuilder.build()
+        ).execute(EXECUTE);
+      });
+
+    final var message = ex.getMessage();
+    for (int index = 0; index < 16; ++index) {
+      final var name = zvols.resolve(String.format("disk-%d", index));
+      assertEquals(
+        index % 4 == 0,
+        message.contains(name + ",") || message.contains(name + "]"),
+        name.toString()
+      );
+    }
+    assertTrue(message.contains(this.directory.resolve("nonexistent") + ","));
+    assertTrue(message.contains("nonexistent/a"));
+    assertTrue(message.contains("nonexistent/b"));
+
+    Mockito.verify(processes, Mockito.times(0))
+      .processReplaceCurrent(any(WXMProcessDescription.class));
+  }
+
+  /**
+   * Required paths that all exist allow a boot.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void requiredPathsPresent()
+    throws Exception
+  {
+    final var zvols = this.directory.resolve("zvol");
+    Files.createDirectories(zvols);
+
+    final var evaluatedBuilder =
+      WXMEvaluatedBootConfigurationUEFI.builder()
+        .from(evaluated());
+
+    for (int index = 0; index < 8; ++index) {
+      final var path = zvols.resolve(String.format("disk-%d", index));
+      Files.writeString(path, "x");
+      evaluatedBuilder.addRequiredPaths(path);
+    }
+
+    final var processes = mock(WXMProcessesType.class);
+    WXMBootConfigurationExecutor.create(
+      processes,
+      this.clientConfiguration,
+      this.machine,
+      evaluatedBuilder.build()
+    ).execute(EXECUTE);
+
+    Mockito.verify(processes, Mockito.times(1))
+      .processReplaceCurrent(any(WXMProcessDescription.class));
+  }
+
+  /**
+   * Timings are serialized as escaped JSON with offsets relative to the
+   * recorder origin.
+   */
+
+  @Test
+  public void timingsJSON()
+  {
+    final var id = UUID.randomUUID();
+    final var timings = WXMBootTimings.create(id);
+    final var before = System.nanoTime() - 1_000_000_000L;
+
+    timings.add(
+      WXMBootTimings.between(
+        "configuration-parse", "a\"b\\c", before, before + 10L)
+    );
+    try (var ignored = timings.begin("evaluation")) {
+      // Nothing
+    }
+
+    final var recorded = timings.timings();
+    assertEquals(2, recorded.size());
+    assertEquals(10L, recorded.get(0).duration().toNanos());
+    assertTrue(timings.offsetOf(recorded.get(0)).isNegative());
+    assertFalse(timings.offsetOf(recorded.get(1)).isNegative());
+
+    final var json = timings.toJSON();
+    assertTrue(json.startsWith("{\"machine\":\"" + id + "\""));
+    assertTrue(json.contains("\"detail\":\"a\\\"b\\\\c\""));
+    assertTrue(json.contains("\"phase\":\"evaluation\""));
+    assertFalse(json.contains("\n"));
+  }
+}
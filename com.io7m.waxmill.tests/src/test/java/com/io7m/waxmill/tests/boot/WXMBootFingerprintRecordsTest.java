@@ -0,0 +1,324 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.boot;
+
+import com.io7m.waxmill.boot.WXMBootConfigurationEvaluator;
+import com.io7m.waxmill.boot.WXMBootFingerprintRecords;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.machines.WXMBootConfigurationGRUBBhyve;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMBootConfigurationUEFI;
+import com.io7m.waxmill.machines.WXMDeviceAHCIDisk;
+import com.io7m.waxmill.machines.WXMDeviceLPC;
+import com.io7m.waxmill.machines.WXMGRUBKernelLinux;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMMemory;
+import com.io7m.waxmill.machines.WXMShortIDs;
+import com.io7m.waxmill.machines.WXMStorageBackendFile;
+import com.io7m.waxmill.machines.WXMTTYBackendStdio;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.UUID;
+
+import static com.io7m.waxmill.client.api.WXMDriftStatus.DRIFTED;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.EVALUATION_FAILED;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.IN_SYNC;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.NOT_RECORDED;
+import static com.io7m.waxmill.client.api.WXMDriftStatus.NOT_RUNNING;
+import static com.io7m.waxmill.tests.WXMDeviceIDTest.convert;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMBootFingerprintRecordsTest
+{
+  private Path directory;
+  private WXMClientConfiguration clientConfiguration;
+  private WXMVirtualMachine machine;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      WXMTestDirectories.createTempDirectory();
+
+    this.clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(
+          this.directory.resolve("configs"))
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.directory.resolve("vms"))
+            .setName("storage/vm")
+            .build())
+        .build();
+
+    this.machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("vm"))
+        .addDevices(
+          WXMDeviceLPC.builder()
+            .setDeviceSlot(convert("0:1:0"))
+            .addBackends(
+              WXMTTYBackendStdio.builder()
+                .setDevice("com1")
+                .build())
+            .build())
+        .addDevices(
+          WXMDeviceAHCIDisk.builder()
+            .setDeviceSlot(convert("0:0:0"))
+            .setBackend(
+              WXMStorageBackendFile.builder()
+                .setFile(Paths.get("/tmp/file"))
+                .build())
+            .build())
+        .addBootConfigurations(
+          WXMBootConfigurationUEFI.builder()
+            .setName(WXMBootConfigurationName.of("run"))
+            .setFirmware(Paths.get("/tmp/firmware"))
+            .build())
+        .addBootConfigurations(
+          WXMBootConfigurationGRUBBhyve.builder()
+            .setName(WXMBootConfigurationName.of("grub"))
+            .setKernelInstructions(
+              WXMGRUBKernelLinux.builder()
+                .setKernelDevice(convert("0:0:0"))
+                .setKernelPath(Paths.get("/vmlinuz"))
+                .setInitRDDevice(convert("0:0:0"))
+                .setInitRDPath(Paths.get("/initrd.img"))
+                .build())
+            .build())
+        .build();
+  }
+
+  private String fingerprintOf(
+    final WXMVirtualMachine target,
+    final String name)
+    throws Exception
+  {
+    return new WXMBootConfigurationEvaluator(
+      this.clientConfiguration,
+      target,
+      WXMBootConfigurationName.of(name)
+    ).evaluate().fingerprint();
+  }
+
+  private void record(
+    final String name)
+    throws Exception
+  {
+    final var file =
+      WXMBootFingerprintRecords.fingerprintFile(
+        this.clientConfiguration,
+        this.machine);
+    Files.createDirectories(file.getParent());
+    WXMBootFingerprintRecords.write(
+      file,
+      new WXMBootConfigurationEvaluator(
+        this.clientConfiguration,
+        this.machine,
+        WXMBootConfigurationName.of(name)
+      ).evaluate()
+    );
+  }
+
+  /**
+   * Fingerprints are deterministic, and change when anything that affects
+   * the boot changes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void fingerprintStable()
+    throws Exception
+  {
+    final var uefi0 = this.fingerprintOf(this.machine, "run");
+    final var uefi1 = this.fingerprintOf(this.machine, "run");
+    final var grub0 = this.fingerprintOf(this.machine, "grub");
+    final var grub1 = this.fingerprintOf(this.machine, "grub");
+
+    assertTrue(uefi0.startsWith("sha256:"));
+    assertEquals(uefi0, uefi1);
+    assertEquals(grub0, grub1);
+    assertNotEquals(uefi0, grub0);
+
+    final var changed =
+      WXMVirtualMachine.builder()
+        .from(this.machine)
+        .setMemory(
+          WXMMemory.builder()
+            .setMegabytes(BigInteger.valueOf(1024L))
+            .build())
+        .build();
+
+    assertNotEquals(uefi0, this.fingerprintOf(changed, "run"));
+    assertNotEquals(grub0, this.fingerprintOf(changed, "grub"));
+  }
+
+  /**
+   * Machines that have never been started have no recorded fingerprint.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void driftNotRecorded()
+    throws Exception
+  {
+    final var result =
+      WXMBootFingerprintRecords.drift(this.clientConfiguration, this.machine);
+
+    assertEquals(NOT_RECORDED, result.status());
+    assertEquals(Optional.empty(), result.recordedFingerprint());
+  }
+
+  /**
+   * Unchanged machines are in sync, and changed machines have drifted.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void driftInSyncThenDrifted()
+    throws Exception
+  {
+    this.record("grub");
+
+    final var inSync =
+      WXMBootFingerprintRecords.drift(this.clientConfiguration, this.machine);
+    assertEquals(IN_SYNC, inSync.status());
+    assertEquals(
+      Optional.of(WXMBootConfigurationName.of("grub")),
+      inSync.bootConfiguration());
+    assertEquals(inSync.recordedFingerprint(), inSync.currentFingerprint());
+
+    final var changed =
+      WXMVirtualMachine.builder()
+        .from(this.machine)
+        .setMemory(
+          WXMMemory.builder()
+            .setMegabytes(BigInteger.valueOf(1024L))
+            .build())
+        .build();
+
+    final var drifted =
+      WXMBootFingerprintRecords.drift(this.clientConfiguration, changed);
+    assertEquals(DRIFTED, drifted.status());
+    assertNotEquals(drifted.recordedFingerprint(), drifted.currentFingerprint());
+  }
+
+  /**
+   * A machine whose recorded boot configuration has been removed cannot be
+   * evaluated.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void driftEvaluationFailed()
+    throws Exception
+  {
+    this.record("grub");
+
+    final var changed =
+      WXMVirtualMachine.builder()
+        .from(this.machine)
+        .setBootConfigurations(
+          this.machine.bootConfigurationMap()
+            .values()
+            .stream()
+            .filter(c -> !c.name().value().equals("grub"))
+            .toList())
+        .build();
+
+    final var result =
+      WXMBootFingerprintRecords.drift(this.clientConfiguration, changed);
+    assertEquals(EVALUATION_FAILED, result.status());
+    assertTrue(result.failure().isPresent());
+  }
+
+  /**
+   * A fingerprint recorded for a machine that has no vmm device is stale,
+   * and is removed.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void driftNotRunning()
+    throws Exception
+  {
+    this.record("grub");
+
+    final var vmm = this.directory.resolve("vmm");
+    Files.createDirectories(vmm);
+    Files.writeString(vmm.resolve(WXMShortIDs.encode(this.machine.id())), "");
+
+    final var running =
+      WXMBootFingerprintRecords.drift(
+        this.clientConfiguration, this.machine, vmm);
+    assertEquals(IN_SYNC, running.status());
+
+    Files.delete(vmm.resolve(WXMShortIDs.encode(this.machine.id())));
+
+    final var stopped =
+      WXMBootFingerprintRecords.drift(
+        this.clientConfiguration, this.machine, vmm);
+    assertEquals(NOT_RUNNING, stopped.status());
+    assertFalse(Files.exists(
+      WXMBootFingerprintRecords.fingerprintFile(
+        this.clientConfiguration, this.machine)));
+
+    final var again =
+      WXMBootFingerprintRecords.drift(
+        this.clientConfiguration, this.machine, vmm);
+    assertEquals(NOT_RECORDED, again.status());
+  }
+
+  /**
+   * Deleting a fingerprint removes the record.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void deleteRemovesRecord()
+    throws Exception
+  {
+    this.record("grub");
+    WXMBootFingerprintRecords.delete(this.clientConfiguration, this.machine);
+    WXMBootFingerprintRecords.delete(this.clientConfiguration, this.machine);
+
+    final var result =
+      WXMBootFingerprintRecords.drift(this.clientConfiguration, this.machine);
+    assertEquals(NOT_RECORDED, result.status());
+  }
+}
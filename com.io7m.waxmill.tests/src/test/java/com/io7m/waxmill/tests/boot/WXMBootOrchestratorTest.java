@@ -0,0 +1,436 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.boot;
+
+import com.io7m.waxmill.boot.WXMBootConfigurationExecutor;
+import com.io7m.waxmill.boot.WXMBootFingerprintRecords;
+import com.io7m.waxmill.boot.WXMBootOrchestrator;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRunManyListenerType;
+import com.io7m.waxmill.client.api.WXMStartDependency;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMBootConfigurationUEFI;
+import com.io7m.waxmill.machines.WXMDeviceLPC;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMTTYBackendStdio;
+import com.io7m.waxmill.machines.WXMTag;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIX;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+import static com.io7m.waxmill.tests.WXMDeviceIDTest.convert;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(30L)
+public final class WXMBootOrchestratorTest
+{
+  private Path directory;
+  private Path firmware;
+  private WXMClientConfiguration clientConfiguration;
+  private List<String> events;
+  private WXMRunManyListenerType listener;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory =
+      WXMTestDirectories.createTempDirectory();
+    this.firmware =
+      this.directory.resolve("firmware");
+    Files.writeString(this.firmware, "FIRMWARE", UTF_8);
+
+    this.clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(
+          this.directory.resolve("configs"))
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.directory.resolve("vms"))
+            .setName("storage/vm")
+            .build())
+        .setBhyveExecutable(Paths.get("/bin/echo"))
+        .build();
+
+    this.events = new CopyOnWriteArrayList<>();
+    this.listener = new WXMRunManyListenerType()
+    {
+      @Override
+      public void onMachineStarted(
+        final UUID machine,
+        final Duration waitTime,
+        final Duration startLatency)
+      {
+        WXMBootOrchestratorTest.this.events.add("start " + machine);
+      }
+
+      @Override
+      public void onMachineFailed(
+        final UUID machine,
+        final String message)
+      {
+        WXMBootOrchestratorTest.this.events.add("fail " + machine);
+      }
+
+      @Override
+      public void onMachineExited(
+        final UUID machine,
+        final int exitCode)
+      {
+        WXMBootOrchestratorTest.this.events.add("exit " + machine);
+      }
+    };
+  }
+
+  private WXMVirtualMachine machine(
+    final String tag)
+  {
+    return WXMVirtualMachine.builder()
+      .setId(UUID.randomUUID())
+      .setName(WXMMachineName.of("vm"))
+      .setTags(new TreeSet<>(Set.of(WXMTag.of(tag))))
+      .addDevices(
+        WXMDeviceLPC.builder()
+          .setDeviceSlot(convert("0:1:0"))
+          .addBackends(
+            WXMTTYBackendStdio.builder()
+              .setDevice("com1")
+              .build())
+          .build())
+      .addBootConfigurations(
+        WXMBootConfigurationUEFI.builder()
+          .setName(WXMBootConfigurationName.of("run"))
+          .setFirmware(this.firmware)
+          .build())
+      .build();
+  }
+
+  private WXMBootOrchestrator orchestrator(
+    final WXMRunManyConfiguration configuration)
+  {
+    return WXMBootOrchestrator.create(
+      WXMProcessesPOSIX.create(),
+      this.clientConfiguration,
+      configuration,
+      this.listener
+    );
+  }
+
+  private Path runtimeDirectory(
+    final WXMVirtualMachine machine)
+    throws IOException
+  {
+    return Files.createDirectories(
+      this.directory.resolve("vms").resolve(machine.id().toString())
+    );
+  }
+
+  private Path outputFile(
+    final WXMVirtualMachine machine)
+    throws IOException
+  {
+    return this.runtimeDirectory(machine)
+      .resolve(WXMBootConfigurationExecutor.OUTPUT_FILE_NAME);
+  }
+
+  /**
+   * Machines are started as child processes, respecting start-order
+   * dependencies, and are supervised until they exit.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void startManyOrdered()
+    throws Exception
+  {
+    final var web0 = this.machine("web");
+    final var web1 = this.machine("web");
+    final var db = this.machine("database");
+    for (final var machine : List.of(web0, web1, db)) {
+      this.runtimeDirectory(machine);
+    }
+
+    final var result =
+      this.orchestrator(
+        WXMRunManyConfiguration.builder()
+          .setBootConfigurationName(WXMBootConfigurationName.of("run"))
+          .setMaxConcurrentStarts(2)
+          .addMachines(web0, web1, db)
+          .addStartDependencies(
+            WXMStartDependency.of(WXMTag.of("web"), WXMTag.of("database")))
+          .build()
+      ).execute(EXECUTE);
+
+    assertTrue(result.allStarted());
+    assertEquals(3, result.results().size());
+    assertEquals(web0.id(), result.results().get(0).machine());
+    assertEquals(web1.id(), result.results().get(1).machine());
+    assertEquals(db.id(), result.results().get(2).machine());
+
+    for (final var run : result.results()) {
+      assertEquals(Optional.of(Integer.valueOf(0)), run.exitCode());
+      assertEquals(Optional.empty(), run.failure());
+    }
+    for (final var machine : List.of(web0, web1, db)) {
+      assertFalse(Files.exists(
+        WXMBootFingerprintRecords.fingerprintFile(
+          this.clientConfiguration, machine)));
+      assertTrue(Files.exists(this.outputFile(machine)));
+    }
+
+    final var dbStart = this.events.indexOf("start " + db.id());
+    assertTrue(dbStart >= 0);
+    assertTrue(dbStart < this.events.indexOf("start " + web0.id()));
+    assertTrue(dbStart < this.events.indexOf("start " + web1.id()));
+    assertTrue(this.events.contains("exit " + web0.id()));
+    assertTrue(this.events.contains("exit " + web1.id()));
+    assertTrue(this.events.contains("exit " + db.id()));
+  }
+
+  /**
+   * Machines that write more output than a pipe can hold do not block.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void startManyLargeOutput()
+    throws Exception
+  {
+    final var script = this.directory.resolve("bhyve.sh");
+    Files.writeString(
+      script,
+      String.join(
+        System.lineSeparator(),
+        "#!/bin/sh",
+        "head -c 1048576 /dev/zero",
+        ""
+      ),
+      UTF_8
+    );
+    Files.setPosixFilePermissions(
+      script, PosixFilePermissions.fromString("rwx------"));
+
+    this.clientConfiguration =
+      WXMClientConfiguration.builder()
+        .from(this.clientConfiguration)
+        .setBhyveExecutable(script)
+        .build();
+
+    final var machine = this.machine("web");
+    this.runtimeDirectory(machine);
+
+    final var result =
+      this.orchestrator(
+        WXMRunManyConfiguration.builder()
+          .setBootConfigurationName(WXMBootConfigurationName.of("run"))
+          .addMachines(machine)
+          .build()
+      ).execute(EXECUTE);
+
+    assertTrue(result.allStarted());
+    assertEquals(
+      Optional.of(Integer.valueOf(0)),
+      result.results().get(0).exitCode()
+    );
+    assertTrue(Files.exists(this.outputFile(machine)));
+  }
+
+  /**
+   * Unexpected exceptions raised when starting a machine are reported.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void startUnexpectedException()
+    throws Exception
+  {
+    final var processes = new WXMProcessesType()
+    {
+      @Override
+      public void processReplaceCurrent(
+        final WXMProcessDescription description)
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Process processStart(
+        final WXMProcessDescription description)
+      {
+        throw new IllegalStateException("Unexpected!");
+      }
+
+      @Override
+      public void processStartAndWait(
+        final WXMProcessDescription description)
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public CompletableFuture<WXMProcessResult> processStartAsync(
+        final WXMProcessDescription description)
+      {
+        throw new UnsupportedOperationException();
+      }
+    };
+
+    final var machine = this.machine("web");
+    final var result =
+      WXMBootOrchestrator.create(
+        processes,
+        this.clientConfiguration,
+        WXMRunManyConfiguration.builder()
+          .setBootConfigurationName(WXMBootConfigurationName.of("run"))
+          .addMachines(machine)
+          .build(),
+        this.listener
+      ).execute(EXECUTE);
+
+    assertFalse(result.allStarted());
+    assertTrue(
+      result.results()
+        .get(0)
+        .failure()
+        .orElseThrow()
+        .contains("Unexpected!")
+    );
+    assertTrue(this.events.contains("fail " + machine.id()));
+  }
+
+  /**
+   * Machines whose dependencies fail to start are not started.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void startDependencyFailed()
+    throws Exception
+  {
+    final var web = this.machine("web");
+    final var db =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("vm"))
+        .setTags(new TreeSet<>(Set.of(WXMTag.of("database"))))
+        .build();
+
+    final var result =
+      this.orchestrator(
+        WXMRunManyConfiguration.builder()
+          .setBootConfigurationName(WXMBootConfigurationName.of("run"))
+          .addMachines(web, db)
+          .addStartDependencies(
+            WXMStartDependency.of(WXMTag.of("web"), WXMTag.of("database")))
+          .build()
+      ).execute(EXECUTE);
+
+    assertFalse(result.allStarted());
+    assertTrue(result.results().get(0).failure().isPresent());
+    assertTrue(result.results().get(1).failure().isPresent());
+    assertEquals(Optional.empty(), result.results().get(0).exitCode());
+    assertTrue(this.events.contains("fail " + web.id()));
+    assertTrue(this.events.contains("fail " + db.id()));
+  }
+
+  /**
+   * Cyclic start-order dependencies are rejected.
+   */
+
+  @Test
+  public void startCyclic()
+  {
+    final var a = this.machine("a");
+    final var b = this.machine("b");
+
+    assertThrows(WXMException.class, () -> {
+      this.orchestrator(
+        WXMRunManyConfiguration.builder()
+          .setBootConfigurationName(WXMBootConfigurationName.of("run"))
+          .addMachines(a, b)
+          .addStartDependencies(
+            WXMStartDependency.of(WXMTag.of("a"), WXMTag.of("b")))
+          .addStartDependencies(
+            WXMStartDependency.of(WXMTag.of("b"), WXMTag.of("a")))
+          .build()
+      ).execute(EXECUTE);
+    });
+
+    assertEquals(List.of(), this.events);
+  }
+
+  /**
+   * Dry runs start nothing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void startDryRun()
+    throws Exception
+  {
+    final var a = this.machine("a");
+    final var b = this.machine("b");
+
+    final var result =
+      this.orchestrator(
+        WXMRunManyConfiguration.builder()
+          .setBootConfigurationName(WXMBootConfigurationName.of("run"))
+          .addMachines(a, b)
+          .build()
+      ).execute(DRY_RUN);
+
+    assertTrue(result.allStarted());
+    for (final var run : result.results()) {
+      assertEquals(Optional.empty(), run.exitCode());
+    }
+    assertFalse(this.events.contains("exit " + a.id()));
+  }
+}
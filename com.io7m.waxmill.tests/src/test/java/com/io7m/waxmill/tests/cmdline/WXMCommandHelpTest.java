@@ -96,8 +96,7 @@ public final class WXMCommandHelpTest
   @TestFactory
   public Stream<DynamicTest> helpVMHelpOK()
   {
-    return new Main(new String[]{})
-      .commandNames()
+    return Main.commandNames()
       .map(name -> DynamicTest.dynamicTest(
         String.format("help %s", name),
         () -> {
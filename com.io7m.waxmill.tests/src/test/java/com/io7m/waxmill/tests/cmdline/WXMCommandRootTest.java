@@ -17,6 +17,7 @@
 package com.io7m.waxmill.tests.cmdline;
 
 import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.cmdline.Main;
 import com.io7m.waxmill.cmdline.MainExitless;
 import com.io7m.waxmill.machines.WXMZFSFilesystem;
 import com.io7m.waxmill.tests.WXMTestDirectories;
@@ -27,8 +28,12 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.stream.Collectors;
 
 import static com.io7m.waxmill.tests.WXMExceptions.assertThrowsLogged;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class WXMCommandRootTest
 {
@@ -79,4 +84,50 @@ public final class WXMCommandRootTest
       );
     });
   }
+
+  @Test
+  public void commandsAllConstructedWithoutCommand()
+  {
+    final var commands = new Main(new String[0]).commands();
+    for (final var name : Main.commandNames().collect(Collectors.toList())) {
+      assertTrue(commands.containsKey(name), name);
+      assertEquals(name, commands.get(name).name());
+    }
+  }
+
+  @Test
+  public void commandsOnlyNamedConstructed()
+  {
+    final var commands =
+      new Main(new String[]{"--verbose", "trace", "vm-list", "--help"})
+        .commands();
+
+    assertTrue(commands.containsKey("vm-list"));
+    assertFalse(commands.containsKey("vm-define"));
+    assertFalse(commands.containsKey("version"));
+  }
+
+  @Test
+  public void commandsAllConstructedForHelp()
+  {
+    final var commands =
+      new Main(new String[]{"help", "vm-list"}).commands();
+
+    assertTrue(
+      commands.keySet()
+        .containsAll(Main.commandNames().collect(Collectors.toList()))
+    );
+  }
+
+  @Test
+  public void commandsAllConstructedForUnknown()
+  {
+    final var commands =
+      new Main(new String[]{"nonexistent"}).commands();
+
+    assertTrue(
+      commands.keySet()
+        .containsAll(Main.commandNames().collect(Collectors.toList()))
+    );
+  }
 }
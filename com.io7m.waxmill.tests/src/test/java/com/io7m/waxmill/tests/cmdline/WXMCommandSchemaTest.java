@@ -106,6 +106,32 @@ public final class WXMCommandSchemaTest
     );
   }
 
+  @Test
+  public void specificOK2()
+    throws IOException
+  {
+    MainExitless.main(
+      new String[]{
+        "schema",
+        "--id",
+        WXMSchemas.vmSchemaV1p1NamespaceText()
+      }
+    );
+  }
+
+  @Test
+  public void specificOK3()
+    throws IOException
+  {
+    MainExitless.main(
+      new String[]{
+        "schema",
+        "--id",
+        WXMSchemas.configSchemaV1p1NamespaceText()
+      }
+    );
+  }
+
   @Test
   public void missing0()
   {
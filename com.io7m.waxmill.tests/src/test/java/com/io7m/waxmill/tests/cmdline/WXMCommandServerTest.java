@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.cmdline;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.cmdline.MainExitless;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.server.WXMServerClient;
+import com.io7m.waxmill.server.WXMServerRequest;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import com.io7m.waxmill.xml.WXMClientConfigurationSerializers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(30L)
+public final class WXMCommandServerTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WXMCommandServerTest.class);
+
+  private Path directory;
+  private Path socket;
+  private Path vmDirectory;
+  private Thread serverThread;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.socket = this.directory.resolve("server.sock");
+    this.vmDirectory = this.directory.resolve("vmDirectory");
+    Files.createDirectories(this.vmDirectory);
+
+    final var configuration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(this.vmDirectory)
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.directory.resolve("zfsDirectory"))
+            .setName("storage/vm")
+            .build()
+        ).build();
+
+    new WXMClientConfigurationSerializers()
+      .serialize(
+        this.directory.resolve("config.xml"),
+        this.directory.resolve("config.xml.tmp"),
+        configuration
+      );
+
+    WXMTestDirectories.resourceOf(
+      WXMCommandServerTest.class,
+      this.directory,
+      "vm0.xml"
+    );
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    if (this.serverThread != null) {
+      this.serverThread.interrupt();
+      this.serverThread.join(10_000L);
+    }
+  }
+
+  private void startServer()
+    throws Exception
+  {
+    this.serverThread = new Thread(() -> {
+      try {
+        MainExitless.main(
+          new String[]{
+            "server",
+            "--socket", this.socket.toString()
+          }
+        );
+      } catch (final IOException e) {
+        LOG.error("server failed: ", e);
+      }
+    });
+    this.serverThread.setDaemon(true);
+    this.serverThread.start();
+
+    while (!this.isListening()) {
+      Thread.sleep(10L);
+    }
+  }
+
+  private boolean isListening()
+  {
+    try (var ignored =
+           SocketChannel.open(UnixDomainSocketAddress.of(this.socket))) {
+      return true;
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Relative paths given to a thin client are resolved against the working
+   * directory of the thin client, not that of the server.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void relativePathsResolvedAgainstClient()
+    throws Exception
+  {
+    this.startServer();
+
+    final var output = new ByteArrayOutputStream();
+    final var error = new ByteArrayOutputStream();
+    final var exitCode =
+      WXMServerClient.execute(
+        this.socket,
+        WXMServerRequest.builder()
+          .setArguments(List.of(
+            "vm-import",
+            "--configuration", "config.xml",
+            "--file", "vm0.xml"
+          ))
+          .setWorkingDirectory(this.directory)
+          .build(),
+        output,
+        error
+      );
+
+    LOG.debug("output: {}", output.toString(UTF_8));
+    LOG.debug("error: {}", error.toString(UTF_8));
+    assertEquals(0, exitCode);
+    assertTrue(Files.isRegularFile(
+      this.vmDirectory.resolve("1a438a53-2fcd-498f-8cc2-0ff0456e3dc4.wvmx")
+    ));
+  }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.cmdline;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.cmdline.MainExitless;
+import com.io7m.waxmill.machines.WXMDeviceType;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import com.io7m.waxmill.xml.WXMClientConfigurationSerializers;
+import com.io7m.waxmill.xml.WXMVirtualMachineParsers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.io7m.waxmill.tests.WXMExceptions.assertThrowsLogged;
+import static com.io7m.waxmill.tests.cmdline.WXMParsing.listVMFiles;
+import static com.io7m.waxmill.tests.cmdline.WXMParsing.parseFirst;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMCommandVMBatchTest
+{
+  private Path directory;
+  private Path configFile;
+  private Path configFileTmp;
+  private Path vmDirectory;
+  private Path zfsDirectory;
+  private Path script;
+  private WXMClientConfiguration configuration;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.configFile = this.directory.resolve("config.xml");
+    this.configFileTmp = this.directory.resolve("config.xml.tmp");
+    this.vmDirectory = this.directory.resolve("vmDirectory");
+    this.zfsDirectory = this.directory.resolve("zfsDirectory");
+    this.script = this.directory.resolve("script.txt");
+    Files.createDirectories(this.vmDirectory);
+
+    this.configuration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(this.vmDirectory)
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.zfsDirectory)
+            .setName("storage/vm")
+            .build()
+        ).build();
+
+    new WXMClientConfigurationSerializers()
+      .serialize(
+        this.configFile,
+        this.configFileTmp,
+        this.configuration
+      );
+  }
+
+  private void runBatch(
+    final String... extra)
+    throws IOException
+  {
+    final var arguments = new String[4 + extra.length];
+    arguments[0] = "vm-batch";
+    arguments[1] = "--configuration";
+    arguments[2] = this.configFile.toString();
+    arguments[3] = "--file";
+    System.arraycopy(extra, 0, arguments, 4, extra.length);
+    MainExitless.main(arguments);
+  }
+
+  private long machineCount()
+    throws IOException
+  {
+    try (var files = listVMFiles(this.vmDirectory)) {
+      return files.count();
+    }
+  }
+
+  @Test
+  public void batchDefineAndModify()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "# Define a machine.",
+        "",
+        "vm-define --machine " + id + " --name com.io7m.example"
+          + " --comment 'A \"quoted\" comment'",
+        "vm-add-lpc-device --machine " + id
+          + " --device-slot 0:1:0 --add-backend 'stdio;com1'",
+        "vm-set --machine " + id + " --rtc-is-utc true   # Trailing comment",
+        "vm-list"
+      ),
+      UTF_8
+    );
+
+    this.runBatch(this.script.toString());
+
+    final var machine =
+      parseFirst(this.vmDirectory)
+        .machines()
+        .get(id);
+
+    assertEquals("com.io7m.example", machine.name().value());
+    assertEquals("A \"quoted\" comment", machine.comment());
+    assertTrue(machine.flags().realTimeClockIsUTC());
+    assertTrue(
+      machine.devices()
+        .stream()
+        .map(WXMDeviceType::kind)
+        .anyMatch(kind -> kind == WXMDeviceType.Kind.WXM_LPC)
+    );
+  }
+
+  @Test
+  public void batchDefineMany()
+    throws Exception
+  {
+    final var id0 = UUID.randomUUID();
+    final var id1 = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-define --machine " + id0 + " --name com.io7m.example0",
+        "vm-define --machine " + id1 + " --name com.io7m.example1",
+        "vm-set --machine " + id0 + " --rtc-is-utc true",
+        "vm-set --machine " + id1 + " --wire-guest-memory true"
+      ),
+      UTF_8
+    );
+
+    this.runBatch(this.script.toString());
+
+    final var machines = new HashMap<UUID, WXMVirtualMachine>();
+    try (var files = listVMFiles(this.vmDirectory)) {
+      for (final var file : files.collect(Collectors.toList())) {
+        machines.putAll(new WXMVirtualMachineParsers().parse(file).machines());
+      }
+    }
+
+    assertEquals(2, machines.size());
+    assertTrue(machines.get(id0).flags().realTimeClockIsUTC());
+    assertTrue(machines.get(id1).flags().wireGuestMemory());
+  }
+
+  @Test
+  public void batchStopsOnFailure()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-set --machine " + UUID.randomUUID() + " --rtc-is-utc true",
+        "vm-define --machine " + id + " --name com.io7m.example"
+      ),
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString());
+    });
+    assertEquals(0L, this.machineCount());
+  }
+
+  @Test
+  public void batchKeepGoing()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-set --machine " + UUID.randomUUID() + " --rtc-is-utc true",
+        "vm-define --machine " + id + " --name com.io7m.example"
+      ),
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString(), "--keep-going", "true");
+    });
+    assertEquals(1L, this.machineCount());
+  }
+
+  @Test
+  public void batchKeepsEarlierChanges()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-define --machine " + id + " --name com.io7m.example",
+        "vm-set --machine " + UUID.randomUUID() + " --rtc-is-utc true"
+      ),
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString());
+    });
+    assertEquals(1L, this.machineCount());
+  }
+
+  @Test
+  public void batchDuplicateDefinitionStops()
+    throws Exception
+  {
+    final var id0 = UUID.randomUUID();
+    final var id1 = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-define --machine " + id0 + " --name com.io7m.example0",
+        "vm-define --machine " + id0 + " --name com.io7m.example1",
+        "vm-define --machine " + id1 + " --name com.io7m.example2"
+      ),
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString());
+    });
+    assertEquals(1L, this.machineCount());
+
+    final var machine =
+      parseFirst(this.vmDirectory)
+        .machines()
+        .get(id0);
+
+    assertEquals("com.io7m.example0", machine.name().value());
+  }
+
+  @Test
+  public void batchDuplicateDefinitionKeepGoing()
+    throws Exception
+  {
+    final var id0 = UUID.randomUUID();
+    final var id1 = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-define --machine " + id0 + " --name com.io7m.example0",
+        "vm-define --machine " + id0 + " --name com.io7m.example1",
+        "vm-define --machine " + id1 + " --name com.io7m.example2"
+      ),
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString(), "--keep-going", "true");
+    });
+    assertEquals(2L, this.machineCount());
+  }
+
+  @Test
+  public void batchUnterminatedQuote()
+    throws Exception
+  {
+    Files.writeString(
+      this.script,
+      "vm-define --name 'com.io7m.example",
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString());
+    });
+    assertEquals(0L, this.machineCount());
+  }
+
+  @Test
+  public void batchExcludedCommand()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-define --machine " + id + " --name com.io7m.example",
+        "vm-run --machine " + id
+      ),
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString());
+    });
+    assertEquals(0L, this.machineCount());
+  }
+
+  @Test
+  public void batchExcludedRunMany()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+
+    Files.writeString(
+      this.script,
+      String.join(
+        System.lineSeparator(),
+        "vm-define --machine " + id + " --name com.io7m.example",
+        "vm-run-many --machine " + id
+      ),
+      UTF_8
+    );
+
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.script.toString());
+    });
+    assertEquals(0L, this.machineCount());
+  }
+
+  @Test
+  public void batchMissingFile()
+  {
+    assertThrowsLogged(IOException.class, () -> {
+      this.runBatch(this.directory.resolve("nonexistent").toString());
+    });
+  }
+}
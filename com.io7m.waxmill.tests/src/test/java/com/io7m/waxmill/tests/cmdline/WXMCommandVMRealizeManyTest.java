@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.cmdline;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.cmdline.MainExitless;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import com.io7m.waxmill.xml.WXMClientConfigurationSerializers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+import static com.io7m.waxmill.tests.WXMExceptions.assertThrowsLogged;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class WXMCommandVMRealizeManyTest
+{
+  private Path directory;
+  private Path configFile;
+  private Path configFileTmp;
+  private Path vmDirectory;
+  private Path zfsDirectory;
+  private WXMClientConfiguration configuration;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.configFile = this.directory.resolve("config.xml");
+    this.configFileTmp = this.directory.resolve("config.xml.tmp");
+    this.vmDirectory = this.directory.resolve("vmDirectory");
+    this.zfsDirectory = this.directory.resolve("zfsDirectory");
+    Files.createDirectories(this.vmDirectory);
+
+    this.configuration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(this.vmDirectory)
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.zfsDirectory)
+            .setName("storage/vm")
+            .build()
+        )
+        .setZfsExecutable(Paths.get("/bin/echo"))
+        .build();
+
+    new WXMClientConfigurationSerializers()
+      .serialize(
+        this.configFile,
+        this.configFileTmp,
+        this.configuration
+      );
+  }
+
+  private UUID defineMachine(
+    final Path disk)
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+    MainExitless.main(
+      new String[]{
+        "vm-define",
+        "--configuration",
+        this.configFile.toString(),
+        "--machine",
+        id.toString(),
+        "--name",
+        "com.io7m.example"
+      }
+    );
+
+    MainExitless.main(
+      new String[]{
+        "vm-add-ahci-disk",
+        "--configuration",
+        this.configFile.toString(),
+        "--machine",
+        id.toString(),
+        "--backend",
+        "file;" + disk,
+        "--device-slot",
+        "0:1:0"
+      }
+    );
+
+    Files.createDirectories(this.zfsDirectory.resolve(id.toString()));
+    return id;
+  }
+
+  @Test
+  public void realizeManyNothingSelected()
+  {
+    assertThrowsLogged(IOException.class, () -> {
+      MainExitless.main(
+        new String[]{
+          "vm-realize-many",
+          "--configuration",
+          this.configFile.toString()
+        }
+      );
+    });
+  }
+
+  @Test
+  public void realizeManyMissingMachine()
+  {
+    assertThrowsLogged(IOException.class, () -> {
+      MainExitless.main(
+        new String[]{
+          "vm-realize-many",
+          "--configuration",
+          this.configFile.toString(),
+          "--machine",
+          UUID.randomUUID().toString()
+        }
+      );
+    });
+  }
+
+  @Test
+  public void realizeManyAll()
+    throws Exception
+  {
+    final var disk = this.directory.resolve("disk.img");
+    Files.write(disk, "DISK".getBytes(UTF_8));
+
+    this.defineMachine(disk);
+    this.defineMachine(disk);
+
+    MainExitless.main(
+      new String[]{
+        "vm-realize-many",
+        "--verbose",
+        "trace",
+        "--configuration",
+        this.configFile.toString(),
+        "--all",
+        "true",
+        "--max-concurrent-steps",
+        "1"
+      }
+    );
+  }
+
+  @Test
+  public void realizeManyDryRun()
+    throws Exception
+  {
+    final var id0 =
+      this.defineMachine(this.directory.resolve("missing.img"));
+
+    MainExitless.main(
+      new String[]{
+        "vm-realize-many",
+        "--configuration",
+        this.configFile.toString(),
+        "--machine",
+        id0.toString(),
+        "--dry-run",
+        "true"
+      }
+    );
+  }
+
+  @Test
+  public void realizeManyPartialFailure()
+    throws Exception
+  {
+    final var disk = this.directory.resolve("disk.img");
+    Files.write(disk, "DISK".getBytes(UTF_8));
+
+    final var id0 = this.defineMachine(disk);
+    final var id1 = this.defineMachine(this.directory.resolve("missing.img"));
+
+    assertThrowsLogged(IOException.class, () -> {
+      MainExitless.main(
+        new String[]{
+          "vm-realize-many",
+          "--configuration",
+          this.configFile.toString(),
+          "--machine",
+          id0.toString(),
+          "--machine",
+          id1.toString()
+        }
+      );
+    });
+  }
+}
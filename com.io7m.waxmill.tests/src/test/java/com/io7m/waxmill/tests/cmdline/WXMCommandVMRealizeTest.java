@@ -33,6 +33,8 @@ import java.util.UUID;
 
 import static com.io7m.waxmill.tests.WXMExceptions.assertThrowsLogged;
 import static java.util.Locale.ROOT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class WXMCommandVMRealizeTest
 {
@@ -324,6 +326,75 @@ public final class WXMCommandVMRealizeTest
     );
   }
 
+  @Test
+  public void realizeRecordsMarker()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+    Files.createDirectories(this.zfsDirectory.resolve(id.toString()));
+
+    MainExitless.main(
+      new String[]{
+        "vm-define",
+        "--configuration",
+        this.configFile.toString(),
+        "--machine",
+        id.toString(),
+        "--name",
+        "com.io7m.example",
+        "--memory-gigabytes",
+        "1",
+        "--memory-megabytes",
+        "128",
+        "--cpu-count",
+        "2"
+      }
+    );
+
+    final var marker =
+      this.zfsDirectory.resolve(id.toString())
+        .resolve("realization.properties");
+
+    MainExitless.main(
+      new String[]{
+        "vm-realize",
+        "--machine",
+        id.toString(),
+        "--configuration",
+        this.configFile.toString()
+      }
+    );
+
+    assertTrue(Files.isRegularFile(marker));
+    final var time0 = Files.getLastModifiedTime(marker);
+
+    MainExitless.main(
+      new String[]{
+        "vm-realize",
+        "--machine",
+        id.toString(),
+        "--configuration",
+        this.configFile.toString()
+      }
+    );
+
+    assertEquals(time0, Files.getLastModifiedTime(marker));
+
+    MainExitless.main(
+      new String[]{
+        "vm-realize",
+        "--machine",
+        id.toString(),
+        "--force",
+        "true",
+        "--configuration",
+        this.configFile.toString()
+      }
+    );
+
+    assertTrue(Files.isRegularFile(marker));
+  }
+
   private static void assumeZFSFilesystem(final Path path)
     throws IOException
   {
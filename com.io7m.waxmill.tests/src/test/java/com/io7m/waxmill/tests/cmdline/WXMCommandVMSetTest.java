@@ -17,9 +17,13 @@
 package com.io7m.waxmill.tests.cmdline;
 
 import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.vanilla.WXMClients;
 import com.io7m.waxmill.cmdline.MainExitless;
 import com.io7m.waxmill.exceptions.WXMException;
 import com.io7m.waxmill.machines.WXMFlags;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMTag;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMZFSFilesystem;
 import com.io7m.waxmill.tests.WXMTestDirectories;
 import com.io7m.waxmill.xml.WXMClientConfigurationSerializers;
@@ -29,6 +33,8 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeSet;
 import java.util.UUID;
 
 import static com.io7m.waxmill.tests.WXMExceptions.assertThrowsLogged;
@@ -248,6 +254,142 @@ public final class WXMCommandVMSetTest
     return machine.flags();
   }
 
+  private UUID define(
+    final String name,
+    final String... tags)
+    throws Exception
+  {
+    final var tagSet = new TreeSet<WXMTag>();
+    for (final var tag : tags) {
+      tagSet.add(WXMTag.of(tag));
+    }
+
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of(name))
+        .setTags(tagSet)
+        .build();
+
+    try (var client = new WXMClients().open(this.configuration)) {
+      client.vmDefine(machine);
+    }
+    return machine.id();
+  }
+
+  private WXMFlags getFlags(
+    final UUID id)
+    throws Exception
+  {
+    try (var client = new WXMClients().open(this.configuration)) {
+      return client.vmFind(id).flags();
+    }
+  }
+
+  @Test
+  public void setByTagAndNamePattern()
+    throws Exception
+  {
+    final var web0 = this.define("web-0", "web");
+    final var web1 = this.define("frontend", "web");
+    final var db0 = this.define("db-0");
+    final var db10 = this.define("db-10");
+    final var other = this.define("other", "db");
+
+    MainExitless.main(
+      new String[]{
+        "vm-set",
+        "--configuration",
+        this.configFile.toString(),
+        "--tag",
+        "web",
+        "--name-pattern",
+        "db-?",
+        "--wire-guest-memory",
+        "true"
+      }
+    );
+
+    assertTrue(this.getFlags(web0).wireGuestMemory());
+    assertTrue(this.getFlags(web1).wireGuestMemory());
+    assertTrue(this.getFlags(db0).wireGuestMemory());
+    assertFalse(this.getFlags(db10).wireGuestMemory());
+    assertFalse(this.getFlags(other).wireGuestMemory());
+  }
+
+  @Test
+  public void setAllMachines()
+    throws Exception
+  {
+    final var ids =
+      List.of(
+        this.define("a"),
+        this.define("b"),
+        this.define("c"),
+        this.define("d")
+      );
+
+    MainExitless.main(
+      new String[]{
+        "vm-set",
+        "--configuration",
+        this.configFile.toString(),
+        "--all",
+        "true",
+        "--guest-apic-is-x2apic",
+        "true"
+      }
+    );
+
+    for (final var id : ids) {
+      final var flags = this.getFlags(id);
+      assertTrue(flags.guestAPICIsX2APIC());
+      assertEquals(
+        WXMFlags.builder().build(),
+        flags.withGuestAPICIsX2APIC(false));
+    }
+  }
+
+  @Test
+  public void setDryRunChangesNothing()
+    throws Exception
+  {
+    final var id = this.define("web-0", "web");
+    final var flagsStart = this.getFlags(id);
+
+    MainExitless.main(
+      new String[]{
+        "vm-set",
+        "--configuration",
+        this.configFile.toString(),
+        "--name-pattern",
+        "web-*",
+        "--wire-guest-memory",
+        "true",
+        "--dry-run",
+        "true"
+      }
+    );
+
+    assertEquals(flagsStart, this.getFlags(id));
+  }
+
+  @Test
+  public void setNothingSelected()
+  {
+    assertThrowsLogged(IOException.class, () -> {
+      MainExitless.main(
+        new String[]{
+          "vm-set",
+          "--configuration",
+          this.configFile.toString(),
+          "--wire-guest-memory",
+          "true"
+        }
+      );
+    });
+  }
+
   @Test
   public void setNonexistentVirtualMachine()
   {
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.cmdline;
+
+import com.io7m.waxmill.cmdline.Main;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMNativeImageConfigurationTest
+{
+  private static final String BASE =
+    "/META-INF/native-image/com.io7m.waxmill/com.io7m.waxmill.cmdline/";
+
+  private static final Pattern NAME =
+    Pattern.compile("\"name\"\\s*:\\s*\"([^\"<]+)\"");
+
+  private static String resourceText(
+    final String name)
+    throws IOException
+  {
+    try (var stream = Main.class.getResourceAsStream(BASE + name)) {
+      assertNotNull(stream, name);
+      return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static Set<String> registeredClasses()
+    throws IOException
+  {
+    final var names = new HashSet<String>();
+    final var matcher = NAME.matcher(resourceText("reflect-config.json"));
+    while (matcher.find()) {
+      names.add(matcher.group(1));
+    }
+    return names;
+  }
+
+  /**
+   * Every class named in the reflection configuration exists.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testReflectionClassesExist()
+    throws Exception
+  {
+    for (final var name : registeredClasses()) {
+      Class.forName(name, false, Main.class.getClassLoader());
+    }
+  }
+
+  /**
+   * Every command is registered for reflection, because JCommander
+   * reflects over the parameter fields of commands.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testCommandsRegistered()
+    throws Exception
+  {
+    final var names = registeredClasses();
+    final var commands = new Main(new String[0]).commands();
+    for (final var command : commands.values()) {
+      final var name = command.getClass().getName();
+      if (name.startsWith("com.io7m.waxmill.")) {
+        assertTrue(names.contains(name), name);
+      }
+    }
+  }
+
+  /**
+   * Every resource loaded by name is matched by the resource configuration.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testResourcesIncluded()
+    throws Exception
+  {
+    final var text = resourceText("resource-config.json");
+    final var patterns = new HashSet<Pattern>();
+    final var matcher =
+      Pattern.compile("\"pattern\"\\s*:\\s*\"(.+)\"").matcher(text);
+    while (matcher.find()) {
+      patterns.add(Pattern.compile(matcher.group(1).replace("\\\\", "\\")));
+    }
+
+    final var resources = Set.of(
+      "com/io7m/waxmill/boot/internal/Boot.xml",
+      "com/io7m/waxmill/cmdline/internal/Messages.xml",
+      "com/io7m/waxmill/cmdline/internal/version.properties",
+      "com/io7m/waxmill/machines/internal/Machines.xml",
+      "com/io7m/waxmill/process/posix/internal/Processes.xml",
+      "com/io7m/waxmill/realize/internal/Realize.xml",
+      "com/io7m/waxmill/xml/config/v1/config-1.0.xsd",
+      "com/io7m/waxmill/xml/vm/v1/vm-1.0.xsd",
+      "logback.xml"
+    );
+
+    for (final var resource : resources) {
+      assertNotNull(
+        Main.class.getResource("/" + resource),
+        resource
+      );
+      assertTrue(
+        patterns.stream().anyMatch(p -> p.matcher(resource).matches()),
+        resource
+      );
+    }
+  }
+}
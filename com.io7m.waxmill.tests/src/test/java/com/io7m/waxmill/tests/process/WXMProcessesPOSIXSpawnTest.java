@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.process;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIX;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIXService;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIXSpawnService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(60L)
+public final class WXMProcessesPOSIXSpawnTest
+{
+  private WXMProcessesType processes;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.processes = WXMProcessesPOSIX.createWithPosixSpawn();
+  }
+
+  private static WXMProcessDescription shell(
+    final String script)
+  {
+    return WXMProcessDescription.builder()
+      .setExecutable(Paths.get("/bin/sh"))
+      .addArguments("-c")
+      .addArguments(script)
+      .putEnvironment("PATH", "/bin:/usr/bin")
+      .build();
+  }
+
+  @Test
+  public void testServiceLoader()
+  {
+    assertTrue(
+      ServiceLoader.load(WXMProcessesType.class)
+        .stream()
+        .anyMatch(p -> p.type().equals(WXMProcessesPOSIXSpawnService.class))
+    );
+  }
+
+  @Test
+  public void testServiceSystemProperty()
+    throws Exception
+  {
+    final var previous =
+      System.getProperty(WXMProcessesPOSIX.LAUNCHER_PROPERTY);
+
+    try {
+      System.setProperty(WXMProcessesPOSIX.LAUNCHER_PROPERTY, "posix_spawn");
+      final var service = new WXMProcessesPOSIXService();
+      final var process = service.processStart(shell("true"));
+      assertEquals(0, process.waitFor());
+
+      /*
+       * Processes started with posix_spawn do not have process handles.
+       */
+
+      assertThrows(UnsupportedOperationException.class, process::toHandle);
+    } finally {
+      if (previous == null) {
+        System.clearProperty(WXMProcessesPOSIX.LAUNCHER_PROPERTY);
+      } else {
+        System.setProperty(WXMProcessesPOSIX.LAUNCHER_PROPERTY, previous);
+      }
+    }
+  }
+
+  @Test
+  public void testCloseDuringRead()
+    throws Exception
+  {
+    final var process =
+      this.processes.processStart(shell("sleep 1; echo done"));
+    final var output = process.getInputStream();
+
+    final var read = new CompletableFuture<Integer>();
+    final var reader = new Thread(() -> {
+      try {
+        read.complete(Integer.valueOf(output.read()));
+      } catch (final IOException e) {
+        read.completeExceptionally(e);
+      }
+    });
+    reader.start();
+
+    Thread.sleep(250L);
+    output.close();
+
+    /*
+     * The read in progress is completed against the original pipe, and
+     * the descriptor is released once it returns.
+     */
+
+    assertEquals((int) 'd', read.get(30L, TimeUnit.SECONDS).intValue());
+    assertThrows(IOException.class, output::read);
+    assertEquals(0, process.waitFor());
+  }
+
+  @Test
+  public void testExecuteOutput()
+    throws Exception
+  {
+    final var result =
+      this.processes.processStartAsync(shell("echo out; echo err >&2; exit 3"))
+        .get(30L, TimeUnit.SECONDS);
+
+    assertEquals(3, result.exitCode());
+    assertEquals("out\nerr\n", result.output());
+  }
+
+  @Test
+  public void testExecuteEnvironment()
+    throws Exception
+  {
+    final var result =
+      this.processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/sh"))
+          .addArguments("-c")
+          .addArguments("echo \"$WAXMILL\"")
+          .putEnvironment("WAXMILL", "x y z")
+          .build()
+      ).get(30L, TimeUnit.SECONDS);
+
+    assertEquals(0, result.exitCode());
+    assertEquals("x y z\n", result.output());
+  }
+
+  @Test
+  public void testExecuteInput()
+    throws Exception
+  {
+    final var process = this.processes.processStart(shell("cat"));
+    try (var input = process.getOutputStream()) {
+      input.write("hello".getBytes(StandardCharsets.UTF_8));
+    }
+    final String text;
+    try (var output = process.getInputStream()) {
+      text = new String(output.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    assertEquals(0, process.waitFor());
+    assertEquals("hello", text);
+    assertFalse(process.isAlive());
+  }
+
+  @Test
+  public void testExecuteLargeOutput()
+    throws Exception
+  {
+    final var result =
+      this.processes.processStartAsync(shell("head -c 1000000 /dev/zero"))
+        .get(30L, TimeUnit.SECONDS);
+
+    assertEquals(0, result.exitCode());
+    assertEquals(
+      1_000_000L - WXMProcessesPOSIX.DEFAULT_OUTPUT_CAPTURE_LIMIT,
+      result.outputDiscarded()
+    );
+  }
+
+  @Test
+  public void testExecuteNonexistent()
+  {
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.processes.processStart(
+          WXMProcessDescription.builder()
+            .setExecutable(Paths.get("/nonexistent"))
+            .build()
+        );
+      });
+    assertTrue(ex.getMessage().contains("/nonexistent"));
+
+    final var future =
+      this.processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/nonexistent"))
+          .build()
+      );
+    final var exAsync =
+      assertThrows(ExecutionException.class, future::get);
+    assertInstanceOf(IOException.class, exAsync.getCause());
+  }
+
+  @Test
+  public void testDestroy()
+    throws Exception
+  {
+    final var process = this.processes.processStart(shell("exec sleep 60"));
+    assertTrue(process.isAlive());
+    assertFalse(process.waitFor(10L, TimeUnit.MILLISECONDS));
+    process.destroy();
+    assertEquals(128 + 15, process.onExit().get().exitValue());
+    assertFalse(process.isAlive());
+  }
+
+  @Test
+  public void testExecuteMany()
+    throws Exception
+  {
+    final var futures = new ArrayList<CompletableFuture<WXMProcessResult>>();
+    for (int index = 0; index < 64; ++index) {
+      futures.add(this.processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/echo"))
+          .addArguments(Integer.toString(index))
+          .build()
+      ));
+    }
+
+    for (int index = 0; index < 64; ++index) {
+      final var result = futures.get(index).get(30L, TimeUnit.SECONDS);
+      assertEquals(0, result.exitCode());
+      assertEquals(index + "\n", result.output());
+    }
+  }
+
+  @Test
+  public void testExecuteFailedAndWait()
+  {
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.processes.processStartAndWait(shell("echo broken; exit 1"));
+      });
+    assertTrue(ex.getMessage().contains("    broken"));
+  }
+}
@@ -17,6 +17,7 @@
 package com.io7m.waxmill.tests.process;
 
 import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
 import com.io7m.waxmill.process.posix.WXMProcessesPOSIX;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Disabled;
@@ -28,6 +29,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public final class WXMProcessesPOSIXTest
@@ -94,4 +98,215 @@ public final class WXMProcessesPOSIXTest
         .build()
     );
   }
+
+  @Test
+  public void testExecuteLsAsync()
+    throws Exception
+  {
+    final var processes = WXMProcessesPOSIX.create();
+
+    final var description =
+      WXMProcessDescription.builder()
+        .setExecutable(Paths.get("/bin/ls"))
+        .addArguments("-a")
+        .addArguments("-l")
+        .addArguments("-F")
+        .build();
+
+    final var result =
+      processes.processStartAsync(description)
+        .get(5L, TimeUnit.MINUTES);
+
+    LOG.debug("text: {}", result.output());
+    Assertions.assertEquals(description, result.description());
+    Assertions.assertEquals(0, result.exitCode());
+    Assertions.assertTrue(result.succeeded());
+    Assertions.assertTrue(result.output().length() > 5);
+  }
+
+  @Test
+  public void testExecuteAsyncFailed()
+    throws Exception
+  {
+    final var processes = WXMProcessesPOSIX.create();
+
+    final var result =
+      processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/sh"))
+          .addArguments("-c")
+          .addArguments("echo failing; exit 3")
+          .build()
+      ).get(5L, TimeUnit.MINUTES);
+
+    Assertions.assertEquals(3, result.exitCode());
+    Assertions.assertFalse(result.succeeded());
+    Assertions.assertEquals("failing\n", result.output());
+  }
+
+  @Test
+  public void testExecuteAsyncNonexistent()
+  {
+    final var processes = WXMProcessesPOSIX.create();
+
+    final var future =
+      processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/nonexistent"))
+          .build()
+      );
+
+    final var ex =
+      Assertions.assertThrows(ExecutionException.class, future::get);
+    Assertions.assertInstanceOf(IOException.class, ex.getCause());
+  }
+
+  @Test
+  public void testExecuteAsyncMany()
+    throws Exception
+  {
+    final var processes = WXMProcessesPOSIX.create();
+
+    final var futures = new ArrayList<CompletableFuture<WXMProcessResult>>();
+    for (int index = 0; index < 32; ++index) {
+      futures.add(processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/echo"))
+          .addArguments(Integer.toString(index))
+          .build()
+      ));
+    }
+
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+      .get(5L, TimeUnit.MINUTES);
+
+    for (int index = 0; index < 32; ++index) {
+      final var result = futures.get(index).get();
+      Assertions.assertEquals(0, result.exitCode());
+      Assertions.assertEquals(index + "\n", result.output());
+    }
+  }
+
+  /**
+   * A process that writes more than a pipe buffer of output does not
+   * block forever.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testExecuteLargeOutputAndWait()
+    throws Exception
+  {
+    final var processes = WXMProcessesPOSIX.create();
+
+    processes.processStartAndWait(
+      WXMProcessDescription.builder()
+        .setExecutable(Paths.get("/bin/sh"))
+        .addArguments("-c")
+        .addArguments("head -c 1000000 /dev/zero")
+        .putEnvironment("PATH", "/bin:/usr/bin")
+        .build()
+    );
+  }
+
+  @Test
+  public void testExecuteFailedAndWait()
+  {
+    final var processes = WXMProcessesPOSIX.create();
+
+    final var ex =
+      Assertions.assertThrows(IOException.class, () -> {
+        processes.processStartAndWait(
+          WXMProcessDescription.builder()
+            .setExecutable(Paths.get("/bin/false"))
+            .build()
+        );
+      });
+    LOG.debug("exception: ", ex);
+  }
+
+  /**
+   * Only the most recent output is retained.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testExecuteAsyncOutputBounded()
+    throws Exception
+  {
+    final var processes = WXMProcessesPOSIX.create(1024);
+
+    final var result =
+      processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/sh"))
+          .addArguments("-c")
+          .addArguments("yes | head -n 100000; echo END")
+          .putEnvironment("PATH", "/bin:/usr/bin")
+          .build()
+      ).get(5L, TimeUnit.MINUTES);
+
+    Assertions.assertEquals(0, result.exitCode());
+    Assertions.assertEquals(1024, result.output().length());
+    Assertions.assertTrue(result.output().endsWith("y\ny\nEND\n"));
+    Assertions.assertEquals(200004L - 1024L, result.outputDiscarded());
+  }
+
+  /**
+   * A description can override the amount of output retained.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testExecuteAsyncOutputBoundedByDescription()
+    throws Exception
+  {
+    final var processes = WXMProcessesPOSIX.create(1024);
+
+    final var result =
+      processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/sh"))
+          .addArguments("-c")
+          .addArguments("yes | head -n 100000; echo END")
+          .putEnvironment("PATH", "/bin:/usr/bin")
+          .setOutputCaptureLimit(200004)
+          .build()
+      ).get(5L, TimeUnit.MINUTES);
+
+    Assertions.assertEquals(0, result.exitCode());
+    Assertions.assertEquals(200004, result.output().length());
+    Assertions.assertEquals(0L, result.outputDiscarded());
+  }
+
+  /**
+   * The tail of the output of a failed process is included in the exception.
+   */
+
+  @Test
+  public void testExecuteFailedAndWaitOutput()
+  {
+    final var processes = WXMProcessesPOSIX.create(13);
+
+    final var ex =
+      Assertions.assertThrows(IOException.class, () -> {
+        processes.processStartAndWait(
+          WXMProcessDescription.builder()
+            .setExecutable(Paths.get("/bin/sh"))
+            .addArguments("-c")
+            .addArguments("echo 'cannot open pool'; echo 'no such pool' >&2; exit 2")
+            .build()
+        );
+      });
+
+    LOG.debug("exception: ", ex);
+    final var message = ex.getMessage();
+    Assertions.assertTrue(message.contains("Error code: 2"));
+    Assertions.assertTrue(message.contains("(the 17 oldest bytes were discarded)"));
+    Assertions.assertTrue(message.contains("    no such pool"));
+    Assertions.assertFalse(message.contains("    cannot open pool"));
+  }
 }
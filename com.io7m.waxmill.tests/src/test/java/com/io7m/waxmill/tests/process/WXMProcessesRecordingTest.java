@@ -0,0 +1,580 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.process;
+
+import com.io7m.waxmill.boot.WXMBootConfigurationExecutor;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMBootConfigurationName;
+import com.io7m.waxmill.machines.WXMCommandExecution;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMDeviceVirtioBlockStorage;
+import com.io7m.waxmill.machines.WXMEvaluatedBootCommands;
+import com.io7m.waxmill.machines.WXMEvaluatedBootConfigurationUEFI;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMStorageBackendZFSVolume;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessTimeoutException;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIX;
+import com.io7m.waxmill.process.recording.WXMProcessRecordings;
+import com.io7m.waxmill.process.recording.WXMProcessesRecording;
+import com.io7m.waxmill.process.recording.WXMProcessesReplaying;
+import com.io7m.waxmill.process.recording.WXMRecordedProcess;
+import com.io7m.waxmill.process.recording.WXMRecordedProcessKind;
+import com.io7m.waxmill.realize.WXMRealizations;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@Timeout(60L)
+public final class WXMProcessesRecordingTest
+{
+  private Path directory;
+  private Path recordingFile;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.recordingFile = this.directory.resolve("recording.xml");
+  }
+
+  private static WXMProcessDescription shell(
+    final String script)
+  {
+    return WXMProcessDescription.builder()
+      .setExecutable(Paths.get("/bin/sh"))
+      .addArguments("-c")
+      .addArguments(script)
+      .build();
+  }
+
+  /**
+   * Every process operation is recorded, and can be replayed with the same
+   * outcomes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRecordReplay()
+    throws Exception
+  {
+    final var ok = shell("echo ok");
+    final var failing = shell("echo failing; exit 3");
+    final var output = shell("printf 'a\\000b<&>'");
+    final var slow =
+      WXMProcessDescription.builder()
+        .from(shell("exec sleep 60"))
+        .setTimeout(Duration.ofMillis(100L))
+        .build();
+
+    try (var recording =
+           WXMProcessesRecording.open(
+             WXMProcessesPOSIX.create(), this.recordingFile)) {
+      recording.processStartAndWait(ok);
+      assertThrows(IOException.class, () -> {
+        recording.processStartAndWait(failing);
+      });
+      assertEquals(
+        "a\0b<&>",
+        recording.processStartAsync(output).get().output());
+      final var ex =
+        assertThrows(ExecutionException.class, () -> {
+          recording.processStartAsync(slow).get();
+        });
+      assertInstanceOf(WXMProcessTimeoutException.class, ex.getCause());
+    }
+
+    final var recorded = WXMProcessRecordings.read(this.recordingFile);
+    assertEquals(4, recorded.size());
+
+    final var r0 = recorded.get(0);
+    assertEquals(WXMRecordedProcessKind.PROCESS_START_AND_WAIT, r0.kind());
+    assertEquals(ok, r0.description());
+    assertEquals(0, r0.exitCode().getAsInt());
+
+    final var r1 = recorded.get(1);
+    assertEquals(failing, r1.description());
+    assertTrue(r1.failure().orElseThrow().contains("failing"));
+
+    final var r2 = recorded.get(2);
+    assertEquals(WXMRecordedProcessKind.PROCESS_START_ASYNC, r2.kind());
+    assertEquals("a\0b<&>", r2.output());
+
+    final var r3 = recorded.get(3);
+    assertEquals(slow, r3.description());
+    assertTrue(r3.timedOut());
+
+    final var replaying =
+      WXMProcessesReplaying.open(this.recordingFile, 0.0);
+
+    replaying.processStartAndWait(ok);
+    final var failed =
+      assertThrows(IOException.class, () -> {
+        replaying.processStartAndWait(failing);
+      });
+    assertEquals(r1.failure().orElseThrow(), failed.getMessage());
+    assertEquals("a\0b<&>", replaying.processStartAsync(output).get().output());
+    final var ex =
+      assertThrows(ExecutionException.class, () -> {
+        replaying.processStartAsync(slow).get();
+      });
+    assertInstanceOf(WXMProcessTimeoutException.class, ex.getCause());
+    assertEquals(List.of(), replaying.remaining());
+
+    assertThrows(IOException.class, () -> {
+      replaying.processStartAndWait(ok);
+    });
+  }
+
+  /**
+   * Recordings survive a round trip through the file format.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRoundTrip()
+    throws Exception
+  {
+    final var recordings = new ArrayList<WXMRecordedProcess>();
+    for (final var kind : WXMRecordedProcessKind.values()) {
+      recordings.add(
+        WXMRecordedProcess.builder()
+          .setKind(kind)
+          .setDescription(
+            WXMProcessDescription.builder()
+              .setExecutable(Paths.get("/sbin/zfs"))
+              .addArguments("create", "-V", "\"quoted\" & <escaped>")
+              .putEnvironment("PATH", "/sbin")
+              .setTimeout(Duration.ofSeconds(3L))
+              .setOutputCaptureLimit(4096)
+              .setTerminationGracePeriod(Duration.ofSeconds(1L))
+              .build())
+          .setDuration(Duration.ofMillis(23L))
+          .setExitCode(kind.ordinal())
+          .setOutput("out\u0001put")
+          .setOutputDiscarded(7L)
+          .setFailure("failed\n  badly")
+          .setTimedOut(true)
+          .build()
+      );
+    }
+    recordings.add(
+      WXMRecordedProcess.builder()
+        .setKind(WXMRecordedProcessKind.PROCESS_START)
+        .setDescription(shell("true"))
+        .setDuration(Duration.ZERO)
+        .build()
+    );
+
+    final var out = new ByteArrayOutputStream();
+    WXMProcessRecordings.write(out, recordings);
+    assertEquals(
+      recordings,
+      WXMProcessRecordings.read(new ByteArrayInputStream(out.toByteArray()))
+    );
+  }
+
+  /**
+   * Malformed recordings are rejected.
+   */
+
+  @Test
+  public void testMalformed()
+  {
+    assertThrows(IOException.class, () -> {
+      WXMProcessRecordings.read(new ByteArrayInputStream(
+        "<ProcessRecording xmlns='urn:x'/>".getBytes()));
+    });
+    assertThrows(IOException.class, () -> {
+      WXMProcessRecordings.read(new ByteArrayInputStream(
+        ("<ProcessRecording xmlns='" + WXMProcessRecordings.NAMESPACE + "'>"
+          + "<Process kind='start'/></ProcessRecording>").getBytes()));
+    });
+  }
+
+  /**
+   * Replayed processes take the recorded time, scaled.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testReplayLatency()
+    throws Exception
+  {
+    final var recordings = new ArrayList<WXMRecordedProcess>();
+    for (int index = 0; index < 8; ++index) {
+      recordings.add(
+        WXMRecordedProcess.builder()
+          .setKind(WXMRecordedProcessKind.PROCESS_START_ASYNC)
+          .setDescription(shell("zfs create " + index))
+          .setDuration(Duration.ofMillis(500L))
+          .setExitCode(0)
+          .build()
+      );
+    }
+
+    final var replaying = WXMProcessesReplaying.create(recordings, 0.5);
+
+    final var timeThen = System.nanoTime();
+    final var futures = new ArrayList<CompletableFuture<?>>();
+    for (int index = 7; index >= 0; --index) {
+      futures.add(replaying.processStartAsync(shell("zfs create " + index)));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+      .get(30L, TimeUnit.SECONDS);
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeThen);
+
+    assertTrue(elapsed.compareTo(Duration.ofMillis(250L)) >= 0);
+    assertTrue(elapsed.compareTo(Duration.ofMillis(8L * 250L)) < 0);
+
+    final var process =
+      WXMProcessesReplaying.create(
+        List.of(
+          WXMRecordedProcess.builder()
+            .setKind(WXMRecordedProcessKind.PROCESS_START)
+            .setDescription(shell("bhyve"))
+            .setDuration(Duration.ofMillis(100L))
+            .setExitCode(4)
+            .setOutput("booted")
+            .build()),
+        1.0
+      ).processStart(shell("bhyve"));
+
+    assertEquals("booted", new String(process.getInputStream().readAllBytes()));
+    assertEquals(4, process.waitFor());
+  }
+
+  /**
+   * A whole boot pipeline can be recorded and then replayed without
+   * running any processes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testBootPipelineReplay()
+    throws Exception
+  {
+    final var clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(
+          this.directory.resolve("configs"))
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.directory.resolve("vms"))
+            .setName("storage/vm")
+            .build())
+        .build();
+
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("vm"))
+        .build();
+
+    final var evaluated =
+      WXMEvaluatedBootConfigurationUEFI.builder()
+        .setName(WXMBootConfigurationName.of("run"))
+        .setCommands(
+          WXMEvaluatedBootCommands.builder()
+            .addConfigurationCommands(
+              WXMCommandExecution.builder()
+                .setExecutable(Paths.get("/sbin/ifconfig"))
+                .addArguments("tap23", "create")
+                .build())
+            .setLastExecution(
+              WXMCommandExecution.builder()
+                .setExecutable(Paths.get("/usr/sbin/bhyve"))
+                .addArguments("vm")
+                .build())
+            .build())
+        .build();
+
+    try (var recording =
+           WXMProcessesRecording.open(
+             mock(WXMProcessesType.class), this.recordingFile)) {
+      WXMBootConfigurationExecutor.create(
+        recording, clientConfiguration, machine, evaluated
+      ).execute(EXECUTE);
+    }
+
+    final var recorded = WXMProcessRecordings.read(this.recordingFile);
+    assertEquals(2, recorded.size());
+    assertEquals(
+      WXMRecordedProcessKind.PROCESS_START_AND_WAIT,
+      recorded.get(0).kind());
+    assertEquals(
+      WXMRecordedProcessKind.PROCESS_REPLACE_CURRENT,
+      recorded.get(1).kind());
+
+    final var replaying = WXMProcessesReplaying.create(recorded, 0.0);
+    WXMBootConfigurationExecutor.create(
+      replaying, clientConfiguration, machine, evaluated
+    ).execute(EXECUTE);
+    assertEquals(List.of(), replaying.remaining());
+
+    final var failing =
+      WXMProcessesReplaying.create(
+        List.of(
+          WXMRecordedProcess.builder()
+            .from(recorded.get(0))
+            .setExitCode(1)
+            .build(),
+          recorded.get(1)),
+        0.0
+      );
+
+    assertThrows(WXMException.class, () -> {
+      WXMBootConfigurationExecutor.create(
+        failing, clientConfiguration, machine, evaluated
+      ).execute(EXECUTE);
+    });
+  }
+
+  /**
+   * The output of a process started with processStart is recorded as it
+   * is read, and replayed.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  public void testProcessStartOutput()
+    throws Exception
+  {
+    final var description = shell("printf hello; exit 2");
+
+    try (var recording =
+           WXMProcessesRecording.open(
+             WXMProcessesPOSIX.create(), this.recordingFile)) {
+      final var process = recording.processStart(description);
+      try (var input = process.getInputStream()) {
+        assertEquals("hello", new String(input.readAllBytes(), UTF_8));
+      }
+      assertEquals(2, process.waitFor());
+    }
+
+    final var recorded = WXMProcessRecordings.read(this.recordingFile);
+    assertEquals(1, recorded.size());
+
+    final var r0 = recorded.get(0);
+    assertEquals(WXMRecordedProcessKind.PROCESS_START, r0.kind());
+    assertEquals("hello", r0.output());
+    assertEquals(0L, r0.outputDiscarded());
+    assertEquals(2, r0.exitCode().getAsInt());
+
+    final var replayed =
+      WXMProcessesReplaying.open(this.recordingFile, 0.0)
+        .processStart(description);
+    assertEquals(
+      "hello",
+      new String(replayed.getInputStream().readAllBytes(), UTF_8));
+    assertEquals(2, replayed.waitFor());
+  }
+
+  /**
+   * The recorded output of a process started with processStart is bounded
+   * by the output capture limit, but the reader still sees all of it.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  public void testProcessStartOutputBounded()
+    throws Exception
+  {
+    final var description =
+      WXMProcessDescription.builder()
+        .from(shell("printf 0123456789"))
+        .setOutputCaptureLimit(4)
+        .build();
+
+    try (var recording =
+           WXMProcessesRecording.open(
+             WXMProcessesPOSIX.create(), this.recordingFile)) {
+      final var process = recording.processStart(description);
+      try (var input = process.getInputStream()) {
+        assertEquals("0123456789", new String(input.readAllBytes(), UTF_8));
+      }
+      assertEquals(0, process.waitFor());
+    }
+
+    final var recorded = WXMProcessRecordings.read(this.recordingFile);
+    assertEquals(1, recorded.size());
+    assertEquals("0123", recorded.get(0).output());
+    assertEquals(6L, recorded.get(0).outputDiscarded());
+  }
+
+  /**
+   * A process whose output is never read to the end is recorded with the
+   * output read so far when the recording is closed.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  public void testProcessStartOutputUnfinished()
+    throws Exception
+  {
+    final var description = shell("printf partial");
+
+    try (var recording =
+           WXMProcessesRecording.open(
+             WXMProcessesPOSIX.create(), this.recordingFile)) {
+      final var process = recording.processStart(description);
+      assertEquals('p', process.getInputStream().read());
+      assertEquals(0, process.waitFor());
+    }
+
+    final var recorded = WXMProcessRecordings.read(this.recordingFile);
+    assertEquals(1, recorded.size());
+    assertEquals("p", recorded.get(0).output());
+    assertEquals(0, recorded.get(0).exitCode().getAsInt());
+  }
+
+  /**
+   * Realizing a machine whose datasets are all listed in the ZFS inventory
+   * can be recorded and then replayed without running any processes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  public void testRealizationsReplay()
+    throws Exception
+  {
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(UUID.randomUUID())
+        .setName(WXMMachineName.of("vm"))
+        .addDevices(
+          WXMDeviceVirtioBlockStorage.builder()
+            .setDeviceSlot(
+              WXMDeviceSlot.builder()
+                .setBusID(0)
+                .setSlotID(4)
+                .setFunctionID(0)
+                .build())
+            .setBackend(
+              WXMStorageBackendZFSVolume.builder()
+                .setExpectedSize(BigInteger.valueOf(128000L))
+                .build())
+            .build())
+        .build();
+
+    final var log = this.directory.resolve("zfs.log");
+    final var zfs = this.directory.resolve("zfs");
+    Files.writeString(
+      zfs,
+      String.join(
+        "\n",
+        "#!/bin/sh",
+        String.format("echo \"$@\" >> '%s'", log),
+        "case \"$*\" in",
+        "  list*)",
+        "    printf 'storage/vm\\tfilesystem\\t-\\t/storage/vm\\n'",
+        String.format(
+          "    printf 'storage/vm/%s\\tfilesystem\\t-\\t/storage/vm/%s\\n'",
+          machine.id(),
+          machine.id()),
+        String.format(
+          "    printf 'storage/vm/%s/disk-0_4_0\\tvolume\\t128000\\t-\\n'",
+          machine.id()),
+        "    ;;",
+        "esac",
+        "exit 0",
+        ""
+      )
+    );
+    Files.setPosixFilePermissions(
+      zfs, PosixFilePermissions.fromString("rwx------"));
+
+    final var clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(
+          this.directory.resolve("configs"))
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.directory.resolve("vms"))
+            .setName("storage/vm")
+            .build())
+        .setZfsExecutable(zfs)
+        .build();
+
+    try (var recording =
+           WXMProcessesRecording.open(
+             WXMProcessesPOSIX.create(), this.recordingFile)) {
+      WXMRealizations.create(recording, clientConfiguration, machine)
+        .evaluate()
+        .execute(EXECUTE);
+    }
+
+    assertEquals(1, Files.readAllLines(log).size());
+
+    final var recorded = WXMProcessRecordings.read(this.recordingFile);
+    assertEquals(1, recorded.size());
+    assertTrue(recorded.get(0).output().contains("disk-0_4_0"));
+
+    final var replaying =
+      WXMProcessesReplaying.open(this.recordingFile, 0.0);
+    WXMRealizations.create(replaying, clientConfiguration, machine)
+      .evaluate()
+      .execute(EXECUTE);
+    assertEquals(List.of(), replaying.remaining());
+    assertEquals(1, Files.readAllLines(log).size());
+  }
+}
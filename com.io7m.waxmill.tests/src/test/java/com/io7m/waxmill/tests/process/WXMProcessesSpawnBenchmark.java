@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.process;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIX;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark comparing the {@link ProcessBuilder} and {@code posix_spawn}
+ * process launchers by spawning 1000 short-lived commands. The reported
+ * time is per command. Run with:
+ *
+ * <pre>
+ * java -cp ... com.io7m.waxmill.tests.process.WXMProcessesSpawnBenchmark
+ * </pre>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class WXMProcessesSpawnBenchmark
+{
+  private static final int COMMANDS = 1000;
+
+  @Param({"processbuilder", "posix_spawn"})
+  private String launcher;
+
+  private WXMProcessesType processes;
+  private WXMProcessDescription description;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Command-line arguments
+   *
+   * @throws RunnerException On errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws RunnerException
+  {
+    new Runner(
+      new OptionsBuilder()
+        .include(WXMProcessesSpawnBenchmark.class.getSimpleName())
+        .build()
+    ).run();
+  }
+
+  /**
+   * Set up the benchmark.
+   */
+
+  @Setup
+  public void setup()
+  {
+    this.processes =
+      switch (this.launcher) {
+        case "posix_spawn" -> WXMProcessesPOSIX.createWithPosixSpawn();
+        default -> WXMProcessesPOSIX.create();
+      };
+
+    this.description =
+      WXMProcessDescription.builder()
+        .setExecutable(Paths.get("/bin/true"))
+        .build();
+  }
+
+  /**
+   * Spawn and wait for a sequence of short-lived commands.
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  @OperationsPerInvocation(COMMANDS)
+  public void spawn()
+    throws Exception
+  {
+    for (int index = 0; index < COMMANDS; ++index) {
+      this.processes.processStartAndWait(this.description);
+    }
+  }
+}
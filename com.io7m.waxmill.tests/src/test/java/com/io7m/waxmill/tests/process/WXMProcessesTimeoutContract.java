@@ -0,0 +1,310 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.process;
+
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessTimeoutException;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(60L)
+public abstract class WXMProcessesTimeoutContract
+{
+  private WXMProcessesType processes;
+  private Path directory;
+  private Path pidFile;
+
+  protected abstract WXMProcessesType createProcesses();
+
+  @BeforeEach
+  public final void setup()
+    throws Exception
+  {
+    this.processes = this.createProcesses();
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.pidFile = this.directory.resolve("pid");
+  }
+
+  /**
+   * A script that records its process ID and then sleeps. If
+   * {@code ignoreTerm} is set, the process ignores SIGTERM.
+   */
+
+  private WXMProcessDescription.Builder sleeper(
+    final boolean ignoreTerm)
+  {
+    final var trap = ignoreTerm ? "trap '' TERM; " : "";
+    return WXMProcessDescription.builder()
+      .setExecutable(Paths.get("/bin/sh"))
+      .addArguments("-c")
+      .addArguments(
+        String.format("echo $$ > '%s'; %sexec sleep 60", this.pidFile, trap))
+      .putEnvironment("PATH", "/bin:/usr/bin");
+  }
+
+  private long waitForPid()
+    throws Exception
+  {
+    while (true) {
+      if (Files.isRegularFile(this.pidFile)) {
+        final var text = Files.readString(this.pidFile, UTF_8).trim();
+        if (!text.isEmpty()) {
+          return Long.parseLong(text);
+        }
+      }
+      Thread.sleep(10L);
+    }
+  }
+
+  private static Duration waitForExit(
+    final long pid)
+    throws Exception
+  {
+    final var timeStart = System.nanoTime();
+    while (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+      Thread.sleep(10L);
+    }
+    return Duration.ofNanos(System.nanoTime() - timeStart);
+  }
+
+  /**
+   * A process that exits before its timeout completes normally.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testWithinTimeout()
+    throws Exception
+  {
+    final var result =
+      this.processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/echo"))
+          .addArguments("quick")
+          .setTimeout(Duration.ofSeconds(30L))
+          .build()
+      ).get(30L, TimeUnit.SECONDS);
+
+    assertEquals(0, result.exitCode());
+    assertEquals("quick\n", result.output());
+  }
+
+  /**
+   * The timeout of a process that has completed does not keep the result
+   * of the process reachable.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testTimeoutReleasedOnCompletion()
+    throws Exception
+  {
+    var future =
+      this.processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/true"))
+          .setTimeout(Duration.ofHours(1L))
+          .build()
+      );
+    assertEquals(0, future.get(30L, TimeUnit.SECONDS).exitCode());
+
+    final var reference = new WeakReference<>(future);
+    future = null;
+
+    for (int index = 0; index < 100 && reference.get() != null; ++index) {
+      System.gc();
+      Thread.sleep(10L);
+    }
+    assertNull(reference.get());
+  }
+
+  /**
+   * A process that exceeds its timeout fails with a distinct exception,
+   * and is terminated.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testTimeoutAsync()
+    throws Exception
+  {
+    final var description =
+      this.sleeper(false)
+        .setTimeout(Duration.ofMillis(250L))
+        .build();
+
+    final var timeStart = System.nanoTime();
+    final var future = this.processes.processStartAsync(description);
+    final var ex =
+      assertThrows(ExecutionException.class, future::get);
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+
+    final var timeout =
+      assertInstanceOf(WXMProcessTimeoutException.class, ex.getCause());
+    assertEquals(description, timeout.description());
+    assertEquals(Duration.ofMillis(250L), timeout.timeout());
+    assertTrue(elapsed.compareTo(Duration.ofSeconds(10L)) < 0);
+
+    waitForExit(this.waitForPid());
+  }
+
+  /**
+   * A process that ignores SIGTERM is killed after the grace period.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testTimeoutEscalates()
+    throws Exception
+  {
+    final var description =
+      this.sleeper(true)
+        .setTimeout(Duration.ofMillis(250L))
+        .setTerminationGracePeriod(Duration.ofMillis(500L))
+        .build();
+
+    final var future = this.processes.processStartAsync(description);
+    final var pid = this.waitForPid();
+    final var ex =
+      assertThrows(ExecutionException.class, future::get);
+    assertInstanceOf(WXMProcessTimeoutException.class, ex.getCause());
+
+    final var elapsed = waitForExit(pid);
+    assertTrue(elapsed.compareTo(Duration.ofSeconds(30L)) < 0);
+  }
+
+  /**
+   * Timeouts are raised from processStartAndWait.
+   */
+
+  @Test
+  public final void testTimeoutAndWait()
+  {
+    final var description =
+      this.sleeper(false)
+        .setTimeout(Duration.ofMillis(250L))
+        .build();
+
+    final var ex =
+      assertThrows(WXMProcessTimeoutException.class, () -> {
+        this.processes.processStartAndWait(description);
+      });
+    assertTrue(ex.getMessage().contains("PT0.25S"));
+  }
+
+  /**
+   * Cancelling a future terminates the process.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testCancel()
+    throws Exception
+  {
+    final var future =
+      this.processes.processStartAsync(this.sleeper(false).build());
+    final var pid = this.waitForPid();
+
+    future.cancel(true);
+    assertThrows(CancellationException.class, future::get);
+    waitForExit(pid);
+  }
+
+  /**
+   * Interrupting a thread waiting in processStartAndWait terminates the
+   * process.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testInterrupt()
+    throws Exception
+  {
+    final var failure = new AtomicReference<Throwable>();
+    final var thread = Thread.ofPlatform().start(() -> {
+      try {
+        this.processes.processStartAndWait(this.sleeper(false).build());
+      } catch (final Throwable e) {
+        failure.set(e);
+      }
+    });
+
+    final var pid = this.waitForPid();
+    thread.interrupt();
+    thread.join();
+
+    assertInstanceOf(InterruptedException.class, failure.get());
+    waitForExit(pid);
+  }
+
+  /**
+   * Timeouts apply to many concurrent processes independently.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testTimeoutMany()
+    throws Exception
+  {
+    final var fast =
+      this.processes.processStartAsync(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/bin/true"))
+          .setTimeout(Duration.ofSeconds(30L))
+          .build()
+      );
+    final var slow =
+      this.processes.processStartAsync(
+        this.sleeper(false)
+          .setTimeout(Duration.ofMillis(100L))
+          .build()
+      );
+
+    assertEquals(0, fast.get().exitCode());
+    final var ex =
+      assertThrows(ExecutionException.class, slow::get);
+    assertInstanceOf(WXMProcessTimeoutException.class, ex.getCause());
+  }
+}
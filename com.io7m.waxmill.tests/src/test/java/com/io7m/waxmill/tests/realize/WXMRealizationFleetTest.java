@@ -0,0 +1,611 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.realize;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeManyConfiguration;
+import com.io7m.waxmill.client.api.WXMRealizeManyResult;
+import com.io7m.waxmill.machines.WXMDeviceAHCIDisk;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMDeviceVirtioBlockStorage;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMStorageBackendFile;
+import com.io7m.waxmill.machines.WXMStorageBackendZFSVolume;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
+import com.io7m.waxmill.process.api.WXMProcessesType;
+import com.io7m.waxmill.process.posix.WXMProcessesPOSIX;
+import com.io7m.waxmill.realize.WXMRealizationFleet;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.mockito.internal.verification.Times;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@Timeout(30L)
+public final class WXMRealizationFleetTest
+{
+  private static final WXMDeviceSlot DEVICE_SLOT_0 =
+    WXMDeviceSlot.builder()
+      .setBusID(0)
+      .setSlotID(4)
+      .setFunctionID(0)
+      .build();
+
+  private static final WXMDeviceSlot DEVICE_SLOT_1 =
+    WXMDeviceSlot.builder()
+      .setBusID(0)
+      .setSlotID(5)
+      .setFunctionID(0)
+      .build();
+
+  private Path directory;
+  private Path shared;
+  private WXMClientConfiguration clientConfiguration;
+  private WXMProcessesType processes;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.shared = this.directory.resolve("shared.iso");
+    Files.writeString(this.shared, "ISO");
+
+    this.processes = mock(WXMProcessesType.class);
+    doReturn(CompletableFuture.failedFuture(
+      new IOException("zfs list is unavailable")))
+      .when(this.processes)
+      .processStartAsync(any());
+    this.clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(
+          this.directory.resolve("configs"))
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.directory.resolve("vms"))
+            .setName("storage/vm")
+            .build())
+        .setZfsExecutable(Paths.get("/sbin/zfs"))
+        .build();
+  }
+
+  private void zfsList(
+    final String text)
+  {
+    doAnswer(invocation -> {
+      return CompletableFuture.completedFuture(
+        WXMProcessResult.builder()
+          .setDescription(invocation.getArgument(0))
+          .setExitCode(0)
+          .setOutput(text)
+          .build());
+    }).when(this.processes)
+      .processStartAsync(any());
+  }
+
+  private static WXMVirtualMachine machineWithVolume()
+  {
+    return machineWithVolume(UUID.randomUUID());
+  }
+
+  private static WXMVirtualMachine machineWithVolume(
+    final UUID id)
+  {
+    return WXMVirtualMachine.builder()
+      .setId(id)
+      .setName(WXMMachineName.of("vm"))
+      .addDevices(
+        WXMDeviceVirtioBlockStorage.builder()
+          .setDeviceSlot(DEVICE_SLOT_0)
+          .setBackend(
+            WXMStorageBackendZFSVolume.builder()
+              .setExpectedSize(BigInteger.valueOf(128000L))
+              .build())
+          .build())
+      .build();
+  }
+
+  private static WXMVirtualMachine machineWithFile(
+    final Path file)
+  {
+    return WXMVirtualMachine.builder()
+      .setId(UUID.randomUUID())
+      .setName(WXMMachineName.of("vm"))
+      .addDevices(
+        WXMDeviceAHCIDisk.builder()
+          .setDeviceSlot(DEVICE_SLOT_1)
+          .setBackend(
+            WXMStorageBackendFile.builder()
+              .setFile(file)
+              .build())
+          .build())
+      .build();
+  }
+
+  /**
+   * A failure to realize one machine does not affect the others.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRealizeManyPartialFailure()
+    throws Exception
+  {
+    final var machine0 = machineWithVolume();
+    final var machine1 = machineWithFile(this.shared);
+    final var machine2 = machineWithFile(this.shared);
+    final var machine3 = machineWithFile(this.directory.resolve("missing"));
+
+    final var result =
+      WXMRealizationFleet.create(
+        this.processes,
+        this.clientConfiguration,
+        WXMRealizeManyConfiguration.builder()
+          .addMachines(machine0, machine1, machine2, machine3)
+          .setMaxConcurrentSteps(2)
+          .build()
+      ).execute(EXECUTE);
+
+    final var results = result.results();
+    assertEquals(4, results.size());
+    assertFalse(result.allRealized());
+
+    assertEquals(machine0.id(), results.get(0).machine());
+    assertEquals(2, results.get(0).steps());
+    assertTrue(results.get(0).failure().isEmpty());
+    assertEquals(machine1.id(), results.get(1).machine());
+    assertTrue(results.get(1).failure().isEmpty());
+    assertEquals(machine2.id(), results.get(2).machine());
+    assertTrue(results.get(2).failure().isEmpty());
+    assertEquals(machine3.id(), results.get(3).machine());
+    assertTrue(results.get(3).failure().orElseThrow().contains("missing"));
+
+    /*
+     * One runtime filesystem per machine, and one volume.
+     */
+
+    verify(this.processes, new Times(5))
+      .processStartAndWait(any(WXMProcessDescription.class));
+    verify(this.processes, new Times(1))
+      .processStartAsync(any(WXMProcessDescription.class));
+  }
+
+  /**
+   * Dry runs execute nothing.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRealizeManyDryRun()
+    throws Exception
+  {
+    final var result =
+      WXMRealizationFleet.create(
+        this.processes,
+        this.clientConfiguration,
+        WXMRealizeManyConfiguration.builder()
+          .addMachines(
+            machineWithVolume(),
+            machineWithFile(this.directory.resolve("missing")))
+          .build()
+      ).execute(DRY_RUN);
+
+    assertTrue(result.allRealized());
+    verify(this.processes, new Times(0))
+      .processStartAndWait(any(WXMProcessDescription.class));
+    verify(this.processes, new Times(0))
+      .processStartAsync(any(WXMProcessDescription.class));
+  }
+
+  /**
+   * Batched creation creates volumes along with their filesystems, and so
+   * requires fewer commands.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRealizeManyBatched()
+    throws Exception
+  {
+    final var machine0 = machineWithVolume();
+    final var machine1 = machineWithFile(this.shared);
+
+    this.zfsList("storage/vm\tfilesystem\t-\t/storage/vm\n");
+
+    final var result =
+      WXMRealizationFleet.create(
+        this.processes,
+        this.clientConfiguration,
+        WXMRealizeManyConfiguration.builder()
+          .addMachines(machine0, machine1)
+          .setBatchZFSCreation(true)
+          .build()
+      ).execute(EXECUTE);
+
+    assertTrue(result.allRealized());
+
+    verify(this.processes, new Times(1))
+      .processStartAsync(any(WXMProcessDescription.class));
+    verify(this.processes, new Times(2))
+      .processStartAndWait(any(WXMProcessDescription.class));
+    verify(this.processes, new Times(1))
+      .processStartAndWait(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/sbin/zfs"))
+          .setTimeout(this.clientConfiguration.zfsTimeout())
+          .addArguments("create")
+          .addArguments("-p")
+          .addArguments("-V")
+          .addArguments("128000")
+          .addArguments(String.format("storage/vm/%s/disk-0_4_0", machine0.id()))
+          .build());
+    verify(this.processes, new Times(1))
+      .processStartAndWait(
+        WXMProcessDescription.builder()
+          .setExecutable(Paths.get("/sbin/zfs"))
+          .setTimeout(this.clientConfiguration.zfsTimeout())
+          .addArguments("create")
+          .addArguments(String.format("storage/vm/%s", machine1.id()))
+          .build());
+  }
+
+  /**
+   * The commands in a batch execute concurrently.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRealizeManyBatchedConcurrent()
+    throws Exception
+  {
+    final var machine0 = machineWithFile(this.shared);
+    final var machine1 = machineWithFile(this.shared);
+
+    this.zfsList("storage/vm\tfilesystem\t-\t/storage/vm\n");
+
+    /*
+     * Each create command waits for the other to start, and so the batch
+     * can only succeed if both commands execute at the same time.
+     */
+
+    final var started = new CountDownLatch(2);
+    doAnswer(invocation -> {
+      started.countDown();
+      if (!started.await(10L, TimeUnit.SECONDS)) {
+        throw new IOException("Commands were not executed concurrently.");
+      }
+      return null;
+    }).when(this.processes)
+      .processStartAndWait(any());
+
+    final var result =
+      WXMRealizationFleet.create(
+        this.processes,
+        this.clientConfiguration,
+        WXMRealizeManyConfiguration.builder()
+          .addMachines(machine0, machine1)
+          .setBatchZFSCreation(true)
+          .setMaxConcurrentSteps(2)
+          .build()
+      ).execute(EXECUTE);
+
+    assertTrue(result.allRealized());
+    verify(this.processes, new Times(2))
+      .processStartAndWait(any(WXMProcessDescription.class));
+  }
+
+  /**
+   * Batched dry runs list the existing datasets, and execute nothing else.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRealizeManyBatchedDryRun()
+    throws Exception
+  {
+    final var result =
+      WXMRealizationFleet.create(
+        this.processes,
+        this.clientConfiguration,
+        WXMRealizeManyConfiguration.builder()
+          .addMachines(machineWithVolume(), machineWithFile(this.shared))
+          .setBatchZFSCreation(true)
+          .build()
+      ).execute(DRY_RUN);
+
+    assertTrue(result.allRealized());
+    verify(this.processes, new Times(0))
+      .processStartAndWait(any(WXMProcessDescription.class));
+    verify(this.processes, new Times(1))
+      .processStartAsync(any(WXMProcessDescription.class));
+  }
+
+  /**
+   * Batched dry runs print the commands that would create the missing
+   * datasets, and only those.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRealizeManyBatchedDryRunPrintsMissing()
+    throws Exception
+  {
+    final var machine0 = machineWithVolume();
+    final var machine1 = machineWithVolume();
+
+    this.zfsList(String.join(
+      "",
+      "storage/vm\tfilesystem\t-\t/storage/vm\n",
+      String.format(
+        "storage/vm/%s\tfilesystem\t-\t/storage/vm/%s\n",
+        machine0.id(),
+        machine0.id()),
+      String.format(
+        "storage/vm/%s/disk-0_4_0\tvolume\t128000\t-\n",
+        machine0.id())
+    ));
+
+    final var saved = System.out;
+    final var bytes = new ByteArrayOutputStream();
+    final WXMRealizeManyResult result;
+    try (var output = new PrintStream(bytes, true, UTF_8)) {
+      System.setOut(output);
+      result =
+        WXMRealizationFleet.create(
+          this.processes,
+          this.clientConfiguration,
+          WXMRealizeManyConfiguration.builder()
+            .addMachines(machine0, machine1)
+            .setBatchZFSCreation(true)
+            .build()
+        ).execute(DRY_RUN);
+    } finally {
+      System.setOut(saved);
+    }
+
+    assertTrue(result.allRealized());
+    assertEquals(
+      List.of(String.format(
+        "/sbin/zfs create -p -V 128000 storage/vm/%s/disk-0_4_0",
+        machine1.id())),
+      bytes.toString(UTF_8).lines().collect(Collectors.toList())
+    );
+    verify(this.processes, new Times(0))
+      .processStartAndWait(any(WXMProcessDescription.class));
+  }
+
+  /**
+   * Batched creation using real processes and a fake zfs executable. A
+   * failure to create one machine's volume is reported against that machine
+   * alone.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  public void testRealizeManyBatchedFakeZFS()
+    throws Exception
+  {
+    final var machine0 = machineWithVolume();
+    final var machine1 = machineWithFile(this.shared);
+    final var machine2 = machineWithVolume(UUID.randomUUID());
+
+    final var log = this.directory.resolve("zfs.log");
+    final var zfs = this.directory.resolve("zfs");
+    Files.writeString(
+      zfs,
+      String.join(
+        "\n",
+        "#!/bin/sh",
+        String.format("echo \"$@\" >> '%s'", log),
+        "case \"$*\" in",
+        String.format("  *%s*) exit 1 ;;", machine2.id()),
+        "  list*) printf 'storage/vm\\tfilesystem\\t-\\t/storage/vm\\n' ;;",
+        "esac",
+        "exit 0",
+        ""
+      )
+    );
+    Files.setPosixFilePermissions(
+      zfs, PosixFilePermissions.fromString("rwx------"));
+
+    final var configuration =
+      WXMClientConfiguration.builder()
+        .from(this.clientConfiguration)
+        .setZfsExecutable(zfs)
+        .build();
+
+    final var result =
+      WXMRealizationFleet.create(
+        WXMProcessesPOSIX.create(),
+        configuration,
+        WXMRealizeManyConfiguration.builder()
+          .addMachines(machine0, machine1, machine2)
+          .setBatchZFSCreation(true)
+          .build()
+      ).execute(EXECUTE);
+
+    final var results = result.results();
+    assertEquals(3, results.size());
+    assertTrue(results.get(0).failure().isEmpty());
+    assertTrue(results.get(1).failure().isEmpty());
+    assertTrue(results.get(2).failure().isPresent());
+
+    final List<String> lines = Files.readAllLines(log);
+    assertEquals(4, lines.size());
+    assertEquals(
+      Set.of(
+        "list -H -p -o name,type,volsize,mountpoint -r storage/vm",
+        String.format("create -p -V 128000 storage/vm/%s/disk-0_4_0", machine0.id()),
+        String.format("create storage/vm/%s", machine1.id()),
+        String.format("create -p -V 128000 storage/vm/%s/disk-0_4_0", machine2.id())
+      ),
+      Set.copyOf(lines)
+    );
+  }
+
+  /**
+   * A listing of the ZFS datasets that does not complete within the ZFS
+   * timeout is abandoned, and realization proceeds without an inventory.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  public void testRealizeManyHangingZFSList()
+    throws Exception
+  {
+    final var machine = machineWithFile(this.shared);
+
+    final var log = this.directory.resolve("zfs.log");
+    final var zfs = this.directory.resolve("zfs");
+    Files.writeString(
+      zfs,
+      String.join(
+        "\n",
+        "#!/bin/sh",
+        String.format("echo \"$@\" >> '%s'", log),
+        "case \"$*\" in",
+        "  list*) exec sleep 60 ;;",
+        "esac",
+        "exit 0",
+        ""
+      )
+    );
+    Files.setPosixFilePermissions(
+      zfs, PosixFilePermissions.fromString("rwx------"));
+
+    final var configuration =
+      WXMClientConfiguration.builder()
+        .from(this.clientConfiguration)
+        .setZfsExecutable(zfs)
+        .setZfsTimeout(Duration.ofMillis(500L))
+        .build();
+
+    final var timeStart = System.nanoTime();
+    final var result =
+      WXMRealizationFleet.create(
+        WXMProcessesPOSIX.create(),
+        configuration,
+        WXMRealizeManyConfiguration.builder()
+          .addMachines(machine)
+          .build()
+      ).execute(EXECUTE);
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+
+    assertTrue(result.allRealized());
+    assertTrue(elapsed.compareTo(Duration.ofSeconds(20L)) < 0);
+    assertEquals(
+      List.of(
+        "list -H -p -o name,type,volsize,mountpoint -r storage/vm",
+        String.format("create storage/vm/%s", machine.id())
+      ),
+      Files.readAllLines(log)
+    );
+  }
+
+  /**
+   * Machines that have already been realized are skipped unless forced.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRealizeManySkipsRealized()
+    throws Exception
+  {
+    final var machine = machineWithVolume();
+    Files.createDirectories(
+      this.directory.resolve("vms").resolve(machine.id().toString()));
+
+    final var configuration =
+      WXMRealizeManyConfiguration.builder()
+        .addMachines(machine)
+        .build();
+
+    final var result0 =
+      WXMRealizationFleet.create(
+        this.processes, this.clientConfiguration, configuration)
+        .execute(EXECUTE);
+
+    assertTrue(result0.allRealized());
+    assertEquals(2, result0.results().get(0).steps());
+
+    final var result1 =
+      WXMRealizationFleet.create(
+        this.processes, this.clientConfiguration, configuration)
+        .execute(EXECUTE);
+
+    assertTrue(result1.allRealized());
+    assertEquals(0, result1.results().get(0).steps());
+
+    final var result2 =
+      WXMRealizationFleet.create(
+        this.processes,
+        this.clientConfiguration,
+        WXMRealizeManyConfiguration.builder()
+          .from(configuration)
+          .setForce(true)
+          .build())
+        .execute(EXECUTE);
+
+    assertTrue(result2.allRealized());
+    assertEquals(2, result2.results().get(0).steps());
+  }
+}
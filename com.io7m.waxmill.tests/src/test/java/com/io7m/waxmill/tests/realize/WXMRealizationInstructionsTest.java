@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.realize;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.waxmill.exceptions.WXMException;
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.realize.WXMRealizationInstructions;
+import com.io7m.waxmill.realize.WXMRealizationStepType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(30L)
+public final class WXMRealizationInstructionsTest
+{
+  /**
+   * Independent steps execute concurrently, up to the limit, and only after
+   * the steps upon which they depend.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testConcurrentAfterDependency()
+    throws Exception
+  {
+    final var log = new CopyOnWriteArrayList<String>();
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+
+    final var filesystem =
+      new Step("filesystem", List.of(), log, running, maxRunning, 50L, false);
+
+    final var steps = new ArrayList<WXMRealizationStepType>();
+    steps.add(filesystem);
+    for (int index = 0; index < 8; ++index) {
+      steps.add(new Step(
+        "volume" + index,
+        List.of(filesystem),
+        log,
+        running,
+        maxRunning,
+        100L,
+        false
+      ));
+    }
+
+    final var instructions =
+      WXMRealizationInstructions.builder()
+        .setSteps(steps)
+        .build();
+
+    instructions.execute(EXECUTE, 4);
+
+    assertEquals(9, log.size());
+    assertEquals("filesystem", log.get(0));
+    assertEquals(4, maxRunning.get());
+  }
+
+  /**
+   * Steps with failed dependencies are not executed, and all errors are
+   * reported in step order.
+   */
+
+  @Test
+  public void testDependencyFailed()
+  {
+    final var log = new CopyOnWriteArrayList<String>();
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+
+    final var filesystem =
+      new Step("filesystem", List.of(), log, running, maxRunning, 0L, true);
+    final var volume =
+      new Step("volume", List.of(filesystem), log, running, maxRunning, 0L, false);
+    final var file =
+      new Step("file", List.of(), log, running, maxRunning, 0L, true);
+
+    final var instructions =
+      WXMRealizationInstructions.builder()
+        .addSteps(filesystem, volume, file)
+        .build();
+
+    final var ex =
+      assertThrows(WXMException.class, () -> {
+        instructions.execute(EXECUTE, 2);
+      });
+
+    assertEquals(Set.of("filesystem", "file"), Set.copyOf(log));
+
+    final var suppressed = ex.getSuppressed();
+    assertEquals(3, suppressed.length);
+    assertEquals("filesystem", suppressed[0].getMessage());
+    assertTrue(suppressed[1].getMessage().contains("volume"));
+    assertEquals("file", suppressed[2].getMessage());
+  }
+
+  /**
+   * Steps with the same deduplication key are executed once.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testDeduplicated()
+    throws Exception
+  {
+    final var log = new CopyOnWriteArrayList<String>();
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+
+    final var file0 =
+      new Step("file", List.of(), log, running, maxRunning, 10L, false);
+    final var file1 =
+      new Step("file", List.of(), log, running, maxRunning, 10L, false);
+    final var volume =
+      new Step("volume", List.of(file1), log, running, maxRunning, 0L, false);
+
+    WXMRealizationInstructions.builder()
+      .addSteps(file0, file1, volume)
+      .build()
+      .execute(EXECUTE, 4);
+
+    assertEquals(List.of("file", "volume"), List.copyOf(log));
+  }
+
+  /**
+   * Dependencies must appear before the steps that use them.
+   */
+
+  @Test
+  public void testDependencyOrder()
+  {
+    final var log = new CopyOnWriteArrayList<String>();
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+
+    final var filesystem =
+      new Step("filesystem", List.of(), log, running, maxRunning, 0L, false);
+    final var volume =
+      new Step("volume", List.of(filesystem), log, running, maxRunning, 0L, false);
+
+    assertThrows(PreconditionViolationException.class, () -> {
+      WXMRealizationInstructions.builder()
+        .addSteps(volume, filesystem)
+        .build();
+    });
+  }
+
+  private static final class Step implements WXMRealizationStepType
+  {
+    private final String name;
+    private final List<WXMRealizationStepType> dependencies;
+    private final List<String> log;
+    private final AtomicInteger running;
+    private final AtomicInteger maxRunning;
+    private final long delay;
+    private final boolean fails;
+
+    Step(
+      final String inName,
+      final List<WXMRealizationStepType> inDependencies,
+      final List<String> inLog,
+      final AtomicInteger inRunning,
+      final AtomicInteger inMaxRunning,
+      final long inDelay,
+      final boolean inFails)
+    {
+      this.name = Objects.requireNonNull(inName, "name");
+      this.dependencies = Objects.requireNonNull(inDependencies, "dependencies");
+      this.log = Objects.requireNonNull(inLog, "log");
+      this.running = Objects.requireNonNull(inRunning, "running");
+      this.maxRunning = Objects.requireNonNull(inMaxRunning, "maxRunning");
+      this.delay = inDelay;
+      this.fails = inFails;
+    }
+
+    @Override
+    public String description()
+    {
+      return this.name;
+    }
+
+    @Override
+    public List<WXMProcessDescription> processes()
+    {
+      return List.of();
+    }
+
+    @Override
+    public List<WXMRealizationStepType> dependencies()
+    {
+      return this.dependencies;
+    }
+
+    @Override
+    public Optional<String> deduplicationKey()
+    {
+      return Optional.of(this.name);
+    }
+
+    @Override
+    public void execute(
+      final WXMDryRun dryRun)
+      throws IOException, InterruptedException
+    {
+      final var now = this.running.incrementAndGet();
+      this.maxRunning.accumulateAndGet(now, Math::max);
+      try {
+        Thread.sleep(this.delay);
+        this.log.add(this.name);
+        if (this.fails) {
+          throw new IOException(this.name);
+        }
+      } finally {
+        this.running.decrementAndGet();
+      }
+    }
+  }
+}
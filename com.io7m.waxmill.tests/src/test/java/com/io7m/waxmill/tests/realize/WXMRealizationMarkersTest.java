@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.realize;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.machines.WXMDeviceSlot;
+import com.io7m.waxmill.machines.WXMDeviceVirtioBlockStorage;
+import com.io7m.waxmill.machines.WXMMachineName;
+import com.io7m.waxmill.machines.WXMStorageBackendZFSVolume;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMZFSFilesystem;
+import com.io7m.waxmill.realize.WXMRealizationMarkers;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMRealizationMarkersTest
+{
+  private static final WXMDeviceSlot DEVICE_SLOT_0 =
+    WXMDeviceSlot.builder()
+      .setBusID(0)
+      .setSlotID(4)
+      .setFunctionID(0)
+      .build();
+
+  private Path directory;
+  private WXMClientConfiguration clientConfiguration;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.clientConfiguration =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(
+          this.directory.resolve("configs"))
+        .setVirtualMachineRuntimeFilesystem(
+          WXMZFSFilesystem.builder()
+            .setMountPoint(this.directory.resolve("vms"))
+            .setName("storage/vm")
+            .build())
+        .build();
+  }
+
+  private static WXMVirtualMachine machineWithVolume(
+    final UUID id,
+    final long size)
+  {
+    return WXMVirtualMachine.builder()
+      .setId(id)
+      .setName(WXMMachineName.of("vm"))
+      .addDevices(
+        WXMDeviceVirtioBlockStorage.builder()
+          .setDeviceSlot(DEVICE_SLOT_0)
+          .setBackend(
+            WXMStorageBackendZFSVolume.builder()
+              .setExpectedSize(BigInteger.valueOf(size))
+              .build())
+          .build())
+      .build();
+  }
+
+  /**
+   * Fingerprints depend on the storage definition.
+   */
+
+  @Test
+  public void testFingerprintStorage()
+  {
+    final var id = UUID.randomUUID();
+    final var machine0 = machineWithVolume(id, 128000L);
+    final var machine1 = machineWithVolume(id, 128000L);
+    final var machine2 = machineWithVolume(id, 256000L);
+
+    final var f0 =
+      WXMRealizationMarkers.fingerprint(this.clientConfiguration, machine0);
+    final var f1 =
+      WXMRealizationMarkers.fingerprint(this.clientConfiguration, machine1);
+    final var f2 =
+      WXMRealizationMarkers.fingerprint(this.clientConfiguration, machine2);
+
+    assertTrue(f0.startsWith(WXMRealizationMarkers.FINGERPRINT_PREFIX));
+    assertEquals(f0, f1);
+    assertNotEquals(f0, f2);
+  }
+
+  /**
+   * Fingerprints do not depend on parts of the definition that are not
+   * realized.
+   */
+
+  @Test
+  public void testFingerprintIgnoresName()
+  {
+    final var machine0 = machineWithVolume(UUID.randomUUID(), 128000L);
+    final var machine1 =
+      WXMVirtualMachine.builder()
+        .from(machine0)
+        .setName(WXMMachineName.of("other"))
+        .build();
+
+    assertEquals(
+      WXMRealizationMarkers.fingerprint(this.clientConfiguration, machine0),
+      WXMRealizationMarkers.fingerprint(this.clientConfiguration, machine1)
+    );
+  }
+
+  /**
+   * A recorded marker matches the machine until the storage changes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRecordMatches()
+    throws Exception
+  {
+    final var id = UUID.randomUUID();
+    final var machine0 = machineWithVolume(id, 128000L);
+    final var machine1 = machineWithVolume(id, 256000L);
+
+    assertFalse(
+      WXMRealizationMarkers.isRealized(this.clientConfiguration, machine0));
+
+    final var file =
+      WXMRealizationMarkers.markerFile(this.clientConfiguration, machine0);
+    Files.createDirectories(file.getParent());
+
+    WXMRealizationMarkers.record(this.clientConfiguration, machine0, 2);
+    assertTrue(Files.isRegularFile(file));
+    assertTrue(
+      WXMRealizationMarkers.isRealized(this.clientConfiguration, machine0));
+    assertFalse(
+      WXMRealizationMarkers.isRealized(this.clientConfiguration, machine1));
+  }
+
+  /**
+   * A corrupted marker does not match.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testRecordCorrupt()
+    throws Exception
+  {
+    final var machine = machineWithVolume(UUID.randomUUID(), 128000L);
+    final var file =
+      WXMRealizationMarkers.markerFile(this.clientConfiguration, machine);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, "fingerprint=sha256:00\n");
+
+    assertFalse(
+      WXMRealizationMarkers.isRealized(this.clientConfiguration, machine));
+  }
+}
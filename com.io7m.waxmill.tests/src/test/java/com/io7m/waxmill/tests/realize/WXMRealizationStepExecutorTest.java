@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.tests.realize;
+
+import com.io7m.waxmill.machines.WXMDryRun;
+import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.realize.WXMRealizationStepType;
+import com.io7m.waxmill.realize.internal.WXMRealizationStepExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.io7m.waxmill.machines.WXMDryRun.DRY_RUN;
+import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(30L)
+public final class WXMRealizationStepExecutorTest
+{
+  private static List<WXMRealizationStepType> steps(
+    final AtomicInteger running,
+    final AtomicInteger maximum,
+    final List<Integer> order)
+  {
+    final var steps = new ArrayList<WXMRealizationStepType>();
+    for (int index = 0; index < 8; ++index) {
+      steps.add(new CountingStep(index, running, maximum, order));
+    }
+    return steps;
+  }
+
+  /**
+   * Dry runs execute steps one at a time, in the order given, regardless of
+   * the permitted concurrency.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testDryRunSequential()
+    throws Exception
+  {
+    final var running = new AtomicInteger();
+    final var maximum = new AtomicInteger();
+    final var order = new ArrayList<Integer>();
+
+    WXMRealizationStepExecutor.create(8)
+      .execute(steps(running, maximum, order), DRY_RUN);
+
+    assertEquals(1, maximum.get());
+    assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), order);
+  }
+
+  /**
+   * Executing steps permits the configured concurrency.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testExecuteConcurrent()
+    throws Exception
+  {
+    final var running = new AtomicInteger();
+    final var maximum = new AtomicInteger();
+    final var order = new ArrayList<Integer>();
+
+    WXMRealizationStepExecutor.create(8)
+      .execute(steps(running, maximum, order), EXECUTE);
+
+    assertTrue(maximum.get() > 1);
+    assertEquals(8, order.size());
+  }
+
+  private static final class CountingStep implements WXMRealizationStepType
+  {
+    private final int index;
+    private final AtomicInteger running;
+    private final AtomicInteger maximum;
+    private final List<Integer> order;
+
+    CountingStep(
+      final int inIndex,
+      final AtomicInteger inRunning,
+      final AtomicInteger inMaximum,
+      final List<Integer> inOrder)
+    {
+      this.index = inIndex;
+      this.running = inRunning;
+      this.maximum = inMaximum;
+      this.order = inOrder;
+    }
+
+    @Override
+    public String description()
+    {
+      return String.format("Step %d", Integer.valueOf(this.index));
+    }
+
+    @Override
+    public List<WXMProcessDescription> processes()
+    {
+      return List.of();
+    }
+
+    @Override
+    public void execute(
+      final WXMDryRun dryRun)
+      throws InterruptedException
+    {
+      final var now = this.running.incrementAndGet();
+      this.maximum.accumulateAndGet(now, Math::max);
+      synchronized (this.order) {
+        this.order.add(Integer.valueOf(this.index));
+      }
+      Thread.sleep(50L);
+      this.running.decrementAndGet();
+    }
+  }
+}
@@ -27,6 +27,7 @@ import com.io7m.waxmill.machines.WXMStorageBackendZFSVolume;
 import com.io7m.waxmill.machines.WXMVirtualMachine;
 import com.io7m.waxmill.machines.WXMZFSFilesystem;
 import com.io7m.waxmill.process.api.WXMProcessDescription;
+import com.io7m.waxmill.process.api.WXMProcessResult;
 import com.io7m.waxmill.process.api.WXMProcessesType;
 import com.io7m.waxmill.realize.WXMRealizations;
 import com.io7m.waxmill.tests.WXMTestDirectories;
@@ -47,6 +48,7 @@ import java.nio.file.spi.FileSystemProvider;
 import java.util.ArrayList;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static com.io7m.waxmill.machines.WXMDryRun.EXECUTE;
 import static com.io7m.waxmill.tests.WXMExceptions.assertThrowsLogged;
@@ -54,6 +56,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
@@ -109,6 +113,10 @@ public final class WXMRealizationsTest
 
     this.processes =
       mock(WXMProcessesType.class);
+    doReturn(CompletableFuture.failedFuture(
+      new IOException("zfs list is unavailable")))
+      .when(this.processes)
+      .processStartAsync(any());
 
     this.directory =
       WXMTestDirectories.createTempDirectory();
@@ -442,6 +450,7 @@ public final class WXMRealizationsTest
       .processStartAndWait(
         WXMProcessDescription.builder()
           .setExecutable(this.clientConfiguration.zfsExecutable())
+          .setTimeout(this.clientConfiguration.zfsTimeout())
           .addArguments("create")
           .addArguments("-V")
           .addArguments("128000")
@@ -500,6 +509,7 @@ public final class WXMRealizationsTest
       .processStartAndWait(
         WXMProcessDescription.builder()
           .setExecutable(this.clientConfiguration.zfsExecutable())
+          .setTimeout(this.clientConfiguration.zfsTimeout())
           .addArguments("create")
           .addArguments("-V")
           .addArguments("128000")
@@ -812,4 +822,168 @@ public final class WXMRealizationsTest
     final var exc = (Exception) ex.getSuppressed()[0];
     assertTrue(exc.getMessage().contains("not a directory"));
   }
+
+  private void zfsList(
+    final String... lines)
+    throws Exception
+  {
+    final var text = new StringBuilder();
+    for (final var line : lines) {
+      text.append(line);
+      text.append('\n');
+    }
+
+    doAnswer(invocation -> {
+      return CompletableFuture.completedFuture(
+        WXMProcessResult.builder()
+          .setDescription(invocation.getArgument(0))
+          .setExitCode(0)
+          .setOutput(text.toString())
+          .build());
+    }).when(this.processes)
+      .processStartAsync(any());
+  }
+
+  /**
+   * If a single listing of the ZFS datasets shows that everything exists,
+   * nothing is created and the filesystem is not examined.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void realizeZFSInventoryExisting()
+    throws Exception
+  {
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(this.machineId)
+        .setName(WXMMachineName.of("vm"))
+        .addDevices(
+          WXMDeviceVirtioBlockStorage.builder()
+            .setDeviceSlot(DEVICE_SLOT_0)
+            .setBackend(ZFS_VOLUME_SIZED)
+            .build())
+        .build();
+
+    this.zfsList(
+      "storage/vm\tfilesystem\t-\t/storage/vm",
+      String.format(
+        "storage/vm/%s\tfilesystem\t-\t/storage/vm/%s",
+        machine.id(),
+        machine.id()),
+      String.format(
+        "storage/vm/%s/disk-0_4_0\tvolume\t128000\t-",
+        machine.id())
+    );
+
+    final var realizations =
+      WXMRealizations.create(this.processes, this.clientConfiguration, machine);
+    final var instructions =
+      realizations.evaluate();
+
+    instructions.execute(EXECUTE);
+
+    verify(this.processes, new Times(1))
+      .processStartAsync(any());
+    verify(this.processes, new Times(0))
+      .processStartAndWait(any());
+  }
+
+  /**
+   * If a single listing of the ZFS datasets shows that nothing exists,
+   * everything is created.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void realizeZFSInventoryMissing()
+    throws Exception
+  {
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(this.machineId)
+        .setName(WXMMachineName.of("vm"))
+        .addDevices(
+          WXMDeviceVirtioBlockStorage.builder()
+            .setDeviceSlot(DEVICE_SLOT_0)
+            .setBackend(ZFS_VOLUME_SIZED)
+            .build())
+        .build();
+
+    this.zfsList("storage/vm\tfilesystem\t-\t/storage/vm");
+
+    final var realizations =
+      WXMRealizations.create(this.processes, this.clientConfiguration, machine);
+    final var instructions =
+      realizations.evaluate();
+
+    instructions.execute(EXECUTE);
+
+    verify(this.processes, new Times(1))
+      .processStartAsync(any());
+    verify(this.processes, new Times(2))
+      .processStartAndWait(any());
+    verify(this.processes, new Times(1))
+      .processStartAndWait(
+        WXMProcessDescription.builder()
+          .setExecutable(this.clientConfiguration.zfsExecutable())
+          .setTimeout(this.clientConfiguration.zfsTimeout())
+          .addArguments("create")
+          .addArguments("-V")
+          .addArguments("128000")
+          .addArguments(String.format(
+            "storage/vm/%s/disk-0_4_0",
+            machine.id()
+          )).build()
+      );
+  }
+
+  /**
+   * A dataset of the wrong type is an error.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void realizeZFSInventoryWrongType()
+    throws Exception
+  {
+    final var machine =
+      WXMVirtualMachine.builder()
+        .setId(this.machineId)
+        .setName(WXMMachineName.of("vm"))
+        .addDevices(
+          WXMDeviceVirtioBlockStorage.builder()
+            .setDeviceSlot(DEVICE_SLOT_0)
+            .setBackend(ZFS_VOLUME_SIZED)
+            .build())
+        .build();
+
+    this.zfsList(
+      "storage/vm\tfilesystem\t-\t/storage/vm",
+      String.format(
+        "storage/vm/%s\tfilesystem\t-\t/storage/vm/%s",
+        machine.id(),
+        machine.id()),
+      String.format(
+        "storage/vm/%s/disk-0_4_0\tfilesystem\t-\tnone",
+        machine.id())
+    );
+
+    final var realizations =
+      WXMRealizations.create(this.processes, this.clientConfiguration, machine);
+    final var instructions =
+      realizations.evaluate();
+
+    final var ex = assertThrowsLogged(WXMException.class, () -> {
+      instructions.execute(EXECUTE);
+    });
+
+    final var exc = (Exception) ex.getSuppressed()[0];
+    assertTrue(exc.getMessage().contains("not of the expected type"));
+    verify(this.processes, new Times(0))
+      .processStartAndWait(any());
+  }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.server;
+
+import com.io7m.waxmill.client.api.WXMClientProviderType;
+import com.io7m.waxmill.client.api.WXMClientType;
+import com.io7m.waxmill.server.WXMServerClientCache;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class WXMServerClientCacheTest
+{
+  private Path directory;
+  private Path configFile;
+  private WXMClientProviderType provider;
+  private WXMClientType clientA;
+  private WXMClientType clientB;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.configFile = this.directory.resolve("config.xml");
+    Files.writeString(this.configFile, "config");
+
+    this.provider = mock(WXMClientProviderType.class);
+    this.clientA = mock(WXMClientType.class);
+    this.clientB = mock(WXMClientType.class);
+    when(this.provider.open(any(Path.class)))
+      .thenReturn(this.clientA)
+      .thenReturn(this.clientB);
+  }
+
+  /**
+   * Opening the same configuration file twice opens one client, and closing
+   * the returned clients does not close the underlying client.
+   */
+
+  @Test
+  public void testOpenShared()
+    throws Exception
+  {
+    final var cache = WXMServerClientCache.create(this.provider);
+    final var c0 = cache.open(this.configFile);
+    c0.close();
+    final var c1 = cache.open(
+      this.directory.resolve("x").resolve("..").resolve("config.xml"));
+    c1.close();
+
+    assertSame(c0, c1);
+    assertEquals(1, cache.size());
+    verify(this.provider, times(1)).open(any(Path.class));
+    verify(this.clientA, never()).close();
+
+    c0.vmList();
+    verify(this.clientA, times(1)).vmList();
+
+    cache.close();
+    verify(this.clientA, times(1)).close();
+  }
+
+  /**
+   * A configuration file that has been modified is opened again.
+   */
+
+  @Test
+  public void testReopenModified()
+    throws Exception
+  {
+    final var cache = WXMServerClientCache.create(this.provider);
+    final var c0 = cache.open(this.configFile);
+
+    Files.setLastModifiedTime(
+      this.configFile,
+      FileTime.from(Instant.parse("2000-01-01T00:00:00Z"))
+    );
+
+    final var c1 = cache.open(this.configFile);
+    assertNotSame(c0, c1);
+    verify(this.provider, times(2)).open(any(Path.class));
+
+    c1.vmList();
+    verify(this.clientB, times(1)).vmList();
+
+    cache.close();
+    verify(this.clientA, times(1)).close();
+    verify(this.clientB, times(1)).close();
+  }
+
+  /**
+   * A retired client is closed as soon as the last request using it
+   * releases it, rather than when the cache is closed.
+   */
+
+  @Test
+  public void testRetiredClosedOnRelease()
+    throws Exception
+  {
+    final var cache = WXMServerClientCache.create(this.provider);
+    final var c0 = cache.open(this.configFile);
+    final var c0Again = cache.open(this.configFile);
+    assertSame(c0, c0Again);
+
+    Files.setLastModifiedTime(
+      this.configFile,
+      FileTime.from(Instant.parse("2000-01-01T00:00:00Z"))
+    );
+
+    final var c1 = cache.open(this.configFile);
+    assertNotSame(c0, c1);
+    assertEquals(2, cache.size());
+
+    c0.close();
+    verify(this.clientA, never()).close();
+    assertEquals(2, cache.size());
+
+    c0Again.close();
+    verify(this.clientA, times(1)).close();
+    assertEquals(1, cache.size());
+
+    c1.close();
+    verify(this.clientB, never()).close();
+
+    cache.close();
+    verify(this.clientA, times(1)).close();
+    verify(this.clientB, times(1)).close();
+  }
+
+  /**
+   * A retired client that is not in use is closed immediately.
+   */
+
+  @Test
+  public void testRetiredUnusedClosedImmediately()
+    throws Exception
+  {
+    final var cache = WXMServerClientCache.create(this.provider);
+    cache.open(this.configFile).close();
+
+    Files.setLastModifiedTime(
+      this.configFile,
+      FileTime.from(Instant.parse("2000-01-01T00:00:00Z"))
+    );
+
+    cache.open(this.configFile).close();
+    verify(this.clientA, times(1)).close();
+    verify(this.clientB, never()).close();
+    assertEquals(1, cache.size());
+
+    cache.close();
+    verify(this.clientB, times(1)).close();
+  }
+
+  /**
+   * A closed cache cannot open clients.
+   */
+
+  @Test
+  public void testClosed()
+    throws Exception
+  {
+    final var cache = WXMServerClientCache.create(this.provider);
+    cache.close();
+
+    assertThrows(IllegalStateException.class, () -> {
+      cache.open(this.configFile);
+    });
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.tests.server;
+
+import com.io7m.waxmill.server.WXMServer;
+import com.io7m.waxmill.server.WXMServerClient;
+import com.io7m.waxmill.server.WXMServerHandlerType;
+import com.io7m.waxmill.server.WXMServerRequest;
+import com.io7m.waxmill.server.WXMServerUnavailableException;
+import com.io7m.waxmill.tests.WXMTestDirectories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WXMServerTest
+{
+  private Path directory;
+  private Path socket;
+  private WXMServer server;
+  private Thread serverThread;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.directory = WXMTestDirectories.createTempDirectory();
+    this.socket = this.directory.resolve("server.sock");
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws Exception
+  {
+    if (this.server != null) {
+      this.server.close();
+      this.serverThread.join(10_000L);
+    }
+  }
+
+  private void startServer(
+    final WXMServerHandlerType handler)
+    throws IOException
+  {
+    this.server = WXMServer.create(this.socket, handler);
+    this.serverThread = new Thread(() -> {
+      try {
+        this.server.run();
+      } catch (final IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    this.serverThread.setDaemon(true);
+    this.serverThread.start();
+  }
+
+  private static WXMServerRequest request(
+    final String... arguments)
+  {
+    return WXMServerRequest.builder()
+      .setArguments(List.of(arguments))
+      .setWorkingDirectory(Path.of("/"))
+      .build();
+  }
+
+  /**
+   * The output, error, and exit code produced by the handler reach the
+   * thin client, and the request arrives intact.
+   */
+
+  @Test
+  public void testRoundTrip()
+    throws Exception
+  {
+    final var received = new AtomicReference<WXMServerRequest>();
+    this.startServer((request, output, error) -> {
+      received.set(request);
+      output.write("out: ".getBytes(UTF_8));
+      output.write(String.join(" ", request.arguments()).getBytes(UTF_8));
+      error.write("err: ✓".getBytes(UTF_8));
+      return 3;
+    });
+
+    final var output = new ByteArrayOutputStream();
+    final var error = new ByteArrayOutputStream();
+    final var request =
+      WXMServerRequest.builder()
+        .setArguments(List.of("vm-list", "--verbose", "debug"))
+        .setWorkingDirectory(Path.of("/home/someone"))
+        .setConfigurationFile(Path.of("/etc/waxmill.xml"))
+        .build();
+
+    final var exitCode =
+      WXMServerClient.execute(this.socket, request, output, error);
+
+    assertEquals(3, exitCode);
+    assertEquals("out: vm-list --verbose debug", output.toString(UTF_8));
+    assertEquals("err: ✓", error.toString(UTF_8));
+    assertEquals(request, received.get());
+  }
+
+  /**
+   * Requests are executed one after another on the same server.
+   */
+
+  @Test
+  public void testManyRequests()
+    throws Exception
+  {
+    this.startServer((request, output, error) -> {
+      return Integer.parseInt(request.arguments().get(0));
+    });
+
+    for (int index = 0; index < 100; ++index) {
+      final var exitCode =
+        WXMServerClient.execute(
+          this.socket,
+          request(Integer.toString(index)),
+          new ByteArrayOutputStream(),
+          new ByteArrayOutputStream()
+        );
+      assertEquals(index, exitCode);
+    }
+  }
+
+  /**
+   * A handler that raises an exception produces a failure exit code and
+   * an error message, and the server keeps serving.
+   */
+
+  @Test
+  public void testHandlerFails()
+    throws Exception
+  {
+    this.startServer((request, output, error) -> {
+      if (request.arguments().isEmpty()) {
+        throw new IOException("Handler failed!");
+      }
+      return 0;
+    });
+
+    final var error = new ByteArrayOutputStream();
+    assertEquals(
+      1,
+      WXMServerClient.execute(
+        this.socket, request(), new ByteArrayOutputStream(), error)
+    );
+    assertTrue(error.toString(UTF_8).contains("Handler failed!"));
+
+    assertEquals(
+      0,
+      WXMServerClient.execute(
+        this.socket,
+        request("x"),
+        new ByteArrayOutputStream(),
+        new ByteArrayOutputStream())
+    );
+  }
+
+  /**
+   * Connecting to a socket that nobody is listening on fails with an
+   * exception that allows the command to be executed locally.
+   */
+
+  @Test
+  public void testUnavailable()
+  {
+    assertThrows(WXMServerUnavailableException.class, () -> {
+      WXMServerClient.execute(
+        this.socket,
+        request("vm-list"),
+        new ByteArrayOutputStream(),
+        new ByteArrayOutputStream()
+      );
+    });
+  }
+
+  /**
+   * A second server cannot take over the socket of a running server.
+   */
+
+  @Test
+  public void testAlreadyRunning()
+    throws Exception
+  {
+    this.startServer((request, output, error) -> 0);
+
+    assertThrows(IOException.class, () -> {
+      WXMServer.create(this.socket, (request, output, error) -> 0);
+    });
+    assertTrue(Files.exists(this.socket));
+  }
+
+  /**
+   * The socket is accessible only by its owner, and nothing used to create
+   * the socket is left behind.
+   */
+
+  @Test
+  @EnabledOnOs({OS.LINUX, OS.FREEBSD})
+  public void testSocketPermissions()
+    throws Exception
+  {
+    this.startServer((request, output, error) -> 0);
+
+    assertEquals(
+      PosixFilePermissions.fromString("rw-------"),
+      Files.getPosixFilePermissions(this.socket)
+    );
+    try (var entries = Files.list(this.directory)) {
+      assertEquals(List.of(this.socket), entries.collect(Collectors.toList()));
+    }
+    assertEquals(
+      0,
+      WXMServerClient.execute(
+        this.socket,
+        request("version"),
+        new ByteArrayOutputStream(),
+        new ByteArrayOutputStream())
+    );
+  }
+
+  /**
+   * A stale socket left by a server that is no longer running is replaced.
+   */
+
+  @Test
+  public void testStaleSocket()
+    throws Exception
+  {
+    final var stale = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    stale.bind(UnixDomainSocketAddress.of(this.socket));
+    stale.close();
+    assertTrue(Files.exists(this.socket));
+
+    this.startServer((request, output, error) -> 7);
+
+    assertEquals(
+      7,
+      WXMServerClient.execute(
+        this.socket,
+        request("version"),
+        new ByteArrayOutputStream(),
+        new ByteArrayOutputStream())
+    );
+  }
+
+  /**
+   * Closing a server removes its socket.
+   */
+
+  @Test
+  public void testCloseRemovesSocket()
+    throws Exception
+  {
+    this.startServer((request, output, error) -> 0);
+    assertTrue(Files.exists(this.socket));
+
+    this.server.close();
+    this.serverThread.join(10_000L);
+    assertFalse(Files.exists(this.socket));
+    assertFalse(this.serverThread.isAlive());
+  }
+
+  /**
+   * Requests execute concurrently: every handler waits until all of the
+   * requests have arrived, which could never happen if requests were
+   * executed one at a time.
+   */
+
+  @Test
+  public void testConcurrentRequests()
+    throws Exception
+  {
+    final var count = 32;
+    final var arrived = new CountDownLatch(count);
+    this.startServer((request, output, error) -> {
+      arrived.countDown();
+      return arrived.await(30L, TimeUnit.SECONDS) ? 0 : 1;
+    });
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      final var futures = new ArrayList<Future<Integer>>();
+      for (int index = 0; index < count; ++index) {
+        futures.add(executor.submit(() -> {
+          return Integer.valueOf(
+            WXMServerClient.execute(
+              this.socket,
+              request("vm-list"),
+              new ByteArrayOutputStream(),
+              new ByteArrayOutputStream()));
+        }));
+      }
+      for (final var future : futures) {
+        assertEquals(0, future.get().intValue());
+      }
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.io7m.waxmill.client.api.WXMClientConfiguration;
 import com.io7m.waxmill.serializer.api.WXMClientConfigurationSerializerProviderType;
 import com.io7m.waxmill.serializer.api.WXMSerializerType;
 import com.io7m.waxmill.xml.config.v1.WXM1ClientConfigurationSerializer;
+import com.io7m.waxmill.xml.config.v1.WXM1p1ClientConfigurationSerializer;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -79,6 +80,22 @@ public final class WXMClientConfigurationSerializers
       final var writer =
         this.serializers.createXMLStreamWriter(bufferedOutput, "UTF-8");
 
+      /*
+       * Configurations that use the default timeouts are written using
+       * version 1.0 of the schema so that they remain readable by older
+       * versions.
+       */
+
+      if (hasNonDefaultTimeouts(value)) {
+        return new WXM1p1ClientConfigurationSerializer(
+          writer,
+          bufferedOutput,
+          stream,
+          transformer,
+          value
+        );
+      }
+
       return new WXM1ClientConfigurationSerializer(
         writer,
         bufferedOutput,
@@ -91,6 +108,22 @@ public final class WXMClientConfigurationSerializers
     }
   }
 
+  private static boolean hasNonDefaultTimeouts(
+    final WXMClientConfiguration value)
+  {
+    final var defaults =
+      WXMClientConfiguration.builder()
+        .setVirtualMachineConfigurationDirectory(
+          value.virtualMachineConfigurationDirectory())
+        .setVirtualMachineRuntimeFilesystem(
+          value.virtualMachineRuntimeFilesystem())
+        .build();
+
+    return !Objects.equals(value.zfsTimeout(), defaults.zfsTimeout())
+      || !Objects.equals(value.ifconfigTimeout(), defaults.ifconfigTimeout())
+      || !Objects.equals(value.grubBhyveTimeout(), defaults.grubBhyveTimeout());
+  }
+
   @Override
   public String toString()
   {
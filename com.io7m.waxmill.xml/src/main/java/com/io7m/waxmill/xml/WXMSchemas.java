@@ -34,6 +34,13 @@ public final class WXMSchemas
       WXMSchemas.class.getResource("/com/io7m/waxmill/xml/vm/v1/vm-1.0.xsd")
     );
 
+  private static final JXESchemaDefinition VM_SCHEMA_M1P1 =
+    JXESchemaDefinition.of(
+      URI.create("urn:com.io7m.waxmill.vm:1:1"),
+      "vm-1.1.xsd",
+      WXMSchemas.class.getResource("/com/io7m/waxmill/xml/vm/v1/vm-1.1.xsd")
+    );
+
   private static final JXESchemaDefinition CONFIG_SCHEMA_M1P0 =
     JXESchemaDefinition.of(
       URI.create("urn:com.io7m.waxmill.config:1:0"),
@@ -42,12 +49,24 @@ public final class WXMSchemas
         "/com/io7m/waxmill/xml/config/v1/config-1.0.xsd")
     );
 
+  private static final JXESchemaDefinition CONFIG_SCHEMA_M1P1 =
+    JXESchemaDefinition.of(
+      URI.create("urn:com.io7m.waxmill.config:1:1"),
+      "config-1.1.xsd",
+      WXMSchemas.class.getResource(
+        "/com/io7m/waxmill/xml/config/v1/config-1.1.xsd")
+    );
+
   private static final JXESchemaResolutionMappings SCHEMAS =
     JXESchemaResolutionMappings.builder()
       .putMappings(URI.create("urn:com.io7m.waxmill.vm:1:0"), VM_SCHEMA_M1P0)
+      .putMappings(URI.create("urn:com.io7m.waxmill.vm:1:1"), VM_SCHEMA_M1P1)
       .putMappings(
         URI.create("urn:com.io7m.waxmill.config:1:0"),
         CONFIG_SCHEMA_M1P0)
+      .putMappings(
+        URI.create("urn:com.io7m.waxmill.config:1:1"),
+        CONFIG_SCHEMA_M1P1)
       .build();
 
   private WXMSchemas()
@@ -82,6 +101,33 @@ public final class WXMSchemas
     return VM_SCHEMA_M1P0;
   }
 
+  /**
+   * @return The VM version 1.1 XML namespace
+   */
+
+  public static String vmSchemaV1p1NamespaceText()
+  {
+    return vmSchemaV1p1Namespace().toString();
+  }
+
+  /**
+   * @return The VM version 1.1 XML namespace
+   */
+
+  public static URI vmSchemaV1p1Namespace()
+  {
+    return vmSchemaV1p1().namespace();
+  }
+
+  /**
+   * @return The VM version 1.1 schema
+   */
+
+  public static JXESchemaDefinition vmSchemaV1p1()
+  {
+    return VM_SCHEMA_M1P1;
+  }
+
   /**
    * @return The Configuration version 1.0 XML namespace
    */
@@ -109,6 +155,33 @@ public final class WXMSchemas
     return CONFIG_SCHEMA_M1P0;
   }
 
+  /**
+   * @return The Configuration version 1.1 XML namespace
+   */
+
+  public static String configSchemaV1p1NamespaceText()
+  {
+    return configSchemaV1p1Namespace().toString();
+  }
+
+  /**
+   * @return The Configuration version 1.1 XML namespace
+   */
+
+  public static URI configSchemaV1p1Namespace()
+  {
+    return configSchemaV1p1().namespace();
+  }
+
+  /**
+   * @return The Configuration version 1.1 schema
+   */
+
+  public static JXESchemaDefinition configSchemaV1p1()
+  {
+    return CONFIG_SCHEMA_M1P1;
+  }
+
   /**
    * @return The collection of supported schemas
    */
@@ -20,6 +20,7 @@ import com.io7m.waxmill.machines.WXMVirtualMachineSet;
 import com.io7m.waxmill.serializer.api.WXMSerializerType;
 import com.io7m.waxmill.serializer.api.WXMVirtualMachineSerializerProviderType;
 import com.io7m.waxmill.xml.vm.v1.WXM1VirtualMachineSerializer;
+import com.io7m.waxmill.xml.vm.v1.WXM1p1VirtualMachineSerializer;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -79,6 +80,27 @@ public final class WXMVirtualMachineSerializers
       final var writer =
         this.serializers.createXMLStreamWriter(bufferedOutput, "UTF-8");
 
+      /*
+       * Machines that do not use templates are written using version 1.0
+       * of the schema so that they remain readable by older versions.
+       */
+
+      final var templates =
+        value.machines()
+          .values()
+          .stream()
+          .anyMatch(machine -> machine.template().isPresent());
+
+      if (templates) {
+        return new WXM1p1VirtualMachineSerializer(
+          writer,
+          bufferedOutput,
+          stream,
+          transformer,
+          value
+        );
+      }
+
       return new WXM1VirtualMachineSerializer(
         writer,
         bufferedOutput,
@@ -110,6 +110,36 @@ public final class WXM1ClientConfigurationParser
     }
   }
 
+  void onTimeoutsReceived(
+    final BTElementParsingContextType context,
+    final WXM1p1Timeouts result)
+    throws SAXParseException
+  {
+    for (final var timeout : result.timeouts()) {
+      final var type = timeout.type();
+      switch (type) {
+        case "ZFS": {
+          this.builder.setZfsTimeout(timeout.value());
+          break;
+        }
+        case "Ifconfig": {
+          this.builder.setIfconfigTimeout(timeout.value());
+          break;
+        }
+        case "GRUBBhyve": {
+          this.builder.setGrubBhyveTimeout(timeout.value());
+          break;
+        }
+        default:
+          throw context.parseException(
+            new IllegalArgumentException(String.format(
+              "Unrecognized timeout type: %s",
+              type))
+          );
+      }
+    }
+  }
+
   private void onPathsReceived(
     final BTElementParsingContextType context,
     final WXM1Paths result)
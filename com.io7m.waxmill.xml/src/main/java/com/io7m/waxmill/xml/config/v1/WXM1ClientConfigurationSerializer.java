@@ -87,14 +87,20 @@ public final class WXM1ClientConfigurationSerializer
   {
     try {
       this.start();
-      this.serializePaths();
-      this.serializeZFSFilesystems();
+      this.serializeContent();
       this.finish();
     } catch (final XMLStreamException e) {
       throw new IOException(e);
     }
   }
 
+  void serializeContent()
+    throws XMLStreamException
+  {
+    this.serializePaths();
+    this.serializeZFSFilesystems();
+  }
+
   private void serializeZFSFilesystems()
     throws XMLStreamException
   {
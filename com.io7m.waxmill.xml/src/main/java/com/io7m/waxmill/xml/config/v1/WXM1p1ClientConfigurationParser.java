@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.xml.config.v1;
+
+import com.io7m.blackthorne.api.BTElementHandlerConstructorType;
+import com.io7m.blackthorne.api.BTElementHandlerType;
+import com.io7m.blackthorne.api.BTElementParsingContextType;
+import com.io7m.blackthorne.api.BTQualifiedName;
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import org.xml.sax.SAXException;
+
+import java.nio.file.FileSystem;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * "Configuration" parser for version 1.1 of the schema. The elements that
+ * describe paths and filesystems are those of version 1.0.
+ */
+
+public final class WXM1p1ClientConfigurationParser
+  implements BTElementHandlerType<Object, WXMClientConfiguration>
+{
+  private final WXM1ClientConfigurationParser delegate;
+
+  /**
+   * "Configuration" parser.
+   *
+   * @param inFileSystem The filesystem
+   */
+
+  public WXM1p1ClientConfigurationParser(
+    final FileSystem inFileSystem)
+  {
+    this.delegate = new WXM1ClientConfigurationParser(inFileSystem);
+  }
+
+  @Override
+  public Map<BTQualifiedName, BTElementHandlerConstructorType<?, ?>>
+  onChildHandlersRequested(
+    final BTElementParsingContextType context)
+  {
+    final var handlers =
+      new HashMap<>(this.delegate.onChildHandlersRequested(context));
+    handlers.put(
+      WXM1p1CNames.element("Timeouts"),
+      c -> new WXM1p1TimeoutsParser()
+    );
+    return handlers;
+  }
+
+  @Override
+  public void onChildValueProduced(
+    final BTElementParsingContextType context,
+    final Object result)
+    throws SAXException
+  {
+    if (result instanceof WXM1p1Timeouts) {
+      this.delegate.onTimeoutsReceived(context, (WXM1p1Timeouts) result);
+    } else {
+      this.delegate.onChildValueProduced(context, result);
+    }
+  }
+
+  @Override
+  public WXMClientConfiguration onElementFinished(
+    final BTElementParsingContextType context)
+  {
+    return this.delegate.onElementFinished(context);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.waxmill.xml.config.v1;
+
+import com.io7m.waxmill.client.api.WXMClientConfiguration;
+import com.io7m.waxmill.serializer.api.WXMSerializerType;
+import com.io7m.waxmill.xml.WXMSchemas;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Transformer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * "Configuration" serializer for version 1.1 of the schema. The elements
+ * that describe paths and filesystems are those of version 1.0.
+ */
+
+public final class WXM1p1ClientConfigurationSerializer
+  implements WXMSerializerType
+{
+  private final XMLStreamWriter writer;
+  private final WXMClientConfiguration clientConfiguration;
+  private final WXM1ClientConfigurationSerializer content;
+
+  /**
+   * "Configuration" serializer.
+   *
+   * @param inWriter         The XML stream writer
+   * @param inBufferedOutput The buffered output
+   * @param inStream         The output stream
+   * @param inTransformer    The XML transformer
+   * @param inValue          The configuration value to serialize
+   */
+
+  public WXM1p1ClientConfigurationSerializer(
+    final XMLStreamWriter inWriter,
+    final ByteArrayOutputStream inBufferedOutput,
+    final OutputStream inStream,
+    final Transformer inTransformer,
+    final WXMClientConfiguration inValue)
+  {
+    this.writer =
+      Objects.requireNonNull(inWriter, "writer");
+    this.clientConfiguration =
+      Objects.requireNonNull(inValue, "value");
+    this.content =
+      new WXM1ClientConfigurationSerializer(
+        inWriter,
+        inBufferedOutput,
+        inStream,
+        inTransformer,
+        inValue
+      );
+  }
+
+  @Override
+  public void execute()
+    throws IOException
+  {
+    try {
+      this.start();
+      this.content.serializeContent();
+      this.serializeTimeouts();
+      this.finish();
+    } catch (final XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void serializeTimeouts()
+    throws XMLStreamException
+  {
+    final var namespaceURI = WXMSchemas.configSchemaV1p1NamespaceText();
+    this.writer.writeStartElement(namespaceURI, "Timeouts");
+    this.serializeTimeout(
+      "ZFS",
+      this.clientConfiguration.zfsTimeout()
+    );
+    this.serializeTimeout(
+      "Ifconfig",
+      this.clientConfiguration.ifconfigTimeout()
+    );
+    this.serializeTimeout(
+      "GRUBBhyve",
+      this.clientConfiguration.grubBhyveTimeout()
+    );
+    this.writer.writeEndElement();
+  }
+
+  private void serializeTimeout(
+    final String type,
+    final Duration value)
+    throws XMLStreamException
+  {
+    final var namespaceURI = WXMSchemas.configSchemaV1p1NamespaceText();
+    this.writer.writeStartElement(namespaceURI, "Timeout");
+    this.writer.writeAttribute("type", type);
+    this.writer.writeAttribute("value", value.toString());
+    this.writer.writeEndElement();
+  }
+
+  private void finish()
+    throws XMLStreamException
+  {
+    this.writer.flush();
+    this.writer.writeEndElement();
+    this.writer.writeEndDocument();
+  }
+
+  private void start()
+    throws XMLStreamException
+  {
+    final var namespaceURI = WXMSchemas.configSchemaV1p1NamespaceText();
+    final var namespaceV1p0 = WXMSchemas.configSchemaV1p0NamespaceText();
+    this.writer.writeStartDocument("UTF-8", "1.0");
+    this.writer.writeCharacters("\n");
+    this.writer.setPrefix("wxmc11", namespaceURI);
+    this.writer.setPrefix("wxmc", namespaceV1p0);
+    this.writer.writeStartElement(namespaceURI, "Configuration");
+    this.writer.writeNamespace("wxmc11", namespaceURI);
+    this.writer.writeNamespace("wxmc", namespaceV1p0);
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.content.close();
+  }
+}
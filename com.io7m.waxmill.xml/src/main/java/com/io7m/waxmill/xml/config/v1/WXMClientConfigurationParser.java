@@ -102,6 +102,10 @@ public final class WXMClientConfigurationParser
           Map.entry(
             element("Configuration"),
             c -> new WXM1ClientConfigurationParser(this.fileSystem)
+          ),
+          Map.entry(
+            WXM1p1CNames.element("Configuration"),
+            c -> new WXM1p1ClientConfigurationParser(this.fileSystem)
           )
         )
       );
@@ -158,6 +158,19 @@ public final class WXM1VirtualMachineParser
     }
   }
 
+  /**
+   * Set the template of the machine. Templates are only present in version
+   * 1.1 of the schema.
+   *
+   * @param template The template
+   */
+
+  void setTemplate(
+    final UUID template)
+  {
+    this.builder.setTemplate(template);
+  }
+
   @Override
   public WXMVirtualMachine onElementFinished(
     final BTElementParsingContextType context)
@@ -112,6 +112,15 @@ public final class WXM1VirtualMachineSerializer implements WXMSerializerType
   public void execute()
     throws IOException
   {
+    for (final var machine : this.machineSet.machines().values()) {
+      if (machine.template().isPresent()) {
+        throw new IOException(String.format(
+          "Virtual machine %s has a template, which requires schema 1.1",
+          machine.id()
+        ));
+      }
+    }
+
     try {
       this.start();
 
@@ -134,7 +143,23 @@ public final class WXM1VirtualMachineSerializer implements WXMSerializerType
     this.writer.writeStartElement(namespaceURI, "VirtualMachine");
     this.writer.writeAttribute("id", machine.id().toString());
     this.writer.writeAttribute("name", machine.name().value());
+    this.serializeMachineContent(machine);
+    this.writer.writeEndElement();
+  }
+
+  /**
+   * Serialize the elements that describe the parts of a machine. These
+   * elements are shared by versions 1.0 and 1.1 of the schema.
+   *
+   * @param machine The machine
+   *
+   * @throws XMLStreamException On errors
+   */
 
+  void serializeMachineContent(
+    final WXMVirtualMachine machine)
+    throws XMLStreamException
+  {
     WXM1Comments.serializeComment(machine.comment(), this.writer);
     this.serializeCPUTopology(machine.cpuTopology());
     this.serializeMemory(machine.memory());
@@ -146,7 +171,6 @@ public final class WXM1VirtualMachineSerializer implements WXMSerializerType
     );
     this.serializeFlags(machine.flags());
     this.serializeTags(machine.tags());
-    this.writer.writeEndElement();
   }
 
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.xml.vm.v1;
+
+import com.io7m.blackthorne.api.BTElementHandlerConstructorType;
+import com.io7m.blackthorne.api.BTElementHandlerType;
+import com.io7m.blackthorne.api.BTElementParsingContextType;
+import com.io7m.blackthorne.api.BTQualifiedName;
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXParseException;
+
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Virtual machine parser for version 1.1 of the schema. The elements that
+ * describe the parts of the machine are those of version 1.0.
+ */
+
+public final class WXM1p1VirtualMachineParser
+  implements BTElementHandlerType<Object, WXMVirtualMachine>
+{
+  private final WXM1VirtualMachineParser delegate;
+
+  /**
+   * Virtual machine parser.
+   *
+   * @param inFileSystem The filesystem
+   * @param inSourceURI  The source URI
+   */
+
+  public WXM1p1VirtualMachineParser(
+    final FileSystem inFileSystem,
+    final URI inSourceURI)
+  {
+    this.delegate = new WXM1VirtualMachineParser(inFileSystem, inSourceURI);
+  }
+
+  @Override
+  public Map<BTQualifiedName, BTElementHandlerConstructorType<?, ?>>
+  onChildHandlersRequested(
+    final BTElementParsingContextType context)
+  {
+    return this.delegate.onChildHandlersRequested(context);
+  }
+
+  @Override
+  public void onChildValueProduced(
+    final BTElementParsingContextType context,
+    final Object result)
+  {
+    this.delegate.onChildValueProduced(context, result);
+  }
+
+  @Override
+  public void onElementStart(
+    final BTElementParsingContextType context,
+    final Attributes attributes)
+    throws SAXParseException
+  {
+    this.delegate.onElementStart(context, attributes);
+
+    try {
+      final var template = attributes.getValue("template");
+      if (template != null) {
+        this.delegate.setTemplate(UUID.fromString(template));
+      }
+    } catch (final Exception e) {
+      throw context.parseException(e);
+    }
+  }
+
+  @Override
+  public WXMVirtualMachine onElementFinished(
+    final BTElementParsingContextType context)
+  {
+    return this.delegate.onElementFinished(context);
+  }
+}
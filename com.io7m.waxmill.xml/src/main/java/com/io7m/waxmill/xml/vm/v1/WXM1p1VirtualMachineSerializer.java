@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2020 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.waxmill.xml.vm.v1;
+
+import com.io7m.waxmill.machines.WXMVirtualMachine;
+import com.io7m.waxmill.machines.WXMVirtualMachineSet;
+import com.io7m.waxmill.serializer.api.WXMSerializerType;
+import com.io7m.waxmill.xml.WXMSchemas;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Transformer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Virtual machine serializer for version 1.1 of the schema. The elements
+ * that describe the parts of the machine are those of version 1.0.
+ */
+
+public final class WXM1p1VirtualMachineSerializer implements WXMSerializerType
+{
+  private final XMLStreamWriter writer;
+  private final WXMVirtualMachineSet machineSet;
+  private final WXM1VirtualMachineSerializer content;
+
+  /**
+   * Virtual machine serializer.
+   *
+   * @param inWriter         The XML writer
+   * @param inBufferedOutput The buffered output
+   * @param inStream         The stream output
+   * @param inTransformer    The transformer
+   * @param inValue          The set of machines
+   */
+
+  public WXM1p1VirtualMachineSerializer(
+    final XMLStreamWriter inWriter,
+    final ByteArrayOutputStream inBufferedOutput,
+    final OutputStream inStream,
+    final Transformer inTransformer,
+    final WXMVirtualMachineSet inValue)
+  {
+    this.writer =
+      Objects.requireNonNull(inWriter, "writer");
+    this.machineSet =
+      Objects.requireNonNull(inValue, "value");
+    this.content =
+      new WXM1VirtualMachineSerializer(
+        inWriter,
+        inBufferedOutput,
+        inStream,
+        inTransformer,
+        inValue
+      );
+  }
+
+  @Override
+  public void execute()
+    throws IOException
+  {
+    try {
+      this.start();
+
+      final var machines = this.machineSet.machines();
+      for (final var entry : machines.entrySet()) {
+        this.serializeMachine(entry.getValue());
+      }
+
+      this.finish();
+    } catch (final XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void serializeMachine(
+    final WXMVirtualMachine machine)
+    throws XMLStreamException
+  {
+    final var namespaceURI = WXMSchemas.vmSchemaV1p1NamespaceText();
+    this.writer.writeStartElement(namespaceURI, "VirtualMachine");
+    this.writer.writeAttribute("id", machine.id().toString());
+    this.writer.writeAttribute("name", machine.name().value());
+
+    final var template = machine.template();
+    if (template.isPresent()) {
+      this.writer.writeAttribute("template", template.get().toString());
+    }
+
+    this.content.serializeMachineContent(machine);
+    this.writer.writeEndElement();
+  }
+
+  private void finish()
+    throws XMLStreamException
+  {
+    this.writer.flush();
+    this.writer.writeEndElement();
+    this.writer.writeEndDocument();
+  }
+
+  private void start()
+    throws XMLStreamException
+  {
+    final var namespaceURI = WXMSchemas.vmSchemaV1p1NamespaceText();
+    final var namespaceV1p0 = WXMSchemas.vmSchemaV1p0NamespaceText();
+    this.writer.writeStartDocument("UTF-8", "1.0");
+    this.writer.writeCharacters("\n");
+    this.writer.setPrefix("wxm11", namespaceURI);
+    this.writer.setPrefix("wxm", namespaceV1p0);
+    this.writer.writeStartElement(namespaceURI, "VirtualMachines");
+    this.writer.writeNamespace("wxm11", namespaceURI);
+    this.writer.writeNamespace("wxm", namespaceV1p0);
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.content.close();
+  }
+}
@@ -106,6 +106,15 @@ public final class WXMVirtualMachineParser
           Map.entry(
             element("VirtualMachine"),
             c -> new WXM1VirtualMachineParser(this.fileSystem, this.source)
+          ),
+          Map.entry(
+            WXM1p1Names.element("VirtualMachines"),
+            c -> new WXM1p1VirtualMachineSetParser(
+              this.fileSystem, this.source)
+          ),
+          Map.entry(
+            WXM1p1Names.element("VirtualMachine"),
+            c -> new WXM1p1VirtualMachineParser(this.fileSystem, this.source)
           )
         )
       );